@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Implementers of this interface provide a positional read which does not
+ * block the calling thread while the data is fetched.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface AsyncPositionedReadable {
+  /**
+   * Reads bytes from the given position of the stream into buf, until buf
+   * is full or the end of the stream is reached. The position of the
+   * stream is not changed, and concurrent calls are allowed.
+   * <p/>
+   * Callers must not use buf until the returned future has completed.
+   * After a successful read, buf.position() is advanced by the number of
+   * bytes read and buf.limit() is unchanged. If the read fails, the
+   * contents and position of buf are undefined.
+   * <p/>
+   * The future may be completed by a thread of the implementation, which
+   * runs the dependent stages which are not asynchronous. Such stages
+   * should not block.
+   *
+   * @param position position in the stream to read from
+   * @param buf the buffer to receive the results of the read
+   * @return a future for the number of bytes read, or -1 if the position
+   *         is at or after the end of the stream. Errors complete the
+   *         future exceptionally.
+   */
+  CompletableFuture<Integer> readAsync(long position, ByteBuffer buf);
+}
@@ -25,6 +25,9 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -38,7 +41,8 @@
 public class FSDataInputStream extends DataInputStream
     implements Seekable, PositionedReadable, 
       ByteBufferReadable, HasFileDescriptor, CanSetDropBehind, CanSetReadahead,
-      HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities {
+      HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities,
+      AsyncPositionedReadable {
   /**
    * Map ByteBuffers that we have handed out to readers to ByteBufferPool 
    * objects
@@ -119,6 +123,22 @@ public void readFully(long position, byte[] buffer)
     throws IOException {
     ((PositionedReadable)in).readFully(position, buffer, 0, buffer.length);
   }
+
+  @Override
+  public int minSeekForVectorReads() {
+    return ((PositionedReadable) in).minSeekForVectorReads();
+  }
+
+  @Override
+  public int maxReadSizeForVectorReads() {
+    return ((PositionedReadable) in).maxReadSizeForVectorReads();
+  }
+
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    ((PositionedReadable) in).readVectored(ranges, allocate);
+  }
   
   /**
    * Seek to the given position on an alternate copy of the data.
@@ -150,6 +170,64 @@ public int read(ByteBuffer buf) throws IOException {
     throw new UnsupportedOperationException("Byte-buffer read unsupported by input stream");
   }
 
+  /**
+   * Read bytes from the given position in the stream to the given buffer
+   * without blocking, if the wrapped stream supports it. Otherwise the read
+   * is done by the calling thread and the returned future is complete.
+   * The {@link StreamCapabilities#READASYNC} capability tells which is the
+   * case.
+   *
+   * @see AsyncPositionedReadable#readAsync(long, ByteBuffer)
+   */
+  @Override
+  public CompletableFuture<Integer> readAsync(long position, ByteBuffer buf) {
+    if (in instanceof AsyncPositionedReadable) {
+      return ((AsyncPositionedReadable) in).readAsync(position, buf);
+    }
+    final CompletableFuture<Integer> result = new CompletableFuture<>();
+    try {
+      result.complete(readFully(position, buf));
+    } catch (IOException | RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Read into the buffer with the positional reads of the wrapped stream
+   * until the buffer is full or the end of the stream is reached.
+   */
+  private int readFully(long position, ByteBuffer buf) throws IOException {
+    final byte[] bytes;
+    final int offset;
+    if (buf.hasArray()) {
+      bytes = buf.array();
+      offset = buf.arrayOffset() + buf.position();
+    } else {
+      bytes = new byte[buf.remaining()];
+      offset = 0;
+    }
+    final int length = buf.remaining();
+    int total = 0;
+    while (total < length) {
+      final int n = ((PositionedReadable) in).read(position + total,
+          bytes, offset + total, length - total);
+      if (n <= 0) {
+        break;
+      }
+      total += n;
+    }
+    if (length > 0 && total == 0) {
+      return -1;
+    }
+    if (buf.hasArray()) {
+      buf.position(buf.position() + total);
+    } else {
+      buf.put(bytes, 0, total);
+    }
+    return total;
+  }
+
   @Override
   public FileDescriptor getFileDescriptor() throws IOException {
     if (in instanceof HasFileDescriptor) {
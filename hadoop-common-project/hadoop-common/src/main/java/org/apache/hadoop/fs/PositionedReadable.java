@@ -18,6 +18,9 @@
 package org.apache.hadoop.fs;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -85,4 +88,45 @@ void readFully(long position, byte[] buffer, int offset, int length)
    * the read operation completed
    */
   void readFully(long position, byte[] buffer) throws IOException;
+
+  /**
+   * The smallest gap between two ranges of a vectored read which is cheaper
+   * to seek over than to read and discard. Closer ranges are merged.
+   * @return the minimum number of bytes
+   */
+  default int minSeekForVectorReads() {
+    return 4 * 1024;
+  }
+
+  /**
+   * The largest size of a range which merges ranges of a vectored read.
+   * @return the number of bytes
+   */
+  default int maxReadSizeForVectorReads() {
+    return 1024 * 1024;
+  }
+
+  /**
+   * Read fully a list of file ranges asynchronously from this file.
+   * The ranges may be merged and read in any order and concurrently; the
+   * default implementation merges nearby ranges and reads them with the
+   * blocking positional reads of the stream.
+   *
+   * The position of the stream after the operation is undefined, and the
+   * stream may not be used for other reads until the futures of all the
+   * ranges are complete.
+   *
+   * <i>Warning: Not all filesystems satisfy the thread-safety requirement.</i>
+   * @param ranges the byte ranges to read. They must not overlap.
+   * @param allocate the function to allocate the buffer of a range, given
+   *                 its length. It may be called by other threads.
+   * @throws IOException if the ranges are invalid; the failures of the
+   *         reads of the ranges complete their futures exceptionally,
+   *         an {@link EOFException} if a range extends past the end of
+   *         the file.
+   */
+  default void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    VectoredReadUtils.readVectored(this, ranges, allocate);
+  }
 }
@@ -33,15 +33,21 @@
 import java.io.FileDescriptor;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -105,10 +111,14 @@ public void initialize(URI uri, Configuration conf) throws IOException {
    *******************************************************/
   class LocalFSFileInputStream extends FSInputStream implements HasFileDescriptor {
     private FileInputStream fis;
+    private final File file;
     private long position;
+    /** The channel of the vectored reads, opened on first use. */
+    private AsynchronousFileChannel asyncChannel;
 
     public LocalFSFileInputStream(Path f) throws IOException {
-      fis = new FileInputStream(pathToFile(f));
+      file = pathToFile(f);
+      fis = new FileInputStream(file);
     }
     
     @Override
@@ -137,7 +147,17 @@ public boolean seekToNewSource(long targetPos) throws IOException {
     @Override
     public int available() throws IOException { return fis.available(); }
     @Override
-    public void close() throws IOException { fis.close(); }
+    public void close() throws IOException {
+      try {
+        fis.close();
+      } finally {
+        synchronized (this) {
+          if (asyncChannel != null) {
+            asyncChannel.close();
+          }
+        }
+      }
+    }
     @Override
     public boolean markSupported() { return false; }
     
@@ -192,6 +212,69 @@ public int read(long position, byte[] b, int off, int len)
       }
     }
     
+    /**
+     * Read the ranges concurrently with an asynchronous channel of the file.
+     * The ranges are not merged, since skipping a gap in a local file costs
+     * nothing.
+     */
+    @Override
+    public void readVectored(List<? extends FileRange> ranges,
+        IntFunction<ByteBuffer> allocate) throws IOException {
+      final List<FileRange> sortedRanges =
+          VectoredReadUtils.sortRanges(ranges);
+      final AsynchronousFileChannel channel;
+      synchronized (this) {
+        if (asyncChannel == null) {
+          asyncChannel = AsynchronousFileChannel.open(file.toPath(),
+              StandardOpenOption.READ);
+        }
+        channel = asyncChannel;
+      }
+      for (FileRange range : sortedRanges) {
+        final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        range.setData(result);
+        readRange(channel, range, allocate.apply(range.getLength()), 0,
+            result);
+      }
+    }
+
+    /**
+     * Read the rest of a range into its buffer, from the given number of
+     * bytes read on.
+     */
+    private void readRange(final AsynchronousFileChannel channel,
+        final FileRange range, final ByteBuffer buffer, final int nread,
+        final CompletableFuture<ByteBuffer> result) {
+      if (nread == range.getLength()) {
+        buffer.flip();
+        result.complete(buffer);
+        return;
+      }
+      buffer.limit(buffer.position() + range.getLength() - nread);
+      try {
+        channel.read(buffer, range.getOffset() + nread, null,
+            new CompletionHandler<Integer, Void>() {
+              @Override
+              public void completed(Integer n, Void attachment) {
+                if (n < 0) {
+                  result.completeExceptionally(new EOFException(
+                      "EOF reading " + range + " of " + file));
+                  return;
+                }
+                statistics.incrementBytesRead(n);
+                readRange(channel, range, buffer, nread + n, result);
+              }
+
+              @Override
+              public void failed(Throwable t, Void attachment) {
+                result.completeExceptionally(t);
+              }
+            });
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    }
+
     @Override
     public long skip(long n) throws IOException {
       long value = fis.skip(n);
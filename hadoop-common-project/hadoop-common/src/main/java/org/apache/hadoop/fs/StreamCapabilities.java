@@ -59,6 +59,13 @@ public interface StreamCapabilities {
    */
   String UNBUFFER = "in:unbuffer";
 
+  /**
+   * Stream readAsync capability implemented by
+   * {@link AsyncPositionedReadable#readAsync(long, java.nio.ByteBuffer)}
+   * without blocking the calling thread.
+   */
+  String READASYNC = "in:readasync";
+
   /**
    * Capabilities that a stream can support and be queried for.
    */
@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
+
+/**
+ * Utility methods for the implementations of
+ * {@link PositionedReadable#readVectored}.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "S3A"})
+@InterfaceStability.Unstable
+public final class VectoredReadUtils {
+
+  /** The size of the chunks copied into buffers without arrays. */
+  private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+  private VectoredReadUtils() {
+  }
+
+  /**
+   * Validate a single range.
+   * @param range file range
+   * @return the range
+   * @throws EOFException if the offset is negative
+   * @throws IllegalArgumentException if the length is negative
+   */
+  public static <T extends FileRange> T validateRangeRequest(T range)
+      throws EOFException {
+    Preconditions.checkArgument(range.getLength() >= 0, "length is negative");
+    if (range.getOffset() < 0) {
+      throw new EOFException("position is negative");
+    }
+    return range;
+  }
+
+  /**
+   * Validate the ranges of a vectored read and sort them by offset.
+   * @param input the ranges to read
+   * @return a new list of the ranges sorted by offset
+   * @throws EOFException if an offset is negative
+   * @throws IllegalArgumentException if a length is negative or two ranges
+   *         overlap
+   */
+  public static List<FileRange> sortRanges(List<? extends FileRange> input)
+      throws EOFException {
+    final List<FileRange> sorted = new ArrayList<>(input.size());
+    for (FileRange range : input) {
+      sorted.add(validateRangeRequest(range));
+    }
+    sorted.sort(Comparator.comparingLong(FileRange::getOffset));
+    for (int i = 1; i < sorted.size(); i++) {
+      final FileRange prev = sorted.get(i - 1);
+      final FileRange cur = sorted.get(i);
+      Preconditions.checkArgument(
+          prev.getOffset() + prev.getLength() <= cur.getOffset(),
+          "Overlapping ranges %s and %s", prev, cur);
+    }
+    return sorted;
+  }
+
+  /**
+   * Merge sorted ranges which are closer than the minimum seek into
+   * combined ranges, which are read with one request each.
+   * @param sortedRanges the ranges sorted by offset
+   * @param minimumSeek the smallest gap between ranges which is cheaper to
+   *                    seek over than to read and discard
+   * @param maxSize the largest size of a combined range
+   * @return the combined ranges, sorted by offset
+   */
+  public static List<CombinedFileRange> mergeSortedRanges(
+      List<? extends FileRange> sortedRanges, int minimumSeek, int maxSize) {
+    final List<CombinedFileRange> result =
+        new ArrayList<>(sortedRanges.size());
+    CombinedFileRange current = null;
+    for (FileRange range : sortedRanges) {
+      final long start = range.getOffset();
+      final long end = start + range.getLength();
+      if (current == null ||
+          !current.merge(start, end, range, minimumSeek, maxSize)) {
+        current = new CombinedFileRange(start, end, range);
+        result.add(current);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copy the data of a range out of the data read for a combined range.
+   * @param readData the data read, from its position on
+   * @param readOffset the file offset of the position of readData
+   * @param request the range to copy
+   * @param allocate the function to allocate the buffer of the range
+   * @return the buffer of the range, flipped for reading
+   */
+  public static ByteBuffer copyRange(ByteBuffer readData, long readOffset,
+      FileRange request, IntFunction<ByteBuffer> allocate) {
+    final ByteBuffer slice = readData.duplicate();
+    slice.position(readData.position()
+        + (int) (request.getOffset() - readOffset));
+    slice.limit(slice.position() + request.getLength());
+    final ByteBuffer buffer = allocate.apply(request.getLength());
+    buffer.put(slice);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Read the ranges with the blocking positional reads of a stream. Nearby
+   * ranges are merged to reduce the number of reads, which matters for
+   * streams whose reads have a high fixed cost. The reads are done by the
+   * calling thread, so the futures of the ranges are complete on return.
+   * If the read of a combined range fails, all the ranges in it fail.
+   * @param stream the stream to read
+   * @param ranges the ranges to read
+   * @param allocate the function to allocate the buffers of the ranges
+   * @throws IOException if the ranges are invalid
+   */
+  public static void readVectored(PositionedReadable stream,
+      List<? extends FileRange> ranges, IntFunction<ByteBuffer> allocate)
+      throws IOException {
+    final List<CombinedFileRange> combinedRanges = mergeSortedRanges(
+        sortRanges(ranges), stream.minSeekForVectorReads(),
+        stream.maxReadSizeForVectorReads());
+    for (CombinedFileRange combined : combinedRanges) {
+      final List<FileRange> underlying = combined.getUnderlying();
+      if (underlying.size() == 1) {
+        final FileRange range = underlying.get(0);
+        range.setData(readRange(stream, range, allocate));
+        continue;
+      }
+      final byte[] data = new byte[combined.getLength()];
+      CompletableFuture<ByteBuffer> failed = null;
+      try {
+        stream.readFully(combined.getOffset(), data, 0, data.length);
+      } catch (IOException | RuntimeException e) {
+        failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+      }
+      for (FileRange range : underlying) {
+        range.setData(failed != null ? failed :
+            CompletableFuture.completedFuture(copyRange(ByteBuffer.wrap(data),
+                combined.getOffset(), range, allocate)));
+      }
+    }
+  }
+
+  /**
+   * Read a single range with the positional reads of a stream.
+   * @return a completed future of the buffer, flipped for reading
+   */
+  private static CompletableFuture<ByteBuffer> readRange(
+      PositionedReadable stream, FileRange range,
+      IntFunction<ByteBuffer> allocate) {
+    final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+    try {
+      final ByteBuffer buffer = allocate.apply(range.getLength());
+      if (buffer.hasArray()) {
+        stream.readFully(range.getOffset(), buffer.array(),
+            buffer.arrayOffset() + buffer.position(), range.getLength());
+        buffer.position(buffer.position() + range.getLength());
+      } else {
+        final byte[] chunk =
+            new byte[Math.min(COPY_CHUNK_SIZE, range.getLength())];
+        int copied = 0;
+        while (copied < range.getLength()) {
+          final int n = Math.min(chunk.length, range.getLength() - copied);
+          stream.readFully(range.getOffset() + copied, chunk, 0, n);
+          buffer.put(chunk, 0, n);
+          copied += n;
+        }
+      }
+      buffer.flip();
+      result.complete(buffer);
+    } catch (IOException | RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+}
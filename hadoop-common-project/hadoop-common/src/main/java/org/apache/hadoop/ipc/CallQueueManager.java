@@ -197,6 +197,10 @@ void addResponseTime(String name, int priorityLevel, int queueTime,
     scheduler.addResponseTime(name, priorityLevel, queueTime, processingTime);
   }
 
+  void addResponseTime(String name, Schedulable e, ProcessingDetails details) {
+    scheduler.addResponseTime(name, e, details);
+  }
+
   // This should be only called once per call and cached in the call object
   // each getPriorityLevel call will increment the counter for the caller
   int getPriorityLevel(Schedulable e) {
@@ -93,6 +93,8 @@ public class Client implements AutoCloseable {
   private static final ThreadLocal<Integer> retryCount = new ThreadLocal<Integer>();
   private static final ThreadLocal<Object> EXTERNAL_CALL_HANDLER
       = new ThreadLocal<>();
+  private static final ThreadLocal<AlignmentContext> ALIGNMENT_CONTEXT
+      = new ThreadLocal<>();
   private static final ThreadLocal<AsyncGet<? extends Writable, IOException>>
       ASYNC_RPC_RESPONSE = new ThreadLocal<>();
   private static final ThreadLocal<Boolean> asynchronousMode =
@@ -122,6 +124,21 @@ public static void setCallIdAndRetryCount(int cid, int rc,
     EXTERNAL_CALL_HANDLER.set(externalHandler);
   }
 
+  /**
+   * Set the {@link AlignmentContext} for the calls made by the current thread.
+   * The context adds the client's last seen server state to each request
+   * header and is updated from each response header. Pass null to stop
+   * tracking server state.
+   */
+  @Unstable
+  public static void setAlignmentContext(AlignmentContext alignmentContext) {
+    if (alignmentContext == null) {
+      ALIGNMENT_CONTEXT.remove();
+    } else {
+      ALIGNMENT_CONTEXT.set(alignmentContext);
+    }
+  }
+
   private ConcurrentMap<ConnectionId, Connection> connections =
       new ConcurrentHashMap<>();
 
@@ -338,6 +355,7 @@ static class Call {
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
     private final Object externalHandler;
+    private final AlignmentContext alignmentContext;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -359,6 +377,7 @@ private Call(RPC.RpcKind rpcKind, Writable param) {
       }
 
       this.externalHandler = EXTERNAL_CALL_HANDLER.get();
+      this.alignmentContext = ALIGNMENT_CONTEXT.get();
     }
 
     @Override
@@ -1101,7 +1120,7 @@ public void sendRpcRequest(final Call call)
       // Items '1' and '2' are prepared here. 
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
 
       final ResponseBuffer buf = new ResponseBuffer();
       header.writeDelimitedTo(buf);
@@ -1177,6 +1196,9 @@ private void receiveRpcResponse() {
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = packet.newInstance(valueClass, conf);
           final Call call = calls.remove(callId);
+          if (call.alignmentContext != null) {
+            call.alignmentContext.receiveResponseState(header);
+          }
           call.setRpcResponse(value);
         }
         // verify that packet length was correct
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * The CostProvider computes the cost of a completed call from its
+ * {@link ProcessingDetails}, so that a scheduler can charge callers for
+ * the load their calls cause rather than for the number of their calls.
+ */
+@InterfaceAudience.Private
+public interface CostProvider {
+  /**
+   * Initialize the provider.
+   * @param namespace the config prefix of the scheduler.
+   * @param conf configuration to use.
+   */
+  void init(String namespace, Configuration conf);
+
+  /**
+   * Return the cost of a call.
+   * @param details the processing details of the call.
+   * @return the cost, which must not be negative.
+   */
+  long getCost(ProcessingDetails details);
+}
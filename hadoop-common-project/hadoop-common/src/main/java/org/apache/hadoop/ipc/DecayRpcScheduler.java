@@ -60,6 +60,11 @@
  * decays the counts at a fixed time interval. The scheduler is optimized
  * for large periods (on the order of seconds), as it offloads work to the
  * decay sweep.
+ *
+ * If a {@link CostProvider} is configured, the scheduler charges each caller
+ * the cost of its completed calls instead of counting the incoming calls,
+ * so that the call volumes, and the priorities computed from them, reflect
+ * the load the callers cause.
  */
 public class DecayRpcScheduler implements RpcScheduler,
     DecayRpcSchedulerMXBean, MetricsSource {
@@ -162,6 +167,8 @@ public class DecayRpcScheduler implements RpcScheduler,
   private final int numLevels;
   private final double[] thresholds;
   private final IdentityProvider identityProvider;
+  // Null if the calls are counted as they come in
+  private final CostProvider costProvider;
   private final boolean backOffByResponseTimeEnabled;
   private final long[] backOffResponseTimeThresholds;
   private final String namespace;
@@ -213,6 +220,7 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.decayFactor = parseDecayFactor(ns, conf);
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
+    this.costProvider = parseCostProvider(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numLevels);
     this.backOffByResponseTimeEnabled = parseBackOffByResponseTimeEnabled(ns,
         conf);
@@ -256,6 +264,23 @@ private IdentityProvider parseIdentityProvider(String ns,
     return providers.get(0); // use the first
   }
 
+  private static CostProvider parseCostProvider(String ns,
+      Configuration conf) {
+    List<CostProvider> providers = conf.getInstances(
+        ns + "." + CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        CostProvider.class);
+
+    if (providers.size() < 1) {
+      return null;
+    }
+
+    CostProvider provider = providers.get(0); // use the first
+    provider.init(ns, conf);
+    LOG.info("Charging callers by the cost of their calls with " +
+        provider.getClass().getName());
+    return provider;
+  }
+
   private static double parseDecayFactor(String ns, Configuration conf) {
     double factor = conf.getDouble(ns + "." +
         IPC_FCQ_DECAYSCHEDULER_FACTOR_KEY, 0.0);
@@ -455,11 +480,12 @@ private void recomputeScheduleCache() {
   }
 
   /**
-   * Get the number of occurrences and increment atomically.
-   * @param identity the identity of the user to increment
-   * @return the value before incrementation
+   * Get the number of occurrences and add the cost of a call atomically.
+   * @param identity the identity of the user to charge
+   * @param cost the cost of the call, 1 if calls are counted
+   * @return the value before the addition
    */
-  private long getAndIncrementCallCounts(Object identity)
+  private long getAndAddCallCounts(Object identity, long cost)
       throws InterruptedException {
     // We will increment the count, or create it if no such count exists
     List<AtomicLong> count = this.callCounts.get(identity);
@@ -479,14 +505,24 @@ private long getAndIncrementCallCounts(Object identity)
     }
 
     // Update the total
-    totalDecayedCallCount.getAndIncrement();
-    totalRawCallCount.getAndIncrement();
+    totalDecayedCallCount.getAndAdd(cost);
+    totalRawCallCount.getAndAdd(cost);
 
     // At this point value is guaranteed to be not null. It may however have
     // been clobbered from callCounts. Nonetheless, we return what
     // we have.
-    count.get(1).getAndIncrement();
-    return count.get(0).getAndIncrement();
+    count.get(1).getAndAdd(cost);
+    return count.get(0).getAndAdd(cost);
+  }
+
+  /**
+   * Get the number of occurrences without changing it.
+   * @param identity the identity of the user
+   * @return the decayed count, 0 for an unknown user
+   */
+  private long getCallCount(Object identity) {
+    List<AtomicLong> count = this.callCounts.get(identity);
+    return count == null ? 0 : count.get(0).get();
   }
 
   /**
@@ -521,7 +557,9 @@ private int computePriorityLevel(long occurrences) {
    */
   private int cachedOrComputedPriorityLevel(Object identity) {
     try {
-      long occurrences = this.getAndIncrementCallCounts(identity);
+      // With a cost provider the caller is charged when the call completes
+      long occurrences = costProvider == null ?
+          this.getAndAddCallCounts(identity, 1) : getCallCount(identity);
 
       // Try the cache
       Map<Object, Integer> scheduleCache = scheduleCacheRef.get();
@@ -554,14 +592,16 @@ private int cachedOrComputedPriorityLevel(Object identity) {
    */
   @Override
   public int getPriorityLevel(Schedulable obj) {
-    // First get the identity
+    return cachedOrComputedPriorityLevel(makeIdentity(obj));
+  }
+
+  private String makeIdentity(Schedulable obj) {
     String identity = this.identityProvider.makeIdentity(obj);
     if (identity == null) {
       // Identity provider did not handle this
       identity = DECAYSCHEDULER_UNKNOWN_IDENTITY;
     }
-
-    return cachedOrComputedPriorityLevel(identity);
+    return identity;
   }
 
   @Override
@@ -604,6 +644,25 @@ public void addResponseTime(String name, int priorityLevel, int queueTime,
     }
   }
 
+  /**
+   * Store the response time of a completed call and, if a cost provider is
+   * configured, charge the caller the cost of the call.
+   */
+  @Override
+  public void addResponseTime(String callName, Schedulable schedulable,
+      ProcessingDetails details) {
+    RpcScheduler.super.addResponseTime(callName, schedulable, details);
+    if (costProvider != null) {
+      final long cost = costProvider.getCost(details);
+      try {
+        getAndAddCallCounts(makeIdentity(schedulable), cost);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      LOG.debug("Cost of call {}: {} from {}", callName, cost, details);
+    }
+  }
+
   // Update the cached average response time at the end of the decay window
   void updateAverageResponseTime(boolean enableDecay) {
     for (int i = 0; i < numLevels; i++) {
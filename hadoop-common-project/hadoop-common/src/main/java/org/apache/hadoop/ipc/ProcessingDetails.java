@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * Stores the times spent in the stages of processing a call, so that a
+ * {@link CostProvider} can derive the cost of the call from them. The
+ * details of a call are only updated by the handler thread serving it.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Unstable
+public class ProcessingDetails {
+
+  /** The stages of processing a call. */
+  public enum Timing {
+    /** Time spent waiting in the call queue. */
+    QUEUE,
+    /** Time spent by the handler processing the call. */
+    PROCESSING,
+    /** Processing time spent without holding a lock. */
+    LOCKFREE,
+    /** Processing time spent waiting for a lock. */
+    LOCKWAIT,
+    /** Processing time spent holding a shared lock. */
+    LOCKSHARED,
+    /** Processing time spent holding an exclusive lock. */
+    LOCKEXCLUSIVE;
+
+    /** @return the name used for the timing in configuration keys. */
+    public String getConfigName() {
+      return StringUtils.toLowerCase(name());
+    }
+  }
+
+  private final long[] timings = new long[Timing.values().length];
+
+  /** @return the time of the given stage, in the given unit. */
+  public long get(Timing type, TimeUnit unit) {
+    return unit.convert(timings[type.ordinal()], TimeUnit.NANOSECONDS);
+  }
+
+  public void set(Timing type, long value, TimeUnit unit) {
+    timings[type.ordinal()] = unit.toNanos(value);
+  }
+
+  public void add(Timing type, long value, TimeUnit unit) {
+    timings[type.ordinal()] += unit.toNanos(value);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (Timing type : Timing.values()) {
+      sb.append(sb.length() == 0 ? "" : " ").append(type.getConfigName())
+          .append("=").append(timings[type.ordinal()]).append("ns");
+    }
+    return sb.toString();
+  }
+}
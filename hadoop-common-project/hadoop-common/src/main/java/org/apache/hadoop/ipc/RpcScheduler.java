@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.ipc;
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+
 /**
  * Implement this interface to be used for RPC scheduling and backoff.
  *
@@ -33,5 +37,17 @@ public interface RpcScheduler {
   void addResponseTime(String name, int priorityLevel, int queueTime,
       int processingTime);
 
+  /**
+   * Store the processing details of a completed call. Schedulers which
+   * charge callers by the cost of their calls override this; by default
+   * only the response time is stored.
+   */
+  default void addResponseTime(String callName, Schedulable schedulable,
+      ProcessingDetails details) {
+    addResponseTime(callName, schedulable.getPriorityLevel(),
+        (int) details.get(Timing.QUEUE, TimeUnit.MILLISECONDS),
+        (int) details.get(Timing.PROCESSING, TimeUnit.MILLISECONDS));
+  }
+
   void stop();
 }
@@ -63,6 +63,7 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -82,6 +83,7 @@
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
 import org.apache.hadoop.ipc.RPC.RpcInvoker;
 import org.apache.hadoop.ipc.RPC.VersionMismatch;
 import org.apache.hadoop.ipc.metrics.RpcDetailedMetrics;
@@ -358,6 +360,16 @@ public static int getCallRetryCount() {
     return call != null ? call.retryCount : RpcConstants.INVALID_RETRY_COUNT;
   }
 
+  /**
+   * @return The last server state seen by the client of the current active
+   *         RPC call, as received by the server's {@link AlignmentContext}.
+   *         A negative value indicates that the client did not send it.
+   */
+  public static long getClientStateId() {
+    Call call = CurCall.get();
+    return call != null ? call.clientStateId : -1L;
+  }
+
   /** Returns the remote side ip address when invoked inside an RPC 
    *  Returns null incase of an error.
    */
@@ -441,6 +453,8 @@ protected ResponseBuffer initialValue() {
 
   volatile private boolean running = true;         // true while server runs
   private CallQueueManager<Call> callQueue;
+  // aligns the server state seen by clients, null if not tracked
+  private volatile AlignmentContext alignmentContext;
 
   // maintains the set of client connections and handles idle timeouts
   private ConnectionManager connectionManager;
@@ -510,14 +524,38 @@ void updateMetrics(String name, int queueTime, int processingTime,
     if (!deferredCall) {
       rpcMetrics.addRpcProcessingTime(processingTime);
       rpcDetailedMetrics.addProcessingTime(name, processingTime);
-      callQueue.addResponseTime(name, getPriorityLevel(), queueTime,
-          processingTime);
+      final Call call = CurCall.get();
+      if (call != null) {
+        callQueue.addResponseTime(name, call,
+            setProcessingDetails(call, queueTime, processingTime));
+      } else {
+        callQueue.addResponseTime(name, getPriorityLevel(), queueTime,
+            processingTime);
+      }
       if (isLogSlowRPC()) {
         logSlowRpcCalls(name, processingTime);
       }
     }
   }
 
+  /**
+   * Complete the processing details of a call with its queue and processing
+   * times. The lock times were added while the call was processed.
+   */
+  private static ProcessingDetails setProcessingDetails(Call call,
+      int queueTime, int processingTime) {
+    final ProcessingDetails details = call.getProcessingDetails();
+    details.set(Timing.QUEUE, queueTime, TimeUnit.MILLISECONDS);
+    details.set(Timing.PROCESSING, processingTime, TimeUnit.MILLISECONDS);
+    final long lockFree = details.get(Timing.PROCESSING, TimeUnit.NANOSECONDS)
+        - details.get(Timing.LOCKWAIT, TimeUnit.NANOSECONDS)
+        - details.get(Timing.LOCKSHARED, TimeUnit.NANOSECONDS)
+        - details.get(Timing.LOCKEXCLUSIVE, TimeUnit.NANOSECONDS);
+    // the processing time is only measured in milliseconds
+    details.set(Timing.LOCKFREE, Math.max(lockFree, 0), TimeUnit.NANOSECONDS);
+    return details;
+  }
+
   void updateDeferredMetrics(String name, long processingTime) {
     rpcMetrics.addDeferredRpcProcessingTime(processingTime);
     rpcDetailedMetrics.addDeferredProcessingTime(name, processingTime);
@@ -694,6 +732,9 @@ public static class Call implements Schedulable,
     private boolean deferredResponse = false;
     private int priorityLevel;
     // the priority level assigned by scheduler, 0 by default
+    private long clientStateId = -1L;
+    private final ProcessingDetails processingDetails =
+        new ProcessingDetails();
 
     Call() {
       this(RpcConstants.INVALID_CALL_ID, RpcConstants.INVALID_RETRY_COUNT,
@@ -703,6 +744,7 @@ public static class Call implements Schedulable,
     Call(Call call) {
       this(call.callId, call.retryCount, call.rpcKind, call.clientId,
           call.traceScope, call.callerContext);
+      this.clientStateId = call.clientStateId;
     }
 
     Call(int id, int retryCount, RPC.RpcKind kind, byte[] clientId) {
@@ -801,6 +843,19 @@ public void setPriorityLevel(int priorityLevel) {
       this.priorityLevel = priorityLevel;
     }
 
+    /** @return the times spent in the stages of processing the call. */
+    public ProcessingDetails getProcessingDetails() {
+      return processingDetails;
+    }
+
+    public long getClientStateId() {
+      return this.clientStateId;
+    }
+
+    public void setClientStateId(long stateId) {
+      this.clientStateId = stateId;
+    }
+
     @InterfaceStability.Unstable
     public void deferResponse() {
       this.deferredResponse = true;
@@ -2483,6 +2538,10 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceScope, callerContext);
 
+      if (alignmentContext != null && header.hasStateId()) {
+        call.setClientStateId(alignmentContext.receiveRequestState(header));
+      }
+
       // Save the priority level assignment by the scheduler
       call.setPriorityLevel(callQueue.getPriorityLevel(call));
 
@@ -2914,6 +2973,9 @@ private void setupResponse(
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -3065,6 +3127,15 @@ public void setTracer(Tracer t) {
     this.tracer = t;
   }
 
+  /**
+   * Set the {@link AlignmentContext} used to exchange server state with
+   * clients through the RPC request and response headers.
+   */
+  @InterfaceStability.Unstable
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+
+/**
+ * A {@link CostProvider} which charges a call the weighted sum of the times,
+ * in microseconds, of its processing stages. By default time spent holding
+ * a lock costs more than lock free processing, and exclusive lock time
+ * costs the most since it blocks all other calls. Queue time is not
+ * charged by default as it mostly reflects the load of other callers.
+ * Every call costs at least 1, so that the callers of cheap calls are
+ * still counted.
+ *
+ * The weight of a stage is configured by
+ * {@code <namespace>.weighted-cost.<timing>}, where the timing is the
+ * lower case name of a {@link Timing}.
+ */
+public class WeightedTimeCostProvider implements CostProvider {
+
+  public static final String WEIGHT_KEY_PREFIX = "weighted-cost.";
+
+  public static final long DEFAULT_QUEUE_WEIGHT = 0;
+  public static final long DEFAULT_LOCKFREE_WEIGHT = 1;
+  public static final long DEFAULT_LOCKWAIT_WEIGHT = 1;
+  public static final long DEFAULT_LOCKSHARED_WEIGHT = 10;
+  public static final long DEFAULT_LOCKEXCLUSIVE_WEIGHT = 100;
+
+  private final long[] weights = new long[Timing.values().length];
+
+  @Override
+  public void init(String namespace, Configuration conf) {
+    for (Timing timing : Timing.values()) {
+      final long weight = conf.getLong(
+          namespace + "." + WEIGHT_KEY_PREFIX + timing.getConfigName(),
+          getDefaultWeight(timing));
+      if (weight < 0) {
+        throw new IllegalArgumentException("Weight of " + timing
+            + " must not be negative: " + weight);
+      }
+      weights[timing.ordinal()] = weight;
+    }
+  }
+
+  private static long getDefaultWeight(Timing timing) {
+    switch (timing) {
+    case QUEUE:
+      return DEFAULT_QUEUE_WEIGHT;
+    case LOCKFREE:
+      return DEFAULT_LOCKFREE_WEIGHT;
+    case LOCKWAIT:
+      return DEFAULT_LOCKWAIT_WEIGHT;
+    case LOCKSHARED:
+      return DEFAULT_LOCKSHARED_WEIGHT;
+    case LOCKEXCLUSIVE:
+      return DEFAULT_LOCKEXCLUSIVE_WEIGHT;
+    default:
+      // the processing time is charged by its parts
+      return 0;
+    }
+  }
+
+  @Override
+  public long getCost(ProcessingDetails details) {
+    long cost = 0;
+    for (Timing timing : Timing.values()) {
+      cost += weights[timing.ordinal()]
+          * details.get(timing, TimeUnit.MICROSECONDS);
+    }
+    return Math.max(cost, 1);
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.fs.impl.CombinedFileRange;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.Test;
+
+/**
+ * Tests the range merging and the generic vectored read of
+ * {@link VectoredReadUtils}.
+ */
+public class TestVectoredReadUtils {
+
+  /** A stream of 0, 1, 2... bytes which counts its positional reads. */
+  private static class CountingStream implements PositionedReadable {
+    private final int length;
+    private int reads = 0;
+
+    CountingStream(int length) {
+      this.length = length;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int len) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer, int offset, int len)
+        throws IOException {
+      reads++;
+      if (position + len > length) {
+        throw new EOFException("past EOF");
+      }
+      for (int i = 0; i < len; i++) {
+        buffer[offset + i] = (byte) (position + i);
+      }
+    }
+
+    @Override
+    public void readFully(long position, byte[] buffer) throws IOException {
+      readFully(position, buffer, 0, buffer.length);
+    }
+  }
+
+  private static List<FileRange> ranges(long... offsetsAndLengths) {
+    List<FileRange> ranges = new ArrayList<>();
+    for (int i = 0; i < offsetsAndLengths.length; i += 2) {
+      ranges.add(FileRange.createFileRange(offsetsAndLengths[i],
+          (int) offsetsAndLengths[i + 1]));
+    }
+    return ranges;
+  }
+
+  @Test
+  public void testMergeSortedRanges() throws Exception {
+    List<FileRange> input = VectoredReadUtils.sortRanges(
+        ranges(2000, 100, 0, 100, 100, 100, 250, 50, 5000, 10));
+    assertEquals(0, input.get(0).getOffset());
+    assertEquals(5000, input.get(4).getOffset());
+
+    List<CombinedFileRange> merged =
+        VectoredReadUtils.mergeSortedRanges(input, 100, 1000);
+    assertEquals(3, merged.size());
+    // adjacent ranges and a gap below the minimum seek are merged
+    assertEquals(0, merged.get(0).getOffset());
+    assertEquals(300, merged.get(0).getLength());
+    assertEquals(3, merged.get(0).getUnderlying().size());
+    assertEquals(2000, merged.get(1).getOffset());
+    assertEquals(1, merged.get(1).getUnderlying().size());
+    assertEquals(5000, merged.get(2).getOffset());
+
+    // the maximum size splits merged ranges
+    merged = VectoredReadUtils.mergeSortedRanges(input, 100, 200);
+    assertEquals(4, merged.size());
+    assertEquals(200, merged.get(0).getLength());
+    assertEquals(250, merged.get(1).getOffset());
+  }
+
+  @Test
+  public void testInvalidRanges() throws Exception {
+    LambdaTestUtils.intercept(IllegalArgumentException.class,
+        () -> VectoredReadUtils.sortRanges(ranges(0, 100, 99, 10)));
+    LambdaTestUtils.intercept(IllegalArgumentException.class,
+        () -> VectoredReadUtils.sortRanges(ranges(0, -1)));
+    LambdaTestUtils.intercept(EOFException.class,
+        () -> VectoredReadUtils.sortRanges(ranges(-10, 1)));
+  }
+
+  @Test
+  public void testGenericVectoredRead() throws Exception {
+    CountingStream stream = new CountingStream(100 * 1024);
+    List<FileRange> ranges =
+        ranges(10, 10, 25, 100, 1000, 10, 50 * 1024, 10, 99 * 1024, 2048);
+    VectoredReadUtils.readVectored(stream, ranges, ByteBuffer::allocateDirect);
+    // the first three ranges are read together
+    assertEquals(3, stream.reads);
+    for (FileRange range : ranges.subList(0, 4)) {
+      assertTrue(range.getData().isDone());
+      ByteBuffer buffer = range.getData().get();
+      assertEquals(range.getLength(), buffer.remaining());
+      byte[] data = new byte[range.getLength()];
+      buffer.get(data);
+      for (int i = 0; i < data.length; i++) {
+        assertEquals((byte) (range.getOffset() + i), data[i]);
+      }
+    }
+    ExecutionException e = LambdaTestUtils.intercept(ExecutionException.class,
+        () -> ranges.get(4).getData().get());
+    assertTrue(e.getCause() instanceof EOFException);
+  }
+
+  @Test
+  public void testFSDataInputStreamDelegates() throws Exception {
+    final List<FileRange> read = new ArrayList<>();
+    FSInputStream in = new FSInputStream() {
+      @Override
+      public void readVectored(List<? extends FileRange> ranges,
+          IntFunction<ByteBuffer> allocate) {
+        read.addAll(ranges);
+      }
+
+      @Override
+      public void seek(long pos) {
+      }
+
+      @Override
+      public long getPos() {
+        return 0;
+      }
+
+      @Override
+      public boolean seekToNewSource(long targetPos) {
+        return false;
+      }
+
+      @Override
+      public int read() {
+        return -1;
+      }
+    };
+    List<FileRange> ranges = ranges(0, 10);
+    try (FSDataInputStream stream = new FSDataInputStream(in)) {
+      stream.readVectored(ranges, ByteBuffer::allocate);
+    }
+    assertEquals(Arrays.asList(ranges.get(0)), read);
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.contract;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.Test;
+
+import static org.apache.hadoop.fs.contract.ContractTestUtils.createFile;
+import static org.apache.hadoop.fs.contract.ContractTestUtils.dataset;
+
+/**
+ * Test the vectored reads of {@code PositionedReadable}.
+ */
+public abstract class AbstractContractVectoredReadTest
+    extends AbstractFSContractTestBase {
+
+  public static final int DATASET_LEN = 64 * 1024;
+  private static final long TIMEOUT_SECONDS = 300;
+
+  private final byte[] dataset = dataset(DATASET_LEN, 'a', 32);
+  private Path testFile;
+
+  @Override
+  public void setup() throws Exception {
+    super.setup();
+    testFile = path("vectored_file.txt");
+    createFile(getFileSystem(), testFile, true, dataset);
+  }
+
+  /** @return the buffer allocators to test the reads with. */
+  private List<IntFunction<ByteBuffer>> allocators() {
+    IntFunction<ByteBuffer> heap = ByteBuffer::allocate;
+    IntFunction<ByteBuffer> direct = ByteBuffer::allocateDirect;
+    return Arrays.asList(heap, direct);
+  }
+
+  /** Check that the ranges were read with the data of the file. */
+  private void validateVectoredRead(List<FileRange> ranges)
+      throws Exception {
+    for (FileRange range : ranges) {
+      ByteBuffer buffer = range.getData().get(TIMEOUT_SECONDS,
+          TimeUnit.SECONDS);
+      assertEquals("bytes read of " + range, range.getLength(),
+          buffer.remaining());
+      byte[] actual = new byte[range.getLength()];
+      buffer.get(actual);
+      int offset = (int) range.getOffset();
+      assertArrayEquals("data of " + range,
+          Arrays.copyOfRange(dataset, offset, offset + range.getLength()),
+          actual);
+    }
+  }
+
+  private void readAndValidate(List<FileRange> ranges) throws Exception {
+    for (IntFunction<ByteBuffer> allocate : allocators()) {
+      try (FSDataInputStream in = getFileSystem().open(testFile)) {
+        in.readVectored(ranges, allocate);
+        validateVectoredRead(ranges);
+      }
+    }
+  }
+
+  @Test
+  public void testDisjointRanges() throws Exception {
+    describe("read disjoint ranges, both near and far from each other");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(0, 100));
+    ranges.add(FileRange.createFileRange(110, 50));
+    ranges.add(FileRange.createFileRange(4 * 1024, 1000));
+    ranges.add(FileRange.createFileRange(40 * 1024, 100));
+    ranges.add(FileRange.createFileRange(DATASET_LEN - 100, 100));
+    readAndValidate(ranges);
+  }
+
+  @Test
+  public void testConsecutiveRanges() throws Exception {
+    describe("read adjacent ranges, which are merged");
+    List<FileRange> ranges = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      ranges.add(FileRange.createFileRange(1000 + i * 100, 100));
+    }
+    readAndValidate(ranges);
+  }
+
+  @Test
+  public void testUnsortedRanges() throws Exception {
+    describe("read ranges which are not sorted by offset");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(20 * 1024, 500));
+    ranges.add(FileRange.createFileRange(0, 100));
+    ranges.add(FileRange.createFileRange(8 * 1024, 5000));
+    ranges.add(FileRange.createFileRange(200, 0));
+    readAndValidate(ranges);
+  }
+
+  @Test
+  public void testLargeRange() throws Exception {
+    describe("read the whole file as one range");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(0, DATASET_LEN));
+    readAndValidate(ranges);
+  }
+
+  @Test
+  public void testOverlappingRanges() throws Exception {
+    describe("overlapping ranges are rejected");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(0, 100));
+    ranges.add(FileRange.createFileRange(50, 100));
+    try (FSDataInputStream in = getFileSystem().open(testFile)) {
+      LambdaTestUtils.intercept(IllegalArgumentException.class,
+          () -> in.readVectored(ranges, ByteBuffer::allocate));
+    }
+  }
+
+  @Test
+  public void testNegativeOffset() throws Exception {
+    describe("a negative offset is rejected");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(-1, 100));
+    try (FSDataInputStream in = getFileSystem().open(testFile)) {
+      LambdaTestUtils.intercept(EOFException.class,
+          () -> in.readVectored(ranges, ByteBuffer::allocate));
+    }
+  }
+
+  @Test
+  public void testRangePastEOF() throws Exception {
+    describe("a range past the end of the file fails with an EOFException,"
+        + " and the ranges far from it are read");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(0, 100));
+    FileRange pastEOF = FileRange.createFileRange(DATASET_LEN - 10, 100);
+    ranges.add(pastEOF);
+    try (FSDataInputStream in = getFileSystem().open(testFile)) {
+      in.readVectored(ranges, ByteBuffer::allocate);
+      validateVectoredRead(ranges.subList(0, 1));
+      ExecutionException e = LambdaTestUtils.intercept(
+          ExecutionException.class,
+          () -> pastEOF.getData().get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      if (!(e.getCause() instanceof EOFException)) {
+        throw e;
+      }
+    }
+  }
+
+  @Test
+  public void testReadAfterVectoredRead() throws Exception {
+    describe("the stream can be read after a vectored read completes");
+    List<FileRange> ranges = new ArrayList<>();
+    ranges.add(FileRange.createFileRange(100, 1000));
+    ranges.add(FileRange.createFileRange(30 * 1024, 1000));
+    try (FSDataInputStream in = getFileSystem().open(testFile)) {
+      in.readVectored(ranges, ByteBuffer::allocate);
+      validateVectoredRead(ranges);
+      byte[] buffer = new byte[1000];
+      in.readFully(5000, buffer);
+      assertArrayEquals(Arrays.copyOfRange(dataset, 5000, 6000), buffer);
+      in.seek(0);
+      assertEquals(dataset[0], in.read());
+    }
+  }
+}
@@ -26,6 +26,8 @@
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.conf.Configuration;
@@ -36,6 +38,7 @@
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
 
 public class TestDecayRpcScheduler {
   private Schedulable mockCall(String id) {
@@ -274,4 +277,67 @@ public void testNPEatInitialization() throws InterruptedException {
     }
 
   }
-}
\ No newline at end of file
+
+  private static ProcessingDetails details(Timing type, long millis) {
+    ProcessingDetails details = new ProcessingDetails();
+    details.set(type, millis, TimeUnit.MILLISECONDS);
+    return details;
+  }
+
+  @Test
+  public void testWeightedTimeCostProvider() {
+    Configuration conf = new Configuration();
+    conf.setLong("ns." + WeightedTimeCostProvider.WEIGHT_KEY_PREFIX +
+        "queue", 2);
+    CostProvider provider = new WeightedTimeCostProvider();
+    provider.init("ns", conf);
+
+    ProcessingDetails details = details(Timing.QUEUE, 1);
+    details.set(Timing.PROCESSING, 10, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKFREE, 3, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKSHARED, 2, TimeUnit.MILLISECONDS);
+    details.set(Timing.LOCKEXCLUSIVE, 5, TimeUnit.MILLISECONDS);
+    assertEquals(2 * 1000 + 3000 +
+        WeightedTimeCostProvider.DEFAULT_LOCKSHARED_WEIGHT * 2000 +
+        WeightedTimeCostProvider.DEFAULT_LOCKEXCLUSIVE_WEIGHT * 5000,
+        provider.getCost(details));
+    // every call is charged
+    assertEquals(1, provider.getCost(new ProcessingDetails()));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testCostBasedScheduling() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "ns";
+    conf.set(namespace + "." + DecayRpcScheduler
+        .IPC_FCQ_DECAYSCHEDULER_PERIOD_KEY, "99999999"); // Never flush
+    conf.set(namespace + "." + DecayRpcScheduler
+        .IPC_FCQ_DECAYSCHEDULER_THRESHOLDS_KEY, "50");
+    conf.setClass(namespace + "." +
+        CommonConfigurationKeys.IPC_COST_PROVIDER_KEY,
+        WeightedTimeCostProvider.class, CostProvider.class);
+    scheduler = new DecayRpcScheduler(2, namespace, conf);
+
+    // calls are charged when they complete, not when they come in
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getTotalCallSnapshot());
+
+    // a single call holding the write lock costs more than many cheap calls
+    scheduler.addResponseTime("mkdirs", mockCall("A"),
+        details(Timing.LOCKEXCLUSIVE, 1));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+      scheduler.addResponseTime("getFileInfo", mockCall("B"),
+          details(Timing.LOCKFREE, 1));
+    }
+    assertEquals(100000, scheduler.getCallCountSnapshot().get("A").longValue());
+    assertEquals(10000, scheduler.getCallCountSnapshot().get("B").longValue());
+    assertEquals(110000, scheduler.getTotalCallSnapshot());
+
+    scheduler.forceDecay();
+    assertEquals(1, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+    assertEquals(55000, scheduler.getTotalCallSnapshot());
+  }
+}
@@ -22,6 +22,8 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,6 +33,7 @@
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf.ShortCircuitConf;
+import org.apache.hadoop.hdfs.client.impl.metrics.ShortCircuitCacheMetrics;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.shortcircuit.DomainSocketFactory;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
@@ -75,8 +78,12 @@ public class ClientContext {
 
   /**
    * Caches short-circuit file descriptors, mmap regions.
+   *
+   * The cache is striped by block ID, so that the threads which read
+   * different blocks do not contend on the lock of a single cache. The
+   * stripes share the threads and the shared memory segments of the first.
    */
-  private final ShortCircuitCache shortCircuitCache;
+  private final ShortCircuitCache[] shortCircuitCaches;
 
   /**
    * Caches TCP and UNIX domain sockets for reuse.
@@ -92,6 +99,12 @@ public class ClientContext {
    * Caches key Providers for the DFSClient
    */
   private final KeyProviderCache keyProviderCache;
+
+  /**
+   * Caches the block locations of the files opened by the DFSClients.
+   */
+  private final LocatedBlocksCache locatedBlocksCache;
+
   /**
    * True if we should use the legacy BlockReaderLocal.
    */
@@ -124,11 +137,22 @@ private ClientContext(String name, DfsClientConf conf,
 
     this.name = name;
     this.confString = scConf.confAsString();
-    this.shortCircuitCache = ShortCircuitCache.fromConf(scConf);
+    this.shortCircuitCaches =
+        new ShortCircuitCache[scConf.getShortCircuitCacheStripes()];
+    shortCircuitCaches[0] = ShortCircuitCache.fromConf(scConf);
+    for (int i = 1; i < shortCircuitCaches.length; i++) {
+      shortCircuitCaches[i] =
+          ShortCircuitCache.fromConf(scConf, shortCircuitCaches[0]);
+    }
+    if (scConf.isScrMetricsEnabled()) {
+      ShortCircuitCacheMetrics.create(name, getShortCircuitCaches());
+    }
     this.peerCache = new PeerCache(scConf.getSocketCacheCapacity(),
         scConf.getSocketCacheExpiry());
     this.keyProviderCache = new KeyProviderCache(
         scConf.getKeyProviderCacheExpiryMs());
+    this.locatedBlocksCache = new LocatedBlocksCache(
+        conf.getLocationCacheSize(), conf.getLocationCacheExpiryMs());
     this.useLegacyBlockReaderLocal = scConf.isUseLegacyBlockReaderLocal();
     this.domainSocketFactory = new DomainSocketFactory(scConf);
 
@@ -207,8 +231,28 @@ public String getConfString() {
     return confString;
   }
 
+  /**
+   * @return the first stripe of the short-circuit cache, which caches all the
+   *         replicas unless the cache has more stripes.
+   */
   public ShortCircuitCache getShortCircuitCache() {
-    return shortCircuitCache;
+    return shortCircuitCaches[0];
+  }
+
+  /**
+   * @param blockId the ID of a block
+   * @return the stripe of the short-circuit cache for the block
+   */
+  public ShortCircuitCache getShortCircuitCache(long blockId) {
+    return shortCircuitCaches[
+        (int) Math.floorMod(blockId, (long) shortCircuitCaches.length)];
+  }
+
+  /**
+   * @return all the stripes of the short-circuit cache
+   */
+  public List<ShortCircuitCache> getShortCircuitCaches() {
+    return Collections.unmodifiableList(Arrays.asList(shortCircuitCaches));
   }
 
   public PeerCache getPeerCache() {
@@ -219,6 +263,10 @@ public KeyProviderCache getKeyProviderCache() {
     return keyProviderCache;
   }
 
+  public LocatedBlocksCache getLocatedBlocksCache() {
+    return locatedBlocksCache;
+  }
+
   public boolean getUseLegacyBlockReaderLocal() {
     return useLegacyBlockReaderLocal;
   }
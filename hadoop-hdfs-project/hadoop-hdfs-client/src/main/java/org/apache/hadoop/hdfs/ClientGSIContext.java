@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * Global State Id context for the client.
+ * <p>
+ * This is the client side implementation responsible for receiving
+ * state alignment info from server(s) and sending the highest state id
+ * it has seen with each request, so that an observer namenode only serves
+ * the request once it has caught up with that state.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ClientGSIContext implements AlignmentContext {
+
+  private final LongAccumulator lastSeenStateId =
+      new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+  @Override
+  public long getLastSeenStateId() {
+    return lastSeenStateId.get();
+  }
+
+  /**
+   * @return true once a response carrying server state has been received.
+   */
+  public boolean hasSeenState() {
+    return getLastSeenStateId() != Long.MIN_VALUE;
+  }
+
+  /**
+   * Client side implementation only receives state alignment info.
+   * It does not provide state alignment info therefore this does nothing.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    // Do nothing.
+  }
+
+  /**
+   * Client side implementation for receiving state alignment info
+   * in responses.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    if (header.hasStateId()) {
+      lastSeenStateId.accumulate(header.getStateId());
+    }
+  }
+
+  /**
+   * Client side implementation for providing state alignment info in
+   * requests.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    if (hasSeenState()) {
+      header.setStateId(getLastSeenStateId());
+    }
+  }
+
+  /**
+   * Client side implementation only provides state alignment info.
+   * It does not receive state alignment info therefore this does nothing.
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    // Do nothing.
+    return 0;
+  }
+}
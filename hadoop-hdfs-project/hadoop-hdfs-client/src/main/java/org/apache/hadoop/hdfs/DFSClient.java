@@ -39,6 +39,7 @@
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -96,7 +97,9 @@
 import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.client.impl.AsyncReadLoop;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
+import org.apache.hadoop.hdfs.client.impl.DfsClientConf.ShortCircuitConf;
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.AclException;
@@ -236,7 +239,9 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
   private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
+  private static ThreadPoolExecutor LISTING_PREFETCH_THREAD_POOL;
   private static volatile ThreadPoolExecutor STRIPED_READ_THREAD_POOL;
+  private static volatile AsyncReadLoop ASYNC_READ_LOOP;
   private final int smallBufferSize;
   private final long serverDefaultsValidityPeriod;
 
@@ -391,6 +396,8 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
 
     this.initThreadsNumForStripedReads(dfsClientConf.
         getStripedReadThreadpoolSize());
+    initThreadsNumForListingPrefetch(
+        dfsClientConf.getListingPrefetchThreads());
     this.saslClient = new SaslDataTransferClient(
         conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
         TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
@@ -995,11 +1002,47 @@ public DFSInputStream open(String src, int buffersize, boolean verifyChecksum)
     checkOpen();
     //    Get block info from namenode
     try (TraceScope ignored = newPathTraceScope("newDFSInputStream", src)) {
-      LocatedBlocks locatedBlocks = getLocatedBlocks(src, 0);
-      return openInternal(locatedBlocks, src, verifyChecksum);
+      if (!dfsClientConf.isLocationCacheEnabled()) {
+        LocatedBlocks locatedBlocks = getLocatedBlocks(src, 0);
+        return openInternal(locatedBlocks, src, verifyChecksum);
+      }
+      final LocatedBlocksCache cache = clientContext.getLocatedBlocksCache();
+      final String fs = getLocationCacheFs();
+      LocatedBlocks locatedBlocks = cache.get(fs, ugi.getUserName(), src);
+      final boolean cached = locatedBlocks != null;
+      if (!cached) {
+        locatedBlocks = getLocatedBlocks(src, 0);
+        cache.put(fs, ugi.getUserName(), src, locatedBlocks);
+      }
+      DFSInputStream in = openInternal(locatedBlocks, src, verifyChecksum);
+      in.readStatistics.addLocationCacheLookup(cached);
+      return in;
     }
   }
 
+  /** @return the NameNode part of the keys of the location cache. */
+  private String getLocationCacheFs() {
+    return String.valueOf(namenodeUri);
+  }
+
+  /**
+   * Invalidate the cached block locations of a file, after it failed to be
+   * read or was modified.
+   */
+  void invalidateLocatedBlocks(String src) {
+    clientContext.getLocatedBlocksCache().invalidate(getLocationCacheFs(),
+        src);
+  }
+
+  /**
+   * Invalidate the cached block locations of the files at and under a path
+   * which was deleted or renamed.
+   */
+  private void invalidateLocatedBlocksTree(String src) {
+    clientContext.getLocatedBlocksCache().invalidateTree(getLocationCacheFs(),
+        src);
+  }
+
   /**
    * Create an input stream from the {@link HdfsPathHandle} if the
    * constraints encoded from {@link
@@ -1206,6 +1249,7 @@ public DFSOutputStream create(String src, FsPermission permission,
         src, masked, flag, createParent, replication, blockSize, progress,
         dfsClientConf.createChecksum(checksumOpt),
         getFavoredNodesStr(favoredNodes), ecPolicyName);
+    invalidateLocatedBlocks(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1260,6 +1304,7 @@ public DFSOutputStream primitiveCreate(String src, FsPermission absPermission,
       result = DFSOutputStream.newStreamForCreate(this, src, absPermission,
           flag, createParent, replication, blockSize, progress, checksum,
           null, null);
+      invalidateLocatedBlocks(src);
     }
     beginFileLease(result.getFileId(), result);
     return result;
@@ -1343,6 +1388,7 @@ private DFSOutputStream callAppend(String src, EnumSet<CreateFlag> flag,
             "info with additional RPC call for file: {}", src);
         status = getFileInfo(src);
       }
+      invalidateLocatedBlocks(src);
       return DFSOutputStream.newStreamForAppend(this, src, flag, progress,
           blkWithStatus.getLastBlock(), status,
           dfsClientConf.createChecksum(null), favoredNodes);
@@ -1514,6 +1560,9 @@ public boolean rename(String src, String dst) throws IOException {
           QuotaByStorageTypeExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateLocatedBlocksTree(src);
+      invalidateLocatedBlocksTree(dst);
     }
   }
 
@@ -1529,6 +1578,11 @@ public void concat(String trg, String [] srcs) throws IOException {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateLocatedBlocks(trg);
+      for (String src : srcs) {
+        invalidateLocatedBlocks(src);
+      }
     }
   }
   /**
@@ -1551,6 +1605,9 @@ public void rename(String src, String dst, Options.Rename... options)
           NSQuotaExceededException.class,
           UnresolvedPathException.class,
           SnapshotAccessControlException.class);
+    } finally {
+      invalidateLocatedBlocksTree(src);
+      invalidateLocatedBlocksTree(dst);
     }
   }
 
@@ -1569,6 +1626,8 @@ public boolean truncate(String src, long newLength) throws IOException {
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateLocatedBlocks(src);
     }
   }
 
@@ -1600,6 +1659,8 @@ public boolean delete(String src, boolean recursive) throws IOException {
           UnresolvedPathException.class,
           SnapshotAccessControlException.class,
           PathIsNotEmptyDirectoryException.class);
+    } finally {
+      invalidateLocatedBlocksTree(src);
     }
   }
 
@@ -1683,6 +1744,42 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
           UnresolvedPathException.class);
     }
   }
+
+  /**
+   * Get the file info of several paths, with as few RPCs to the namenode as
+   * its listing limit allows.
+   * @param srcs the paths of the files or directories.
+   * @param needLocation whether to get the block locations of files.
+   * @return the file info of each path, or null if it does not exist.
+   *         File info with locations is an {@link HdfsLocatedFileStatus}.
+   *
+   * @see ClientProtocol#getBatchedFileInfo(String[], boolean)
+   */
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs,
+      boolean needLocation) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = tracer.newScope("getBatchedFileInfo")) {
+      final HdfsFileStatus[] result = new HdfsFileStatus[srcs.length];
+      int done = 0;
+      while (done < srcs.length) {
+        String[] remaining = done == 0 ? srcs :
+            Arrays.copyOfRange(srcs, done, srcs.length);
+        HdfsFileStatus[] batch =
+            namenode.getBatchedFileInfo(remaining, needLocation);
+        if (batch.length == 0) {
+          throw new IOException("No file info returned for " + remaining[0]);
+        }
+        System.arraycopy(batch, 0, result, done, batch.length);
+        done += batch.length;
+      }
+      return result;
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class,
+          UnresolvedPathException.class);
+    }
+  }
+
   /**
    * Close status of a file
    * @return true if file is already closed
@@ -3003,10 +3100,61 @@ private void initThreadsNumForStripedReads(int numThreads) {
     }
   }
 
+  /**
+   * Create the thread pool which fetches the next batch of a directory
+   * listing while the current one is consumed, if it does not already
+   * exist. The pool does not queue: a batch which finds all threads busy is
+   * fetched when it is needed.
+   * @param num Number of threads for the listing prefetch thread pool.
+   */
+  private static synchronized void initThreadsNumForListingPrefetch(
+      int num) {
+    if (num <= 0 || LISTING_PREFETCH_THREAD_POOL != null) {
+      return;
+    }
+    LISTING_PREFETCH_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("listingPrefetch-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        });
+    LISTING_PREFETCH_THREAD_POOL.allowCoreThreadTimeOut(true);
+    LOG.debug("Using listing prefetch; pool threads={}", num);
+  }
+
+  /** @return the listing prefetch pool, null if prefetch is disabled. */
+  ThreadPoolExecutor getListingPrefetchThreadPool() {
+    return LISTING_PREFETCH_THREAD_POOL;
+  }
+
   ThreadPoolExecutor getHedgedReadsThreadPool() {
     return HEDGED_READ_THREAD_POOL;
   }
 
+  /**
+   * @return the loop serving the asynchronous reads of the process, which
+   *         is created on first use.
+   */
+  AsyncReadLoop getAsyncReadLoop() throws IOException {
+    if (ASYNC_READ_LOOP == null) {
+      synchronized (DFSClient.class) {
+        if (ASYNC_READ_LOOP == null) {
+          final ShortCircuitConf scConf = dfsClientConf.getShortCircuitConf();
+          ASYNC_READ_LOOP = new AsyncReadLoop(
+              dfsClientConf.getAsyncReadThreadpoolSize(),
+              scConf.getSocketCacheCapacity(), scConf.getSocketCacheExpiry(),
+              dfsClientConf.getDataTransferTcpNoDelay());
+        }
+      }
+    }
+    return ASYNC_READ_LOOP;
+  }
+
   ThreadPoolExecutor getStripedReadsThreadPool() {
     return STRIPED_READ_THREAD_POOL;
   }
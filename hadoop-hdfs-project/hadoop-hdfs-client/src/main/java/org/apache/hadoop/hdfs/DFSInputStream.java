@@ -35,6 +35,8 @@
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -43,22 +45,29 @@
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.AsyncPositionedReadable;
 import org.apache.hadoop.fs.ByteBufferReadable;
 import org.apache.hadoop.fs.ByteBufferUtil;
 import org.apache.hadoop.fs.CanSetDropBehind;
 import org.apache.hadoop.fs.CanSetReadahead;
 import org.apache.hadoop.fs.CanUnbuffer;
 import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileEncryptionInfo;
+import org.apache.hadoop.fs.FileRange;
 import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
 import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.fs.VectoredReadUtils;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
 import org.apache.hadoop.hdfs.DFSUtilClient.CorruptedBlocks;
+import org.apache.hadoop.hdfs.client.impl.AsyncReadLoop;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.protocol.BlockType;
@@ -79,6 +88,7 @@
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.IdentityHashStore;
@@ -97,7 +107,8 @@
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
     implements ByteBufferReadable, CanSetDropBehind, CanSetReadahead,
-               HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities {
+               HasEnhancedByteBufferAccess, CanUnbuffer, StreamCapabilities,
+               AsyncPositionedReadable {
   @VisibleForTesting
   public static boolean tcpReadsDisabledForTesting = false;
   private long hedgedReadOpsLoopNumForTesting = 0;
@@ -169,6 +180,9 @@ public class DFSInputStream extends FSInputStream
 
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
+    // the cached locations of the file may be stale, so that later opens
+    // should get them from the namenode
+    dfsClient.invalidateLocatedBlocks(src);
   }
 
   DFSInputStream(DFSClient dfsClient, String src, boolean verifyChecksum,
@@ -236,6 +250,11 @@ private long fetchLocatedBlocksAndGetLastBlockLength(boolean refresh)
       throws IOException {
     LocatedBlocks newInfo = locatedBlocks;
     if (locatedBlocks == null || refresh) {
+      if (refresh) {
+        // the blocks may have been replaced by blocks with a new generation
+        // stamp, so the cached locations must not be used again
+        dfsClient.invalidateLocatedBlocks(src);
+      }
       newInfo = dfsClient.getLocatedBlocks(src, 0);
     }
     DFSClient.LOG.debug("newInfo = {}", newInfo);
@@ -1367,6 +1386,207 @@ private int pread(long position, ByteBuffer buffer)
     return realLen;
   }
 
+  /**
+   * Read bytes starting from the specified position without blocking the
+   * calling thread on the DataNodes, apart from the NameNode RPCs needed to
+   * locate the blocks.
+   *
+   * The ranges of replicated blocks are read over non-blocking connections
+   * by the {@link AsyncReadLoop} of the client when the data transfer uses
+   * plain TCP. Other reads, and retries on other DataNodes after a failure,
+   * fall back to the blocking read path on the threads of the loop. At most
+   * dfs.client.read.async.threadpool.size of those are in progress at a
+   * time in the process; the others wait for a thread.
+   */
+  @Override
+  public CompletableFuture<Integer> readAsync(long position,
+      final ByteBuffer buf) {
+    try {
+      dfsClient.checkOpen();
+      if (closed.get()) {
+        throw new IOException("Stream closed");
+      }
+      final long filelen = getFileLength();
+      if ((position < 0) || (position >= filelen)) {
+        return CompletableFuture.completedFuture(-1);
+      }
+      final int realLen = (int) Math.min(buf.remaining(), filelen - position);
+      if (realLen == 0) {
+        return CompletableFuture.completedFuture(0);
+      }
+      final AsyncReadLoop loop = dfsClient.getAsyncReadLoop();
+      final List<LocatedBlock> blockRange = getBlockRange(position, realLen);
+      for (LocatedBlock blk : blockRange) {
+        if (blk.isStriped()) {
+          return loop.submit(() -> pread(position, buf));
+        }
+      }
+
+      final List<CompletableFuture<Void>> parts =
+          new ArrayList<>(blockRange.size());
+      int offset = 0;
+      for (LocatedBlock blk : blockRange) {
+        final long targetStart = position + offset - blk.getStartOffset();
+        final int bytesToRead = (int) Math.min(realLen - offset,
+            blk.getBlockSize() - targetStart);
+        final ByteBuffer slice = buf.duplicate();
+        slice.position(buf.position() + offset);
+        slice.limit(slice.position() + bytesToRead);
+        parts.add(readBlockRangeAsync(loop, blk, targetStart,
+            slice.slice()));
+        offset += bytesToRead;
+      }
+      return CompletableFuture.allOf(
+          parts.toArray(new CompletableFuture<?>[parts.size()]))
+          .thenApply(v -> {
+            buf.position(buf.position() + realLen);
+            return realLen;
+          });
+    } catch (IOException e) {
+      final CompletableFuture<Integer> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  /**
+   * Read a range of a replicated block into the remaining bytes of target,
+   * without blocking if possible.
+   */
+  private CompletableFuture<Void> readBlockRangeAsync(
+      final AsyncReadLoop loop, final LocatedBlock blk, final long start,
+      final ByteBuffer target) throws IOException {
+    final long end = start + target.remaining() - 1;
+    final CorruptedBlocks corruptedBlocks = new CorruptedBlocks();
+    final Callable<Void> blockingRead = () -> {
+      try {
+        fetchBlockByteRange(blk, start, end, target.duplicate(),
+            corruptedBlocks);
+      } finally {
+        reportCheckSumFailure(corruptedBlocks, blk.getLocations().length,
+            false);
+      }
+      return null;
+    };
+    final DNAddrPair datanode = canReadNonBlocking() ?
+        getBestNodeDNAddrPair(blk, null) : null;
+    if (datanode == null || (DFSUtilClient.isLocalAddress(datanode.addr) &&
+        (dfsClient.getConf().getShortCircuitConf().isShortCircuitLocalReads()
+        || dfsClient.getConf().getShortCircuitConf()
+            .isDomainSocketDataTraffic()))) {
+      return loop.submit(blockingRead);
+    }
+
+    final CachingStrategy curCachingStrategy;
+    synchronized (infoLock) {
+      curCachingStrategy = cachingStrategy;
+    }
+    final int distance =
+        dfsClient.getClientContext().getNetworkDistance(datanode.info);
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    loop.read(datanode.addr, src, blk.getBlock(), blk.getBlockToken(),
+        dfsClient.clientName, start, target, verifyChecksum,
+        curCachingStrategy, dfsClient.getConf().getSocketTimeout())
+        .whenComplete((v, t) -> {
+          if (t == null) {
+            final int nread = target.remaining();
+            if (distance == 0) {
+              readStatistics.addLocalBytes(nread);
+            } else {
+              readStatistics.addRemoteBytes(nread);
+            }
+            dfsClient.updateFileSystemReadStats(distance, nread);
+            result.complete(null);
+            return;
+          }
+          if (t instanceof ChecksumException) {
+            DFSClient.LOG.warn("readAsync(). Got a checksum exception for "
+                + src + " at " + blk.getBlock() + ":"
+                + ((ChecksumException) t).getPos() + " from "
+                + datanode.info);
+            corruptedBlocks.addCorruptedBlock(blk.getBlock(), datanode.info);
+          } else {
+            DFSClient.LOG.warn("Failed to read " + blk.getBlock() + " of "
+                + src + " from " + datanode.addr + ": " + t);
+          }
+          addToDeadNodes(datanode.info);
+          loop.submit(blockingRead).whenComplete((v2, t2) -> {
+            if (t2 == null) {
+              result.complete(null);
+            } else {
+              result.completeExceptionally(t2);
+            }
+          });
+        });
+    return result;
+  }
+
+  /**
+   * Read the ranges with {@link #readAsync}, merging the ranges which are
+   * closer than {@link #minSeekForVectorReads()}. The merged ranges are read
+   * concurrently, and the buffers of the ranges are allocated by the
+   * threads completing the reads.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      final IntFunction<ByteBuffer> allocate) throws IOException {
+    final List<CombinedFileRange> combinedRanges =
+        VectoredReadUtils.mergeSortedRanges(
+            VectoredReadUtils.sortRanges(ranges), minSeekForVectorReads(),
+            maxReadSizeForVectorReads());
+    for (final CombinedFileRange combined : combinedRanges) {
+      final List<FileRange> underlying = combined.getUnderlying();
+      if (underlying.size() == 1) {
+        // read directly into the buffer of the range
+        final FileRange range = underlying.get(0);
+        final ByteBuffer buffer = allocate.apply(range.getLength());
+        final ByteBuffer target = buffer.duplicate();
+        target.limit(target.position() + range.getLength());
+        range.setData(readAsync(range.getOffset(), target).thenApply(n -> {
+          checkVectoredRead(range, combined, n);
+          buffer.position(buffer.position() + range.getLength());
+          buffer.flip();
+          return buffer;
+        }));
+        continue;
+      }
+      final ByteBuffer data = ByteBuffer.allocate(combined.getLength());
+      final CompletableFuture<Integer> read =
+          readAsync(combined.getOffset(), data.duplicate());
+      for (final FileRange range : underlying) {
+        range.setData(read.thenApply(n -> {
+          checkVectoredRead(range, combined, n);
+          return VectoredReadUtils.copyRange(data, combined.getOffset(),
+              range, allocate);
+        }));
+      }
+    }
+  }
+
+  /**
+   * Check that the read of a combined range read all of a range in it.
+   * @throws CompletionException wrapping an EOFException if not.
+   */
+  private void checkVectoredRead(FileRange range, FileRange combined,
+      int nread) {
+    if (combined.getOffset() + nread < range.getOffset() + range.getLength()) {
+      throw new CompletionException(new EOFException(
+          FSExceptionMessages.EOF_IN_READ_FULLY + " reading " + range
+              + " of " + src));
+    }
+  }
+
+  /**
+   * @return whether blocks can be read over non-blocking connections, which
+   *         only speak the data transfer protocol over plain TCP.
+   */
+  private boolean canReadNonBlocking() throws IOException {
+    return !tcpReadsDisabledForTesting &&
+        !UserGroupInformation.isSecurityEnabled() &&
+        !dfsClient.shouldEncryptData() &&
+        dfsClient.getConf().getReplicaAccessorBuilderClasses().isEmpty();
+  }
+
   /**
    * DFSInputStream reports checksum failure.
    * For replicated blocks, we have the following logic:
@@ -1771,6 +1991,7 @@ public boolean hasCapability(String capability) {
     case StreamCapabilities.READAHEAD:
     case StreamCapabilities.DROPBEHIND:
     case StreamCapabilities.UNBUFFER:
+    case StreamCapabilities.READASYNC:
       return true;
     default:
       return false;
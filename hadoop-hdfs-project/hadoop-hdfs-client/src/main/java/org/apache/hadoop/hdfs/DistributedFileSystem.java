@@ -95,9 +95,11 @@
 import org.apache.hadoop.hdfs.protocol.ZoneReencryptionStatus;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.client.impl.SnapshotDiffReportGenerator;
+import org.apache.hadoop.hdfs.client.impl.SnapshotDiffReportIterator;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.io.Text;
@@ -110,15 +112,21 @@
 import javax.annotation.Nonnull;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /****************************************************************
  * Implementation of the abstract FileSystem for the DFS system.
@@ -1195,6 +1203,9 @@ public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
    * if needLocation, status contains block location if it is a file
    * throws a RuntimeException with the error as its cause.
    *
+   * If listing prefetch is enabled, the next batch of entries is fetched
+   * in the background while the current one is consumed.
+   *
    * @param <T> the type of the file status
    */
   private class  DirListingIterator<T extends FileStatus>
@@ -1206,6 +1217,7 @@ public RemoteIterator<FileStatus> next(final FileSystem fs, final Path p)
     private T curStat = null;
     private PathFilter filter;
     private boolean needLocation;
+    private Future<DirectoryListing> nextListing;
 
     private DirListingIterator(Path p, PathFilter filter,
         boolean needLocation) throws IOException {
@@ -1222,6 +1234,7 @@ private DirListingIterator(Path p, PathFilter filter,
         throw new FileNotFoundException("File " + p + " does not exist.");
       }
       i = 0;
+      prefetch();
     }
 
     private DirListingIterator(Path p, boolean needLocation)
@@ -1257,17 +1270,53 @@ private boolean hasNextNoFilter() throws IOException {
       if (i >= thisListing.getPartialListing().length
           && thisListing.hasMore()) {
         // current listing is exhausted & fetch a new listing
-        thisListing = dfs.listPaths(src, thisListing.getLastName(),
-            needLocation);
+        thisListing = fetchNextListing();
         statistics.incrementReadOps(1);
         if (thisListing == null) {
           throw new FileNotFoundException("File " + p + " does not exist.");
         }
         i = 0;
+        prefetch();
       }
       return (i < thisListing.getPartialListing().length);
     }
 
+    /** Start fetching the batch after the current one, if enabled. */
+    private void prefetch() {
+      final ThreadPoolExecutor pool = dfs.getListingPrefetchThreadPool();
+      if (pool == null || !thisListing.hasMore()) {
+        return;
+      }
+      final byte[] startAfter = thisListing.getLastName();
+      try {
+        nextListing = pool.submit(
+            () -> dfs.listPaths(src, startAfter, needLocation));
+      } catch (RejectedExecutionException e) {
+        // all threads are busy, fetch the batch when it is needed
+        DFSClient.LOG.debug("Not prefetching the listing of {}", src, e);
+      }
+    }
+
+    private DirectoryListing fetchNextListing() throws IOException {
+      if (nextListing == null) {
+        return dfs.listPaths(src, thisListing.getLastName(), needLocation);
+      }
+      final Future<DirectoryListing> future = nextListing;
+      nextListing = null;
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        throw (IOException) new InterruptedIOException(
+            "Interrupted while listing " + src).initCause(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
     @Override
     public T next() throws IOException {
       if (hasNext()) {
@@ -1591,6 +1640,44 @@ public FileStatus next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Get the status of several paths with a single RPC to the namenode, or a
+   * few if there are more paths than its listing limit. Symlinks are
+   * resolved by the namenode, a path with a symlink to another file system
+   * fails the whole call.
+   *
+   * @param paths the paths to get the status of.
+   * @param needLocation whether to get the block locations of files, which
+   *        are then returned as {@link LocatedFileStatus}.
+   * @return the status of each path, or null if the path does not exist.
+   * @throws IOException see specific implementation
+   */
+  public FileStatus[] getFileStatuses(Path[] paths, boolean needLocation)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    storageStatistics.incrementOpCounter(OpType.GET_FILE_STATUS);
+    final Path[] absPaths = new Path[paths.length];
+    final String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      absPaths[i] = fixRelativePart(paths[i]);
+      srcs[i] = getPathName(absPaths[i]);
+    }
+    final HdfsFileStatus[] stats = dfs.getBatchedFileInfo(srcs, needLocation);
+    final FileStatus[] result = new FileStatus[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      if (stats[i] == null) {
+        continue;
+      }
+      if (needLocation && !stats[i].isDirectory()) {
+        result[i] = ((HdfsLocatedFileStatus) stats[i])
+            .makeQualifiedLocated(getUri(), absPaths[i]);
+      } else {
+        result[i] = stats[i].makeQualified(getUri(), absPaths[i]);
+      }
+    }
+    return result;
+  }
+
   @SuppressWarnings("deprecation")
   @Override
   public void createSymlink(final Path target, final Path link,
@@ -2066,6 +2153,7 @@ private final class SnapshotDiffReportListingIterator implements
     private byte[] startPath;
     private int index;
     private boolean hasNext = true;
+    private Future<SnapshotDiffReportListing> nextPart;
 
     private SnapshotDiffReportListingIterator(String snapshotDir,
         String fromSnapshot, String toSnapshot) {
@@ -2087,15 +2175,102 @@ public SnapshotDiffReportListing next() throws IOException {
         throw new java.util.NoSuchElementException(
             "No more entry in SnapshotDiffReport for " + snapshotDir);
       }
-      final SnapshotDiffReportListing part =
-          dfs.getSnapshotDiffReportListing(snapshotDir, fromSnapshot,
-              toSnapshot, startPath, index);
+      final SnapshotDiffReportListing part = fetchNextPart();
       startPath = part.getLastPath();
       index = part.getLastIndex();
       hasNext =
           !(Arrays.equals(startPath, DFSUtilClient.EMPTY_BYTES) && index == -1);
+      prefetch();
       return part;
     }
+
+    /** Start fetching the part after the current one, if enabled. */
+    private void prefetch() {
+      final ThreadPoolExecutor pool = dfs.getListingPrefetchThreadPool();
+      if (pool == null || !hasNext) {
+        return;
+      }
+      final byte[] start = startPath;
+      final int idx = index;
+      try {
+        nextPart = pool.submit(() -> dfs.getSnapshotDiffReportListing(
+            snapshotDir, fromSnapshot, toSnapshot, start, idx));
+      } catch (RejectedExecutionException e) {
+        // all threads are busy, fetch the part when it is needed
+        DFSClient.LOG.debug("Not prefetching the snapshot diff of {}",
+            snapshotDir, e);
+      }
+    }
+
+    private SnapshotDiffReportListing fetchNextPart() throws IOException {
+      if (nextPart == null) {
+        return dfs.getSnapshotDiffReportListing(snapshotDir, fromSnapshot,
+            toSnapshot, startPath, index);
+      }
+      final Future<SnapshotDiffReportListing> future = nextPart;
+      nextPart = null;
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        throw (IOException) new InterruptedIOException(
+            "Interrupted while getting the snapshot diff of " + snapshotDir)
+            .initCause(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Returns a remote iterator over the entries of the snapshot diff report,
+   * which gets the diff from the namenode in parts while the entries are
+   * consumed. Unlike {@link #getSnapshotDiffReport(Path, String, String)},
+   * the client does not hold the whole diff, so it scales to diffs with
+   * any number of changes. If the listing prefetch threads are configured,
+   * the next part is fetched while the current one is consumed.
+   *
+   * The entries are the ones of the report, in the same order, except for
+   * the creation of a renamed inode whose rename is further on in the diff:
+   * these entries come last. A diff with the current tree is computed in
+   * one call, as the tree could change between the calls.
+   *
+   * @param snapshotDir
+   *          full path of the directory where snapshots are taken
+   * @param fromSnapshot
+   *          snapshot name of the from point. Null indicates the current
+   *          tree
+   * @param toSnapshot
+   *          snapshot name of the to point. Null indicates the current
+   *          tree.
+   * @return Remote iterator
+   */
+  public RemoteIterator<DiffReportEntry> snapshotDiffReportRemoteIterator(
+      final Path snapshotDir, final String fromSnapshot,
+      final String toSnapshot) throws IOException {
+    if (!isValidSnapshotName(fromSnapshot)
+        || !isValidSnapshotName(toSnapshot)) {
+      final Iterator<DiffReportEntry> entries =
+          getSnapshotDiffReport(snapshotDir, fromSnapshot, toSnapshot)
+              .getDiffList().iterator();
+      return new RemoteIterator<DiffReportEntry>() {
+        @Override
+        public boolean hasNext() {
+          return entries.hasNext();
+        }
+
+        @Override
+        public DiffReportEntry next() {
+          return entries.next();
+        }
+      };
+    }
+    return new SnapshotDiffReportIterator(
+        snapshotDiffReportListingRemoteIterator(snapshotDir, fromSnapshot,
+            toSnapshot));
   }
 
   private boolean isValidSnapshotName(String snapshotName) {
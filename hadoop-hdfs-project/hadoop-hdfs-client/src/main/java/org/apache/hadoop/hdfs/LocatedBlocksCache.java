@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the block locations which {@link DFSClient#open} gets from the
+ * NameNode, so that the clients which repeatedly open the same files do not
+ * ask the NameNode for the locations every time.
+ *
+ * Only the locations of closed files are cached, and the entries expire a
+ * fixed time after they are added. The entries are keyed by the NameNode
+ * and the path, and hold the locations per user, so a user is never handed
+ * the locations of a file which the NameNode did not let it open. The
+ * clients invalidate the entry of a file when they fail to read it, and the
+ * entries of a path and its descendants when they modify the path. The
+ * cached paths are also kept sorted, so that either takes a lookup rather
+ * than a scan of the cache.
+ */
+@InterfaceAudience.Private
+public class LocatedBlocksCache {
+  public static final Logger LOG = LoggerFactory.getLogger(
+      LocatedBlocksCache.class);
+
+  private final Cache<Key, ConcurrentMap<String, Entry>> cache;
+  /** The keys of the cache, sorted by NameNode and path; guarded by this. */
+  private final NavigableSet<Key> keys = new TreeSet<>();
+  private final long expiryMs;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public LocatedBlocksCache(int size, long expiryMs) {
+    this.expiryMs = expiryMs;
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(size)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .removalListener(
+            (RemovalListener<Key, ConcurrentMap<String, Entry>>)
+                this::onRemoval)
+        .build();
+  }
+
+  /**
+   * Get the cached locations of a file.
+   * @param fs the NameNode of the file
+   * @param user the user opening the file
+   * @param src the path of the file
+   * @return a copy of the cached locations, which the caller may modify,
+   *         or null if the locations are not cached
+   */
+  public LocatedBlocks get(String fs, String user, String src) {
+    ConcurrentMap<String, Entry> users = cache.getIfPresent(new Key(fs, src));
+    Entry entry = users == null ? null : users.get(user);
+    if (entry == null || entry.expiry <= Time.monotonicNow()) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return copy(entry.blocks);
+  }
+
+  /**
+   * Cache the locations of a file, if the file is closed.
+   * @param fs the NameNode of the file
+   * @param user the user which got the locations
+   * @param src the path of the file
+   * @param blocks the locations from the NameNode
+   */
+  public void put(String fs, String user, String src, LocatedBlocks blocks) {
+    if (blocks == null || blocks.isUnderConstruction()
+        || !blocks.isLastBlockComplete()) {
+      return;
+    }
+    final Entry entry =
+        new Entry(copy(blocks), Time.monotonicNow() + expiryMs);
+    final Key key = new Key(fs, src);
+    ConcurrentMap<String, Entry> users = cache.getIfPresent(key);
+    if (users == null) {
+      synchronized (this) {
+        users = cache.getIfPresent(key);
+        if (users == null) {
+          users = new ConcurrentHashMap<>();
+          cache.put(key, users);
+          keys.add(key);
+        }
+      }
+    }
+    users.put(user, entry);
+  }
+
+  /**
+   * Invalidate the locations of a file, for all the users.
+   * @param fs the NameNode of the file
+   * @param src the path of the file
+   */
+  public void invalidate(String fs, String src) {
+    if (cache.asMap().remove(new Key(fs, src)) != null) {
+      LOG.debug("Invalidated the cached locations of {}", src);
+    }
+  }
+
+  /**
+   * Invalidate the locations of the files at and under a path, for all the
+   * users.
+   * @param fs the NameNode of the path
+   * @param src the path
+   */
+  public void invalidateTree(String fs, String src) {
+    final String prefix = src.endsWith(Path.SEPARATOR) ?
+        src : src + Path.SEPARATOR;
+    final List<Key> invalidated = new ArrayList<>();
+    synchronized (this) {
+      final Key key = new Key(fs, src);
+      if (keys.contains(key)) {
+        invalidated.add(key);
+      }
+      for (Key k : keys.tailSet(new Key(fs, prefix), true)) {
+        if (!k.fs.equals(fs) || !k.src.startsWith(prefix)) {
+          break;
+        }
+        invalidated.add(k);
+      }
+    }
+    if (!invalidated.isEmpty()) {
+      cache.invalidateAll(invalidated);
+      LOG.debug("Invalidated the cached locations under {}", src);
+    }
+  }
+
+  /** Drop the key of an entry which left the cache from the sorted keys. */
+  private void onRemoval(
+      RemovalNotification<Key, ConcurrentMap<String, Entry>> notification) {
+    if (notification.getCause() == RemovalCause.REPLACED) {
+      return;
+    }
+    synchronized (this) {
+      final Key key = notification.getKey();
+      // the path may have been cached again since
+      if (!cache.asMap().containsKey(key)) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  /** @return the number of lookups which found cached locations. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** @return the number of lookups which found no cached locations. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /** @return the number of cached files. */
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getNumKeys() {
+    return keys.size();
+  }
+
+  /**
+   * Copy the list of the blocks, which a {@link DFSInputStream} modifies as
+   * it fetches more blocks. The blocks themselves are not modified.
+   */
+  private static LocatedBlocks copy(LocatedBlocks blocks) {
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(),
+        new ArrayList<>(blocks.getLocatedBlocks()),
+        blocks.getLastLocatedBlock(), blocks.isLastBlockComplete(),
+        blocks.getFileEncryptionInfo(), blocks.getErasureCodingPolicy());
+  }
+
+  /** The locations of a file cached for a user. */
+  private static final class Entry {
+    private final LocatedBlocks blocks;
+    private final long expiry;
+
+    private Entry(LocatedBlocks blocks, long expiry) {
+      this.blocks = blocks;
+      this.expiry = expiry;
+    }
+  }
+
+  private static final class Key implements Comparable<Key> {
+    private final String fs;
+    private final String src;
+
+    private Key(String fs, String src) {
+      this.fs = fs;
+      this.src = src;
+    }
+
+    @Override
+    public int compareTo(Key other) {
+      int c = fs.compareTo(other.fs);
+      return c != 0 ? c : src.compareTo(other.src);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return fs.equals(other.fs) && src.equals(other.src);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(fs, src);
+    }
+  }
+}
@@ -30,6 +30,8 @@ public class ReadStatistics {
 
   private BlockType blockType = BlockType.CONTIGUOUS;
   private long totalEcDecodingTimeMillis;
+  private long locationCacheHits;
+  private long locationCacheMisses;
 
   public ReadStatistics() {
     clear();
@@ -40,6 +42,8 @@ public ReadStatistics(ReadStatistics rhs) {
     this.totalLocalBytesRead = rhs.getTotalLocalBytesRead();
     this.totalShortCircuitBytesRead = rhs.getTotalShortCircuitBytesRead();
     this.totalZeroCopyBytesRead = rhs.getTotalZeroCopyBytesRead();
+    this.locationCacheHits = rhs.getLocationCacheHits();
+    this.locationCacheMisses = rhs.getLocationCacheMisses();
   }
 
   /**
@@ -95,6 +99,23 @@ public synchronized long getTotalEcDecodingTimeMillis() {
     return totalEcDecodingTimeMillis;
   }
 
+  /**
+   * @return The number of times the block locations of the stream were
+   * found in the location cache of the client.
+   */
+  public synchronized long getLocationCacheHits() {
+    return locationCacheHits;
+  }
+
+  /**
+   * @return The number of times the block locations of the stream were
+   * not found in the location cache of the client, and were fetched from
+   * the namenode.
+   */
+  public synchronized long getLocationCacheMisses() {
+    return locationCacheMisses;
+  }
+
   public synchronized void addRemoteBytes(long amt) {
     this.totalBytesRead += amt;
   }
@@ -121,6 +142,14 @@ public synchronized void addErasureCodingDecodingTime(long millis) {
     this.totalEcDecodingTimeMillis += millis;
   }
 
+  synchronized void addLocationCacheLookup(boolean hit) {
+    if (hit) {
+      this.locationCacheHits++;
+    } else {
+      this.locationCacheMisses++;
+    }
+  }
+
   synchronized void setBlockType(BlockType blockType) {
     this.blockType = blockType;
   }
@@ -131,5 +160,7 @@ public synchronized void clear() {
     this.totalShortCircuitBytesRead = 0;
     this.totalZeroCopyBytesRead = 0;
     this.totalEcDecodingTimeMillis = 0;
+    this.locationCacheHits = 0;
+    this.locationCacheMisses = 0;
   }
 }
@@ -143,6 +143,9 @@ public interface HdfsClientConfigKeys {
           "dfs.client.key.provider.cache.expiry";
   long    DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT =
               TimeUnit.DAYS.toMillis(10); // 10 days
+  String  DFS_CLIENT_LISTING_PREFETCH_THREADS_KEY =
+      "dfs.client.listing.prefetch.threads";
+  int     DFS_CLIENT_LISTING_PREFETCH_THREADS_DEFAULT = 0;
 
   String  DFS_DATANODE_KERBEROS_PRINCIPAL_KEY =
       "dfs.datanode.kerberos.principal";
@@ -283,6 +286,7 @@ interface Failover {
     int     CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_DEFAULT = 0;
     String  RANDOM_ORDER = PREFIX + "random.order";
     boolean RANDOM_ORDER_DEFAULT = false;
+    String  OBSERVER_NAMENODES_KEY_PREFIX = PREFIX + "observer.namenodes";
   }
 
   /** dfs.client.write configuration properties */
@@ -357,6 +361,8 @@ interface ShortCircuit {
       int     STREAMS_CACHE_SIZE_DEFAULT = 256;
       String  STREAMS_CACHE_EXPIRY_MS_KEY = PREFIX + "streams.cache.expiry.ms";
       long    STREAMS_CACHE_EXPIRY_MS_DEFAULT = 5*MINUTE;
+      String  CACHE_STRIPES_KEY = PREFIX + "cache.stripes";
+      int     CACHE_STRIPES_DEFAULT = 1;
 
       String  METRICS_SAMPLING_PERCENTAGE_KEY =
           PREFIX + "metrics.sampling.percentage";
@@ -409,6 +415,30 @@ interface StripedRead {
     int     THREADPOOL_SIZE_DEFAULT = 18;
   }
 
+  /** dfs.client.read.async configuration properties */
+  interface AsyncRead {
+    String PREFIX = Read.PREFIX + "async.";
+
+    /**
+     * The threads of the blocking reads, e.g. short-circuit and SASL reads,
+     * which queue without bound and are limited to this concurrency.
+     */
+    String  THREADPOOL_SIZE_KEY = PREFIX + "threadpool.size";
+    int     THREADPOOL_SIZE_DEFAULT = 4;
+  }
+
+  /** dfs.client.read.location-cache configuration properties */
+  interface LocationCache {
+    String PREFIX = Read.PREFIX + "location-cache.";
+
+    String  ENABLED_KEY = PREFIX + "enabled";
+    boolean ENABLED_DEFAULT = false;
+    String  SIZE_KEY = PREFIX + "size";
+    int     SIZE_DEFAULT = 1024;
+    String  EXPIRY_MS_KEY = PREFIX + "expiry.ms";
+    long    EXPIRY_MS_DEFAULT = 30 * SECOND;
+  }
+
   /** dfs.http.client configuration properties */
   interface HttpClient {
     String  PREFIX = "dfs.http.client.";
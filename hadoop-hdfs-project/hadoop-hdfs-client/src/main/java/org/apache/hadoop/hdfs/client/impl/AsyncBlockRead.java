@@ -0,0 +1,346 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtoUtil;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
+import org.apache.hadoop.hdfs.protocol.datatransfer.PacketReceiver;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ClientReadStatusProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ReadOpChecksumInfoProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
+import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.DataChecksum;
+
+/**
+ * A read of a range of a block from a DataNode, done by an
+ * {@link AsyncReadLoop} with a non-blocking socket.
+ *
+ * The read speaks the protocol of {@link BlockReaderRemote}: it sends the
+ * read request, parses the response and the packets as they arrive,
+ * verifies their checksums, copies the requested range into the target
+ * buffer and acknowledges the read, after which the connection can serve
+ * the next read. The methods are only called by the loop thread.
+ */
+class AsyncBlockRead {
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  enum State {
+    /** Sending the read request. */
+    REQUEST,
+    /** Waiting for the response to the request. */
+    RESPONSE,
+    /** Receiving the packets of the block data. */
+    PACKETS,
+    /** Sending the read status after the last packet. */
+    STATUS,
+    DONE
+  }
+
+  private final InetSocketAddress addr;
+  private final String file;
+  private final ExtendedBlock block;
+  private final long startOffset;
+  private final ByteBuffer target;
+  private final boolean verifyChecksum;
+  private final CompletableFuture<Void> future = new CompletableFuture<>();
+  private final byte[] request;
+  private final long timeoutMs;
+
+  private State state;
+  private ByteBuffer out;
+  private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private DataChecksum checksum;
+  private long lastSeqNo = -1;
+  private int bytesCopied = 0;
+  /** The bytes of input needed to parse the next message. */
+  private int needed = 0;
+  /** Whether any byte of the response was received. */
+  private boolean responded = false;
+  /** Whether the read uses a connection of an earlier read. */
+  private boolean reused = false;
+
+  /**
+   * @param target the buffer to read the range into; its remaining bytes
+   *               determine the length of the range.
+   * @param timeoutMs the time the read may make no progress before it
+   *                  fails.
+   */
+  AsyncBlockRead(InetSocketAddress addr, String file, ExtendedBlock block,
+      Token<BlockTokenIdentifier> blockToken, String clientName,
+      long startOffset, ByteBuffer target, boolean verifyChecksum,
+      CachingStrategy cachingStrategy, long timeoutMs) throws IOException {
+    this.addr = addr;
+    this.timeoutMs = timeoutMs;
+    this.file = file;
+    this.block = block;
+    this.startOffset = startOffset;
+    this.target = target.slice();
+    this.verifyChecksum = verifyChecksum;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new Sender(new DataOutputStream(bytes)).readBlock(block, blockToken,
+        clientName, startOffset, this.target.remaining(), verifyChecksum,
+        cachingStrategy);
+    this.request = bytes.toByteArray();
+    start();
+  }
+
+  /** Prepare to send the request over a new connection. */
+  void start() {
+    state = State.REQUEST;
+    out = ByteBuffer.wrap(request);
+    in.clear();
+    lastSeqNo = -1;
+    bytesCopied = 0;
+    needed = 0;
+    responded = false;
+  }
+
+  InetSocketAddress getAddress() {
+    return addr;
+  }
+
+  CompletableFuture<Void> getFuture() {
+    return future;
+  }
+
+  long getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  boolean isReused() {
+    return reused;
+  }
+
+  void setReused(boolean reused) {
+    this.reused = reused;
+  }
+
+  State getState() {
+    return state;
+  }
+
+  /** @return the bytes to send, or null if the read waits for input. */
+  ByteBuffer getOutput() {
+    return state == State.REQUEST || state == State.STATUS ? out : null;
+  }
+
+  /** The output returned by {@link #getOutput()} was sent completely. */
+  void onOutputSent() {
+    if (state == State.REQUEST) {
+      state = State.RESPONSE;
+    } else if (state == State.STATUS) {
+      state = State.DONE;
+    }
+  }
+
+  boolean hasResponded() {
+    return responded;
+  }
+
+  /**
+   * @return the buffer to receive the next input into, large enough for
+   *         the message being received.
+   */
+  ByteBuffer getInput() {
+    if (in.capacity() < needed || !in.hasRemaining()) {
+      final ByteBuffer bigger = ByteBuffer.allocate(
+          Math.max(in.capacity() * 2, needed));
+      in.flip();
+      bigger.put(in);
+      in = bigger;
+    }
+    return in;
+  }
+
+  /**
+   * Process the input received so far.
+   *
+   * @throws IOException if the DataNode failed the read or sent invalid
+   *         data, including a {@link org.apache.hadoop.fs.ChecksumException}
+   *         if the checksum of the data does not match.
+   */
+  void onInput() throws IOException {
+    responded |= in.position() > 0;
+    in.flip();
+    try {
+      boolean progress = true;
+      while (progress && in.hasRemaining()) {
+        switch (state) {
+        case RESPONSE:
+          progress = parseResponse();
+          break;
+        case PACKETS:
+          progress = parsePacket();
+          break;
+        default:
+          throw new IOException("Unexpected data from " + addr
+              + " reading " + block + " in state " + state);
+        }
+      }
+    } finally {
+      in.compact();
+    }
+  }
+
+  /** The DataNode closed the connection. */
+  void onEndOfInput() throws IOException {
+    throw new EOFException("Connection to " + addr + " closed reading "
+        + block + " in state " + state);
+  }
+
+  private boolean parseResponse() throws IOException {
+    // the response is prefixed by its length as a varint
+    int length = 0;
+    int lengthSize = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (lengthSize == in.remaining()) {
+        return false;
+      }
+      if (lengthSize == 5) {
+        throw new IOException("Malformed response length from " + addr);
+      }
+      final byte b = in.get(in.position() + lengthSize++);
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    if (in.remaining() < lengthSize + length) {
+      needed = lengthSize + length;
+      return false;
+    }
+    in.position(in.position() + lengthSize);
+    final byte[] bytes = new byte[length];
+    in.get(bytes);
+    final BlockOpResponseProto response = BlockOpResponseProto.parseFrom(
+        bytes);
+    DataTransferProtoUtil.checkBlockOpStatus(response,
+        "for OP_READ_BLOCK, self=" + addr + ", remote=" + addr + ", for file "
+            + file + ", for pool " + block.getBlockPoolId() + " block "
+            + block.getBlockId() + "_" + block.getGenerationStamp());
+    final ReadOpChecksumInfoProto checksumInfo =
+        response.getReadOpChecksumInfo();
+    checksum = DataTransferProtoUtil.fromProto(checksumInfo.getChecksum());
+    final long firstChunkOffset = checksumInfo.getChunkOffset();
+    if (firstChunkOffset < 0 || firstChunkOffset > startOffset ||
+        firstChunkOffset <= startOffset - checksum.getBytesPerChecksum()) {
+      throw new IOException("Error in first chunk offset ("
+          + firstChunkOffset + ") startOffset is " + startOffset
+          + " for file " + file);
+    }
+    state = State.PACKETS;
+    return true;
+  }
+
+  private boolean parsePacket() throws IOException {
+    if (in.remaining() < PacketHeader.PKT_LENGTHS_LEN) {
+      return false;
+    }
+    final int payloadLen = in.getInt(in.position());
+    final int headerLen = in.getShort(in.position() + Integer.BYTES);
+    if (payloadLen < Integer.BYTES || headerLen < 0 ||
+        payloadLen + headerLen > PacketReceiver.MAX_PACKET_SIZE) {
+      throw new IOException("Invalid packet lengths " + payloadLen + ", "
+          + headerLen + " from " + addr);
+    }
+    final int dataPlusChecksumLen = payloadLen - Integer.BYTES;
+    final int packetLen =
+        PacketHeader.PKT_LENGTHS_LEN + headerLen + dataPlusChecksumLen;
+    if (in.remaining() < packetLen) {
+      needed = packetLen;
+      return false;
+    }
+    final int packetEnd = in.position() + packetLen;
+    in.position(in.position() + PacketHeader.PKT_LENGTHS_LEN);
+    final byte[] headerBytes = new byte[headerLen];
+    in.get(headerBytes);
+    final PacketHeader header = new PacketHeader();
+    header.setFieldsFromData(payloadLen, headerBytes);
+    final int dataLen = header.getDataLen();
+    final int checksumLen = dataPlusChecksumLen - dataLen;
+    if (checksumLen < 0 || !header.sanityCheck(lastSeqNo)) {
+      throw new IOException("Error in packet header " + header + " from "
+          + addr);
+    }
+
+    if (dataLen > 0) {
+      lastSeqNo = header.getSeqno();
+      final ByteBuffer checksums = in.slice();
+      checksums.limit(checksumLen);
+      in.position(in.position() + checksumLen);
+      final ByteBuffer data = in.slice();
+      data.limit(dataLen);
+      if (verifyChecksum) {
+        checksum.verifyChunkedSums(data, checksums, file,
+            header.getOffsetInBlock());
+      }
+      copy(header.getOffsetInBlock(), data);
+    }
+    in.position(packetEnd);
+
+    if (header.isLastPacketInBlock()) {
+      if (bytesCopied != target.limit()) {
+        throw new IOException("Premature end of block " + block + " from "
+            + addr + ": read " + bytesCopied + " of " + target.limit()
+            + " bytes");
+      }
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ClientReadStatusProto.newBuilder()
+          .setStatus(verifyChecksum ? Status.CHECKSUM_OK : Status.SUCCESS)
+          .build().writeDelimitedTo(bytes);
+      out = ByteBuffer.wrap(bytes.toByteArray());
+      state = State.STATUS;
+    }
+    return true;
+  }
+
+  /** Copy the part of a packet in the requested range to the target. */
+  private void copy(long packetOffset, ByteBuffer data) {
+    final long from = Math.max(packetOffset, startOffset);
+    final long to = Math.min(packetOffset + data.remaining(),
+        startOffset + target.limit());
+    if (to <= from) {
+      return;
+    }
+    data.position((int) (from - packetOffset));
+    data.limit((int) (to - packetOffset));
+    final ByteBuffer dst = target.duplicate();
+    dst.position((int) (from - startOffset));
+    dst.put(data);
+    bytesCopied += (int) (to - from);
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncBlockRead(" + block + ", offset=" + startOffset
+        + ", length=" + target.limit() + ", from " + addr + ")";
+  }
+}
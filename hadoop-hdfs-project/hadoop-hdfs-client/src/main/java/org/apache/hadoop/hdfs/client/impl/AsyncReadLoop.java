@@ -0,0 +1,372 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
+import org.apache.hadoop.hdfs.server.datanode.CachingStrategy;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the asynchronous positional reads of the DFSInputStreams of a
+ * process with a handful of threads.
+ *
+ * Reads of a block range from a DataNode over plain TCP are done by a
+ * single thread with non-blocking sockets, see {@link AsyncBlockRead}, so
+ * that thousands of them can be in flight without a thread each. Like the
+ * {@link org.apache.hadoop.hdfs.PeerCache}, the loop keeps the connections
+ * of completed reads for a while to serve later reads from the same
+ * DataNode. Reads the loop cannot do, like short-circuit reads, reads
+ * which need a SASL handshake and the retries of failed reads, run with
+ * the blocking code on a bounded pool of threads instead.
+ */
+@InterfaceAudience.Private
+public class AsyncReadLoop implements Runnable {
+  static final Logger LOG = LoggerFactory.getLogger(AsyncReadLoop.class);
+
+  /** An open connection kept for the next read from its DataNode. */
+  private static final class IdleChannel {
+    private final SocketChannel channel;
+    private final long expiry;
+
+    private IdleChannel(SocketChannel channel, long expiry) {
+      this.channel = channel;
+      this.expiry = expiry;
+    }
+  }
+
+  private final Selector selector;
+  private final ThreadPoolExecutor executor;
+  private final int maxIdlePerAddress;
+  private final long idleExpiryMs;
+  private final boolean tcpNoDelay;
+  /** Reads to start, added by the callers. */
+  private final Queue<AsyncBlockRead> newReads =
+      new ConcurrentLinkedQueue<>();
+  // The following are only used by the loop thread.
+  private final Map<InetSocketAddress, Deque<IdleChannel>> idle =
+      new HashMap<>();
+  /** The time each read in progress times out if it makes no progress. */
+  private final Map<SelectionKey, Long> deadlines = new HashMap<>();
+  private long nextTimeoutCheck = 0;
+  private final Daemon thread;
+
+  /**
+   * @param numThreads the number of threads for the blocking reads.
+   * @param maxIdlePerAddress the maximum number of idle connections kept
+   *                          per DataNode.
+   * @param idleExpiryMs the time to keep an idle connection.
+   */
+  public AsyncReadLoop(int numThreads, int maxIdlePerAddress,
+      long idleExpiryMs, boolean tcpNoDelay) throws IOException {
+    this.selector = Selector.open();
+    this.executor = new ThreadPoolExecutor(numThreads, numThreads,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("AsyncRead-%d").build());
+    this.executor.allowCoreThreadTimeOut(true);
+    this.maxIdlePerAddress = maxIdlePerAddress;
+    this.idleExpiryMs = idleExpiryMs;
+    this.tcpNoDelay = tcpNoDelay;
+    this.thread = new Daemon(this);
+    this.thread.setName("AsyncReadLoop");
+    this.thread.start();
+  }
+
+  /**
+   * Run a blocking read on the thread pool.
+   *
+   * @return a future completed with the result of the task.
+   */
+  public <T> CompletableFuture<T> submit(Callable<T> task) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    executor.execute(() -> {
+      try {
+        result.complete(task.call());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Read a range of a block from a DataNode without blocking. The returned
+   * future is completed by the loop thread.
+   *
+   * @param target the buffer to read into; its remaining bytes determine
+   *               the length of the range. Its position is not changed.
+   * @return a future completed when the range was read into the buffer.
+   */
+  public CompletableFuture<Void> read(InetSocketAddress addr, String file,
+      ExtendedBlock block, Token<BlockTokenIdentifier> blockToken,
+      String clientName, long startOffset, ByteBuffer target,
+      boolean verifyChecksum, CachingStrategy cachingStrategy,
+      long timeoutMs) {
+    final AsyncBlockRead read;
+    try {
+      read = new AsyncBlockRead(addr, file, block, blockToken, clientName,
+          startOffset, target, verifyChecksum, cachingStrategy, timeoutMs);
+    } catch (IOException e) {
+      final CompletableFuture<Void> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+    newReads.add(read);
+    selector.wakeup();
+    return read.getFuture();
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        startNewReads();
+        selector.select(1000);
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          if (key.isValid()) {
+            if (key.attachment() instanceof AsyncBlockRead) {
+              process(key);
+            } else {
+              // an idle connection is only readable if the DataNode
+              // closed it
+              closeIdle(key);
+            }
+          }
+        }
+        checkTimeouts();
+      } catch (Throwable t) {
+        LOG.error("Error in the async read loop", t);
+      }
+    }
+  }
+
+  private void startNewReads() {
+    AsyncBlockRead read;
+    while ((read = newReads.poll()) != null) {
+      SocketChannel channel = takeIdle(read.getAddress());
+      read.setReused(channel != null);
+      try {
+        if (channel == null) {
+          channel = connect(read, read.getAddress());
+        } else {
+          register(channel, read, SelectionKey.OP_WRITE);
+        }
+      } catch (IOException | RuntimeException e) {
+        IOUtils.cleanupWithLogger(LOG, channel);
+        read.getFuture().completeExceptionally(e);
+      }
+    }
+  }
+
+  private SocketChannel connect(AsyncBlockRead read, InetSocketAddress addr)
+      throws IOException {
+    final SocketChannel channel = SocketChannel.open();
+    try {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(tcpNoDelay);
+      final boolean connected = channel.connect(addr);
+      register(channel, read,
+          connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT);
+      return channel;
+    } catch (IOException | RuntimeException e) {
+      IOUtils.cleanupWithLogger(LOG, channel);
+      throw e;
+    }
+  }
+
+  private void register(SocketChannel channel, AsyncBlockRead read, int ops)
+      throws IOException {
+    final SelectionKey key = channel.keyFor(selector);
+    final SelectionKey registered;
+    if (key == null) {
+      registered = channel.register(selector, ops, read);
+    } else {
+      key.attach(read);
+      key.interestOps(ops);
+      registered = key;
+    }
+    deadlines.put(registered, Time.monotonicNow() + read.getTimeoutMs());
+  }
+
+  private void process(SelectionKey key) {
+    final AsyncBlockRead read = (AsyncBlockRead) key.attachment();
+    final SocketChannel channel = (SocketChannel) key.channel();
+    try {
+      if (key.isConnectable()) {
+        channel.finishConnect();
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+      if (key.isValid() && key.isWritable()) {
+        final ByteBuffer out = read.getOutput();
+        channel.write(out);
+        if (!out.hasRemaining()) {
+          read.onOutputSent();
+          if (read.getState() == AsyncBlockRead.State.DONE) {
+            finish(key, read);
+            return;
+          }
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+      if (key.isValid() && key.isReadable()) {
+        final int n = channel.read(read.getInput());
+        if (n < 0) {
+          read.onEndOfInput();
+        }
+        read.onInput();
+        if (read.getOutput() != null) {
+          key.interestOps(SelectionKey.OP_WRITE);
+        }
+      }
+      deadlines.put(key, Time.monotonicNow() + read.getTimeoutMs());
+    } catch (IOException | RuntimeException e) {
+      fail(key, read, e);
+    }
+  }
+
+  private void finish(SelectionKey key, AsyncBlockRead read) {
+    deadlines.remove(key);
+    final Deque<IdleChannel> channels = idle.computeIfAbsent(
+        read.getAddress(), k -> new ArrayDeque<>());
+    if (channels.size() < maxIdlePerAddress) {
+      key.attach(read.getAddress());
+      key.interestOps(SelectionKey.OP_READ);
+      channels.addLast(new IdleChannel((SocketChannel) key.channel(),
+          Time.monotonicNow() + idleExpiryMs));
+    } else {
+      close(key);
+    }
+    read.getFuture().complete(null);
+  }
+
+  private void fail(SelectionKey key, AsyncBlockRead read, Exception e) {
+    deadlines.remove(key);
+    close(key);
+    if (read.isReused() && !read.hasResponded()) {
+      // the DataNode may have closed an idle connection just before it
+      // was reused, so retry on a new one
+      LOG.debug("Retrying {} on a new connection", read, e);
+      read.start();
+      read.setReused(false);
+      try {
+        connect(read, read.getAddress());
+        return;
+      } catch (IOException | RuntimeException ce) {
+        e = ce;
+      }
+    }
+    LOG.debug("Failed {}", read, e);
+    read.getFuture().completeExceptionally(e);
+  }
+
+  /** @return an idle connection to the address, or null if none. */
+  private SocketChannel takeIdle(InetSocketAddress addr) {
+    final Deque<IdleChannel> channels = idle.get(addr);
+    if (channels == null) {
+      return null;
+    }
+    final long now = Time.monotonicNow();
+    IdleChannel c;
+    while ((c = channels.pollLast()) != null) {
+      if (c.expiry > now && c.channel.isOpen()) {
+        return c.channel;
+      }
+      close(c.channel.keyFor(selector));
+    }
+    return null;
+  }
+
+  private void closeIdle(SelectionKey key) {
+    final Deque<IdleChannel> channels = idle.get(key.attachment());
+    if (channels != null) {
+      channels.removeIf(c -> c.channel == key.channel());
+    }
+    close(key);
+  }
+
+  private void checkTimeouts() {
+    final long now = Time.monotonicNow();
+    if (now < nextTimeoutCheck) {
+      return;
+    }
+    nextTimeoutCheck = now + 1000;
+    for (Iterator<Map.Entry<SelectionKey, Long>> it =
+        deadlines.entrySet().iterator(); it.hasNext();) {
+      final Map.Entry<SelectionKey, Long> e = it.next();
+      if (e.getValue() <= now) {
+        it.remove();
+        final SelectionKey key = e.getKey();
+        final AsyncBlockRead read = (AsyncBlockRead) key.attachment();
+        close(key);
+        read.getFuture().completeExceptionally(new SocketTimeoutException(
+            read.getTimeoutMs() + " millis timeout while waiting for "
+                + read));
+      }
+    }
+    for (Iterator<Deque<IdleChannel>> it = idle.values().iterator();
+        it.hasNext();) {
+      final Deque<IdleChannel> channels = it.next();
+      while (!channels.isEmpty() && channels.peekFirst().expiry <= now) {
+        close(channels.pollFirst().channel.keyFor(selector));
+      }
+      if (channels.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  private static void close(SelectionKey key) {
+    if (key != null) {
+      key.cancel();
+      IOUtils.cleanupWithLogger(LOG, key.channel());
+    }
+  }
+}
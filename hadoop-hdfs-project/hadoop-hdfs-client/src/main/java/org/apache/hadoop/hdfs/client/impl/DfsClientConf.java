@@ -141,6 +141,11 @@ public class DfsClientConf {
       replicaAccessorBuilderClasses;
 
   private final int stripedReadThreadpoolSize;
+  private final int asyncReadThreadpoolSize;
+  private final boolean locationCacheEnabled;
+  private final int locationCacheSize;
+  private final long locationCacheExpiryMs;
+  private final int listingPrefetchThreads;
 
   private final boolean dataTransferTcpNoDelay;
 
@@ -264,6 +269,30 @@ public DfsClientConf(Configuration conf) {
     Preconditions.checkArgument(stripedReadThreadpoolSize > 0, "The value of " +
         HdfsClientConfigKeys.StripedRead.THREADPOOL_SIZE_KEY +
         " must be greater than 0.");
+    asyncReadThreadpoolSize = conf.getInt(
+        HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_KEY,
+        HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_DEFAULT);
+    Preconditions.checkArgument(asyncReadThreadpoolSize > 0, "The value of " +
+        HdfsClientConfigKeys.AsyncRead.THREADPOOL_SIZE_KEY +
+        " must be greater than 0.");
+    locationCacheEnabled = conf.getBoolean(
+        HdfsClientConfigKeys.LocationCache.ENABLED_KEY,
+        HdfsClientConfigKeys.LocationCache.ENABLED_DEFAULT);
+    locationCacheSize = conf.getInt(
+        HdfsClientConfigKeys.LocationCache.SIZE_KEY,
+        HdfsClientConfigKeys.LocationCache.SIZE_DEFAULT);
+    Preconditions.checkArgument(locationCacheSize > 0, "The value of " +
+        HdfsClientConfigKeys.LocationCache.SIZE_KEY +
+        " must be greater than 0.");
+    locationCacheExpiryMs = conf.getLong(
+        HdfsClientConfigKeys.LocationCache.EXPIRY_MS_KEY,
+        HdfsClientConfigKeys.LocationCache.EXPIRY_MS_DEFAULT);
+    Preconditions.checkArgument(locationCacheExpiryMs > 0, "The value of " +
+        HdfsClientConfigKeys.LocationCache.EXPIRY_MS_KEY +
+        " must be greater than 0.");
+    listingPrefetchThreads = conf.getInt(
+        HdfsClientConfigKeys.DFS_CLIENT_LISTING_PREFETCH_THREADS_KEY,
+        HdfsClientConfigKeys.DFS_CLIENT_LISTING_PREFETCH_THREADS_DEFAULT);
     replicaAccessorBuilderClasses = loadReplicaAccessorBuilderClasses(conf);
   }
 
@@ -587,6 +616,41 @@ public int getStripedReadThreadpoolSize() {
     return stripedReadThreadpoolSize;
   }
 
+  /**
+   * @return the asyncReadThreadpoolSize
+   */
+  public int getAsyncReadThreadpoolSize() {
+    return asyncReadThreadpoolSize;
+  }
+
+  /**
+   * @return whether open() uses the cache of block locations
+   */
+  public boolean isLocationCacheEnabled() {
+    return locationCacheEnabled;
+  }
+
+  /**
+   * @return the locationCacheSize
+   */
+  public int getLocationCacheSize() {
+    return locationCacheSize;
+  }
+
+  /**
+   * @return the locationCacheExpiryMs
+   */
+  public long getLocationCacheExpiryMs() {
+    return locationCacheExpiryMs;
+  }
+
+  /**
+   * @return the listingPrefetchThreads
+   */
+  public int getListingPrefetchThreads() {
+    return listingPrefetchThreads;
+  }
+
   /**
    * @return the replicaAccessorBuilderClasses
    */
@@ -620,6 +684,7 @@ public static class ShortCircuitConf {
     private final boolean domainSocketDataTraffic;
     private final int shortCircuitStreamsCacheSize;
     private final long shortCircuitStreamsCacheExpiryMs;
+    private final int shortCircuitCacheStripes;
     private final int shortCircuitSharedMemoryWatcherInterruptCheckMs;
 
     // Short Circuit Read Metrics
@@ -691,6 +756,11 @@ public ShortCircuitConf(Configuration conf) {
       shortCircuitStreamsCacheExpiryMs = conf.getLong(
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_KEY,
           Read.ShortCircuit.STREAMS_CACHE_EXPIRY_MS_DEFAULT);
+      shortCircuitCacheStripes = conf.getInt(
+          Read.ShortCircuit.CACHE_STRIPES_KEY,
+          Read.ShortCircuit.CACHE_STRIPES_DEFAULT);
+      Preconditions.checkArgument(shortCircuitCacheStripes > 0,
+          Read.ShortCircuit.CACHE_STRIPES_KEY + " must be positive.");
       shortCircuitMmapEnabled = conf.getBoolean(
           Mmap.ENABLED_KEY,
           Mmap.ENABLED_DEFAULT);
@@ -786,6 +856,13 @@ public long getShortCircuitStreamsCacheExpiryMs() {
       return shortCircuitStreamsCacheExpiryMs;
     }
 
+    /**
+     * @return the shortCircuitCacheStripes
+     */
+    public int getShortCircuitCacheStripes() {
+      return shortCircuitCacheStripes;
+    }
+
     /**
      * @return the shortCircuitSharedMemoryWatcherInterruptCheckMs
      */
@@ -848,6 +925,8 @@ public String confAsString() {
           + shortCircuitStreamsCacheSize
           + ", shortCircuitStreamsCacheExpiryMs = "
           + shortCircuitStreamsCacheExpiryMs
+          + ", shortCircuitCacheStripes = "
+          + shortCircuitCacheStripes
           + ", shortCircuitMmapCacheSize = "
           + shortCircuitMmapCacheSize
           + ", shortCircuitMmapCacheExpiryMs = "
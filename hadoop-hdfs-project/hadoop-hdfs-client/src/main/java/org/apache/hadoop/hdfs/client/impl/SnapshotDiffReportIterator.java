@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
+import org.apache.hadoop.util.ChunkedArrayList;
+
+/**
+ * Generates the entries of a snapshot diff report from the listings of the
+ * diff, one listing at a time, so that the memory used does not grow with
+ * the size of the diff like with {@link SnapshotDiffReportGenerator}.
+ *
+ * The listings come in path order and carry the target of each rename with
+ * its source, so all entries but one kind can be generated from the
+ * listing they are in. A created reference is only reported if it is not
+ * the target of a rename in the diff. If the rename has not been listed
+ * yet, the entry is kept and reported after the last listing if no rename
+ * turns up. Besides the current listing, the iterator only keeps these
+ * entries and the ids of the renamed inodes.
+ */
+public class SnapshotDiffReportIterator
+    implements RemoteIterator<DiffReportEntry> {
+
+  private final RemoteIterator<SnapshotDiffReportListing> listings;
+  /** The inodes renamed in the listings so far. */
+  private final Set<Long> renamed = new HashSet<>();
+  /** Created references whose rename may be in a later listing. */
+  private final List<DiffReportListingEntry> pendingCreated =
+      new ChunkedArrayList<>();
+  private boolean isFromEarlier = true;
+  private boolean pendingReported = false;
+  private Iterator<DiffReportEntry> entries = Collections.emptyIterator();
+
+  public SnapshotDiffReportIterator(
+      RemoteIterator<SnapshotDiffReportListing> listings) {
+    this.listings = listings;
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    while (!entries.hasNext()) {
+      if (listings.hasNext()) {
+        entries = generate(listings.next()).iterator();
+      } else if (!pendingReported) {
+        pendingReported = true;
+        entries = generatePending().iterator();
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public DiffReportEntry next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more snapshot diff entries");
+    }
+    return entries.next();
+  }
+
+  /** The created and deleted children of a directory in a listing. */
+  private static final class Children {
+    private final List<DiffReportListingEntry> created = new ArrayList<>();
+    private final List<DiffReportListingEntry> deleted = new ArrayList<>();
+  }
+
+  /** @return the report entries of a listing, in report order. */
+  private List<DiffReportEntry> generate(SnapshotDiffReportListing listing) {
+    isFromEarlier = listing.getIsFromEarlier();
+    final Map<Long, Children> children = new LinkedHashMap<>();
+    for (DiffReportListingEntry created : listing.getCreateList()) {
+      getChildren(children, created).created.add(created);
+    }
+    for (DiffReportListingEntry deleted : listing.getDeleteList()) {
+      getChildren(children, deleted).deleted.add(deleted);
+      if (deleted.isReference()) {
+        renamed.add(deleted.getFileId());
+      }
+    }
+
+    final List<DiffReportListingEntry> modified =
+        new ArrayList<>(listing.getModifyList());
+    modified.sort(SnapshotDiffReportGenerator.INODE_COMPARATOR);
+    final Set<Long> modifiedDirs = new HashSet<>();
+    for (DiffReportListingEntry m : modified) {
+      if (m.isReference()) {
+        modifiedDirs.add(m.getDirId());
+      }
+    }
+    final List<DiffReportEntry> result = new ChunkedArrayList<>();
+    // A directory whose children did not all fit into the previous listing
+    // was reported there, so its remaining children come first.
+    for (Map.Entry<Long, Children> e : children.entrySet()) {
+      if (!modifiedDirs.contains(e.getKey())) {
+        generateChildren(e.getValue(), result);
+      }
+    }
+    for (DiffReportListingEntry m : modified) {
+      result.add(new DiffReportEntry(DiffType.MODIFY, m.getSourcePath(),
+          null));
+      final Children c = children.get(m.getDirId());
+      if (m.isReference() && c != null) {
+        generateChildren(c, result);
+      }
+    }
+    return result;
+  }
+
+  private static Children getChildren(Map<Long, Children> children,
+      DiffReportListingEntry entry) {
+    return children.computeIfAbsent(entry.getDirId(), k -> new Children());
+  }
+
+  /**
+   * Generate the entries of the children of a directory, created ones
+   * first, as in {@link SnapshotDiffReportGenerator#generateReport()}.
+   */
+  private void generateChildren(Children c, List<DiffReportEntry> result) {
+    for (DiffReportListingEntry created : c.created) {
+      if (!created.isReference()) {
+        result.add(created(created));
+      } else if (!renamed.contains(created.getFileId())) {
+        pendingCreated.add(created);
+      }
+    }
+    for (DiffReportListingEntry deleted : c.deleted) {
+      if (deleted.isReference()) {
+        final byte[][] source = deleted.getSourcePath();
+        final byte[][] target = deleted.getTargetPath();
+        result.add(new DiffReportEntry(DiffType.RENAME,
+            isFromEarlier ? source : target, isFromEarlier ? target : source));
+      } else {
+        result.add(new DiffReportEntry(
+            isFromEarlier ? DiffType.DELETE : DiffType.CREATE,
+            deleted.getSourcePath()));
+      }
+    }
+  }
+
+  private DiffReportEntry created(DiffReportListingEntry entry) {
+    return new DiffReportEntry(
+        isFromEarlier ? DiffType.CREATE : DiffType.DELETE,
+        entry.getSourcePath());
+  }
+
+  /** @return the created references which turned out not to be renames. */
+  private List<DiffReportEntry> generatePending() {
+    final List<DiffReportEntry> result = new ChunkedArrayList<>();
+    for (DiffReportListingEntry entry : pendingCreated) {
+      if (!renamed.contains(entry.getFileId())) {
+        result.add(created(entry));
+      }
+    }
+    pendingCreated.clear();
+    renamed.clear();
+    return result;
+  }
+}
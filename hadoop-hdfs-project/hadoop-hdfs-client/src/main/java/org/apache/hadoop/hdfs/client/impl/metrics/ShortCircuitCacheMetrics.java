@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client.impl.metrics;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitCache;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * Exposes the hit, miss and eviction counts of the short-circuit cache of a
+ * client context, summed over its stripes.
+ */
+@InterfaceAudience.Private
+public class ShortCircuitCacheMetrics implements MetricsSource {
+
+  private static final MetricsInfo SHORT_CIRCUIT_CACHE_METRICS_INFO =
+      info("ShortCircuitCache", "Short-circuit cache of a client context");
+  private static final MetricsInfo CONTEXT_INFO =
+      info("Context", "Name of the client context");
+
+  private final String contextName;
+  private final List<ShortCircuitCache> caches;
+
+  private ShortCircuitCacheMetrics(String contextName,
+      List<ShortCircuitCache> caches) {
+    this.contextName = contextName;
+    this.caches = caches;
+  }
+
+  /**
+   * Registers the metrics of the short-circuit cache of a client context.
+   *
+   * @param contextName the name of the client context
+   * @param caches the stripes of the short-circuit cache
+   * @return the registered metrics
+   */
+  public static ShortCircuitCacheMetrics create(String contextName,
+      List<ShortCircuitCache> caches) {
+    ShortCircuitCacheMetrics metrics =
+        new ShortCircuitCacheMetrics(contextName, caches);
+    DefaultMetricsSystem.instance().register(
+        SHORT_CIRCUIT_CACHE_METRICS_INFO.name() + "-" + contextName,
+        SHORT_CIRCUIT_CACHE_METRICS_INFO.description(), metrics);
+    return metrics;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    long replicaHits = 0;
+    long replicaMisses = 0;
+    long replicaEvictions = 0;
+    long mmapReuses = 0;
+    long mmapCreates = 0;
+    long mmapDemotions = 0;
+    for (ShortCircuitCache cache : caches) {
+      replicaHits += cache.getReplicaHitCount();
+      replicaMisses += cache.getReplicaMissCount();
+      replicaEvictions += cache.getReplicaEvictionCount();
+      mmapReuses += cache.getMmapReuseCount();
+      mmapCreates += cache.getMmapCreateCount();
+      mmapDemotions += cache.getMmapDemotionCount();
+    }
+    collector.addRecord(SHORT_CIRCUIT_CACHE_METRICS_INFO)
+        .setContext("dfs")
+        .tag(CONTEXT_INFO, contextName)
+        .addCounter(info("ReplicaHits",
+            "Lookups which found a usable replica in the cache"), replicaHits)
+        .addCounter(info("ReplicaMisses",
+            "Lookups which had to create the replica"), replicaMisses)
+        .addCounter(info("ReplicaEvictions",
+            "Replicas evicted from the cache"), replicaEvictions)
+        .addCounter(info("MmapReuses",
+            "Client mmaps which reused the mmap of a replica"), mmapReuses)
+        .addCounter(info("MmapCreates", "Mmaps created"), mmapCreates)
+        .addCounter(info("MmapDemotions",
+            "Mmaps unmapped while their replicas stayed in the cache"),
+            mmapDemotions);
+  }
+}
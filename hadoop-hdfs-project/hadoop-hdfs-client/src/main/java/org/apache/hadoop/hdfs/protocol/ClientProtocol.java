@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSelector;
+import org.apache.hadoop.hdfs.server.namenode.ha.ReadOnly;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorageReport;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
@@ -128,6 +129,7 @@ public interface ClientProtocol {
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws IOException;
 
@@ -319,6 +321,7 @@ void setStoragePolicy(String src, String policyName)
    *           If file/dir <code>src</code> is not found
    */
   @Idempotent
+  @ReadOnly
   BlockStoragePolicy getStoragePolicy(String path) throws IOException;
 
   /**
@@ -685,6 +688,7 @@ boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
@@ -817,6 +821,7 @@ DatanodeStorageReport[] getDatanodeStorageReport(
    *           a symlink.
    */
   @Idempotent
+  @ReadOnly
   long getPreferredBlockSize(String filename)
       throws IOException;
 
@@ -1005,6 +1010,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileInfo(String src) throws IOException;
 
   /**
@@ -1019,6 +1025,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   boolean isFileClosed(String src) throws IOException;
 
   /**
@@ -1035,6 +1042,7 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsFileStatus getFileLinkInfo(String src) throws IOException;
 
   /**
@@ -1049,9 +1057,31 @@ CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   HdfsLocatedFileStatus getLocatedFileInfo(String src, boolean needBlockToken)
       throws IOException;
 
+  /**
+   * Get the file info of several files or directories under one lock hold,
+   * with the {@link LocatedBlocks} of files if requested. The NameNode
+   * returns the file info of at most as many paths as it lists directory
+   * entries in one call; the client asks for the remaining paths again.
+   * @param srcs The string representations of the paths
+   * @param needLocation if the file info of files should include their
+   *          {@link LocatedBlocks}
+   * @return the file info of the first paths in order, with null for a
+   *         path which is not found
+   * @throws org.apache.hadoop.security.AccessControlException permission
+   *           denied for any of the paths
+   * @throws org.apache.hadoop.fs.UnresolvedLinkException if a path contains
+   *           a symlink.
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly
+  HdfsFileStatus[] getBatchedFileInfo(String[] srcs, boolean needLocation)
+      throws IOException;
+
   /**
    * Get {@link ContentSummary} rooted at the specified directory.
    * @param path The string representation of the path
@@ -1063,6 +1093,7 @@ HdfsLocatedFileStatus getLocatedFileInfo(String src, boolean needBlockToken)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   ContentSummary getContentSummary(String path) throws IOException;
 
   /**
@@ -1175,6 +1206,7 @@ void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   String getLinkTarget(String path) throws IOException;
 
   /**
@@ -1473,6 +1505,7 @@ void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   AclStatus getAclStatus(String src) throws IOException;
 
   /**
@@ -1554,6 +1587,7 @@ void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
       throws IOException;
 
@@ -1569,6 +1603,7 @@ List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   List<XAttr> listXAttrs(String src)
       throws IOException;
 
@@ -1713,6 +1748,7 @@ AddErasureCodingPolicyResponse[] addErasureCodingPolicies(
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   QuotaUsage getQuotaUsage(String path) throws IOException;
 
   /**
@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.util.DirectBufferPool;
@@ -200,6 +201,18 @@ public void mirrorPacketTo(DataOutputStream mirrorOut) throws IOException {
         curPacketBuf.remaining());
   }
 
+  /**
+   * Rewrite the last-read packet on the wire to the given channel. Unlike
+   * {@link #mirrorPacketTo(DataOutputStream)}, this supports direct buffers,
+   * which are written to the channel without being copied.
+   */
+  public void mirrorPacketTo(WritableByteChannel mirror) throws IOException {
+    ByteBuffer buf = curPacketBuf.duplicate();
+    while (buf.hasRemaining()) {
+      mirror.write(buf);
+    }
+  }
+
 
   private static void doReadFully(ReadableByteChannel ch, InputStream in,
       ByteBuffer buf) throws IOException {
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.StandbyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_NAMENODE_RPC_ADDRESS_KEY;
+
+/**
+ * A {@link ConfiguredFailoverProxyProvider} which sends read operations,
+ * i.e. methods annotated with {@link ReadOnly}, to observer namenodes and
+ * everything else to the active namenode.
+ * <p>
+ * The observers of a nameservice are listed by namenode id in
+ * {@link HdfsClientConfigKeys.Failover#OBSERVER_NAMENODES_KEY_PREFIX}
+ * .&lt;nameservice&gt;; the remaining namenodes take part in regular
+ * failover. Each request carries the id of the last transaction this client
+ * has seen, so an observer only answers once it has caught up with it and
+ * the client reads its own writes. The first read, made before any state has
+ * been seen, goes to the active namenode. Reads rejected by all observers,
+ * e.g. because they lag behind, are retried on the active namenode.
+ */
+public class ObserverReadProxyProvider<T> extends
+    ConfiguredFailoverProxyProvider<T> {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(ObserverReadProxyProvider.class);
+
+  private final ClientGSIContext alignmentContext = new ClientGSIContext();
+  private final List<AddressRpcProxyPair<T>> observers = new ArrayList<>();
+  private final AtomicInteger nextObserver = new AtomicInteger();
+  /**
+   * The proxy routing to the observers and the current active namenode,
+   * recreated only when the active namenode changes.
+   */
+  private ProxyInfo<T> routingProxy;
+  private T routingProxyActive;
+
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface, HAProxyFactory<T> factory) {
+    super(conf, uri, xface, factory);
+
+    Collection<String> observerIds = conf.getTrimmedStringCollection(
+        HdfsClientConfigKeys.Failover.OBSERVER_NAMENODES_KEY_PREFIX + "."
+            + uri.getHost());
+    Map<String, InetSocketAddress> addressesInNN = DFSUtilClient
+        .getAddresses(conf, null, DFS_NAMENODE_RPC_ADDRESS_KEY)
+        .get(uri.getHost());
+    Set<InetSocketAddress> observerAddresses = new HashSet<>();
+    for (String nnId : observerIds) {
+      InetSocketAddress address = addressesInNN.get(nnId);
+      if (address == null) {
+        throw new RuntimeException("Observer namenode " + nnId
+            + " is not configured for URI " + uri);
+      }
+      observerAddresses.add(address);
+    }
+    // observers never become active, keep them out of the failover rotation
+    for (Iterator<AddressRpcProxyPair<T>> it = proxies.iterator();
+         it.hasNext();) {
+      AddressRpcProxyPair<T> pair = it.next();
+      if (observerAddresses.contains(pair.address)) {
+        observers.add(pair);
+        it.remove();
+      }
+    }
+    if (proxies.isEmpty()) {
+      throw new RuntimeException("No non-observer namenode configured for URI "
+          + uri);
+    }
+    LOG.debug("Using observers {} for {}", observerIds, uri);
+  }
+
+  @VisibleForTesting
+  public ClientGSIContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    ProxyInfo<T> active = super.getProxy();
+    if (routingProxy == null || routingProxyActive != active.proxy) {
+      T proxy = (T) Proxy.newProxyInstance(
+          ObserverReadInvocationHandler.class.getClassLoader(),
+          new Class<?>[] {xface}, new ObserverReadInvocationHandler(active));
+      routingProxy = new ProxyInfo<>(proxy, active.proxyInfo);
+      routingProxyActive = active.proxy;
+    }
+    return routingProxy;
+  }
+
+  private synchronized ProxyInfo<T> getObserverProxy(int index) {
+    return getProxy(observers.get(index));
+  }
+
+  /**
+   * Routes {@link ReadOnly} methods to the observers, falling back to the
+   * active namenode, and all other methods to the active namenode.
+   */
+  private class ObserverReadInvocationHandler implements InvocationHandler {
+    private final ProxyInfo<T> active;
+
+    ObserverReadInvocationHandler(ProxyInfo<T> active) {
+      this.active = active;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return method.invoke(active.proxy, args);
+      }
+      if (method.isAnnotationPresent(ReadOnly.class)
+          && alignmentContext.hasSeenState() && !observers.isEmpty()) {
+        int start = nextObserver.getAndIncrement();
+        for (int i = 0; i < observers.size(); i++) {
+          ProxyInfo<T> observer =
+              getObserverProxy(Math.floorMod(start + i, observers.size()));
+          try {
+            return invoke(observer, method, args);
+          } catch (IOException e) {
+            if (!shouldRetryOnActive(e)) {
+              throw e;
+            }
+            LOG.debug("Read {} rejected by observer {}, trying next",
+                method.getName(), observer.proxyInfo, e);
+          }
+        }
+      }
+      return invoke(active, method, args);
+    }
+
+    private Object invoke(ProxyInfo<T> target, Method method, Object[] args)
+        throws Throwable {
+      Client.setAlignmentContext(alignmentContext);
+      try {
+        return method.invoke(target.proxy, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      } finally {
+        Client.setAlignmentContext(null);
+      }
+    }
+  }
+
+  /**
+   * An observer's answer is authoritative unless it refused the operation or
+   * could not be reached; those reads are retried elsewhere.
+   */
+  private static boolean shouldRetryOnActive(IOException e) {
+    if (e instanceof RemoteException) {
+      IOException cause = ((RemoteException) e).unwrapRemoteException(
+          StandbyException.class, RetriableException.class);
+      return cause instanceof StandbyException
+          || cause instanceof RetriableException;
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (AddressRpcProxyPair<T> observer : observers) {
+      if (observer.namenode != null) {
+        if (observer.namenode instanceof Closeable) {
+          ((Closeable) observer.namenode).close();
+        } else {
+          RPC.stopProxy(observer.namenode);
+        }
+      }
+    }
+    super.close();
+  }
+}
@@ -30,6 +30,7 @@
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -127,6 +128,7 @@ public void run() {
                 StringUtils.getStackTrace(Thread.currentThread()));
           }
           purge(replica);
+          replicaEvictions.increment();
           numPurged++;
         }
 
@@ -240,18 +242,19 @@ public interface ShortCircuitReplicaCreator {
   /**
    * The executor service that runs the cacheCleaner.
    */
-  private final ScheduledThreadPoolExecutor cleanerExecutor
-      = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().
-      setDaemon(true).setNameFormat("ShortCircuitCache_Cleaner").
-      build());
+  private final ScheduledThreadPoolExecutor cleanerExecutor;
 
   /**
    * The executor service that runs the cacheCleaner.
    */
-  private final ScheduledThreadPoolExecutor releaserExecutor
-      = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().
-      setDaemon(true).setNameFormat("ShortCircuitCache_SlotReleaser").
-      build());
+  private final ScheduledThreadPoolExecutor releaserExecutor;
+
+  /**
+   * The cache which owns the executors and the shared memory manager used
+   * by this cache. The other stripes of the short-circuit cache of a client
+   * context use those of the first stripe.
+   */
+  private final ShortCircuitCache owner;
 
   /**
    * A map containing all ShortCircuitReplicaInfo objects, organized by Key.
@@ -329,20 +332,85 @@ public interface ShortCircuitReplicaCreator {
    */
   private final DfsClientShmManager shmManager;
 
+  /**
+   * Number of lookups which found a usable replica in the cache.
+   */
+  private final LongAdder replicaHits = new LongAdder();
+
+  /**
+   * Number of lookups which had to create the replica.
+   */
+  private final LongAdder replicaMisses = new LongAdder();
+
+  /**
+   * Number of evictable replicas purged because the cache was full, or
+   * because they were not used for too long.
+   */
+  private final LongAdder replicaEvictions = new LongAdder();
+
+  /**
+   * Number of ClientMmaps which reused the existing mmap of a replica.
+   */
+  private final LongAdder mmapReuses = new LongAdder();
+
+  /**
+   * Number of mmaps created for replicas.
+   */
+  private final LongAdder mmapCreates = new LongAdder();
+
+  /**
+   * Number of evictable mmapped replicas which were munmapped and demoted
+   * into the regular eviction map.
+   */
+  private final LongAdder mmapDemotions = new LongAdder();
+
+  /**
+   * Create a cache from the configuration.
+   *
+   * The cache is one of the stripes of the short-circuit cache of a client
+   * context, so it gets its share of the configured sizes.
+   */
   public static ShortCircuitCache fromConf(ShortCircuitConf conf) {
+    return fromConf(conf, null);
+  }
+
+  /**
+   * Create a cache from the configuration, which uses the threads and the
+   * shared memory segments of another stripe of the same short-circuit
+   * cache.
+   *
+   * @param conf the configuration
+   * @param owner the stripe which owns the threads and the shared memory
+   *              segments, or null to create them. It must be closed after
+   *              the caches which use them.
+   */
+  public static ShortCircuitCache fromConf(ShortCircuitConf conf,
+      ShortCircuitCache owner) {
+    final int stripes = conf.getShortCircuitCacheStripes();
     return new ShortCircuitCache(
-        conf.getShortCircuitStreamsCacheSize(),
+        divideCeil(conf.getShortCircuitStreamsCacheSize(), stripes),
         conf.getShortCircuitStreamsCacheExpiryMs(),
-        conf.getShortCircuitMmapCacheSize(),
+        divideCeil(conf.getShortCircuitMmapCacheSize(), stripes),
         conf.getShortCircuitMmapCacheExpiryMs(),
         conf.getShortCircuitMmapCacheRetryTimeout(),
         conf.getShortCircuitCacheStaleThresholdMs(),
-        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs());
+        conf.getShortCircuitSharedMemoryWatcherInterruptCheckMs(),
+        owner);
   }
 
   public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs,
       int maxEvictableMmapedSize, long maxEvictableMmapedLifespanMs,
       long mmapRetryTimeoutMs, long staleThresholdMs, int shmInterruptCheckMs) {
+    this(maxTotalSize, maxNonMmappedEvictableLifespanMs,
+        maxEvictableMmapedSize, maxEvictableMmapedLifespanMs,
+        mmapRetryTimeoutMs, staleThresholdMs, shmInterruptCheckMs, null);
+  }
+
+  private ShortCircuitCache(int maxTotalSize,
+      long maxNonMmappedEvictableLifespanMs, int maxEvictableMmapedSize,
+      long maxEvictableMmapedLifespanMs, long mmapRetryTimeoutMs,
+      long staleThresholdMs, int shmInterruptCheckMs,
+      ShortCircuitCache owner) {
     Preconditions.checkArgument(maxTotalSize >= 0);
     this.maxTotalSize = maxTotalSize;
     Preconditions.checkArgument(maxNonMmappedEvictableLifespanMs >= 0);
@@ -353,6 +421,20 @@ public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs
     this.maxEvictableMmapedLifespanMs = maxEvictableMmapedLifespanMs;
     this.mmapRetryTimeoutMs = mmapRetryTimeoutMs;
     this.staleThresholdMs = staleThresholdMs;
+    if (owner != null) {
+      this.owner = owner;
+      this.cleanerExecutor = owner.cleanerExecutor;
+      this.releaserExecutor = owner.releaserExecutor;
+      this.shmManager = owner.shmManager;
+      return;
+    }
+    this.owner = this;
+    this.cleanerExecutor = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactoryBuilder().setDaemon(true).
+        setNameFormat("ShortCircuitCache_Cleaner").build());
+    this.releaserExecutor = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactoryBuilder().setDaemon(true).
+        setNameFormat("ShortCircuitCache_SlotReleaser").build());
     DfsClientShmManager shmManager = null;
     if ((shmInterruptCheckMs > 0) &&
         (DomainSocketWatcher.getLoadingFailureReason() == null)) {
@@ -365,6 +447,10 @@ public ShortCircuitCache(int maxTotalSize, long maxNonMmappedEvictableLifespanMs
     this.shmManager = shmManager;
   }
 
+  private static int divideCeil(int size, int stripes) {
+    return (size + stripes - 1) / stripes;
+  }
+
   public long getStaleThresholdMs() {
     return staleThresholdMs;
   }
@@ -521,6 +607,7 @@ private int demoteOldEvictableMmaped(long now) {
       removeEvictable(replica, evictableMmapped);
       munmap(replica);
       insertEvictable(evictionTimeNs, replica, evictable);
+      mmapDemotions.increment();
       numDemoted++;
     }
     return numDemoted;
@@ -555,6 +642,7 @@ private void trimEvictionMaps() {
             StringUtils.getStackTrace(Thread.currentThread()));
       }
       purge(replica);
+      replicaEvictions.increment();
     }
   }
 
@@ -701,6 +789,7 @@ public ShortCircuitReplicaInfo fetchOrCreate(ExtendedBlockId key,
       }
       if (info != null) return info;
       // We need to load the replica ourselves.
+      replicaMisses.increment();
       newWaitable = new Waitable<>(lock.newCondition());
       replicaInfoMap.put(key, newWaitable);
     } finally {
@@ -759,6 +848,7 @@ protected ShortCircuitReplicaInfo fetch(ExtendedBlockId key,
       throw new RetriableException("ignoring stale replica " + replica);
     }
     ref(replica);
+    replicaHits.increment();
     return info;
   }
 
@@ -823,6 +913,7 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
       while (replica.mmapData != null) {
         if (replica.mmapData instanceof MappedByteBuffer) {
           ref(replica);
+          mmapReuses.increment();
           MappedByteBuffer mmap = (MappedByteBuffer)replica.mmapData;
           return new ClientMmap(replica, mmap, anchored);
         } else if (replica.mmapData instanceof Long) {
@@ -857,6 +948,7 @@ ClientMmap getOrCreateClientMmap(ShortCircuitReplica replica,
         return null;
       } else {
         outstandingMmapCount++;
+        mmapCreates.increment();
         replica.mmapData = map;
         ref(replica);
         newCond.signalAll();
@@ -904,6 +996,10 @@ public void close() {
       lock.unlock();
     }
 
+    if (owner != this) {
+      // the executors and the shared memory manager are closed by the owner
+      return;
+    }
     releaserExecutor.shutdown();
     cleanerExecutor.shutdown();
     // wait for existing tasks to terminate
@@ -974,6 +1070,50 @@ public void accept(CacheVisitor visitor) {
     }
   }
 
+  /**
+   * @return the number of lookups which found a usable replica in the cache.
+   */
+  public long getReplicaHitCount() {
+    return replicaHits.sum();
+  }
+
+  /**
+   * @return the number of lookups which had to create the replica.
+   */
+  public long getReplicaMissCount() {
+    return replicaMisses.sum();
+  }
+
+  /**
+   * @return the number of replicas evicted from the cache, because it was
+   *         full or because they were not used for too long.
+   */
+  public long getReplicaEvictionCount() {
+    return replicaEvictions.sum();
+  }
+
+  /**
+   * @return the number of ClientMmaps which reused an existing mmap.
+   */
+  public long getMmapReuseCount() {
+    return mmapReuses.sum();
+  }
+
+  /**
+   * @return the number of mmaps created.
+   */
+  public long getMmapCreateCount() {
+    return mmapCreates.sum();
+  }
+
+  /**
+   * @return the number of mmaps which were unmapped while their replicas
+   *         stayed in the cache.
+   */
+  public long getMmapDemotionCount() {
+    return mmapDemotions.sum();
+  }
+
   @Override
   public String toString() {
     return "ShortCircuitCache(0x" +
@@ -1255,6 +1255,19 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
         locations, method, HdfsFileStatus.class, null);
   }
 
+  @Override // ClientProtocol
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs,
+      boolean needLocation) throws IOException {
+    checkOperation(OperationCategory.READ);
+    // The paths may map to different subclusters, resolve them one by one
+    HdfsFileStatus[] ret = new HdfsFileStatus[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      ret[i] = needLocation ?
+          getLocatedFileInfo(srcs[i], false) : getFileInfo(srcs[i]);
+    }
+    return ret;
+  }
+
   @Override // ClientProtocol
   public long[] getStats() throws IOException {
     checkOperation(OperationCategory.UNCHECKED);
@@ -119,6 +119,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_DATANODE_SYNC_BEHIND_WRITES_IN_BACKGROUND_DEFAULT = false;
   public static final String  DFS_DATANODE_DROP_CACHE_BEHIND_READS_KEY = "dfs.datanode.drop.cache.behind.reads";
   public static final boolean DFS_DATANODE_DROP_CACHE_BEHIND_READS_DEFAULT = false;
+  public static final String  DFS_DATANODE_READAHEAD_ADAPTIVE_KEY =
+      "dfs.datanode.readahead.adaptive";
+  public static final boolean DFS_DATANODE_READAHEAD_ADAPTIVE_DEFAULT = false;
+  public static final String  DFS_DATANODE_WRITE_DIRECT_BUFFERS_KEY =
+      "dfs.datanode.write.direct-buffers.enabled";
+  public static final boolean DFS_DATANODE_WRITE_DIRECT_BUFFERS_DEFAULT =
+      false;
   public static final String  DFS_DATANODE_USE_DN_HOSTNAME = "dfs.datanode.use.datanode.hostname";
   public static final boolean DFS_DATANODE_USE_DN_HOSTNAME_DEFAULT = false;
   public static final String  DFS_DATANODE_MAX_LOCKED_MEMORY_KEY = "dfs.datanode.max.locked.memory";
@@ -144,6 +151,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.cached-dfsused.check.interval.ms";
   public static final long DFS_DN_CACHED_DFSUSED_CHECK_INTERVAL_DEFAULT_MS =
       600000;
+  public static final String DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_KEY =
+      "dfs.datanode.replica-cache.expiry.ms";
+  public static final long DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_DEFAULT =
+      5 * 60 * 1000;
+  public static final String DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_KEY =
+      "dfs.datanode.replica-cache.save.interval.ms";
+  public static final long
+      DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_DEFAULT = 0;
 
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT =
     "dfs.namenode.path.based.cache.block.map.allocation.percent";
@@ -329,6 +344,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = true;
+  public static final String  DFS_NAMENODE_EDITS_PIPELINED_LOADING_KEY =
+      "dfs.namenode.edits.pipelined-loading";
+  public static final boolean DFS_NAMENODE_EDITS_PIPELINED_LOADING_DEFAULT =
+      false;
+  public static final String
+      DFS_NAMENODE_EDITS_PIPELINED_LOADING_QUEUE_SIZE_KEY =
+      "dfs.namenode.edits.pipelined-loading.queue-size";
+  public static final int
+      DFS_NAMENODE_EDITS_PIPELINED_LOADING_QUEUE_SIZE_DEFAULT = 1024;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -356,12 +380,26 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_STALENESS_KEY =
+      "dfs.content-summary.cache.staleness";
+  public static final long    DFS_CONTENT_SUMMARY_CACHE_STALENESS_DEFAULT = 0;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_MAX_ENTRIES_KEY =
+      "dfs.content-summary.cache.max-entries";
+  public static final int     DFS_CONTENT_SUMMARY_CACHE_MAX_ENTRIES_DEFAULT =
+      1024;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
   public static final int     DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT = 4000;
+  public static final String  DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY =
+      "dfs.datanode.xceiver.event-loop.enabled";
+  public static final boolean DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_XCEIVER_HANDLER_COUNT_KEY =
+      "dfs.datanode.xceiver.handler.count";
+  public static final int     DFS_DATANODE_XCEIVER_HANDLER_COUNT_DEFAULT = 256;
   public static final String  DFS_DATANODE_OOB_TIMEOUT_KEY = "dfs.datanode.oob.timeout-ms";
   public static final String  DFS_DATANODE_OOB_TIMEOUT_DEFAULT = "1500,0,0,0"; // OOB_TYPE1, OOB_TYPE2, OOB_TYPE3, OOB_TYPE4
 
@@ -492,6 +530,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
 
+  public static final String DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY =
+      "dfs.namenode.blockreport.diff.threads";
+  public static final int DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_REDUNDANCY_WORK_THREADS_KEY =
+      "dfs.namenode.redundancy.work.threads";
+  public static final int DFS_NAMENODE_REDUNDANCY_WORK_THREADS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_KEY =
+      "dfs.namenode.maps.offheap.enabled";
+  public static final boolean DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_DEFAULT =
+      false;
+
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
   public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT =
@@ -553,6 +602,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_KEY =
+      "dfs.namenode.audit.log.async.sinks";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_DEFAULT =
+      DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY =
+      "dfs.namenode.audit.log.async.shards";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_DEFAULT = 4;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_KEY =
+      "dfs.namenode.audit.log.async.buffer.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_DEFAULT =
+      8192;
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
@@ -649,6 +709,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
   public static final int
       DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_DIRECTORYSCAN_SHARDS_KEY =
+      "dfs.datanode.directoryscan.shards";
+  public static final int     DFS_DATANODE_DIRECTORYSCAN_SHARDS_DEFAULT = 1;
   public static final String  DFS_DATANODE_DNS_INTERFACE_KEY = "dfs.datanode.dns.interface";
   public static final String  DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
   public static final String  DFS_DATANODE_DNS_NAMESERVER_KEY = "dfs.datanode.dns.nameserver";
@@ -776,6 +839,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // properties for saving and loading the fsimage in parallel
+  public static final String DFS_IMAGE_PARALLEL_SAVE_KEY =
+      "dfs.image.parallel.save";
+  public static final boolean DFS_IMAGE_PARALLEL_SAVE_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final int DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT =
+      1000000;
+  public static final String DFS_IMAGE_PARALLEL_SECTION_INODES_KEY =
+      "dfs.image.parallel.section.inodes";
+  public static final int DFS_IMAGE_PARALLEL_SECTION_INODES_DEFAULT = 250000;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -865,6 +946,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_SECONDARY_NAMENODE_INTERNAL_SPNEGO_USER_NAME_KEY = DFS_SECONDARY_NAMENODE_KERBEROS_INTERNAL_SPNEGO_PRINCIPAL_KEY;
   public static final String  DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY = "dfs.namenode.name.cache.threshold";
   public static final int     DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_NAME_DICTIONARY_ENABLED_KEY =
+      "dfs.namenode.name.dictionary.enabled";
+  public static final boolean DFS_NAMENODE_NAME_DICTIONARY_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_KEY =
+      "dfs.namenode.name.dictionary.candidates";
+  public static final int     DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_DEFAULT =
+      65536;
   public static final String  DFS_NAMENODE_LEGACY_OIV_IMAGE_DIR_KEY = "dfs.namenode.legacy-oiv-image.dir";
 
   public static final String  DFS_NAMESERVICES =
@@ -919,6 +1008,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY =
           "dfs.ha.tail-edits.in-progress";
   public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_NAMENODE_OBSERVER_ENABLED_KEY =
+      "dfs.namenode.observer.enabled";
+  public static final boolean DFS_NAMENODE_OBSERVER_ENABLED_DEFAULT = false;
+  public static final String DFS_NAMENODE_OBSERVER_STATE_WAIT_KEY =
+      "dfs.namenode.observer.state-wait";
+  public static final long DFS_NAMENODE_OBSERVER_STATE_WAIT_DEFAULT = 1000;
   public static final String DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_KEY =
       "dfs.ha.tail-edits.rolledits.timeout";
   public static final int DFS_HA_TAILEDITS_ROLLEDITS_TIMEOUT_DEFAULT = 60; // 1m
@@ -44,6 +44,9 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -102,6 +105,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
@@ -124,6 +128,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -433,6 +439,13 @@ public long getTotalECBlockGroups() {
   /** Storages accessible from multiple DNs. */
   private final ProvidedStorageMap providedStorageMap;
 
+  /** Diffs full block reports outside the write lock, null if disabled. */
+  private final ExecutorService reportDiffExecutor;
+
+  /** Chooses reconstruction targets in parallel, null if disabled. */
+  private final ExecutorService reconstructionExecutor;
+  private final int reconstructionThreads;
+
   public BlockManager(final Namesystem namesystem, boolean haEnabled,
       final Configuration conf) throws IOException {
     this.namesystem = namesystem;
@@ -451,9 +464,30 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         startupDelayBlockDeletionInMs,
         blockIdManager);
 
-    // Compute the map capacity by allocating 2% of total memory
-    blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    final int reportDiffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT);
+    reportDiffExecutor = reportDiffThreads > 0 ?
+        Executors.newFixedThreadPool(reportDiffThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Block report diff #%d").build()) : null;
+
+    reconstructionThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_WORK_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_WORK_THREADS_DEFAULT);
+    reconstructionExecutor = reconstructionThreads > 0 ?
+        Executors.newFixedThreadPool(reconstructionThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("Reconstruction work #%d").build()) : null;
+
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_DEFAULT)) {
+      blocksMap = BlocksMap.newOffHeapInstance();
+    } else {
+      // Compute the map capacity by allocating 2% of total memory
+      blocksMap = new BlocksMap(
+          LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    }
     placementPolicies = new BlockPlacementPolicies(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
@@ -701,6 +735,12 @@ public void close() {
       blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (reportDiffExecutor != null) {
+      reportDiffExecutor.shutdownNow();
+    }
+    if (reconstructionExecutor != null) {
+      reconstructionExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReconstruction.stop();
     blocksMap.close();
@@ -1798,6 +1838,7 @@ int computeInvalidateWork(int nodesToProcess) {
    *         iteration.
    */
   int computeBlockReconstructionWork(int blocksToProcess) {
+    final long startTime = Time.monotonicNow();
     List<List<BlockInfo>> blocksToReconstruct = null;
     namesystem.writeLock();
     try {
@@ -1807,7 +1848,13 @@ int computeBlockReconstructionWork(int blocksToProcess) {
     } finally {
       namesystem.writeUnlock();
     }
-    return computeReconstructionWorkForBlocks(blocksToReconstruct);
+    final int scheduledWork =
+        computeReconstructionWorkForBlocks(blocksToReconstruct);
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addReconstructionWorkTime(Time.monotonicNow() - startTime);
+    }
+    return scheduledWork;
   }
 
   /**
@@ -1843,22 +1890,17 @@ int computeReconstructionWorkForBlocks(
     }
 
     // Step 2: choose target nodes for each reconstruction task
-    final Set<Node> excludedNodes = new HashSet<>();
-    for(BlockReconstructionWork rw : reconWork){
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      excludedNodes.clear();
-      for (DatanodeDescriptor dn : rw.getContainingNodes()) {
-        excludedNodes.add(dn);
+    if (reconstructionExecutor != null) {
+      chooseTargetsInParallel(reconWork);
+    } else {
+      final Set<Node> excludedNodes = new HashSet<>();
+      for (BlockReconstructionWork rw : reconWork) {
+        chooseTargets(rw, excludedNodes);
       }
-
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      final BlockPlacementPolicy placementPolicy =
-          placementPolicies.getPolicy(rw.getBlock().getBlockType());
-      rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
     }
 
     // Step 3: add tasks to the DN
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
     namesystem.writeLock();
     try {
       for(BlockReconstructionWork rw : reconWork){
@@ -1867,6 +1909,14 @@ int computeReconstructionWorkForBlocks(
           rw.resetTargets();
           continue;
         }
+        if (reconstructionExecutor != null && isTargetLimitReached(rw)) {
+          // leave the block in neededReconstruction for the next round
+          rw.resetTargets();
+          if (metrics != null) {
+            metrics.incNumTimesReReplicationNotScheduled();
+          }
+          continue;
+        }
 
         synchronized (neededReconstruction) {
           if (validateReconstructionWork(rw)) {
@@ -1901,6 +1951,96 @@ int computeReconstructionWorkForBlocks(
     return scheduledWork;
   }
 
+  private void chooseTargets(BlockReconstructionWork rw,
+      Set<Node> excludedNodes) {
+    // Exclude all of the containing nodes from being targets.
+    // This list includes decommissioning or corrupt nodes.
+    excludedNodes.clear();
+    for (DatanodeDescriptor dn : rw.getContainingNodes()) {
+      excludedNodes.add(dn);
+    }
+
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    final BlockPlacementPolicy placementPolicy =
+        placementPolicies.getPolicy(rw.getBlock().getBlockType());
+    rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
+  }
+
+  /**
+   * Choose the targets of the given work on the reconstruction threads.
+   * The work is split into one batch per thread and priority, and the
+   * batches are queued in the order of their priority, so the blocks most
+   * at risk get their targets first. Work whose targets could not be
+   * chosen is left without targets.
+   */
+  private void chooseTargetsInParallel(
+      List<BlockReconstructionWork> reconWork) {
+    final List<List<BlockReconstructionWork>> batches = new ArrayList<>();
+    List<BlockReconstructionWork> priorityWork = new ArrayList<>();
+    int priority = -1;
+    for (BlockReconstructionWork rw : reconWork) {
+      if (rw.getPriority() != priority) {
+        addBatches(priorityWork, batches);
+        priorityWork = new ArrayList<>();
+        priority = rw.getPriority();
+      }
+      priorityWork.add(rw);
+    }
+    addBatches(priorityWork, batches);
+
+    final List<Future<?>> futures = new ArrayList<>(batches.size());
+    for (final List<BlockReconstructionWork> batch : batches) {
+      futures.add(reconstructionExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          final Set<Node> excludedNodes = new HashSet<>();
+          for (BlockReconstructionWork rw : batch) {
+            chooseTargets(rw, excludedNodes);
+          }
+        }
+      }));
+    }
+    // every batch must be done before the work is validated, so wait for
+    // all of them even if this thread is interrupted.
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException ee) {
+        LOG.warn("Failed to choose reconstruction targets", ee.getCause());
+      }
+    }
+  }
+
+  private void addBatches(List<BlockReconstructionWork> work,
+      List<List<BlockReconstructionWork>> batches) {
+    if (work.isEmpty()) {
+      return;
+    }
+    final int batchSize = (work.size() + reconstructionThreads - 1)
+        / reconstructionThreads;
+    for (int i = 0; i < work.size(); i += batchSize) {
+      batches.add(work.subList(i, Math.min(i + batchSize, work.size())));
+    }
+  }
+
+  /**
+   * @return true if any target of the work already has as many
+   *         reconstruction tasks in flight, including the ones given to it
+   *         in this round, as a source may have.
+   */
+  private boolean isTargetLimitReached(BlockReconstructionWork rw) {
+    final int limit =
+        rw.getPriority() == LowRedundancyBlocks.QUEUE_HIGHEST_PRIORITY ?
+        replicationStreamsHardLimit : maxReplicationStreams;
+    for (DatanodeStorageInfo target : rw.getTargets()) {
+      if (pendingReconstruction.getNumPendingByTarget(
+          target.getDatanodeDescriptor()) >= limit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   // Check if the number of live + pending replicas satisfies
   // the expected redundancy.
   boolean hasEnoughEffectiveReplicas(BlockInfo block,
@@ -2478,6 +2618,18 @@ public boolean processReport(final DatanodeID nodeID,
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context) throws IOException {
+    return processReport(nodeID, storage, newReport, context, null);
+  }
+
+  /**
+   * Same as {@link #processReport(DatanodeID, DatanodeStorage,
+   * BlockListAsLongs, BlockReportContext)}, applying the given diff of the
+   * report if it was computed for the current storage.
+   */
+  public boolean processReport(final DatanodeID nodeID,
+      final DatanodeStorage storage,
+      final BlockListAsLongs newReport,
+      BlockReportContext context, BlockReportDiff diff) throws IOException {
     namesystem.writeLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
@@ -2533,7 +2685,12 @@ public boolean processReport(final DatanodeID nodeID,
         // Block reports for provided storage are not
         // maintained by DN heartbeats
         if (!StorageType.PROVIDED.equals(storageInfo.getStorageType())) {
-          invalidatedBlocks = processReport(storageInfo, newReport, context);
+          if (diff != null && diff.storageInfo == storageInfo) {
+            invalidatedBlocks = processReport(storageInfo, diff, context);
+          } else {
+            invalidatedBlocks = processReport(storageInfo, newReport,
+                context);
+          }
         }
       }
       storageInfo.receivedBlockReport();
@@ -2666,9 +2823,57 @@ Collection<Block> processReport(
     }
 
     reportDiffSorted(storageInfo, sortedReport,
-                     toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+                     toAdd, toRemove, toInvalidate, toCorrupt, toUC, null);
+
+    applyReportDiff(storageInfo, toAdd, toRemove, toInvalidate, toCorrupt,
+        toUC, strBlockReportId);
+    return toInvalidate;
+  }
+
+  /**
+   * Apply a diff computed by {@link #diffReport} to the storage. The diff
+   * may be stale, so every replica that needed an action when it was
+   * computed is checked again against the current state of the blocks map.
+   */
+  private Collection<Block> processReport(
+      final DatanodeStorageInfo storageInfo,
+      final BlockReportDiff diff,
+      BlockReportContext context) throws IOException {
+    assert namesystem.hasWriteLock();
+    Collection<BlockInfoToAdd> toAdd = new LinkedList<>();
+    Collection<BlockInfo> toRemove = new TreeSet<>();
+    Collection<Block> toInvalidate = new LinkedList<>();
+    Collection<BlockToMarkCorrupt> toCorrupt = new LinkedList<>();
+    Collection<StatefulBlockInfo> toUC = new LinkedList<>();
+    String strBlockReportId =
+        context != null ? Long.toHexString(context.getReportId()) : "";
 
+    for (BlockReportReplica replica : diff.toRecheck) {
+      BlockInfo nnBlock = blocksMap.getStoredBlock(
+          new Block(getStoredBlockId(replica)));
+      if (nnBlock != null) {
+        reportDiffSortedInner(storageInfo, replica, replica.getState(),
+            nnBlock, toAdd, toCorrupt, toUC);
+      } else {
+        toInvalidate.add(new Block(replica));
+      }
+    }
+    for (BlockInfo b : diff.toRemove) {
+      // skip blocks which were removed from the storage meanwhile
+      if (b.findStorageInfo(storageInfo) >= 0) {
+        toRemove.add(b);
+      }
+    }
+    applyReportDiff(storageInfo, toAdd, toRemove, toInvalidate, toCorrupt,
+        toUC, strBlockReportId);
+    return toInvalidate;
+  }
 
+  private void applyReportDiff(DatanodeStorageInfo storageInfo,
+      Collection<BlockInfoToAdd> toAdd, Collection<BlockInfo> toRemove,
+      Collection<Block> toInvalidate, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC, String strBlockReportId)
+      throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -2693,8 +2898,110 @@ Collection<Block> processReport(
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
+  }
 
-    return toInvalidate;
+  /**
+   * The replicas of a full block report of one storage which need to be
+   * acted upon, as computed by {@link #diffReport} without the write lock.
+   */
+  public static final class BlockReportDiff {
+    private final DatanodeStorageInfo storageInfo;
+    /** Replicas to add, invalidate, mark corrupt or update. */
+    private final List<BlockReportReplica> toRecheck = new ArrayList<>();
+    /** Blocks on the storage which were not reported. */
+    private final List<BlockInfo> toRemove = new ArrayList<>();
+
+    private BlockReportDiff(DatanodeStorageInfo storageInfo) {
+      this.storageInfo = storageInfo;
+    }
+
+    @VisibleForTesting
+    int getNumRecheck() {
+      return toRecheck.size();
+    }
+
+    @VisibleForTesting
+    int getNumRemove() {
+      return toRemove.size();
+    }
+  }
+
+  /**
+   * @return whether full block reports are diffed by
+   *         {@link #diffReports} before they are processed.
+   */
+  public boolean isParallelReportDiffEnabled() {
+    return reportDiffExecutor != null;
+  }
+
+  /**
+   * Diff the storage reports of one full block report RPC in parallel, each
+   * under the namesystem read lock, so that only applying the differences
+   * needs the write lock.
+   *
+   * @return the diff for each report, or null for reports that must be
+   *         processed entirely under the write lock.
+   */
+  public BlockReportDiff[] diffReports(final DatanodeID nodeID,
+      final StorageBlockReport[] reports, final BlockReportContext context)
+      throws IOException {
+    final BlockReportDiff[] diffs = new BlockReportDiff[reports.length];
+    final List<Future<BlockReportDiff>> futures =
+        new ArrayList<>(reports.length);
+    for (final StorageBlockReport report : reports) {
+      futures.add(reportDiffExecutor.submit(new Callable<BlockReportDiff>() {
+        @Override
+        public BlockReportDiff call() throws IOException {
+          return diffReport(nodeID, report.getStorage(), report.getBlocks(),
+              context);
+        }
+      }));
+    }
+    for (int i = 0; i < diffs.length; i++) {
+      try {
+        diffs[i] = futures.get(i).get();
+      } catch (ExecutionException ee) {
+        // fall back to processing the report under the write lock
+        LOG.warn("Failed to diff block report of storage {} from {}",
+            reports[i].getStorage(), nodeID, ee.getCause());
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new IOException(ie);
+      }
+    }
+    return diffs;
+  }
+
+  @VisibleForTesting
+  BlockReportDiff diffReport(DatanodeID nodeID, DatanodeStorage storage,
+      BlockListAsLongs report, BlockReportContext context)
+      throws IOException {
+    if (report == null || (context != null && !context.isSorted())
+        || StorageType.PROVIDED.equals(storage.getStorageType())) {
+      return null;
+    }
+    namesystem.readLock();
+    try {
+      final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()
+          || shouldPostponeBlocksFromFuture) {
+        return null;
+      }
+      final DatanodeStorageInfo storageInfo =
+          node.getStorageInfo(storage.getStorageID());
+      // first reports are processed more efficiently without a diff
+      if (storageInfo == null || storageInfo.getBlockReportCount() == 0) {
+        return null;
+      }
+      final BlockReportDiff diff = new BlockReportDiff(storageInfo);
+      reportDiffSorted(storageInfo, report, new ArrayList<BlockInfoToAdd>(),
+          diff.toRemove, new ArrayList<Block>(),
+          new ArrayList<BlockToMarkCorrupt>(),
+          new ArrayList<StatefulBlockInfo>(), diff.toRecheck);
+      return diff;
+    } finally {
+      namesystem.readUnlock();
+    }
   }
 
   /**
@@ -2823,7 +3130,9 @@ private void reportDiffSorted(DatanodeStorageInfo storageInfo,
       Collection<BlockInfo> toRemove,       // remove from DatanodeDescriptor
       Collection<Block> toInvalidate,       // should be removed from DN
       Collection<BlockToMarkCorrupt> toCorrupt, // add to corrupt replicas list
-      Collection<StatefulBlockInfo> toUC) { // add to under-construction list
+      Collection<StatefulBlockInfo> toUC,   // add to under-construction list
+      Collection<BlockReportReplica> toRecheck) { // copies of acted upon
+                                                  // replicas, if not null
 
     // The blocks must be sorted and the storagenodes blocks must be sorted
     Iterator<BlockInfo> storageBlocksIterator = storageInfo.getBlockIterator();
@@ -2832,12 +3141,7 @@ private void reportDiffSorted(DatanodeStorageInfo storageInfo,
 
     for (BlockReportReplica replica : newReport) {
 
-      long replicaID = replica.getBlockId();
-      if (BlockIdManager.isStripedBlockID(replicaID)
-          && (!hasNonEcBlockUsingStripedID ||
-              !blocksMap.containsBlock(replica))) {
-        replicaID = BlockIdManager.convertToStripedID(replicaID);
-      }
+      long replicaID = getStoredBlockId(replica);
 
       ReplicaState reportedState = replica.getState();
 
@@ -2862,17 +3166,24 @@ && isGenStampInFuture(replica)) {
           // Check if block is available in NN but not yet on this storage
           BlockInfo nnBlock = blocksMap.getStoredBlock(new Block(replicaID));
           if (nnBlock != null) {
-            reportDiffSortedInner(storageInfo, replica, reportedState,
-                                  nnBlock, toAdd, toCorrupt, toUC);
+            if (reportDiffSortedInner(storageInfo, replica, reportedState,
+                nnBlock, toAdd, toCorrupt, toUC) && toRecheck != null) {
+              toRecheck.add(new BlockReportReplica(replica));
+            }
           } else {
             // Replica not found anywhere so it should be invalidated
             toInvalidate.add(new Block(replica));
+            if (toRecheck != null) {
+              toRecheck.add(new BlockReportReplica(replica));
+            }
           }
           break;
         } else if (cmp == 0) {
           // Replica matched current storageblock
-          reportDiffSortedInner(storageInfo, replica, reportedState,
-                                storageBlock, toAdd, toCorrupt, toUC);
+          if (reportDiffSortedInner(storageInfo, replica, reportedState,
+              storageBlock, toAdd, toCorrupt, toUC) && toRecheck != null) {
+            toRecheck.add(new BlockReportReplica(replica));
+          }
           storageBlock = null;
         } else {
           // replica has higher ID than storedBlock
@@ -2893,7 +3204,23 @@ && isGenStampInFuture(replica)) {
     }
   }
 
-  private void reportDiffSortedInner(
+  /**
+   * The ID of the stored block that a reported replica belongs to.
+   */
+  private long getStoredBlockId(Block replica) {
+    long replicaID = replica.getBlockId();
+    if (BlockIdManager.isStripedBlockID(replicaID)
+        && (!hasNonEcBlockUsingStripedID ||
+            !blocksMap.containsBlock(replica))) {
+      replicaID = BlockIdManager.convertToStripedID(replicaID);
+    }
+    return replicaID;
+  }
+
+  /**
+   * @return true if an action was added for the replica.
+   */
+  private boolean reportDiffSortedInner(
       final DatanodeStorageInfo storageInfo,
       final BlockReportReplica replica, final ReplicaState reportedState,
       final BlockInfo storedBlock,
@@ -2912,7 +3239,7 @@ private void reportDiffSortedInner(
 
     // Ignore replicas already scheduled to be removed from the DN
     if (invalidateBlocks.contains(dn, replica)) {
-      return;
+      return false;
     }
 
     BlockToMarkCorrupt c = checkReplicaCorrupt(replica, reportedState,
@@ -2939,7 +3266,10 @@ private void reportDiffSortedInner(
       // Add replica if appropriate. If the replica was previously corrupt
       // but now okay, it might need to be updated.
       toAdd.add(new BlockInfoToAdd(storedBlock, new Block(replica)));
+    } else {
+      return false;
     }
+    return true;
   }
 
   /**
@@ -23,6 +23,7 @@
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.util.OffHeapLongGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -33,7 +34,10 @@
  */
 class BlocksMap {
 
-  /** Constant {@link LightWeightGSet} capacity. */
+  /** Initial index capacity of the off-heap map, which grows as needed. */
+  private static final int OFFHEAP_INITIAL_CAPACITY = 1 << 16;
+
+  /** Constant {@link LightWeightGSet} capacity, or -1 if off-heap. */
   private final int capacity;
   
   private GSet<Block, BlockInfo> blocks;
@@ -60,6 +64,30 @@ public Iterator<BlockInfo> iterator() {
     };
   }
 
+  private BlocksMap(GSet<Block, BlockInfo> blocks) {
+    this.capacity = -1;
+    this.blocks = blocks;
+  }
+
+  /**
+   * Create a map whose hash index is kept in direct memory and grows with
+   * the number of blocks.
+   */
+  static BlocksMap newOffHeapInstance() {
+    return new BlocksMap(new OffHeapLongGSet<Block, BlockInfo>(
+        OFFHEAP_INITIAL_CAPACITY, Block::getBlockId) {
+      @Override
+      public Iterator<BlockInfo> iterator() {
+        SetIterator iterator = new SetIterator();
+        // Same as for the LightWeightGSet, see above. The elements keep
+        // their slots, so the blocks which stay in the map are not missed
+        // when the lock is released between two batches of an iteration.
+        iterator.setTrackModification(false);
+        return iterator;
+      }
+    });
+  }
+
 
   void close() {
     clear();
@@ -204,6 +232,13 @@ Iterable<BlockInfo> getBlocks() {
   
   /** Get the capacity of the HashMap that stores blocks */
   int getCapacity() {
+    if (capacity < 0) {
+      if (blocks == null) {
+        return 0;
+      }
+      long c = ((OffHeapLongGSet<?, ?>) blocks).getCapacity();
+      return (int) Math.min(c, Integer.MAX_VALUE);
+    }
     return capacity;
   }
 
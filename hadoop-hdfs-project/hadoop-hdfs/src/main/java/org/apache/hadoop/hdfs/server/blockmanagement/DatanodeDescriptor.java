@@ -29,6 +29,7 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -226,7 +227,8 @@ public Type getType() {
   private boolean disallowed = false;
 
   // The number of replication work pending before targets are determined
-  private int pendingReplicationWithoutTargets = 0;
+  private final AtomicInteger pendingReplicationWithoutTargets =
+      new AtomicInteger();
 
   // HB processing can use it to tell if it is the first HB since DN restarted
   private boolean heartbeatedSinceRegistration = false;
@@ -630,11 +632,11 @@ Iterator<BlockInfo> getBlockIterator(final int startBlock) {
   }
 
   void incrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets++;
+    pendingReplicationWithoutTargets.incrementAndGet();
   }
 
   void decrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets--;
+    pendingReplicationWithoutTargets.decrementAndGet();
   }
 
   /**
@@ -687,7 +689,7 @@ void addBlocksToBeInvalidated(List<Block> blocklist) {
    * The number of work items that are pending to be replicated.
    */
   int getNumberOfBlocksToBeReplicated() {
-    return pendingReplicationWithoutTargets + replicateBlocks.size();
+    return pendingReplicationWithoutTargets.get() + replicateBlocks.size();
   }
 
   /**
@@ -31,6 +31,7 @@
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 import org.slf4j.Logger;
 
@@ -49,6 +50,9 @@ class PendingReconstructionBlocks {
   private static final Logger LOG = BlockManager.LOG;
 
   private final Map<BlockInfo, PendingBlockInfo> pendingReconstructions;
+  // Number of the pending reconstructions to each target, guarded by
+  // pendingReconstructions
+  private final Map<DatanodeDescriptor, Integer> numPendingByTarget;
   private final ArrayList<BlockInfo> timedOutItems;
   Daemon timerThread = null;
   private volatile boolean fsRunning = true;
@@ -67,6 +71,7 @@ class PendingReconstructionBlocks {
       this.timeout = timeoutPeriod;
     }
     pendingReconstructions = new HashMap<>();
+    numPendingByTarget = new HashMap<>();
     timedOutItems = new ArrayList<>();
   }
 
@@ -84,9 +89,19 @@ void increment(BlockInfo block, DatanodeDescriptor... targets) {
     synchronized (pendingReconstructions) {
       PendingBlockInfo found = pendingReconstructions.get(block);
       if (found == null) {
-        pendingReconstructions.put(block, new PendingBlockInfo(targets));
+        found = new PendingBlockInfo(targets);
+        pendingReconstructions.put(block, found);
+        for (DatanodeDescriptor target : found.targets) {
+          incrementTarget(target);
+        }
       } else {
-        found.incrementReplicas(targets);
+        if (targets != null) {
+          for (DatanodeDescriptor target : targets) {
+            if (found.addTarget(target)) {
+              incrementTarget(target);
+            }
+          }
+        }
         found.setTimeStamp();
       }
     }
@@ -106,10 +121,17 @@ boolean decrement(BlockInfo block, DatanodeDescriptor dn) {
       PendingBlockInfo found = pendingReconstructions.get(block);
       if (found != null) {
         LOG.debug("Removing pending reconstruction for {}", block);
-        found.decrementReplicas(dn);
+        if (found.removeTarget(dn)) {
+          decrementTarget(dn);
+        }
         if (found.getNumReplicas() <= 0) {
           pendingReconstructions.remove(block);
           removed = true;
+          final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+          if (metrics != null) {
+            metrics.addReconstructionTime(
+                monotonicNow() - found.getTimeStamp());
+          }
         }
       }
     }
@@ -125,13 +147,14 @@ boolean decrement(BlockInfo block, DatanodeDescriptor dn) {
    */
   void remove(BlockInfo block) {
     synchronized (pendingReconstructions) {
-      pendingReconstructions.remove(block);
+      removeTargets(pendingReconstructions.remove(block));
     }
   }
 
   public void clear() {
     synchronized (pendingReconstructions) {
       pendingReconstructions.clear();
+      numPendingByTarget.clear();
       timedOutItems.clear();
       timedOutCount = 0L;
     }
@@ -159,6 +182,33 @@ int getNumReplicas(BlockInfo block) {
     return 0;
   }
 
+  /**
+   * How many reconstructions are in flight to this target?
+   */
+  int getNumPendingByTarget(DatanodeDescriptor target) {
+    synchronized (pendingReconstructions) {
+      Integer count = numPendingByTarget.get(target);
+      return count == null ? 0 : count;
+    }
+  }
+
+  private void incrementTarget(DatanodeDescriptor target) {
+    numPendingByTarget.merge(target, 1, Integer::sum);
+  }
+
+  private void decrementTarget(DatanodeDescriptor target) {
+    numPendingByTarget.computeIfPresent(target,
+        (dn, count) -> count > 1 ? count - 1 : null);
+  }
+
+  private void removeTargets(PendingBlockInfo info) {
+    if (info != null) {
+      for (DatanodeDescriptor target : info.targets) {
+        decrementTarget(target);
+      }
+    }
+  }
+
   /**
    * Used for metrics.
    * @return The number of timeouts
@@ -213,18 +263,15 @@ void setTimeStamp() {
       timeStamp = monotonicNow();
     }
 
-    void incrementReplicas(DatanodeDescriptor... newTargets) {
-      if (newTargets != null) {
-        for (DatanodeDescriptor newTarget : newTargets) {
-          if (!targets.contains(newTarget)) {
-            targets.add(newTarget);
-          }
-        }
+    boolean addTarget(DatanodeDescriptor newTarget) {
+      if (targets.contains(newTarget)) {
+        return false;
       }
+      return targets.add(newTarget);
     }
 
-    void decrementReplicas(DatanodeDescriptor dn) {
-      targets.remove(dn);
+    boolean removeTarget(DatanodeDescriptor dn) {
+      return targets.remove(dn);
     }
 
     int getNumReplicas() {
@@ -270,6 +317,7 @@ void pendingReconstructionCheck() {
             LOG.warn("PendingReconstructionMonitor timed out " + block);
             NameNode.getNameNodeMetrics().incTimeoutReReplications();
             iter.remove();
+            removeTargets(pendingBlock);
           }
         }
       }
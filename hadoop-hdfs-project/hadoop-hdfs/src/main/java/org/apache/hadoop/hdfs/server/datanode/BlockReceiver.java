@@ -28,6 +28,8 @@
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.zip.Checksum;
@@ -89,7 +91,13 @@ class BlockReceiver implements Closeable {
   private final int bytesPerChecksum;
   private final int checksumSize;
   
-  private final PacketReceiver packetReceiver = new PacketReceiver(false);
+  private PacketReceiver packetReceiver = new PacketReceiver(false);
+  /** The channel the packets are read from into direct buffers, if any. */
+  private ReadableByteChannel inChannel;
+  /** The channel the packets in direct buffers are mirrored to, if any. */
+  private WritableByteChannel mirrorChannel;
+  /** The heap copy of the checksums of a packet in a direct buffer. */
+  private ByteBuffer heapChecksumBuf;
   
   protected final String inAddr;
   protected final String myAddr;
@@ -300,6 +308,25 @@ class BlockReceiver implements Closeable {
   /** Return the datanode object. */
   DataNode getDataNode() {return datanode;}
 
+  /**
+   * Receive the packets into direct buffers instead of heap buffers. The
+   * packets are read from the channel of the connection, mirrored to the
+   * channel of the mirror connection and written to disk without being
+   * copied to the heap. Must be called before {@link #receiveBlock}.
+   * @param in the channel to read the packets from, which reads the bytes
+   *           buffered by the input stream first
+   * @param mirror the channel to mirror the packets to, which writes to the
+   *               mirror output stream once it is flushed, or null if the
+   *               block has no mirror
+   */
+  void useDirectBuffers(ReadableByteChannel in, WritableByteChannel mirror) {
+    LOG.debug("Receiving the packets of {} into direct buffers", block);
+    packetReceiver.close();
+    packetReceiver = new PacketReceiver(true);
+    inChannel = in;
+    mirrorChannel = mirror;
+  }
+
   Replica getReplica() {
     return replicaInfo;
   }
@@ -494,6 +521,21 @@ private void verifyChunks(ByteBuffer dataBuf, ByteBuffer checksumBuf)
   }
   
     
+  /**
+   * Copy the checksums of a packet in a direct buffer to a heap buffer,
+   * which is reused for the following packets.
+   */
+  private ByteBuffer copyChecksumsToHeap(ByteBuffer checksumBuf) {
+    if (heapChecksumBuf == null ||
+        heapChecksumBuf.capacity() < checksumBuf.remaining()) {
+      heapChecksumBuf = ByteBuffer.allocate(checksumBuf.remaining());
+    }
+    heapChecksumBuf.clear();
+    heapChecksumBuf.put(checksumBuf.duplicate());
+    heapChecksumBuf.flip();
+    return heapChecksumBuf;
+  }
+
   /**
    * Translate CRC chunks from the client's checksum implementation
    * to the disk checksum implementation.
@@ -525,7 +567,11 @@ private boolean shouldVerifyChecksum() {
    */
   private int receivePacket() throws IOException {
     // read the next packet
-    packetReceiver.receiveNextPacket(in);
+    if (inChannel != null) {
+      packetReceiver.receiveNextPacket(inChannel);
+    } else {
+      packetReceiver.receiveNextPacket(in);
+    }
 
     PacketHeader header = packetReceiver.getHeader();
     if (LOG.isDebugEnabled()){
@@ -585,8 +631,12 @@ private int receivePacket() throws IOException {
         long begin = Time.monotonicNow();
         // For testing. Normally no-op.
         DataNodeFaultInjector.get().stopSendingPacketDownstream(mirrorAddr);
-        packetReceiver.mirrorPacketTo(mirrorOut);
-        mirrorOut.flush();
+        if (mirrorChannel != null) {
+          packetReceiver.mirrorPacketTo(mirrorChannel);
+        } else {
+          packetReceiver.mirrorPacketTo(mirrorOut);
+          mirrorOut.flush();
+        }
         long now = Time.monotonicNow();
         setLastSentTime(now);
         long duration = now - begin;
@@ -652,9 +702,17 @@ private int receivePacket() throws IOException {
 
       if (checksumReceivedLen == 0 && !streams.isTransientStorage()) {
         // checksum is missing, need to calculate it
-        checksumBuf = ByteBuffer.allocate(checksumLen);
+        checksumBuf = dataBuf.isDirect() ?
+            ByteBuffer.allocateDirect(checksumLen) :
+            ByteBuffer.allocate(checksumLen);
         diskChecksum.calculateChunkedSums(dataBuf, checksumBuf);
       }
+
+      if (checksumBuf.isDirect()) {
+        // the checksums are written through a stream, so copy the few bytes
+        // of them to the heap
+        checksumBuf = copyChecksumsToHeap(checksumBuf);
+      }
       
       // by this point, the data in the buffer uses the disk checksum
 
@@ -719,15 +777,18 @@ private int receivePacket() throws IOException {
           // data and on-disk data have no overlap, this will not be at the
           // beginning of the buffer.
           int startByteToDisk = (int)(onDiskLen-firstByteInBlock) 
-              + dataBuf.arrayOffset() + dataBuf.position();
+              + dataBuf.position();
 
           // Actual number of data bytes to write.
           int numBytesToDisk = (int)(offsetInBlock-onDiskLen);
-          
+
+          ByteBuffer dataToDisk = dataBuf.duplicate();
+          dataToDisk.position(startByteToDisk);
+          dataToDisk.limit(startByteToDisk + numBytesToDisk);
+
           // Write data to disk.
           long begin = Time.monotonicNow();
-          streams.writeDataToDisk(dataBuf.array(),
-              startByteToDisk, numBytesToDisk);
+          streams.writeDataToDisk(dataToDisk);
           long duration = Time.monotonicNow() - begin;
           if (duration > datanodeSlowLogThresholdMs && LOG.isWarnEnabled()) {
             LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
@@ -763,8 +824,15 @@ private int receivePacket() throws IOException {
                 bytesToReadForRecalc = numBytesToDisk;
               }
 
-              partialCrc.update(dataBuf.array(), startByteToDisk,
-                  bytesToReadForRecalc);
+              if (dataToDisk.hasArray()) {
+                partialCrc.update(dataToDisk.array(),
+                    dataToDisk.arrayOffset() + dataToDisk.position(),
+                    bytesToReadForRecalc);
+              } else {
+                byte[] recalc = new byte[bytesToReadForRecalc];
+                dataToDisk.duplicate().get(recalc);
+                partialCrc.update(recalc, 0, recalc.length);
+              }
               byte[] buf = FSOutputSummer.convertToByteStream(partialCrc,
                   checksumSize);
               crcBytes = copyLastChunkChecksum(buf, checksumSize, buf.length);
@@ -52,6 +52,7 @@
 import org.apache.htrace.core.TraceScope;
 
 import static org.apache.hadoop.io.nativeio.NativeIO.POSIX.POSIX_FADV_DONTNEED;
+import static org.apache.hadoop.io.nativeio.NativeIO.POSIX.POSIX_FADV_RANDOM;
 import static org.apache.hadoop.io.nativeio.NativeIO.POSIX.POSIX_FADV_SEQUENTIAL;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -155,10 +156,16 @@ class BlockSender implements java.io.Closeable {
   private final Replica replica;
 
   // Cache-management related fields
-  private final long readaheadLength;
+  private long readaheadLength;
 
   private ReadaheadRequest curReadahead;
 
+  /** The end of the range read ahead in the block so far. */
+  private long readaheadEnd;
+
+  /** The access pattern of the connection, if adaptive readahead is on. */
+  private final ReadPattern readPattern;
+
   private final boolean alwaysReadahead;
   
   private final boolean dropCacheBehindLargeReads;
@@ -200,6 +207,24 @@ class BlockSender implements java.io.Closeable {
               boolean sendChecksum, DataNode datanode, String clientTraceFmt,
               CachingStrategy cachingStrategy)
       throws IOException {
+    this(block, startOffset, length, corruptChecksumOk, verifyChecksum,
+        sendChecksum, datanode, clientTraceFmt, cachingStrategy, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param readPattern the access pattern of the stream the read belongs
+   *                    to, used to adapt the readahead and drop-behind of
+   *                    the read; null to only consider the read itself
+   * @see #BlockSender(ExtendedBlock, long, long, boolean, boolean, boolean,
+   *      DataNode, String, CachingStrategy)
+   */
+  BlockSender(ExtendedBlock block, long startOffset, long length,
+              boolean corruptChecksumOk, boolean verifyChecksum,
+              boolean sendChecksum, DataNode datanode, String clientTraceFmt,
+              CachingStrategy cachingStrategy, ReadPattern readPattern)
+      throws IOException {
     InputStream blockIn = null;
     DataInputStream checksumIn = null;
     FsVolumeReference volumeRef = null;
@@ -237,6 +262,7 @@ class BlockSender implements java.io.Closeable {
         this.alwaysReadahead = true;
         this.readaheadLength = cachingStrategy.getReadahead().longValue();
       }
+      this.readPattern = readPattern;
       this.datanode = datanode;
       
       if (verifyChecksum) {
@@ -252,7 +278,7 @@ class BlockSender implements java.io.Closeable {
       // the append write.
       ChunkChecksum chunkChecksum = null;
       final long replicaVisibleLength;
-      try(AutoCloseableLock lock = datanode.data.acquireDatasetLock()) {
+      try(AutoCloseableLock lock = datanode.data.acquireDatasetReadLock()) {
         replica = getReplica(block, datanode);
         replicaVisibleLength = replica.getVisibleLength();
       }
@@ -401,6 +427,16 @@ class BlockSender implements java.io.Closeable {
       }
       endOffset = end;
 
+      if (readPattern != null) {
+        readPattern.onRead(block.getBlockId(), offset, endOffset,
+            endOffset - offset > LONG_READ_THRESHOLD_BYTES);
+        if (!alwaysReadahead) {
+          readaheadLength = readPattern.getReadaheadLength();
+        }
+        readaheadEnd = readPattern.getReadaheadEnd();
+        datanode.metrics.incrReadsByPattern(readPattern.isSequential());
+      }
+
       // seek to the right offsets
       if (offset > 0 && checksumIn != null) {
         long checksumSkip = (offset / chunkSize) * checksumSize;
@@ -464,7 +500,7 @@ private ChunkChecksum getPartialChunkChecksumForFinalized(
   public void close() throws IOException {
     if (ris.getDataInFd() != null &&
         ((dropCacheBehindAllReads) ||
-         (dropCacheBehindLargeReads && isLongRead()))) {
+         (dropCacheBehindLargeReads && isScan()))) {
       try {
         ris.dropCacheBehindReads(block.getBlockName(), lastCacheDropOffset,
             offset - lastCacheDropOffset, POSIX_FADV_DONTNEED);
@@ -475,6 +511,9 @@ public void close() throws IOException {
     if (curReadahead != null) {
       curReadahead.cancel();
     }
+    if (readPattern != null) {
+      readPattern.setReadaheadEnd(readaheadEnd);
+    }
 
     try {
       ris.closeStreams();
@@ -764,12 +803,20 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
     
     lastCacheDropOffset = initialOffset;
 
-    if (isLongRead() && ris.getDataInFd() != null) {
+    if (isScan() && ris.getDataInFd() != null) {
       // Advise that this file descriptor will be accessed sequentially.
       ris.dropCacheBehindReads(block.getBlockName(), 0, 0,
           POSIX_FADV_SEQUENTIAL);
+    } else if (readPattern != null && !readPattern.isSequential()
+        && ris.getDataInFd() != null) {
+      // Keep the kernel from reading ahead around a random read, which
+      // would evict the pages of other streams for data nobody asked for.
+      ris.dropCacheBehindReads(block.getBlockName(), 0, 0,
+          POSIX_FADV_RANDOM);
     }
-    
+
+    // Bytes before this offset were read ahead before they were read.
+    long readaheadHitEnd = readaheadEnd;
     // Trigger readahead of beginning of file if configured.
     manageOsCache();
 
@@ -802,6 +849,11 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
         manageOsCache();
         long len = sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks,
             transferTo, throttler);
+        if (readaheadHitEnd > offset) {
+          datanode.metrics.incrReadaheadHitBytes(
+              Math.min(len, readaheadHitEnd - offset));
+        }
+        readaheadHitEnd = readaheadEnd;
         offset += len;
         totalRead += len + (numberOfChunks(len) * checksumSize);
         seqno++;
@@ -841,18 +893,26 @@ private void manageOsCache() throws IOException {
       return;
     }
 
-    // Perform readahead if necessary
+    // Perform readahead if necessary, unless an earlier read of the stream
+    // has read ahead far enough already
     if ((readaheadLength > 0) && (datanode.readaheadPool != null) &&
-          (alwaysReadahead || isLongRead())) {
+          (alwaysReadahead || isLongRead() || readPattern != null) &&
+          (curReadahead != null ||
+           offset >= readaheadEnd - readaheadLength / 2)) {
+      final ReadaheadRequest lastReadahead = curReadahead;
       curReadahead = datanode.readaheadPool.readaheadStream(
           clientTraceFmt, ris.getDataInFd(), offset, readaheadLength,
           Long.MAX_VALUE, curReadahead);
+      if (curReadahead != null && curReadahead != lastReadahead) {
+        readaheadEnd = Math.max(readaheadEnd,
+            curReadahead.getOffset() + curReadahead.getLength());
+      }
     }
 
     // Drop what we've just read from cache, since we aren't
     // likely to need it again
     if (dropCacheBehindAllReads ||
-        (dropCacheBehindLargeReads && isLongRead())) {
+        (dropCacheBehindLargeReads && isScan())) {
       long nextCacheDropOffset = lastCacheDropOffset + CACHE_DROP_INTERVAL_BYTES;
       if (offset >= nextCacheDropOffset) {
         long dropLength = offset - lastCacheDropOffset;
@@ -879,6 +939,21 @@ private boolean isLongRead() {
     return (endOffset - initialOffset) > LONG_READ_THRESHOLD_BYTES;
   }
 
+  /**
+   * Returns true if the read is part of a sequential scan of the block.
+   * Without a {@link ReadPattern}, this is the case for long reads only.
+   * Otherwise, a run of shorter sequential reads qualifies too once it read
+   * as much as a long read, so that a scan with positional reads is not
+   * mistaken for random IO, and random IO never has the cache dropped.
+   */
+  private boolean isScan() {
+    if (readPattern == null) {
+      return isLongRead();
+    }
+    return readPattern.isSequential() &&
+        readPattern.getRunLength() > LONG_READ_THRESHOLD_BYTES;
+  }
+
   /**
    * Write packet header into {@code pkt},
    * return the length of the header written.
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads from a buffered stream and the channel beneath it. The bytes which
+ * the stream has buffered are read from the stream first, so that the
+ * reads can switch from the stream to the channel at any point. The reads
+ * of the channel fill the buffers directly, without copying through the
+ * buffer of the stream, which matters for direct buffers.
+ *
+ * The stream which is buffered should report no bytes as available, as the
+ * {@code SocketInputStream} of a TCP peer does. Otherwise more of the bytes
+ * are read through the stream, which is slower but still correct.
+ */
+final class BufferedStreamChannel implements ReadableByteChannel {
+  private static final int SCRATCH_SIZE = 4096;
+
+  private final InputStream in;
+  private final ReadableByteChannel channel;
+  private byte[] scratch;
+
+  BufferedStreamChannel(InputStream in, ReadableByteChannel channel) {
+    this.in = in;
+    this.channel = channel;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    final int buffered = in.available();
+    if (buffered <= 0) {
+      return channel.read(dst);
+    }
+    if (scratch == null) {
+      scratch = new byte[SCRATCH_SIZE];
+    }
+    final int n = in.read(scratch, 0,
+        Math.min(Math.min(buffered, dst.remaining()), scratch.length));
+    if (n > 0) {
+      dst.put(scratch, 0, n);
+    }
+    return n;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  /** The stream and the channel belong to the connection, and stay open. */
+  @Override
+  public void close() {
+  }
+}
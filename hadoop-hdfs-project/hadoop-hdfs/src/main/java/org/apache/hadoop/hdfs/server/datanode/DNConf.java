@@ -91,6 +91,8 @@ public class DNConf {
   final boolean connectToDnViaHostname;
 
   final long readaheadLength;
+  final boolean adaptiveReadahead;
+  final boolean writeDirectBuffers;
   final long heartBeatInterval;
   private final long lifelineIntervalMs;
   final long blockReportInterval;
@@ -152,6 +154,12 @@ public DNConf(final Configurable dn) {
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_DEFAULT);
+    adaptiveReadahead = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_KEY,
+        DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_DEFAULT);
+    writeDirectBuffers = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_KEY,
+        DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_DEFAULT);
     maxDataLength = getConf().getInt(DFSConfigKeys.IPC_MAXIMUM_DATA_LENGTH,
         DFSConfigKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
     dropCacheBehindWrites = getConf().getBoolean(
@@ -2175,7 +2175,12 @@ private void handleDiskError(String failedVolumes) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    if (threadGroup == null) {
+      return 0;
+    }
+    // connections served by the event loop do not have a thread in the group
+    return threadGroup.activeCount() +
+        (xserver == null ? 0 : xserver.getNumEventLoopXceivers());
   }
 
   @Override // DataNodeMXBean
@@ -2966,7 +2971,7 @@ void transferReplicaForPipelineRecovery(final ExtendedBlock b,
     final BlockConstructionStage stage;
 
     //get replica information
-    try(AutoCloseableLock lock = data.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = data.acquireDatasetReadLock()) {
       Block storedBlock = data.getStoredBlock(b.getBlockPoolId(),
           b.getBlockId());
       if (null == storedBlock) {
@@ -62,6 +62,7 @@
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.StopWatch;
 import org.apache.hadoop.util.Time;
@@ -83,6 +84,9 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -119,13 +123,28 @@ class DataXceiver extends Receiver implements Runnable {
   private final int ioFileBufferSize;
   private final int smallBufferSize;
   private Thread xceiver = null;
+  /** The event loop serving the connection, null if it has a thread. */
+  private final XceiverEventLoop eventLoop;
+  private final SocketChannel channel;
+  /** Whether the connection was handed over to a thread of its own. */
+  private boolean dedicated = false;
+  /** False if the streams may buffer data which the selector cannot see. */
+  private boolean canPark = true;
+  /** Whether the input of the connection is not wrapped by SASL streams. */
+  private boolean plainInput = true;
+  private boolean peerAdded = false;
+  private int opsProcessed = 0;
+  /** An operation read on the event loop, to process on its own thread. */
+  private Op pendingOp = null;
 
   /**
    * Client Name used in previous operation. Not available on first request
    * on the socket.
    */
   private String previousOpClientName;
-  
+  /** The access pattern of the reads on this connection, if tracked. */
+  private final ReadPattern readPattern;
+
   public static DataXceiver create(Peer peer, DataNode dn,
       DataXceiverServer dataXceiverServer) throws IOException {
     return new DataXceiver(peer, dn, dataXceiverServer);
@@ -148,6 +167,11 @@ private DataXceiver(Peer peer, DataNode datanode,
     remoteAddressWithoutPort =
         (colonIdx < 0) ? remoteAddress : remoteAddress.substring(0, colonIdx);
     localAddress = peer.getLocalAddressString();
+    this.channel = dataXceiverServer.getEventLoop() == null ?
+        null : XceiverEventLoop.getChannel(peer);
+    this.eventLoop = channel == null ? null : dataXceiverServer.getEventLoop();
+    this.readPattern = dnConf.adaptiveReadahead ?
+        new ReadPattern(dnConf.readaheadLength) : null;
 
     LOG.debug("Number of active connections is: {}",
         datanode.getXceiverCount());
@@ -218,79 +242,81 @@ private synchronized BlockReceiver getCurrentBlockReceiver() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    // whether the connection is now served by another thread
+    boolean detached = false;
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at {}. Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption", peer.getRemoteAddressString(), imne);
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at {}" +
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection",
-              peer.getRemoteAddressString(), imne);
-        }
+      if (peerAdded) {
+        // resumed by the event loop, or handed over to this thread
+        dataXceiverServer.setPeerThread(peer, Thread.currentThread());
+      } else if (!initializeStreams()) {
         return;
       }
-      
-      super.initialize(new DataInputStream(input));
-      
+
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
+      // On the event loop the connection waits for the next request without
+      // a thread instead.
       do {
-        updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+        if (pendingOp != null) {
+          op = pendingOp;
+          pendingOp = null;
+        } else {
+          updateCurrentThreadName(
+              "Waiting for operation #" + (opsProcessed + 1));
+
+          try {
+            if (opsProcessed != 0) {
+              assert dnConf.socketKeepaliveTimeout > 0;
+              peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
+            } else {
+              peer.setReadTimeout(dnConf.socketTimeout);
+            }
+            op = readOp();
+          } catch (InterruptedIOException ignored) {
+            // Time out while we wait for client rpc
+            break;
+          } catch (EOFException | ClosedChannelException e) {
+            // Since we optimistically expect the next op, it's quite normal
+            // to get EOF here.
+            LOG.debug("Cached {} closing after {} ops.  " +
+                "This message is usually benign.", peer, opsProcessed);
+            break;
+          } catch (IOException err) {
+            incrDatanodeNetworkErrors();
+            throw err;
+          }
 
-        try {
+          // restore normal timeout
           if (opsProcessed != 0) {
-            assert dnConf.socketKeepaliveTimeout > 0;
-            peer.setReadTimeout(dnConf.socketKeepaliveTimeout);
-          } else {
             peer.setReadTimeout(dnConf.socketTimeout);
           }
-          op = readOp();
-        } catch (InterruptedIOException ignored) {
-          // Time out while we wait for client rpc
-          break;
-        } catch (EOFException | ClosedChannelException e) {
-          // Since we optimistically expect the next op, it's quite normal to
-          // get EOF here.
-          LOG.debug("Cached {} closing after {} ops.  " +
-              "This message is usually benign.", peer, opsProcessed);
-          break;
-        } catch (IOException err) {
-          incrDatanodeNetworkErrors();
-          throw err;
-        }
 
-        // restore normal timeout
-        if (opsProcessed != 0) {
-          peer.setReadTimeout(dnConf.socketTimeout);
+          if (isOnEventLoop() &&
+              (!canPark || !XceiverEventLoop.isHandlerOp(op))) {
+            // do not hold a handler thread for the rest of the connection
+            pendingOp = op;
+            dedicated = true;
+            detached = true;
+            new Daemon(datanode.threadGroup, this).start();
+            return;
+          }
         }
 
         opStartTime = monotonicNow();
         processOp(op);
         ++opsProcessed;
-      } while ((peer != null) &&
-          (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
+        if (peer == null || peer.isClosed() ||
+            dnConf.socketKeepaliveTimeout <= 0) {
+          break;
+        }
+        detached = parkOnEventLoop(dnConf.socketKeepaliveTimeout);
+      } while (!detached);
     } catch (Throwable t) {
       String s = datanode.getDisplayName() + ":DataXceiver error processing "
           + ((op == null) ? "unknown" : op.name()) + " operation "
@@ -322,16 +348,90 @@ public void run() {
       }
     } finally {
       collectThreadLocalStates();
-      LOG.debug("{}:Number of active connections is: {}",
-          datanode.getDisplayName(), datanode.getXceiverCount());
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+      if (!detached) {
+        LOG.debug("{}:Number of active connections is: {}",
+            datanode.getDisplayName(), datanode.getXceiverCount());
+        updateCurrentThreadName("Cleaning up");
+        closeIdle();
+      }
+    }
+  }
+
+  /**
+   * Set up the streams of a new connection.
+   * @return false if the client failed the SASL handshake.
+   */
+  private boolean initializeStreams() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peerAdded = true;
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      // the selector cannot see the data buffered by SASL streams
+      plainInput = saslStreams.in == socketIn;
+      canPark = plainInput;
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at {}. Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption", peer.getRemoteAddressString(), imne);
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at {}" +
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection",
+            peer.getRemoteAddressString(), imne);
       }
+      return false;
+    }
+
+    super.initialize(new DataInputStream(input));
+    return true;
+  }
+
+  private boolean isOnEventLoop() {
+    return eventLoop != null && !dedicated;
+  }
+
+  /**
+   * Wait on the event loop for the next request, which is then processed
+   * on a handler thread, if the connection is served by the event loop.
+   * @param timeoutMs how long to wait before closing the connection.
+   * @return whether the connection waits on the event loop.
+   */
+  boolean parkOnEventLoop(int timeoutMs) throws IOException {
+    if (!isOnEventLoop() || (in != null && in.available() > 0)) {
+      // the next request is read on this thread
+      return false;
+    }
+    if (peerAdded) {
+      dataXceiverServer.setPeerThread(peer, null);
+    }
+    eventLoop.park(this, channel, timeoutMs);
+    return true;
+  }
+
+  /** Close the connection, when it is not served by any thread. */
+  void closeIdle() {
+    if (peer == null) {
+      return;
     }
+    if (peerAdded) {
+      dataXceiverServer.closePeer(peer);
+    } else {
+      IOUtils.cleanupWithLogger(LOG, peer);
+    }
+    IOUtils.closeStream(in);
   }
 
+
   /**
    * In this short living thread, any local states should be collected before
    * the thread dies away.
@@ -592,7 +692,7 @@ public void readBlock(final ExtendedBlock block,
       try {
         blockSender = new BlockSender(block, blockOffset, length,
             true, false, sendChecksum, datanode, clientTraceFmt,
-            cachingStrategy);
+            cachingStrategy, readPattern);
       } catch(IOException e) {
         String msg = "opReadBlock " + block + " received exception " + e; 
         LOG.info(msg);
@@ -740,6 +840,7 @@ public void writeBlock(final ExtendedBlock block,
 
     DataOutputStream mirrorOut = null;  // stream to next target
     DataInputStream mirrorIn = null;    // reply from next target
+    WritableByteChannel mirrorChannel = null; // unbuffered mirrorOut
     Socket mirrorSock = null;           // socket to next target
     String mirrorNode = null;           // the name:port of next target
     String firstBadLink = "";           // first datanode that failed in connection setup
@@ -799,6 +900,10 @@ public void writeBlock(final ExtendedBlock block,
             datanode.getDataEncryptionKeyFactoryForBlock(block);
           IOStreamPair saslStreams = datanode.saslClient.socketSend(mirrorSock,
             unbufMirrorOut, unbufMirrorIn, keyFactory, blockToken, targets[0]);
+          if (saslStreams.out == unbufMirrorOut &&
+              unbufMirrorOut instanceof WritableByteChannel) {
+            mirrorChannel = (WritableByteChannel) unbufMirrorOut;
+          }
           unbufMirrorOut = saslStreams.out;
           unbufMirrorIn = saslStreams.in;
           mirrorOut = new DataOutputStream(new BufferedOutputStream(unbufMirrorOut,
@@ -855,6 +960,7 @@ public void writeBlock(final ExtendedBlock block,
           }
           IOUtils.closeStream(mirrorOut);
           mirrorOut = null;
+          mirrorChannel = null;
           IOUtils.closeStream(mirrorIn);
           mirrorIn = null;
           IOUtils.closeSocket(mirrorSock);
@@ -888,6 +994,14 @@ public void writeBlock(final ExtendedBlock block,
       // receive the block and mirror to the next target
       if (blockReceiver != null) {
         String mirrorAddr = (mirrorSock == null) ? null : mirrorNode;
+        if (dnConf.writeDirectBuffers && plainInput &&
+            (mirrorOut == null || mirrorChannel != null)) {
+          ReadableByteChannel packetChannel = peer.getInputStreamChannel();
+          if (packetChannel != null) {
+            blockReceiver.useDirectBuffers(
+                new BufferedStreamChannel(in, packetChannel), mirrorChannel);
+          }
+        }
         blockReceiver.receiveBlock(mirrorOut, mirrorIn, replyOut,
             mirrorAddr, null, targets, false);
 
@@ -27,6 +27,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.PeerServer;
+import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
@@ -40,6 +41,9 @@
  * This is created to listen for requests from clients or 
  * other DataNodes.  This small server does not use the 
  * Hadoop IPC mechanism.
+ *
+ * Each connection is served by a thread of its own, unless the
+ * {@link XceiverEventLoop} is enabled for TCP connections.
  */
 class DataXceiverServer implements Runnable {
   public static final Logger LOG = DataNode.LOG;
@@ -49,6 +53,8 @@ class DataXceiverServer implements Runnable {
   private final HashMap<Peer, Thread> peers = new HashMap<Peer, Thread>();
   private final HashMap<Peer, DataXceiver> peersXceiver = new HashMap<Peer, DataXceiver>();
   private boolean closed = false;
+  /** Serves the connections with a bounded pool, null if disabled. */
+  private final XceiverEventLoop eventLoop;
   
   /**
    * Maximal number of concurrent xceivers per node.
@@ -118,7 +124,7 @@ synchronized void release() {
   
   
   DataXceiverServer(PeerServer peerServer, Configuration conf,
-      DataNode datanode) {
+      DataNode datanode) throws IOException {
     this.peerServer = peerServer;
     this.datanode = datanode;
     
@@ -135,11 +141,25 @@ synchronized void release() {
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_MAX_NUM_CONCURRENT_MOVES_DEFAULT));
+
+    if (peerServer instanceof TcpPeerServer && conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_DEFAULT)) {
+      this.eventLoop = new XceiverEventLoop("DataXceiver",
+          conf.getInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_HANDLER_COUNT_KEY,
+              DFSConfigKeys.DFS_DATANODE_XCEIVER_HANDLER_COUNT_DEFAULT),
+          maxXceiverCount);
+    } else {
+      this.eventLoop = null;
+    }
   }
 
   @Override
   public void run() {
     Peer peer = null;
+    if (eventLoop != null) {
+      eventLoop.start();
+    }
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
         peer = peerServer.accept();
@@ -152,9 +172,10 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        final DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (!xceiver.parkOnEventLoop(datanode.getDnConf().socketTimeout)) {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -211,6 +232,9 @@ public void run() {
     }
     // Close all peers.
     closeAllPeers();
+    if (eventLoop != null) {
+      eventLoop.close();
+    }
   }
 
   void kill() {
@@ -235,6 +259,16 @@ synchronized void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     datanode.metrics.incrDataNodeActiveXceiversCount();
   }
 
+  /**
+   * Update the thread serving a peer, which is null while the peer waits on
+   * the event loop.
+   */
+  synchronized void setPeerThread(Peer peer, Thread t) {
+    if (peers.containsKey(peer)) {
+      peers.put(peer, t);
+    }
+  }
+
   synchronized void closePeer(Peer peer) {
     peers.remove(peer);
     peersXceiver.remove(peer);
@@ -272,7 +306,9 @@ synchronized void restartNotifyPeers() {
     assert (datanode.shouldRun == true && datanode.shutdownForUpgrade);
     for (Thread t : peers.values()) {
       // interrupt each and every DataXceiver thread.
-      t.interrupt();
+      if (t != null) {
+        t.interrupt();
+      }
     }
   }
 
@@ -298,6 +334,20 @@ synchronized int getNumPeersXceiver() {
     return peersXceiver.size();
   }
 
+  XceiverEventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  /**
+   * @return the number of connections served by the event loop without a
+   *         thread of their own, waiting for a request or a handler, or
+   *         being processed.
+   */
+  int getNumEventLoopXceivers() {
+    return eventLoop == null ? 0 : eventLoop.getNumWaiting()
+        + eventLoop.getNumQueued() + eventLoop.getNumActiveHandlers();
+  }
+
   @VisibleForTesting
   PeerServer getPeerServer() {
     return peerServer;
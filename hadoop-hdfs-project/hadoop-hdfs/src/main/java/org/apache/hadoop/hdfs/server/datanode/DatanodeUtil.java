@@ -120,13 +120,32 @@ public static boolean dirNoFilesRecursive(
    * @return
    */
   public static File idToBlockDir(File root, long blockId) {
-    int d1 = (int) ((blockId >> 16) & 0x1F);
-    int d2 = (int) ((blockId >> 8) & 0x1F);
+    int d1 = idToBlockDir1(blockId);
+    int d2 = idToBlockDir2(blockId);
     String path = DataStorage.BLOCK_SUBDIR_PREFIX + d1 + SEP +
         DataStorage.BLOCK_SUBDIR_PREFIX + d2;
     return new File(root, path);
   }
 
+  /** The number of subdirs on each level of {@link #idToBlockDir}. */
+  public static final int NUM_BLOCK_SUBDIRS = 32;
+
+  /**
+   * @return the index of the first level subdir of
+   *         {@link #idToBlockDir} for a block ID.
+   */
+  public static int idToBlockDir1(long blockId) {
+    return (int) ((blockId >> 16) & 0x1F);
+  }
+
+  /**
+   * @return the index of the second level subdir of
+   *         {@link #idToBlockDir} for a block ID.
+   */
+  public static int idToBlockDir2(long blockId) {
+    return (int) ((blockId >> 8) & 0x1F);
+  }
+
   /**
    * @return the FileInputStream for the meta data of the given block.
    * @throws FileNotFoundException
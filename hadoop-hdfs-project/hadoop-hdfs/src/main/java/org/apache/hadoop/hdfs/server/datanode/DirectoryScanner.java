@@ -57,6 +57,8 @@
 /**
  * Periodically scans the data directories for block and block metadata files.
  * Reconciles the differences with block information maintained in the dataset.
+ * The leaf block directories may be split into shards, so that each scan
+ * only lists and reconciles the blocks of one shard.
  */
 @InterfaceAudience.Private
 public class DirectoryScanner implements Runnable {
@@ -67,12 +69,21 @@ public class DirectoryScanner implements Runnable {
       + " starting at %s with interval of %dms";
   private static final String START_MESSAGE_WITH_THROTTLE = START_MESSAGE
       + " and throttle limit of %dms/s";
+  /** Every leaf directory of the block directories can be a shard. */
+  private static final int MAX_SHARDS =
+      DatanodeUtil.NUM_BLOCK_SUBDIRS * DatanodeUtil.NUM_BLOCK_SUBDIRS;
 
   private final FsDatasetSpi<?> dataset;
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
   private final int throttleLimitMsPerSec;
+  /** The number of shards the block directories are split into. */
+  private final int numShards;
+  /** The shard verified by the current scan. */
+  private volatile int shard = 0;
+  /** The shard verified by the next scan. */
+  private int nextShard = 0;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
   private final DataNode datanode;
@@ -250,6 +261,18 @@ public DirectoryScanner(DataNode datanode, FsDatasetSpi<?> dataset,
       throttleLimitMsPerSec = throttle;
     }
 
+    int shards = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_DEFAULT);
+    if (shards < 1 || shards > MAX_SHARDS) {
+      LOG.error(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_KEY
+          + " set to " + shards + ", which is not between 1 and "
+          + MAX_SHARDS + ". Assuming default value of "
+          + DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_DEFAULT);
+      shards = DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_DEFAULT;
+    }
+    numShards = shards;
+
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
@@ -281,6 +304,10 @@ void start() {
     }
 
     LOG.info(logMsg);
+    if (numShards > 1) {
+      LOG.info("Each scan verifies one of " + numShards
+          + " shards of the block directories");
+    }
     masterThread.scheduleAtFixedRate(this, offset, scanPeriodMsecs, 
                                      TimeUnit.MILLISECONDS);
   }
@@ -390,10 +417,12 @@ public void reconcile() throws IOException {
    */
   private void scan() {
     clear();
+    shard = nextShard;
+    nextShard = (nextShard + 1) % numShards;
     Map<String, ScanInfo[]> diskReport = getDiskReport();
 
     // Hold FSDataset lock to prevent further changes to the block map
-    try(AutoCloseableLock lock = dataset.acquireDatasetLock()) {
+    try(AutoCloseableLock lock = dataset.acquireDatasetReadLock()) {
       for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
         String bpid = entry.getKey();
         ScanInfo[] blockpoolReport = entry.getValue();
@@ -405,6 +434,9 @@ private void scan() {
         
         statsRecord.totalBlocks = blockpoolReport.length;
         final List<ReplicaInfo> bl = dataset.getFinalizedBlocks(bpid);
+        if (numShards > 1) {
+          bl.removeIf(b -> !isInShard(b.getBlockId()));
+        }
         Collections.sort(bl); // Sort based on blockId
   
         int d = 0; // index for blockpoolReport
@@ -475,6 +507,35 @@ private void scan() {
     } //end synchronized
   }
 
+  /**
+   * @return whether the block is verified by the current scan, because the
+   *         directory it belongs to is in the shard of the scan.
+   */
+  private boolean isInShard(long blockId) {
+    return isInShard(DatanodeUtil.idToBlockDir1(blockId),
+        DatanodeUtil.idToBlockDir2(blockId));
+  }
+
+  private boolean isInShard(int d1, int d2) {
+    return (d1 * DatanodeUtil.NUM_BLOCK_SUBDIRS + d2) % numShards == shard;
+  }
+
+  /**
+   * @return the index of a block subdir, or -1 if the name is not the name
+   *         of a block subdir.
+   */
+  private static int getSubdirIndex(String name) {
+    if (!name.startsWith(DataStorage.BLOCK_SUBDIR_PREFIX)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(
+          name.substring(DataStorage.BLOCK_SUBDIR_PREFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   /**
    * Add the ScanInfo object to the list of differences and adjust the stats
    * accordingly.  This method is called when a block is found on the disk,
@@ -622,7 +683,12 @@ public ScanInfoPerBlockPool call() throws IOException {
         throttleTimer.reset().start();
 
         try {
-          result.put(bpid, volume.compileReport(bpid, report, this));
+          report = volume.compileReport(bpid, report, this);
+          if (numShards > 1) {
+            // volumes may report the blocks of the other shards
+            report.removeIf(info -> !isInShard(info.getBlockId()));
+          }
+          result.put(bpid, report);
         } catch (InterruptedException ex) {
           // Exit quickly and flag the scanner to do the same
           result = null;
@@ -632,6 +698,23 @@ public ScanInfoPerBlockPool call() throws IOException {
       return result;
     }
 
+    /**
+     * Called by the thread to skip the second level block subdirs which are
+     * not in the shard verified by the current scan, without listing them.
+     *
+     * @param subdir1 the name of a first level block subdir
+     * @param subdir2 the name of a directory in subdir1
+     * @return whether the blocks in subdir2 are verified by the current scan
+     */
+    public boolean isBlockDirScanned(String subdir1, String subdir2) {
+      if (numShards == 1) {
+        return true;
+      }
+      final int d1 = getSubdirIndex(subdir1);
+      final int d2 = getSubdirIndex(subdir2);
+      return d1 < 0 || d2 < 0 || isInShard(d1, d2);
+    }
+
     /**
      * Called by the thread before each potential disk scan so that a pause
      * can be optionally inserted to limit the number of scans per second.
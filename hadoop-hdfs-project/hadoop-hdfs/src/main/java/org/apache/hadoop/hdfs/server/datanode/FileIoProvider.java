@@ -47,6 +47,7 @@
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
@@ -257,6 +258,35 @@ public boolean deleteWithExistsCheck(@Nullable FsVolumeSpi volume, File f) {
     }
   }
 
+  /**
+   * Write the remaining bytes of a buffer to a file through the channel of
+   * its stream. Unlike the writes of the stream, the writes of the channel
+   * do not copy direct buffers.
+   *
+   * @param volume  target volume. null if unavailable.
+   * @param fos  FileOutputStream of the file.
+   * @param buf  the bytes to write. Its position is not changed.
+   * @throws IOException
+   */
+  public void writeToChannel(
+      @Nullable FsVolumeSpi volume, FileOutputStream fos, ByteBuffer buf)
+      throws IOException {
+    final int len = buf.remaining();
+    final long begin = profilingEventHook.beforeFileIo(volume, WRITE, len);
+    try {
+      faultInjectorEventHook.beforeFileIo(volume, WRITE, len);
+      final FileChannel channel = fos.getChannel();
+      final ByteBuffer src = buf.duplicate();
+      while (src.hasRemaining()) {
+        channel.write(src);
+      }
+      profilingEventHook.afterFileIo(volume, WRITE, begin, len);
+    } catch (Exception e) {
+      onFailure(volume, begin);
+      throw e;
+    }
+  }
+
   /**
    * Transfer data from a FileChannel to a SocketOutputStream.
    *
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+/**
+ * Tracks the reads served on a connection to tell sequential streams from
+ * random ones, so that a {@link BlockSender} can manage the OS cache
+ * according to the stream its read belongs to rather than its own length.
+ *
+ * A read is sequential if it is long, or if it continues the previous read
+ * of the same block, possibly overlapping it like consecutive preads of a
+ * file format with block headers do. The readahead window of a sequential
+ * stream starts small and doubles with every read up to the maximum, while
+ * random reads get no readahead at all. Not thread safe; a connection
+ * serves one read at a time.
+ */
+class ReadPattern {
+  /** The readahead window of a stream which just turned sequential. */
+  static final long INITIAL_WINDOW = 128 * 1024;
+
+  private final long maxWindow;
+  private boolean hasLast = false;
+  private long lastBlockId;
+  private long lastStart;
+  private long lastEnd;
+  private boolean sequential = false;
+  /** The bytes read by the current run of sequential reads. */
+  private long runLength = 0;
+  private long window = 0;
+  /** The end of the range the stream read ahead in the current block. */
+  private long readaheadEnd = 0;
+
+  ReadPattern(long maxWindow) {
+    this.maxWindow = maxWindow;
+  }
+
+  /**
+   * Account for a read of the given range of a block.
+   *
+   * @param longRead whether the read is long enough to be sequential
+   *                 on its own.
+   */
+  void onRead(long blockId, long start, long end, boolean longRead) {
+    final boolean continued = hasLast && blockId == lastBlockId
+        && start >= lastStart && start <= lastEnd;
+    if (!continued) {
+      runLength = 0;
+      readaheadEnd = 0;
+    }
+    sequential = longRead || continued;
+    if (longRead) {
+      window = maxWindow;
+    } else if (continued) {
+      window = window == 0 ? Math.min(INITIAL_WINDOW, maxWindow)
+          : Math.min(window * 2, maxWindow);
+    } else {
+      window = 0;
+    }
+    runLength += end - start;
+    hasLast = true;
+    lastBlockId = blockId;
+    lastStart = start;
+    lastEnd = end;
+  }
+
+  /** @return whether the last read was part of a sequential stream. */
+  boolean isSequential() {
+    return sequential;
+  }
+
+  /** @return the bytes read by the current run of sequential reads. */
+  long getRunLength() {
+    return runLength;
+  }
+
+  /** @return the length to read ahead for the last read. */
+  long getReadaheadLength() {
+    return window;
+  }
+
+  long getReadaheadEnd() {
+    return readaheadEnd;
+  }
+
+  void setReadaheadEnd(long readaheadEnd) {
+    this.readaheadEnd = readaheadEnd;
+  }
+}
@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hdfs.net.Peer;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Op;
+import org.apache.hadoop.net.SocketInputStream;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+
+/**
+ * Serves the connections of a {@link DataXceiverServer} with a bounded pool
+ * of handler threads instead of a thread per connection.
+ *
+ * A connection waiting for its next operation is parked on a selector and
+ * holds no thread. Once the request arrives, a handler thread processes the
+ * operation with the blocking {@link DataXceiver} code, which streams block
+ * data with {@code FileChannel#transferTo} as before, and parks the
+ * connection again. Operations which may wait for other DataNodes, like
+ * the writes of a pipeline, could deadlock bounded pools of DataNodes
+ * waiting for each other, so a connection is handed over to a thread of its
+ * own when it requests one of them. The wire protocol is unchanged.
+ *
+ * Requests wait for a free handler in a queue bounded by the maximum number
+ * of xceivers; a connection whose request finds the queue full is closed.
+ * A read holds its handler until the whole requested range is sent, at the
+ * pace of the client, so the number of handlers bounds the number of reads
+ * served at once.
+ */
+class XceiverEventLoop implements Runnable, Closeable {
+  public static final Logger LOG = DataNode.LOG;
+
+  /** A connection waiting for its next operation. */
+  private static final class Waiter {
+    private final DataXceiver xceiver;
+    private final SocketChannel channel;
+    private final long deadline;
+    /** Orders waiters with the same deadline; set by the loop thread. */
+    private long id;
+
+    private Waiter(DataXceiver xceiver, SocketChannel channel,
+        long deadline) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  private final Selector selector;
+  private final ThreadPoolExecutor handlers;
+  /** Waiters to register, added by the handler threads. */
+  private final Queue<Waiter> newWaiters = new ConcurrentLinkedQueue<>();
+  /** Waiters in the order they time out; only used by the loop thread. */
+  private final NavigableSet<Waiter> deadlines = new TreeSet<>((a, b) ->
+      a.deadline != b.deadline ? Long.compare(a.deadline, b.deadline) :
+      Long.compare(a.id, b.id));
+  private long nextWaiterId = 0;
+  private final AtomicInteger numWaiting = new AtomicInteger();
+  /** Tasks queued for a handler thread, which have not started yet. */
+  private final AtomicInteger numQueued = new AtomicInteger();
+  private final Daemon thread;
+  private volatile boolean running = true;
+
+  XceiverEventLoop(String name, int numHandlers, int maxQueued)
+      throws IOException {
+    this.selector = Selector.open();
+    this.handlers = new ThreadPoolExecutor(numHandlers, numHandlers,
+        0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(Math.max(maxQueued, 1)),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat(name + " handler %d").build());
+    this.thread = new Daemon(this);
+    this.thread.setName(name + " event loop");
+    LOG.info("Serving data transfer connections with {} handler threads",
+        numHandlers);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * @return the socket channel of a TCP peer, or null if the peer cannot be
+   *         served by the event loop.
+   */
+  static SocketChannel getChannel(Peer peer) {
+    final ReadableByteChannel in = peer.getInputStreamChannel();
+    if (in instanceof SocketInputStream) {
+      final ReadableByteChannel channel = ((SocketInputStream) in).getChannel();
+      if (channel instanceof SocketChannel) {
+        return (SocketChannel) channel;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return whether a handler thread may process the operation, because it
+   *         does not wait for other DataNodes.
+   */
+  static boolean isHandlerOp(Op op) {
+    switch (op) {
+    case READ_BLOCK:
+    case BLOCK_CHECKSUM:
+    case COPY_BLOCK:
+    case TRANSFER_BLOCK:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Wait for the next request on a connection without holding a thread.
+   * The xceiver is run on a handler thread when the request arrives, and
+   * closed if none arrives within the timeout.
+   */
+  void park(DataXceiver xceiver, SocketChannel channel, long timeoutMs) {
+    numWaiting.incrementAndGet();
+    newWaiters.add(new Waiter(xceiver, channel,
+        Time.monotonicNow() + timeoutMs));
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        registerNewWaiters();
+        final Waiter first = deadlines.isEmpty() ? null : deadlines.first();
+        if (first == null) {
+          selector.select();
+        } else {
+          selector.select(Math.max(first.deadline - Time.monotonicNow(), 1));
+        }
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+          if (key.isValid()) {
+            key.interestOps(0);
+            wakeUp((Waiter) key.attachment());
+          }
+        }
+        expireWaiters();
+      } catch (Throwable t) {
+        if (running) {
+          LOG.error("Error in the data transfer event loop", t);
+        }
+      }
+    }
+  }
+
+  private void registerNewWaiters() {
+    Waiter waiter;
+    while ((waiter = newWaiters.poll()) != null) {
+      try {
+        // the key of a channel stays registered while the connection is
+        // open, so that it need not be flushed before parking again
+        final SelectionKey key = waiter.channel.keyFor(selector);
+        if (key == null) {
+          waiter.channel.register(selector, SelectionKey.OP_READ, waiter);
+        } else {
+          key.attach(waiter);
+          key.interestOps(SelectionKey.OP_READ);
+        }
+        waiter.id = nextWaiterId++;
+        deadlines.add(waiter);
+      } catch (ClosedChannelException | RuntimeException e) {
+        LOG.debug("Failed to wait for a request from {}",
+            waiter.xceiver, e);
+        numWaiting.decrementAndGet();
+        waiter.xceiver.closeIdle();
+      }
+    }
+  }
+
+  private void wakeUp(Waiter waiter) {
+    if (!deadlines.remove(waiter)) {
+      return;
+    }
+    numWaiting.decrementAndGet();
+    if (!execute(waiter.xceiver)) {
+      if (running) {
+        LOG.warn("Closing {} as the queue of the {} handler threads is full",
+            waiter.xceiver, handlers.getMaximumPoolSize());
+      }
+      waiter.xceiver.closeIdle();
+    }
+  }
+
+  private void expireWaiters() {
+    final long now = Time.monotonicNow();
+    while (!deadlines.isEmpty() && deadlines.first().deadline <= now) {
+      final Waiter waiter = deadlines.pollFirst();
+      numWaiting.decrementAndGet();
+      final SelectionKey key = waiter.channel.keyFor(selector);
+      if (key != null) {
+        key.cancel();
+      }
+      waiter.xceiver.closeIdle();
+    }
+  }
+
+  /**
+   * Run a task on a handler thread.
+   * @return false if the event loop is closed or its queue is full.
+   */
+  boolean execute(Runnable task) {
+    numQueued.incrementAndGet();
+    try {
+      handlers.execute(() -> {
+        // the handler is counted as active before the task runs
+        numQueued.decrementAndGet();
+        final String name = Thread.currentThread().getName();
+        try {
+          task.run();
+        } finally {
+          Thread.currentThread().setName(name);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      numQueued.decrementAndGet();
+      return false;
+    }
+  }
+
+  /** @return the number of connections waiting for a request. */
+  int getNumWaiting() {
+    return numWaiting.get();
+  }
+
+  /** @return the number of requests waiting for a handler thread. */
+  int getNumQueued() {
+    return numQueued.get();
+  }
+
+  /** @return the number of handler threads processing an operation. */
+  int getNumActiveHandlers() {
+    return handlers.getActiveCount();
+  }
+
+  @VisibleForTesting
+  int getNumHandlers() {
+    return handlers.getMaximumPoolSize();
+  }
+
+  /** Stop the loop and close the connections waiting for a request. */
+  @Override
+  public void close() {
+    running = false;
+    handlers.shutdownNow();
+    selector.wakeup();
+    try {
+      thread.join(10000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    Waiter waiter;
+    while ((waiter = newWaiters.poll()) != null) {
+      waiter.xceiver.closeIdle();
+    }
+    for (Waiter w : deadlines) {
+      w.xceiver.closeIdle();
+    }
+    deadlines.clear();
+    numWaiting.set(0);
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close the selector", e);
+    }
+  }
+}
@@ -240,7 +240,7 @@ StorageReport[] getStorageReports(String bpid)
    * Gets a list of references to the finalized blocks for the given block pool.
    * <p>
    * Callers of this function should call
-   * {@link FsDatasetSpi#acquireDatasetLock} to avoid blocks' status being
+   * {@link FsDatasetSpi#acquireDatasetReadLock} to avoid blocks' status being
    * changed during list iteration.
    * </p>
    * @return a list of references to the finalized blocks for the given block
@@ -660,4 +660,13 @@ ReplicaInfo moveBlockAcrossVolumes(final ExtendedBlock block,
    * Acquire the lock of the data set.
    */
   AutoCloseableLock acquireDatasetLock();
+
+  /**
+   * Acquire the lock of the data set for reading only. The lock may be
+   * shared with other readers, and holding it does not allow to change the
+   * data set.
+   */
+  default AutoCloseableLock acquireDatasetReadLock() {
+    return acquireDatasetLock();
+  }
 }
@@ -22,6 +22,7 @@
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
@@ -36,6 +37,9 @@
 public class ReplicaOutputStreams implements Closeable {
   public static final Logger LOG = DataNode.LOG;
 
+  /** The size of the chunks copied from buffers without arrays. */
+  private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
   private FileDescriptor outFd = null;
   /** Stream to block. */
   private OutputStream dataOut;
@@ -148,6 +152,28 @@ public void writeDataToDisk(byte[] b, int off, int len)
     dataOut.write(b, off, len);
   }
 
+  /**
+   * Write the remaining bytes of a buffer to the data stream. The bytes of
+   * direct buffers are written without copying them to the heap when the
+   * stream is a file stream. The position of the buffer is not changed.
+   */
+  public void writeDataToDisk(ByteBuffer buf) throws IOException {
+    if (buf.hasArray()) {
+      dataOut.write(buf.array(), buf.arrayOffset() + buf.position(),
+          buf.remaining());
+    } else if (dataOut instanceof FileOutputStream) {
+      fileIoProvider.writeToChannel(volume, (FileOutputStream) dataOut, buf);
+    } else {
+      final ByteBuffer src = buf.duplicate();
+      final byte[] chunk = new byte[Math.min(src.remaining(), COPY_CHUNK_SIZE)];
+      while (src.hasRemaining()) {
+        final int n = Math.min(chunk.length, src.remaining());
+        src.get(chunk, 0, n);
+        dataOut.write(chunk, 0, n);
+      }
+    }
+  }
+
   public void syncFileRangeIfPossible(long offset, long nbytes,
       int flags) throws NativeIOException {
     fileIoProvider.syncFileRange(
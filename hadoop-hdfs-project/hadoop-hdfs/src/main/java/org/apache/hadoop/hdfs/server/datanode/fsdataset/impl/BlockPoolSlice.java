@@ -18,7 +18,9 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -30,7 +32,11 @@
 import java.io.Writer;
 import java.util.Iterator;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -43,6 +49,7 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
@@ -52,16 +59,22 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaBuilder;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.RamDiskReplicaTracker.RamDiskReplica;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi.ScanInfo;
 
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
+import org.apache.hadoop.util.LimitInputStream;
 import org.apache.hadoop.util.ShutdownHookManager;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.Timer;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.protobuf.CodedOutputStream;
 
 /**
  * A block pool slice represents a portion of a block pool stored on a volume.
@@ -89,7 +102,17 @@ class BlockPoolSlice {
   private static final int SHUTDOWN_HOOK_PRIORITY = 30;
   private final boolean deleteDuplicateReplicas;
   private static final String REPLICA_CACHE_FILE = "replicas";
-  private final long replicaCacheExpiry = 5*60*1000;
+  /** Starts the versioned replica cache files; older ones have no header. */
+  private static final int REPLICA_CACHE_MAGIC = 0x52504c43;
+  private static final int REPLICA_CACHE_VERSION = 1;
+  private final long replicaCacheExpiry;
+  /** Validates the replicas loaded from a periodically saved cache. */
+  private volatile Daemon replicaCacheValidator;
+  /**
+   * Whether the replica map matches the disk, false while the replicas
+   * loaded from a periodically saved cache are not fully validated.
+   */
+  private volatile boolean replicaCacheValidated = true;
   private AtomicLong numOfBlocks = new AtomicLong();
   private final long cachedDfsUsedCheckTime;
   private final Timer timer;
@@ -138,6 +161,11 @@ class BlockPoolSlice {
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH,
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
 
+    this.replicaCacheExpiry = conf.getTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_EXPIRY_MS_DEFAULT,
+        TimeUnit.MILLISECONDS);
+
     this.timer = timer;
 
     // Files that were being written when the datanode was last shutdown
@@ -754,7 +782,10 @@ public String toString() {
   }
 
   void shutdown(BlockListAsLongs blocksListToPersist) {
-    saveReplicas(blocksListToPersist);
+    stopReplicaCacheValidator();
+    // a replica map which was not fully validated is not saved as trusted,
+    // so that it is validated again when loaded
+    saveReplicas(blocksListToPersist, replicaCacheValidated);
     saveDfsUsed();
     dfsUsedSaved = true;
 
@@ -792,8 +823,34 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
     FileInputStream inputStream = null;
     try {
       inputStream = fileIoProvider.getFileInputStream(volume, replicaFile);
-      BlockListAsLongs blocksList =
-          BlockListAsLongs.readFrom(inputStream, maxDataLength);
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(inputStream, ioFileBufferSize));
+      // a cache without header was written on shutdown by an older release
+      boolean savedOnShutdown = true;
+      BlockListAsLongs blocksList;
+      in.mark(Integer.BYTES);
+      if (in.readInt() == REPLICA_CACHE_MAGIC) {
+        final int version = in.readInt();
+        if (version != REPLICA_CACHE_VERSION) {
+          LOG.info("Replica Cache file: " + replicaFile.getPath() +
+              " has unknown version " + version);
+          return false;
+        }
+        savedOnShutdown = in.readBoolean();
+        final long length = in.readLong();
+        final CheckedInputStream body = new CheckedInputStream(
+            new LimitInputStream(in, length), new CRC32());
+        // the body is read to its end, so the checksum covers all of it
+        blocksList = BlockListAsLongs.readFrom(body, maxDataLength);
+        if (in.readLong() != body.getChecksum().getValue()) {
+          LOG.info("Replica Cache file: " + replicaFile.getPath() +
+              " has a checksum mismatch");
+          return false;
+        }
+      } else {
+        in.reset();
+        blocksList = BlockListAsLongs.readFrom(in, maxDataLength);
+      }
       if (blocksList == null) {
         return false;
       }
@@ -806,12 +863,19 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
         case RUR:
         case RBW:
         case RWR:
-          addReplicaToReplicasMap(replica, tmpReplicaMap, lazyWriteReplicaMap, false);
+          // replicas being written may have changed since a periodic save
+          if (savedOnShutdown) {
+            addReplicaToReplicasMap(replica, tmpReplicaMap,
+                lazyWriteReplicaMap, false);
+          }
           break;
         default:
           break;
         }
       }
+      if (!savedOnShutdown) {
+        addToReplicasMap(tmpReplicaMap, rbwDir, lazyWriteReplicaMap, false);
+      }
       // Now it is safe to add the replica into volumeMap
       // In case of any exception during parsing this cache file, fall back
       // to scan all the files on disk.
@@ -825,6 +889,9 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
       }
       LOG.info("Successfully read replica from cache file : "
           + replicaFile.getPath());
+      if (!savedOnShutdown) {
+        startReplicaCacheValidator(volumeMap, blocksList);
+      }
       return true;
     } catch (Exception e) {
       // Any exception we need to revert back to read from disk
@@ -843,26 +910,145 @@ private boolean readReplicasFromCache(ReplicaMap volumeMap,
       }
     }
   }
+  /**
+   * Start validating the replicas loaded from a periodically saved cache in
+   * the background. Replicas whose files are gone are removed from the
+   * replica map, and blocks finalized since the cache was saved are added
+   * to it.
+   */
+  private void startReplicaCacheValidator(final ReplicaMap volumeMap,
+      final BlockListAsLongs cached) {
+    final Daemon validator = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        final long start = Time.monotonicNow();
+        try {
+          validateCachedReplicas(volumeMap, cached);
+          validateFinalizedDir(volumeMap, finalizedDir);
+          replicaCacheValidated = true;
+          LOG.info("Validated the cached replicas of " + currentDir + " in "
+              + (Time.monotonicNow() - start) + "ms");
+        } catch (InterruptedException e) {
+          LOG.info("Stopped validating the cached replicas of " + currentDir);
+        } catch (IOException e) {
+          LOG.warn("Failed to validate the cached replicas of " + currentDir,
+              e);
+        }
+      }
+    });
+    validator.setName("ReplicaCacheValidator-" + currentDir);
+    replicaCacheValidated = false;
+    replicaCacheValidator = validator;
+    validator.start();
+  }
+
+  /**
+   * Stop validating the cached replicas and wait for the validator to exit.
+   * The validator updates the replica map under the dataset lock, so this
+   * must not be called with the dataset lock held.
+   */
+  void stopReplicaCacheValidator() {
+    final Daemon validator = replicaCacheValidator;
+    if (validator != null) {
+      validator.interrupt();
+      Uninterruptibles.joinUninterruptibly(validator);
+      replicaCacheValidator = null;
+    }
+  }
+
+  @VisibleForTesting
+  boolean isReplicaCacheValidated() {
+    return replicaCacheValidated;
+  }
 
-  private void saveReplicas(BlockListAsLongs blocksListToPersist) {
+  @VisibleForTesting
+  void waitForReplicaCacheValidation() throws InterruptedException {
+    final Daemon validator = replicaCacheValidator;
+    if (validator != null) {
+      validator.join();
+    }
+  }
+
+  private void validateCachedReplicas(ReplicaMap volumeMap,
+      BlockListAsLongs cached) throws InterruptedException, IOException {
+    for (BlockReportReplica replica : cached) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      final ReplicaInfo info = volumeMap.get(bpid, replica.getBlockId());
+      if (info != null && info.getVolume() == volume &&
+          info.getState() == ReplicaState.FINALIZED &&
+          !info.blockDataExists()) {
+        // removes the replica if its files are still missing
+        volume.getDataset().checkAndUpdate(bpid,
+            new ScanInfo(replica.getBlockId(), null, null, volume));
+      }
+    }
+  }
+
+  private void validateFinalizedDir(ReplicaMap volumeMap, File dir)
+      throws InterruptedException, IOException {
+    final File[] files = fileIoProvider.listFiles(volume, dir);
+    for (File file : files) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (file.isDirectory()) {
+        validateFinalizedDir(volumeMap, file);
+        continue;
+      }
+      if (!Block.isBlockFilename(file)) {
+        continue;
+      }
+      final long blockId = Block.filename2id(file.getName());
+      final long genStamp = FsDatasetUtil.getGenerationStampFromFile(
+          files, file);
+      final ReplicaInfo info = volumeMap.get(bpid, blockId);
+      if (info == null || (info.getVolume() == volume &&
+          (info.getGenerationStamp() != genStamp ||
+           info.getNumBytes() != file.length()))) {
+        // adds or updates the replica if it still differs
+        final File metaFile =
+            genStamp == HdfsConstants.GRANDFATHER_GENERATION_STAMP ?
+            null : FsDatasetUtil.getMetaFile(file, genStamp);
+        volume.getDataset().checkAndUpdate(bpid,
+            new ScanInfo(blockId, file, metaFile, volume));
+      }
+    }
+  }
+
+  private synchronized void saveReplicas(BlockListAsLongs blocksListToPersist,
+      boolean onShutdown) {
     if (blocksListToPersist == null ||
         blocksListToPersist.getNumberOfBlocks()== 0) {
       return;
     }
     final File tmpFile = new File(currentDir, REPLICA_CACHE_FILE + ".tmp");
     final File replicaCacheFile = new File(currentDir, REPLICA_CACHE_FILE);
-    if (!fileIoProvider.deleteWithExistsCheck(volume, tmpFile) ||
-        !fileIoProvider.deleteWithExistsCheck(volume, replicaCacheFile)) {
+    if (!fileIoProvider.deleteWithExistsCheck(volume, tmpFile)) {
       return;
     }
 
     FileOutputStream out = null;
     try {
       out = fileIoProvider.getFileOutputStream(volume, tmpFile);
-      blocksListToPersist.writeTo(out);
+      final CRC32 checksum = new CRC32();
+      final DataOutputStream dataOut = new DataOutputStream(
+          new BufferedOutputStream(out, ioFileBufferSize));
+      dataOut.writeInt(REPLICA_CACHE_MAGIC);
+      dataOut.writeInt(REPLICA_CACHE_VERSION);
+      dataOut.writeBoolean(onShutdown);
+      dataOut.writeLong(CodedOutputStream.computeInt32Size(1,
+          blocksListToPersist.getNumberOfBlocks()) +
+          CodedOutputStream.computeBytesSize(2,
+              blocksListToPersist.getBlocksBuffer()));
+      blocksListToPersist.writeTo(new CheckedOutputStream(dataOut, checksum));
+      dataOut.writeLong(checksum.getValue());
+      dataOut.flush();
+      fileIoProvider.sync(volume, out);
       out.close();
-      // Renaming the tmp file to replicas
-      fileIoProvider.moveFile(volume, tmpFile, replicaCacheFile);
+      // Replacing the previous cache with the tmp file
+      fileIoProvider.replaceFile(volume, tmpFile, replicaCacheFile);
     } catch (Exception e) {
       // If write failed, the volume might be bad. Since the cache file is
       // not critical, log the error, delete both the files (tmp and cache)
@@ -875,6 +1061,15 @@ private void saveReplicas(BlockListAsLongs blocksListToPersist) {
     }
   }
 
+  /**
+   * Save the replica cache while the block pool is in use, so that the
+   * replicas can be loaded from it after a crash, and validated in the
+   * background.
+   */
+  void saveReplicaCache(BlockListAsLongs blocksListToPersist) {
+    saveReplicas(blocksListToPersist, false);
+  }
+
   void incrNumBlocks() {
     numOfBlocks.incrementAndGet();
   }
@@ -39,7 +39,7 @@
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.NotCompliantMBeanException;
@@ -111,7 +111,8 @@
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
-import org.apache.hadoop.util.InstrumentedLock;
+import org.apache.hadoop.util.InstrumentedReadLock;
+import org.apache.hadoop.util.InstrumentedWriteLock;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.Timer;
@@ -178,7 +179,7 @@ public StorageReport[] getStorageReports(String bpid)
 
   @Override
   public FsVolumeImpl getVolume(final ExtendedBlock b) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final ReplicaInfo r =
           volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
       return r != null ? (FsVolumeImpl) r.getVolume() : null;
@@ -188,7 +189,7 @@ public FsVolumeImpl getVolume(final ExtendedBlock b) {
   @Override // FsDatasetSpi
   public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       ReplicaInfo r = volumeMap.get(bpid, blkid);
       if (r == null) {
         return null;
@@ -234,6 +235,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   final Map<String, DatanodeStorage> storageMap;
   final FsDatasetAsyncDiskService asyncDiskService;
   final Daemon lazyWriter;
+  private final Daemon replicaCacheSaver;
   final FsDatasetCache cacheManager;
   private final Configuration conf;
   private final int volFailuresTolerated;
@@ -253,8 +255,15 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   private boolean blockPinningEnabled;
   private final int maxDataLength;
 
+  /**
+   * Exclusive lock for operations which change the dataset. It is not
+   * striped by block pool or volume, so all changes are serialized.
+   */
   @VisibleForTesting
   final AutoCloseableLock datasetLock;
+  /** Shared lock for operations which only read the dataset. */
+  @VisibleForTesting
+  final AutoCloseableLock datasetReadLock;
   private final Condition datasetLockCondition;
   
   /**
@@ -267,14 +276,20 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     this.dataStorage = storage;
     this.conf = conf;
     this.smallBufferSize = DFSUtilClient.getSmallBufferSize(conf);
+    // Readers of the replica map, like the BlockSenders of concurrent reads,
+    // share the lock instead of queueing behind each other.
+    final ReentrantReadWriteLock datasetRWLock =
+        new ReentrantReadWriteLock(true);
+    final long lockSuppressInterval = conf.getTimeDuration(
+        DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY,
+        DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT,
+        TimeUnit.MILLISECONDS);
     this.datasetLock = new AutoCloseableLock(
-        new InstrumentedLock(getClass().getName(), LOG,
-          new ReentrantLock(true),
-          conf.getTimeDuration(
-            DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY,
-            DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT,
-            TimeUnit.MILLISECONDS),
-          300));
+        new InstrumentedWriteLock(getClass().getName(), LOG,
+          datasetRWLock, lockSuppressInterval, 300));
+    this.datasetReadLock = new AutoCloseableLock(
+        new InstrumentedReadLock(getClass().getName(), LOG,
+          datasetRWLock, lockSuppressInterval, 300));
     this.datasetLockCondition = datasetLock.newCondition();
 
     // The number of volumes required for operation is the total number
@@ -297,7 +312,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     }
 
     storageMap = new ConcurrentHashMap<String, DatanodeStorage>();
-    volumeMap = new ReplicaMap(datasetLock);
+    volumeMap = new ReplicaMap(datasetReadLock, datasetLock);
     ramDiskReplicaTracker = RamDiskReplicaTracker.getInstance(conf, this);
 
     @SuppressWarnings("unchecked")
@@ -332,6 +347,18 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       lazyWriter = null;
     }
 
+    final long replicaCacheSaveInterval = conf.getTimeDuration(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_DEFAULT,
+        TimeUnit.MILLISECONDS);
+    if (replicaCacheSaveInterval > 0) {
+      replicaCacheSaver = new Daemon(
+          new ReplicaCacheSaver(replicaCacheSaveInterval));
+      replicaCacheSaver.start();
+    } else {
+      replicaCacheSaver = null;
+    }
+
     registerMBean(datanode.getDatanodeUuid());
 
     // Add a Metrics2 Source Interface. This is same
@@ -354,6 +381,11 @@ public AutoCloseableLock acquireDatasetLock() {
     return datasetLock.acquire();
   }
 
+  @Override
+  public AutoCloseableLock acquireDatasetReadLock() {
+    return datasetReadLock.acquire();
+  }
+
   /**
    * Gets initial volume failure information for all volumes that failed
    * immediately at startup.  The method works by determining the set difference
@@ -425,7 +457,8 @@ private void addVolume(Storage.StorageDirectory sd) throws IOException {
                               .setConf(this.conf)
                               .build();
     FsVolumeReference ref = fsVolume.obtainReference();
-    ReplicaMap tempVolumeMap = new ReplicaMap(datasetLock);
+    ReplicaMap tempVolumeMap =
+        new ReplicaMap(datasetReadLock, datasetLock);
     fsVolume.getVolumeMap(tempVolumeMap, ramDiskReplicaTracker);
 
     activateVolume(tempVolumeMap, sd, storageLocation.getStorageType(), ref);
@@ -509,6 +542,12 @@ public void removeVolumes(
         new ArrayList<>(storageLocsToRemove);
     Map<String, List<ReplicaInfo>> blkToInvalidate = new HashMap<>();
     List<String> storageToRemove = new ArrayList<>();
+    // the validators of the cached replicas need the dataset lock to exit
+    for (FsVolumeImpl volume : volumes.getVolumes()) {
+      if (storageLocationsToRemove.contains(volume.getStorageLocation())) {
+        volume.stopReplicaCacheValidators();
+      }
+    }
     try (AutoCloseableLock lock = datasetLock.acquire()) {
       for (int idx = 0; idx < dataStorage.getNumStorageDirs(); idx++) {
         Storage.StorageDirectory sd = dataStorage.getStorageDir(idx);
@@ -820,7 +859,7 @@ ReplicaInfo getReplicaInfo(String bpid, long blkid)
   @Override // FsDatasetSpi
   public ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
       long blkOffset, long metaOffset) throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       ReplicaInfo info = getReplicaInfo(b);
       FsVolumeReference ref = info.getVolume().obtainReference();
       try {
@@ -1810,7 +1849,7 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
         new HashMap<String, BlockListAsLongs.Builder>();
 
     List<FsVolumeImpl> curVolumes = null;
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       curVolumes = volumes.getVolumes();
       for (FsVolumeSpi v : curVolumes) {
         builders.put(v.getStorageID(), BlockListAsLongs.builder(maxDataLength));
@@ -1861,7 +1900,7 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
    * Gets a list of references to the finalized blocks for the given block pool.
    * <p>
    * Callers of this function should call
-   * {@link FsDatasetSpi#acquireDatasetLock} to avoid blocks' status being
+   * {@link FsDatasetSpi#acquireDatasetReadLock} to avoid blocks' status being
    * changed during list iteration.
    * </p>
    * @return a list of references to the finalized blocks for the given block
@@ -1869,7 +1908,7 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
    */
   @Override
   public List<ReplicaInfo> getFinalizedBlocks(String bpid) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final List<ReplicaInfo> finalized = new ArrayList<ReplicaInfo>(
           volumeMap.size(bpid));
       for (ReplicaInfo b : volumeMap.replicas(bpid)) {
@@ -1962,7 +2001,7 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
   ReplicaInfo validateBlockFile(String bpid, long blockId) {
     //Should we check for metadata file too?
     final ReplicaInfo r;
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       r = volumeMap.get(bpid, blockId);
     }
     if (r != null) {
@@ -2207,7 +2246,7 @@ public boolean isCached(String bpid, long blockId) {
 
   @Override // FsDatasetSpi
   public boolean contains(final ExtendedBlock block) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final long blockId = block.getLocalBlock().getBlockId();
       final String bpid = block.getBlockPoolId();
       final ReplicaInfo r = volumeMap.get(bpid, blockId);
@@ -2262,6 +2301,10 @@ public void shutdown() {
       lazyWriter.interrupt();
     }
 
+    if (replicaCacheSaver != null) {
+      replicaCacheSaver.interrupt();
+    }
+
     if (mbeanName != null) {
       MBeans.unregister(mbeanName);
     }
@@ -2286,6 +2329,15 @@ public void shutdown() {
                      "from LazyWriter.join");
       }
     }
+
+    if (replicaCacheSaver != null) {
+      try {
+        replicaCacheSaver.join();
+      } catch (InterruptedException ie) {
+        LOG.warn("FsDatasetImpl.shutdown ignoring InterruptedException " +
+                     "from ReplicaCacheSaver.join");
+      }
+    }
   }
 
   @Override // FSDatasetMBean
@@ -2526,7 +2578,7 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
 
   @Override 
   public String getReplicaString(String bpid, long blockId) {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final Replica r = volumeMap.get(bpid, blockId);
       return r == null ? "null" : r.toString();
     }
@@ -2746,7 +2798,7 @@ private ReplicaInfo updateReplicaUnderRecovery(
   @Override // FsDatasetSpi
   public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final Replica replica = getReplicaInfo(block.getBlockPoolId(),
           block.getBlockId());
       if (replica.getGenerationStamp() < block.getGenerationStamp()) {
@@ -2771,6 +2823,8 @@ public void addBlockPool(String bpid, Configuration conf)
 
   @Override
   public void shutdownBlockPool(String bpid) {
+    // the validators of the cached replicas need the dataset lock to exit
+    volumes.stopReplicaCacheValidators(bpid);
     try (AutoCloseableLock lock = datasetLock.acquire()) {
       LOG.info("Removing block pool " + bpid);
       Map<DatanodeStorage, BlockListAsLongs> blocksPerVolume
@@ -2874,7 +2928,7 @@ public void deleteBlockPool(String bpid, boolean force)
   @Override // FsDatasetSpi
   public BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock block)
       throws IOException {
-    try (AutoCloseableLock lock = datasetLock.acquire()) {
+    try (AutoCloseableLock lock = datasetReadLock.acquire()) {
       final Replica replica = volumeMap.get(block.getBlockPoolId(),
           block.getBlockId());
       if (replica == null) {
@@ -3035,6 +3089,35 @@ private void removeOldReplica(ReplicaInfo replicaInfo,
     // eventually.
   }
 
+  /**
+   * Saves the replica caches of the volumes periodically, so that the
+   * replica map can be loaded from them after a crash as well.
+   */
+  private class ReplicaCacheSaver implements Runnable {
+    private final long intervalMs;
+
+    ReplicaCacheSaver(long intervalMs) {
+      this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void run() {
+      while (fsRunning) {
+        try {
+          Thread.sleep(intervalMs);
+          for (String bpid : volumeMap.getBlockPoolList()) {
+            volumes.saveReplicaCaches(bpid, getBlockReports(bpid));
+          }
+        } catch (InterruptedException e) {
+          LOG.info("ReplicaCacheSaver was interrupted, exiting");
+          break;
+        } catch (Exception e) {
+          LOG.warn("Ignoring exception in ReplicaCacheSaver:", e);
+        }
+      }
+    }
+  }
+
   class LazyWriter implements Runnable {
     private volatile boolean shouldRun = true;
     final int checkpointerInterval;
@@ -1020,6 +1020,7 @@ void shutdown() {
     if (cacheExecutor != null) {
       cacheExecutor.shutdown();
     }
+    stopReplicaCacheValidators();
     Set<Entry<String, BlockPoolSlice>> set = bpSlices.entrySet();
     for (Entry<String, BlockPoolSlice> entry : set) {
       entry.getValue().shutdown(null);
@@ -1053,6 +1054,32 @@ void shutdownBlockPool(String bpid, BlockListAsLongs blocksListsAsLongs) {
     bpSlices.remove(bpid);
   }
 
+  /**
+   * Stop validating the cached replicas of the block pool. Called before
+   * shutting the block pool down under the dataset lock, which the
+   * validator needs.
+   */
+  void stopReplicaCacheValidator(String bpid) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.stopReplicaCacheValidator();
+    }
+  }
+
+  /** Stop validating the cached replicas of all the block pools. */
+  void stopReplicaCacheValidators() {
+    for (BlockPoolSlice bp : bpSlices.values()) {
+      bp.stopReplicaCacheValidator();
+    }
+  }
+
+  void saveReplicaCache(String bpid, BlockListAsLongs blocksListsAsLongs) {
+    BlockPoolSlice bp = bpSlices.get(bpid);
+    if (bp != null) {
+      bp.saveReplicaCache(blocksListsAsLongs);
+    }
+  }
+
   boolean isBPDirEmpty(String bpid) throws IOException {
     File volumeCurrentDir = this.getCurrentDir();
     File bpDir = new File(volumeCurrentDir, bpid);
@@ -1347,6 +1374,8 @@ private LinkedList<ScanInfo> compileReport(File bpFinalizedDir,
       return report;
     }
     Collections.sort(fileNames);
+    // the blocks of the leaf directories of other shards are not listed
+    final boolean isBlockDir1 = bpFinalizedDir.equals(dir.getParentFile());
 
     /*
      * Assumption: In the sorted list of files block file appears immediately
@@ -1361,6 +1390,10 @@ private LinkedList<ScanInfo> compileReport(File bpFinalizedDir,
         throw new InterruptedException();
       }
 
+      if (isBlockDir1 && !reportCompiler.isBlockDirScanned(dir.getName(),
+          fileNames.get(i))) {
+        continue;
+      }
       File file = new File(dir, fileNames.get(i));
       if (file.isDirectory()) {
         compileReport(bpFinalizedDir, file, report, reportCompiler);
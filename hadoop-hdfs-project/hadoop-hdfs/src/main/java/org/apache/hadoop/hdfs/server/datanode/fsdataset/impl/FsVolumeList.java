@@ -447,6 +447,19 @@ void removeBlockPool(String bpid, Map<DatanodeStorage, BlockListAsLongs>
     }
   }
 
+  void stopReplicaCacheValidators(String bpid) {
+    for (FsVolumeImpl v : volumes) {
+      v.stopReplicaCacheValidator(bpid);
+    }
+  }
+
+  void saveReplicaCaches(String bpid, Map<DatanodeStorage, BlockListAsLongs>
+      blocksPerVolume) {
+    for (FsVolumeImpl v : volumes) {
+      v.saveReplicaCache(bpid, blocksPerVolume.get(v.toDatanodeStorage()));
+    }
+  }
+
   void shutdown() {
     for (FsVolumeImpl volume : volumes) {
       if(volume != null) {
@@ -32,8 +32,9 @@
  * Maintains the replica map. 
  */
 class ReplicaMap {
-  // Lock object to synchronize this instance.
-  private final AutoCloseableLock lock;
+  // Lock objects to synchronize this instance, shared by the lookups.
+  private final AutoCloseableLock readLock;
+  private final AutoCloseableLock writeLock;
   
   // Map of block pool Id to a set of ReplicaInfo.
   private final Map<String, FoldedTreeSet<ReplicaInfo>> map = new HashMap<>();
@@ -51,15 +52,25 @@ public int compare(Object o1, Object o2) {
       };
 
   ReplicaMap(AutoCloseableLock lock) {
-    if (lock == null) {
+    this(lock, lock);
+  }
+
+  /**
+   * @param readLock lock held while looking up replicas
+   * @param writeLock lock held while changing the map, which excludes the
+   *                  holders of the read lock
+   */
+  ReplicaMap(AutoCloseableLock readLock, AutoCloseableLock writeLock) {
+    if (readLock == null || writeLock == null) {
       throw new HadoopIllegalArgumentException(
           "Lock to synchronize on cannot be null");
     }
-    this.lock = lock;
+    this.readLock = readLock;
+    this.writeLock = writeLock;
   }
   
   String[] getBlockPoolList() {
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = readLock.acquire()) {
       return map.keySet().toArray(new String[map.keySet().size()]);   
     }
   }
@@ -104,7 +115,7 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = readLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       if (set == null) {
         return null;
@@ -124,7 +135,7 @@ ReplicaInfo get(String bpid, long blockId) {
   ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
     checkBlockPool(bpid);
     checkBlock(replicaInfo);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       if (set == null) {
         // Add an entry for block pool if it does not exist already
@@ -153,7 +164,7 @@ void addAll(ReplicaMap other) {
   ReplicaInfo remove(String bpid, Block block) {
     checkBlockPool(bpid);
     checkBlock(block);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       if (set != null) {
         ReplicaInfo replicaInfo =
@@ -176,7 +187,7 @@ ReplicaInfo remove(String bpid, Block block) {
    */
   ReplicaInfo remove(String bpid, long blockId) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       if (set != null) {
         return set.removeAndGet(blockId, LONG_AND_BLOCK_COMPARATOR);
@@ -191,7 +202,7 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = readLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       return set != null ? set.size() : 0;
     }
@@ -202,7 +213,7 @@ int size(String bpid) {
    * This method is <b>not synchronized</b>. It needs to be synchronized
    * externally using the lock, both for getting the replicas
    * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getLock()} method.
+   * {@link #getReadLock()} method.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
@@ -213,7 +224,7 @@ Collection<ReplicaInfo> replicas(String bpid) {
 
   void initBlockPool(String bpid) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
       FoldedTreeSet<ReplicaInfo> set = map.get(bpid);
       if (set == null) {
         // Add an entry for block pool if it does not exist already
@@ -225,16 +236,24 @@ void initBlockPool(String bpid) {
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
-    try (AutoCloseableLock l = lock.acquire()) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
       map.remove(bpid);
     }
   }
   
   /**
-   * Get the lock object used for synchronizing ReplicasMap
+   * Get the lock object used for synchronizing changes to ReplicasMap
    * @return lock object
    */
   AutoCloseableLock getLock() {
-    return lock;
+    return writeLock;
+  }
+
+  /**
+   * Get the lock object shared by the lookups in ReplicasMap
+   * @return lock object
+   */
+  AutoCloseableLock getReadLock() {
+    return readLock;
   }
 }
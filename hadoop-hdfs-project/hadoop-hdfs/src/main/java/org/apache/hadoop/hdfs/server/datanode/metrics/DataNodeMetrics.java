@@ -58,6 +58,12 @@ public class DataNodeMetrics {
   @Metric("Milliseconds spent writing")
   MutableCounterLong totalWriteTime;
   @Metric MutableCounterLong bytesRead;
+  @Metric("Bytes read after a readahead had been issued for them")
+  MutableCounterLong readaheadHitBytes;
+  @Metric("Reads found to be part of a sequential stream")
+  MutableCounterLong sequentialReads;
+  @Metric("Reads found to be random")
+  MutableCounterLong randomReads;
   @Metric("Milliseconds spent reading")
   MutableCounterLong totalReadTime;
   @Metric MutableCounterLong blocksWritten;
@@ -314,6 +320,18 @@ public void incrBytesRead(int delta) {
     bytesRead.incr(delta);
   }
 
+  public void incrReadaheadHitBytes(long delta) {
+    readaheadHitBytes.incr(delta);
+  }
+
+  public void incrReadsByPattern(boolean sequential) {
+    if (sequential) {
+      sequentialReads.incr();
+    } else {
+      randomReads.incr();
+    }
+  }
+
   public void incrBlocksRead() {
     blocksRead.incr();
   }
@@ -0,0 +1,365 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.DefaultAuditLogger;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link HdfsAuditLogger} that moves the formatting and writing of audit
+ * events off the RPC handler threads.
+ *
+ * Handlers only capture the arguments of each event into an immutable record
+ * and publish it to one of several bounded, lock-free ring buffers, chosen by
+ * the handler thread so that concurrent handlers rarely share a buffer. A
+ * dedicated writer thread per buffer hands the events to the configured sink
+ * loggers, e.g. the default logger which writes the rolling audit log file.
+ * Events from one handler thread are delivered in order; events from
+ * different handlers may be interleaved differently than they happened.
+ *
+ * When a buffer is full the event is dropped rather than blocking the
+ * handler, and the number of dropped events is counted.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class AsyncAuditLogger extends HdfsAuditLogger implements Closeable {
+  public static final Logger LOG =
+      LoggerFactory.getLogger(AsyncAuditLogger.class);
+
+  /** The arguments of one audit event. */
+  private static final class AuditEvent {
+    private final boolean succeeded;
+    private final String userName;
+    private final InetAddress addr;
+    private final String cmd;
+    private final String src;
+    private final String dst;
+    private final FileStatus status;
+    private final CallerContext callerContext;
+    private final UserGroupInformation ugi;
+    private final DelegationTokenSecretManager dtSecretManager;
+    private final String protocol;
+
+    AuditEvent(boolean succeeded, String userName, InetAddress addr,
+        String cmd, String src, String dst, FileStatus status,
+        CallerContext callerContext, UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager, String protocol) {
+      this.succeeded = succeeded;
+      this.userName = userName;
+      this.addr = addr;
+      this.cmd = cmd;
+      this.src = src;
+      this.dst = dst;
+      this.status = status;
+      this.callerContext = callerContext;
+      this.ugi = ugi;
+      this.dtSecretManager = dtSecretManager;
+      this.protocol = protocol;
+    }
+  }
+
+  /**
+   * A bounded ring buffer for many producers and a single consumer. A
+   * producer claims a sequence number with a CAS on the tail and then
+   * publishes its event into the slot; the consumer waits for the slot at
+   * the head to be published and clears it before advancing the head.
+   * While the ring is empty the consumer is parked, and the producer which
+   * makes it non-empty unparks it.
+   */
+  @VisibleForTesting
+  static final class Ring<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    /** The consumer, while it is parked or about to park. */
+    private volatile Thread waiter;
+    private volatile boolean closed = false;
+
+    Ring(int capacity) {
+      Preconditions.checkArgument(capacity > 0
+          && Integer.bitCount(capacity) == 1,
+          "Ring capacity must be a positive power of two: %s", capacity);
+      this.slots = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    /** @return false if the ring is full. */
+    boolean offer(T e) {
+      while (true) {
+        final long t = tail.get();
+        if (t - head > mask) {
+          return false;
+        }
+        if (tail.compareAndSet(t, t + 1)) {
+          slots.lazySet((int) (t & mask), e);
+          final Thread w = waiter;
+          if (w != null) {
+            LockSupport.unpark(w);
+          }
+          return true;
+        }
+      }
+    }
+
+    /** Only called by the single consumer. */
+    T poll() {
+      final long h = head;
+      final int i = (int) (h & mask);
+      final T e = slots.get(i);
+      if (e != null) {
+        slots.lazySet(i, null);
+        head = h + 1;
+      }
+      return e;
+    }
+
+    boolean isEmpty() {
+      return tail.get() == head;
+    }
+
+    /**
+     * Only called by the single consumer. Park until an event is offered or
+     * the ring is closed, unless the ring is not empty or already closed.
+     */
+    void awaitNotEmpty() {
+      waiter = Thread.currentThread();
+      // recheck after announcing the waiter, as an offer may have missed it
+      if (isEmpty() && !closed) {
+        LockSupport.park(this);
+      }
+      waiter = null;
+    }
+
+    /** Unpark the consumer for good, e.g. to let it notice a shutdown. */
+    void close() {
+      closed = true;
+      final Thread w = waiter;
+      if (w != null) {
+        LockSupport.unpark(w);
+      }
+    }
+  }
+
+  /** Drains one ring into the sinks. */
+  private final class Writer implements Runnable {
+    private final Ring<AuditEvent> ring;
+
+    Writer(Ring<AuditEvent> ring) {
+      this.ring = ring;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        AuditEvent event = ring.poll();
+        if (event != null) {
+          deliver(event);
+        } else if (!ring.isEmpty()) {
+          // a producer has claimed the slot but not yet published the event
+          Thread.yield();
+        } else if (!running) {
+          return;
+        } else {
+          ring.awaitNotEmpty();
+        }
+      }
+    }
+  }
+
+  private final List<AuditLogger> sinks = new CopyOnWriteArrayList<>();
+  private final AtomicLong numDropped = new AtomicLong();
+  private final AtomicLong numLogged = new AtomicLong();
+  private Ring<AuditEvent>[] rings;
+  private Daemon[] writers;
+  private volatile boolean running;
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void initialize(Configuration conf) {
+    for (String className : conf.getTrimmedStringCollection(
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_KEY)) {
+      AuditLogger sink;
+      try {
+        if (DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME.equals(className)) {
+          sink = new DefaultAuditLogger();
+        } else {
+          sink = (AuditLogger) Class.forName(className).newInstance();
+        }
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      sink.initialize(conf);
+      sinks.add(sink);
+    }
+    if (sinks.isEmpty()) {
+      DefaultAuditLogger sink = new DefaultAuditLogger();
+      sink.initialize(conf);
+      sinks.add(sink);
+    }
+
+    final int numShards = conf.getInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY,
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_DEFAULT);
+    final int bufferSize = conf.getInt(
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_KEY,
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_DEFAULT);
+    Preconditions.checkArgument(numShards > 0,
+        "%s must be positive: %s", DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY,
+        numShards);
+    Preconditions.checkArgument(bufferSize > 0,
+        "%s must be positive: %s", DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_KEY,
+        bufferSize);
+    final int capacity = Integer.highestOneBit(bufferSize) == bufferSize ?
+        bufferSize : Integer.highestOneBit(bufferSize) << 1;
+    rings = new Ring[numShards];
+    writers = new Daemon[numShards];
+    running = true;
+    for (int i = 0; i < numShards; i++) {
+      rings[i] = new Ring<>(capacity);
+      writers[i] = new Daemon(new Writer(rings[i]));
+      writers[i].setName("AsyncAuditLogger-" + i);
+      writers[i].start();
+    }
+    LOG.info("Initialized {} audit log shards of {} events for sinks {}",
+        numShards, capacity, sinks);
+  }
+
+  /**
+   * Add a logger which receives every event after the configured sinks.
+   */
+  void addSink(AuditLogger sink) {
+    sinks.add(sink);
+  }
+
+  @Override
+  public void logAuditEvent(boolean succeeded, String userName,
+      InetAddress addr, String cmd, String src, String dst,
+      FileStatus stat, CallerContext callerContext, UserGroupInformation ugi,
+      DelegationTokenSecretManager dtSecretManager) {
+    final AuditEvent event = new AuditEvent(succeeded, userName, addr, cmd,
+        src, dst, stat, callerContext, ugi, dtSecretManager,
+        Server.getProtocol());
+    final long threadId = Thread.currentThread().getId();
+    final Ring<AuditEvent> ring =
+        rings[(int) ((threadId & Long.MAX_VALUE) % rings.length)];
+    if (!running || !ring.offer(event)) {
+      if (numDropped.getAndIncrement() % 10000 == 0) {
+        LOG.warn("Dropped {} audit events since the audit log buffers were "
+            + "full", numDropped.get());
+      }
+    }
+  }
+
+  @Override
+  public void logAuditEvent(boolean succeeded, String userName,
+      InetAddress addr, String cmd, String src, String dst,
+      FileStatus stat, UserGroupInformation ugi,
+      DelegationTokenSecretManager dtSecretManager) {
+    logAuditEvent(succeeded, userName, addr, cmd, src, dst, stat,
+        null /*CallerContext*/, ugi, dtSecretManager);
+  }
+
+  private void deliver(AuditEvent e) {
+    for (AuditLogger sink : sinks) {
+      try {
+        if (sink instanceof DefaultAuditLogger) {
+          ((DefaultAuditLogger) sink).logAuditEvent(e.succeeded, e.userName,
+              e.addr, e.cmd, e.src, e.dst, e.status, e.callerContext, e.ugi,
+              e.dtSecretManager, e.protocol);
+        } else if (sink instanceof HdfsAuditLogger) {
+          ((HdfsAuditLogger) sink).logAuditEvent(e.succeeded, e.userName,
+              e.addr, e.cmd, e.src, e.dst, e.status, e.callerContext, e.ugi,
+              e.dtSecretManager);
+        } else {
+          sink.logAuditEvent(e.succeeded, e.userName, e.addr, e.cmd, e.src,
+              e.dst, e.status);
+        }
+      } catch (Throwable t) {
+        LOG.error("Audit sink " + sink + " failed to log event cmd=" + e.cmd
+            + " src=" + e.src, t);
+      }
+    }
+    numLogged.incrementAndGet();
+  }
+
+  /** @return the number of events dropped because a buffer was full. */
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  /** @return the number of events handed to the sinks. */
+  public long getNumLogged() {
+    return numLogged.get();
+  }
+
+  @VisibleForTesting
+  List<AuditLogger> getSinks() {
+    return sinks;
+  }
+
+  /**
+   * Stop accepting events and wait for the writers to drain the buffers.
+   */
+  @Override
+  public void close() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    for (Ring<AuditEvent> ring : rings) {
+      ring.close();
+    }
+    for (Daemon writer : writers) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
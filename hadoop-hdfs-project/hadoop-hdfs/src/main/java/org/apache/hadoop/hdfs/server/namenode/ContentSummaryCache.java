@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded, least recently used cache of the content summaries computed
+ * for directories, so that repeated du/count calls on large trees do not
+ * walk the tree again while the cached result is younger than the
+ * configured staleness.
+ *
+ * Results are cached per INode, snapshot and caller, because computing a
+ * summary checks the caller's access to every sub directory. Callers for
+ * whom no permission checks are made share their results.
+ */
+class ContentSummaryCache {
+
+  private static final class Key {
+    private final long inodeId;
+    private final int snapshotId;
+    private final String user;
+
+    Key(long inodeId, int snapshotId, String user) {
+      this.inodeId = inodeId;
+      this.snapshotId = snapshotId;
+      this.user = user;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return inodeId == that.inodeId && snapshotId == that.snapshotId
+          && Objects.equals(user, that.user);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(inodeId, snapshotId, user);
+    }
+  }
+
+  private static final class Entry {
+    private final ContentSummary summary;
+    private final long computedMs;
+
+    Entry(ContentSummary summary, long computedMs) {
+      this.summary = summary;
+      this.computedMs = computedMs;
+    }
+  }
+
+  private final long stalenessMs;
+  private final Timer timer;
+  private final Map<Key, Entry> entries;
+  private long hits;
+  private long misses;
+
+  ContentSummaryCache(long stalenessMs, final int maxEntries, Timer timer) {
+    Preconditions.checkArgument(stalenessMs > 0,
+        "Content summary cache staleness must be positive: %s", stalenessMs);
+    Preconditions.checkArgument(maxEntries > 0,
+        "Content summary cache size must be positive: %s", maxEntries);
+    this.stalenessMs = stalenessMs;
+    this.timer = timer;
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  private static Key newKey(INode inode, int snapshotId,
+      FSPermissionChecker pc) {
+    String user = pc == null || pc.isSuperUser() ? null : pc.getUser();
+    return new Key(inode.getId(), snapshotId, user);
+  }
+
+  /**
+   * @return the cached summary of the INode, or null if there is none that
+   *         is recent enough.
+   */
+  synchronized ContentSummary get(INode inode, int snapshotId,
+      FSPermissionChecker pc) {
+    Key key = newKey(inode, snapshotId, pc);
+    Entry entry = entries.get(key);
+    if (entry != null && timer.monotonicNow() - entry.computedMs
+        >= stalenessMs) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.summary;
+  }
+
+  synchronized void put(INode inode, int snapshotId, FSPermissionChecker pc,
+      ContentSummary summary) {
+    entries.put(newKey(inode, snapshotId, pc),
+        new Entry(summary, timer.monotonicNow()));
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return entries.size();
+  }
+
+  @VisibleForTesting
+  synchronized long getHits() {
+    return hits;
+  }
+
+  @VisibleForTesting
+  synchronized long getMisses() {
+    return misses;
+  }
+}
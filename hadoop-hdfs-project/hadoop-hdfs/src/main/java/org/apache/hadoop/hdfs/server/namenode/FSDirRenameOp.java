@@ -679,10 +679,10 @@ INodesInPath addSourceToDestination() {
       final byte[] dstChildName = dstIIP.getLastLocalName();
       final INode toDst;
       if (withCount == null) {
-        srcChild.setLocalName(dstChildName);
+        fsd.setLocalName(srcChild, dstChildName);
         toDst = srcChild;
       } else {
-        withCount.getReferredINode().setLocalName(dstChildName);
+        fsd.setLocalName(withCount.getReferredINode(), dstChildName);
         toDst = new INodeReference.DstReference(dstParent.asDirectory(),
             withCount, dstIIP.getLatestSnapshotId());
       }
@@ -700,17 +700,17 @@ void restoreSource() {
       final INode oldSrcChild = srcChild;
       // put it back
       if (withCount == null) {
-        srcChild.setLocalName(srcChildName);
+        fsd.setLocalName(srcChild, srcChildName);
       } else if (!srcChildIsReference) { // src must be in snapshot
         // the withCount node will no longer be used thus no need to update
         // its reference number here
         srcChild = withCount.getReferredINode();
-        srcChild.setLocalName(srcChildName);
+        fsd.setLocalName(srcChild, srcChildName);
       } else {
         withCount.removeReference(oldSrcChild.asReference());
         srcChild = new INodeReference.DstReference(srcParent, withCount,
             srcRefDstSnapshot);
-        withCount.getReferredINode().setLocalName(srcChildName);
+        fsd.setLocalName(withCount.getReferredINode(), srcChildName);
       }
 
       if (isSrcInSnapshot) {
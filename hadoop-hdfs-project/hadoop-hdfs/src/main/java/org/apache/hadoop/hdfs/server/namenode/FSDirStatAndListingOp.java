@@ -525,12 +525,26 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       else {
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
+        final ContentSummaryCache cache = targetNode.isDirectory() ?
+            fsd.getContentSummaryCache() : null;
+        final FSPermissionChecker checker =
+            fsd.isPermissionEnabled() ? pc : null;
+        final int snapshotId = iip.getPathSnapshotId();
+        if (cache != null) {
+          ContentSummary cached = cache.get(targetNode, snapshotId, checker);
+          if (cached != null) {
+            return cached;
+          }
+        }
         ContentSummaryComputationContext cscc =
             new ContentSummaryComputationContext(fsd, fsd.getFSNamesystem(),
                 fsd.getContentCountLimit(), fsd.getContentSleepMicroSec(), pc);
         ContentSummary cs = targetNode.computeAndConvertContentSummary(
-            iip.getPathSnapshotId(), cscc);
+            snapshotId, cscc);
         fsd.addYieldCount(cscc.getYieldCount());
+        if (cache != null) {
+          cache.put(targetNode, snapshotId, checker, cs);
+        }
         return cs;
       }
     } finally {
@@ -64,6 +64,7 @@
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +81,7 @@
 import java.util.TreeSet;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.apache.hadoop.fs.CommonConfigurationKeys.FS_PROTECTED_DIRECTORIES;
@@ -156,6 +158,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  /** Recently computed content summaries, null if not cached. */
+  private final ContentSummaryCache contentSummaryCache;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
@@ -253,6 +257,9 @@ public int getWriteHoldCount() {
    */
   private final NameCache<ByteArray> nameCache;
 
+  /** Shares the byte[] of frequent names at runtime, null if disabled. */
+  private final NameDictionary nameDictionary;
+
   // used to specify path resolution type. *_LINK will return symlinks instead
   // of throwing an unresolved exception
   public enum DirOp {
@@ -268,7 +275,9 @@ public enum DirOp {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_MAPS_OFFHEAP_ENABLED_DEFAULT));
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -323,6 +332,15 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    final long contentSummaryStalenessMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_STALENESS_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_STALENESS_DEFAULT,
+        TimeUnit.MILLISECONDS);
+    this.contentSummaryCache = contentSummaryStalenessMs > 0 ?
+        new ContentSummaryCache(contentSummaryStalenessMs, conf.getInt(
+            DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MAX_ENTRIES_KEY,
+            DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_MAX_ENTRIES_DEFAULT),
+            new Timer()) : null;
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -355,6 +373,14 @@ public enum DirOp {
     NameNode.LOG.info("Caching file names occurring more than " + threshold
         + " times");
     nameCache = new NameCache<ByteArray>(threshold);
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_ENABLED_DEFAULT)) {
+      nameDictionary = new NameDictionary(threshold, conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_KEY,
+          DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_DEFAULT));
+    } else {
+      nameDictionary = null;
+    }
     namesystem = ns;
     this.editLog = ns.getEditLog();
     ezManager = new EncryptionZoneManager(this, conf);
@@ -578,6 +604,10 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  ContentSummaryCache getContentSummaryCache() {
+    return contentSummaryCache;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -596,6 +626,11 @@ void markNameCacheInitialized() {
     writeLock();
     try {
       nameCache.initialized();
+      if (nameDictionary != null) {
+        NameNode.LOG.info("Name dictionary has " + nameDictionary.size()
+            + " names, saving about " + nameDictionary.getSavedBytes()
+            + " bytes");
+      }
     } finally {
       writeUnlock();
     }
@@ -1450,6 +1485,9 @@ public final void removeFromInodeMap(List<? extends INode> inodes) {
         if (inode != null && inode instanceof INodeWithAdditionalFields) {
           inodeMap.remove(inode);
           ezManager.removeEncryptionZone(inode.getId());
+          if (nameDictionary != null) {
+            nameDictionary.release(inode.getLocalNameBytes());
+          }
         }
       }
     }
@@ -1488,6 +1526,12 @@ void reset() {
       inodeMap.clear();
       addToInodeMap(rootDir);
       nameCache.reset();
+      if (nameDictionary != null) {
+        nameDictionary.clear();
+      }
+      if (contentSummaryCache != null) {
+        contentSummaryCache.clear();
+      }
       inodeId.setCurrentValue(INodeId.LAST_RESERVED_ID);
     } finally {
       writeUnlock();
@@ -1502,11 +1546,26 @@ static INode resolveLastINode(INodesInPath iip) throws FileNotFoundException {
     return inode;
   }
 
+  @VisibleForTesting
+  NameDictionary getNameDictionary() {
+    return nameDictionary;
+  }
+
   /**
    * Caches frequently used file names to reuse file name objects and
    * reduce heap size.
    */
   void cacheName(INode inode) {
+    if (nameDictionary != null) {
+      final byte[] name = inode.getLocalNameBytes();
+      if (!inode.isReference() && name != null && name.length > 0) {
+        final byte[] shared = nameDictionary.intern(name);
+        if (shared != name) {
+          inode.setLocalName(shared);
+        }
+      }
+      return;
+    }
     // Name is cached only for files
     if (!inode.isFile()) {
       return;
@@ -1518,8 +1577,25 @@ void cacheName(INode inode) {
     }
   }
   
+  /**
+   * Set the local name of a renamed inode. With the name dictionary, the
+   * old name is released and the new one interned.
+   */
+  void setLocalName(INode inode, byte[] name) {
+    if (nameDictionary != null && !inode.isReference()) {
+      nameDictionary.release(inode.getLocalNameBytes());
+    }
+    inode.setLocalName(name);
+    if (nameDictionary != null) {
+      cacheName(inode);
+    }
+  }
+
   void shutdown() {
     nameCache.reset();
+    if (nameDictionary != null) {
+      nameDictionary.clear();
+    }
     inodeMap.clear();
   }
   
@@ -20,13 +20,19 @@
 import static org.apache.hadoop.hdfs.server.namenode.FSImageFormat.renameReservedPathsOnUpgrade;
 import static org.apache.hadoop.util.Time.monotonicNow;
 
+import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -117,6 +123,8 @@
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -129,12 +137,31 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /** Number of ops decoded ahead of the one being applied, 0 to disable. */
+  private int prefetchOps = 0;
+  /** Runs the readers of the prefetched ops. */
+  private Executor prefetchExecutor;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
     this.fsNamesys = fsNamesys;
     this.blockManager = fsNamesys.getBlockManager();
     this.lastAppliedTxId = lastAppliedTxId;
   }
+
+  /**
+   * Decode up to the given number of ops on a thread of the given executor
+   * while the previous ops are applied. Not used in recovery mode, which
+   * needs to resync the input stream on errors.
+   */
+  void setPrefetchOps(int prefetchOps, Executor executor) {
+    Preconditions.checkArgument(prefetchOps >= 0,
+        "Number of prefetched edit log ops must not be negative: %s",
+        prefetchOps);
+    Preconditions.checkArgument(prefetchOps == 0 || executor != null,
+        "No executor to prefetch edit log ops");
+    this.prefetchOps = prefetchOps;
+    this.prefetchExecutor = executor;
+  }
   
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
       throws IOException {
@@ -204,13 +231,16 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
     long lastLogTime = monotonicNow();
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+    final OpPrefetcher prefetcher = prefetchOps > 0 && recovery == null ?
+        new OpPrefetcher(in, prefetchOps, maxTxnsToRead,
+            expectedStartingTxId, prefetchExecutor) : null;
     
     try {
       while (true) {
         try {
           FSEditLogOp op;
           try {
-            op = in.readOp();
+            op = prefetcher != null ? prefetcher.readOp() : in.readOp();
             if (op == null) {
               break;
             }
@@ -232,7 +262,7 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
             continue;
           }
           recentOpcodeOffsets[(int)(numEdits % recentOpcodeOffsets.length)] =
-            in.getPosition();
+            prefetcher != null ? prefetcher.getPosition() : in.getPosition();
           if (op.hasTransactionId()) {
             if (op.getTransactionId() > expectedTxId) { 
               MetaRecoveryContext.editLogLoaderPrompt("There appears " +
@@ -255,7 +285,8 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
                   + ", numEdits=" + numEdits + ", totalEdits=" + totalEdits);
             }
             long inodeId = applyEditLogOp(op, fsDir, startOpt,
-                in.getVersion(true), lastInodeId);
+                prefetcher != null ? prefetcher.getVersion() :
+                    in.getVersion(true), lastInodeId);
             if (lastInodeId < inodeId) {
               lastInodeId = inodeId;
             }
@@ -306,6 +337,9 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
         }
       }
     } finally {
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
       fsNamesys.dir.resetLastInodeId(lastInodeId);
       if(closeOnExit) {
         in.close();
@@ -328,6 +362,148 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     return numEdits;
   }
   
+  /**
+   * Reads and decodes the ops of an edit log input stream on a thread of an
+   * executor, so that deserializing and checksumming the next ops overlaps with
+   * applying the current one under the namesystem write lock. The ops are
+   * handed over in stream order through a bounded queue, together with the
+   * stream position and layout version that were current when they were read.
+   */
+  static class OpPrefetcher implements Closeable {
+    /** An op, or the end of the stream or the error that stopped reading. */
+    private static final class Entry {
+      private final FSEditLogOp op;
+      private final long position;
+      private final int version;
+      private final Throwable error;
+
+      Entry(FSEditLogOp op, long position, int version, Throwable error) {
+        this.op = op;
+        this.position = position;
+        this.version = version;
+        this.error = error;
+      }
+    }
+
+    private final EditLogInputStream in;
+    private final BlockingQueue<Entry> queue;
+    private final long maxOps;
+    private final long expectedStartingTxId;
+    /** Counted down when the reader stops using the stream. */
+    private final CountDownLatch readerDone = new CountDownLatch(1);
+    /** The thread reading the stream, guarded by this. */
+    private Thread reader;
+    private volatile boolean closed = false;
+    /** The last entry returned by {@link #readOp()}. */
+    private Entry current;
+
+    OpPrefetcher(EditLogInputStream in, int queueSize, long maxOps,
+        long expectedStartingTxId, Executor executor) {
+      this.in = in;
+      this.queue = new ArrayBlockingQueue<>(queueSize);
+      this.maxOps = maxOps;
+      this.expectedStartingTxId = expectedStartingTxId;
+      executor.execute(this::run);
+    }
+
+    private void run() {
+      synchronized (this) {
+        reader = Thread.currentThread();
+      }
+      try {
+        if (!closed) {
+          readOps();
+        }
+      } finally {
+        synchronized (this) {
+          reader = null;
+          // do not leave an interrupt of close() to the next task
+          Thread.interrupted();
+        }
+        readerDone.countDown();
+      }
+    }
+
+    private void readOps() {
+      // ops are queued before they are applied, so they must not be reused
+      FSEditLogOp.OpInstanceCache.disableForCurrentThread();
+      Entry last;
+      try {
+        // count the ops like the loader, which skips out-of-order ops
+        long expectedTxId = expectedStartingTxId;
+        long n = 0;
+        while (n < maxOps && !closed) {
+          FSEditLogOp op = in.readOp();
+          if (op == null) {
+            break;
+          }
+          queue.put(new Entry(op, in.getPosition(), in.getVersion(true),
+              null));
+          if (!op.hasTransactionId()) {
+            expectedTxId = expectedStartingTxId;
+            n++;
+          } else if (op.getTransactionId() >= expectedTxId) {
+            expectedTxId = op.getTransactionId() + 1;
+            n++;
+          }
+        }
+        last = new Entry(null, in.getPosition(), 0, null);
+      } catch (InterruptedException e) {
+        return;
+      } catch (Throwable t) {
+        if (closed) {
+          return;
+        }
+        last = new Entry(null, -1, 0, t);
+      }
+      try {
+        queue.put(last);
+      } catch (InterruptedException e) {
+        // closed by the loader
+      }
+    }
+
+    /**
+     * @return the next op, or null at the end of the stream or after
+     *         reading maxOps ops that are not skipped as out of order.
+     */
+    FSEditLogOp readOp() throws IOException {
+      if (current == null || current.op != null) {
+        try {
+          current = queue.take();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException(
+              "Interrupted waiting for edit log ops from " + in.getName());
+        }
+      }
+      if (current.error != null) {
+        Throwables.propagateIfPossible(current.error, IOException.class);
+        throw new IOException(current.error);
+      }
+      return current.op;
+    }
+
+    long getPosition() {
+      return current.position;
+    }
+
+    int getVersion() {
+      return current.version;
+    }
+
+    /** Stop the reader and wait for it to stop using the stream. */
+    @Override
+    public void close() {
+      closed = true;
+      synchronized (this) {
+        if (reader != null) {
+          reader.interrupt();
+        }
+      }
+      Uninterruptibles.awaitUninterruptibly(readerDone);
+    }
+  }
+
   // allocate and update last allocated inode id
   private long getAndUpdateLastInodeId(long inodeIdFromOp, int logVersion,
       long lastInodeId) throws IOException {
@@ -182,13 +182,22 @@ void disableCache() {
       useCache = false;
     }
 
+    /**
+     * Make every cache used by the current thread return new instances, for
+     * threads which hand ops over to other threads before they are applied.
+     */
+    static void disableForCurrentThread() {
+      CACHE.set(null);
+    }
+
     public OpInstanceCache get() {
       return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T extends FSEditLogOp> T get(FSEditLogOpCodes opCode) {
-      return useCache ? (T)CACHE.get().get(opCode) : (T)newInstance(opCode);
+      OpInstanceCacheMap map = useCache ? CACHE.get() : null;
+      return map != null ? (T)map.get(opCode) : (T)newInstance(opCode);
     }
 
     private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
@@ -34,6 +34,8 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -75,6 +77,7 @@
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * FSImage handles checkpointing and logging of the namespace edits.
@@ -98,7 +101,15 @@ public class FSImage implements Closeable {
    * The last transaction ID that was either loaded from an image
    * or loaded by loading edits files.
    */
-  protected long lastAppliedTxId = 0;
+  protected volatile long lastAppliedTxId = 0;
+  /** Notified whenever lastAppliedTxId advances while loading edits. */
+  private final Object appliedTxIdMonitor = new Object();
+  /**
+   * Reads the edits ahead of the loader when pipelined loading is enabled.
+   * Kept for the life of the image, so that tailing the edits does not
+   * start a thread per batch.
+   */
+  private ExecutorService editLogPrefetcher;
 
   final private Configuration conf;
 
@@ -881,6 +892,15 @@ public long loadEdits(Iterable<EditLogInputStream> editStreams,
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
       FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      if (conf.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_EDITS_PIPELINED_LOADING_KEY,
+          DFSConfigKeys.DFS_NAMENODE_EDITS_PIPELINED_LOADING_DEFAULT)) {
+        loader.setPrefetchOps(conf.getInt(DFSConfigKeys
+                .DFS_NAMENODE_EDITS_PIPELINED_LOADING_QUEUE_SIZE_KEY,
+            DFSConfigKeys
+                .DFS_NAMENODE_EDITS_PIPELINED_LOADING_QUEUE_SIZE_DEFAULT),
+            getEditLogPrefetcher());
+      }
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
@@ -893,6 +913,7 @@ public long loadEdits(Iterable<EditLogInputStream> editStreams,
           // Update lastAppliedTxId even in case of error, since some ops may
           // have been successfully applied before the error.
           lastAppliedTxId = loader.getLastAppliedTxId();
+          notifyAppliedTxIdWaiters();
         }
         // If we are in recovery mode, we may have skipped over some txids.
         if (editIn.getLastTxId() != HdfsServerConstants.INVALID_TXID
@@ -962,7 +983,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     long numErrors = saver.save(newFile, compression);
     if (numErrors > 0) {
@@ -1427,11 +1449,24 @@ public synchronized void saveDigestAndRenameCheckpointImage(NameNodeFile nnf,
     initNewDirs();
   }
 
+  private synchronized ExecutorService getEditLogPrefetcher() {
+    if (editLogPrefetcher == null) {
+      editLogPrefetcher = Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Edit log prefetcher").build());
+    }
+    return editLogPrefetcher;
+  }
+
   @Override
   synchronized public void close() throws IOException {
     if (editLog != null) { // 2NN doesn't have any edit log
       getEditLog().close();
     }
+    if (editLogPrefetcher != null) {
+      editLogPrefetcher.shutdownNow();
+      editLogPrefetcher = null;
+    }
     storage.close();
   }
 
@@ -1493,6 +1528,42 @@ public long getLastAppliedOrWrittenTxId() {
         editLog != null ? editLog.getLastWrittenTxIdWithoutLock() : 0);
   }
 
+  private void notifyAppliedTxIdWaiters() {
+    synchronized (appliedTxIdMonitor) {
+      appliedTxIdMonitor.notifyAll();
+    }
+  }
+
+  /**
+   * Wait until the transaction with the given id has been applied or
+   * written, or until the timeout expires. The waiters are woken up as the
+   * edits are loaded, without polling.
+   *
+   * @param txId the transaction id to wait for
+   * @param timeoutMs the maximum time to wait in milliseconds
+   * @return the last applied or written transaction id, which is less than
+   *         txId if the wait timed out
+   * @throws InterruptedException if the thread was interrupted
+   */
+  long waitForAppliedOrWrittenTxId(long txId, long timeoutMs)
+      throws InterruptedException {
+    long appliedTxId = getLastAppliedOrWrittenTxId();
+    if (appliedTxId >= txId || timeoutMs <= 0) {
+      return appliedTxId;
+    }
+    final long deadline = Time.monotonicNow() + timeoutMs;
+    synchronized (appliedTxIdMonitor) {
+      while ((appliedTxId = getLastAppliedOrWrittenTxId()) < txId) {
+        final long remainingMs = deadline - Time.monotonicNow();
+        if (remainingMs <= 0) {
+          break;
+        }
+        appliedTxIdMonitor.wait(remainingMs);
+      }
+      return appliedTxId;
+    }
+  }
+
   /**
    * This method holds a lock of FSEditLog to get the correct value.
    * This method must not be used for metrics.
@@ -25,6 +25,7 @@
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -226,9 +227,20 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       }
     }
 
+    /** The number of loaded INodes added to the namesystem at once. */
+    private static final int LOAD_BATCH_SIZE = 1024;
+
     private final FSDirectory dir;
     private final FSNamesystem fsn;
     private final FSImageFormatProtobuf.Loader parent;
+    /**
+     * Guard the shared structures updated when sub-sections are loaded in
+     * parallel: the inode map, leases and encryption zones; the name cache;
+     * and the blocks map.
+     */
+    private final Object inodeMapLock = new Object();
+    private final Object nameCacheLock = new Object();
+    private final Object blocksMapLock = new Object();
 
     Loader(FSNamesystem fsn, final FSImageFormatProtobuf.Loader parent) {
       this.fsn = fsn;
@@ -236,9 +248,15 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       this.parent = parent;
     }
 
+    /**
+     * Load the directory entries of the INODE_DIR section or of one of its
+     * sub-sections. Different sub-sections hold the entries of different
+     * directories, so they can be loaded in parallel.
+     */
     void loadINodeDirectorySection(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      final List<INode> added = new ArrayList<>(LOAD_BATCH_SIZE);
       while (true) {
         INodeDirectorySection.DirEntry e = INodeDirectorySection.DirEntry
             .parseDelimitedFrom(in);
@@ -249,33 +267,110 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
-          addToParent(p, child);
+          if (addToParent(p, child)) {
+            added.add(child);
+          }
         }
         for (int refId : e.getRefChildrenList()) {
           INodeReference ref = refList.get(refId);
-          addToParent(p, ref);
+          if (addToParent(p, ref)) {
+            added.add(ref);
+          }
+        }
+        if (added.size() >= LOAD_BATCH_SIZE) {
+          addToCacheAndBlocksMap(added);
         }
       }
+      addToCacheAndBlocksMap(added);
     }
 
     void loadINodeSection(InputStream in, StartupProgress prog,
         Step currentStep) throws IOException {
+      long numInodes = loadINodeSectionHeader(in, prog, currentStep);
+      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
+      long loaded = loadINodes(in, numInodes, counter);
+      if (loaded != numInodes) {
+        throw new IOException("Expected " + numInodes
+            + " INodes in the INode section but found " + loaded);
+      }
+    }
+
+    /**
+     * Load the INode section from its sub-sections. The first sub-section
+     * holds the section header, the others hold the INodes.
+     */
+    void loadINodeSubSections(List<FileSummary.Section> subSections,
+        StartupProgress prog, Step currentStep) throws IOException {
+      final long numInodes;
+      try (InputStream in = parent.getInputStreamForSection(
+          subSections.get(0))) {
+        numInodes = loadINodeSectionHeader(in, prog, currentStep);
+      }
+      final Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE,
+          currentStep);
+      final AtomicLong loaded = new AtomicLong();
+      parent.loadSubSections(subSections.subList(1, subSections.size()),
+          in -> loaded.addAndGet(loadINodes(in, Long.MAX_VALUE, counter)));
+      if (loaded.get() != numInodes) {
+        throw new IOException("Expected " + numInodes
+            + " INodes in the INode section but found " + loaded.get());
+      }
+    }
+
+    private long loadINodeSectionHeader(InputStream in, StartupProgress prog,
+        Step currentStep) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.dir.resetLastInodeId(s.getLastInodeId());
       long numInodes = s.getNumInodes();
       LOG.info("Loading " + numInodes + " INodes.");
       prog.setTotal(Phase.LOADING_FSIMAGE, currentStep, numInodes);
-      Counter counter = prog.getCounter(Phase.LOADING_FSIMAGE, currentStep);
-      for (int i = 0; i < numInodes; ++i) {
+      return numInodes;
+    }
+
+    /**
+     * Load at most max INodes from the stream and add them to the inode map.
+     * @return the number of INodes loaded.
+     */
+    private long loadINodes(InputStream in, long max, Counter counter)
+        throws IOException {
+      final List<INode> inodes = new ArrayList<>(LOAD_BATCH_SIZE);
+      long loaded = 0;
+      for (; loaded < max; ++loaded) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
         if (p.getId() == INodeId.ROOT_INODE_ID) {
-          loadRootINode(p);
+          synchronized (inodeMapLock) {
+            loadRootINode(p);
+          }
         } else {
-          INode n = loadINode(p);
-          dir.addToInodeMap(n);
+          inodes.add(loadINode(p));
+          if (inodes.size() >= LOAD_BATCH_SIZE) {
+            addToInodeMap(inodes);
+          }
         }
         counter.increment();
       }
+      addToInodeMap(inodes);
+      return loaded;
+    }
+
+    private void addToInodeMap(List<INode> inodes) {
+      synchronized (inodeMapLock) {
+        for (INode n : inodes) {
+          dir.addToInodeMap(n);
+          if (n.isFile()) {
+            // update the lease manager
+            FileUnderConstructionFeature uc =
+                n.asFile().getFileUnderConstructionFeature();
+            if (uc != null) {
+              fsn.leaseManager.addLease(uc.getClientName(), n.getId());
+            }
+          }
+        }
+      }
+      inodes.clear();
     }
 
     /**
@@ -293,7 +388,11 @@ void loadFilesUnderConstructionSection(InputStream in) throws IOException {
       }
     }
 
-    private void addToParent(INodeDirectory parent, INode child) {
+    /**
+     * @return whether the child was added, in which case its name and blocks
+     *         still need to be added by {@link #addToCacheAndBlocksMap}.
+     */
+    private boolean addToParent(INodeDirectory parent, INode child) {
       if (parent == dir.rootDir && FSDirectory.isReservedName(child)) {
         throw new HadoopIllegalArgumentException("File name \""
             + child.getLocalName() + "\" is reserved. Please "
@@ -301,14 +400,23 @@ private void addToParent(INodeDirectory parent, INode child) {
             + "name before upgrading to this release.");
       }
       // NOTE: This does not update space counts for parents
-      if (!parent.addChild(child)) {
-        return;
-      }
-      dir.cacheName(child);
+      return parent.addChild(child);
+    }
 
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+    private void addToCacheAndBlocksMap(List<INode> children) {
+      synchronized (nameCacheLock) {
+        for (INode child : children) {
+          dir.cacheName(child);
+        }
+      }
+      synchronized (blocksMapLock) {
+        for (INode child : children) {
+          if (child.isFile()) {
+            updateBlocksMap(child.asFile(), fsn.getBlockManager());
+          }
+        }
       }
+      children.clear();
     }
 
     private INode loadINode(INodeSection.INode n) {
@@ -376,8 +484,7 @@ private INodeFile loadINodeFile(INodeSection.INode n) {
       if (f.hasFileUC()) {
         INodeSection.FileUnderConstructionFeature uc = f.getFileUC();
         file.toUnderConstruction(uc.getClientName(), uc.getClientMachine());
-        // update the lease manager
-        fsn.leaseManager.addLease(uc.getClientName(), file.getId());
+        // the lease is added together with the inode, see addToInodeMap
         if (blocks.length > 0) {
           BlockInfo lastBlk = file.getLastBlock();
           // replace the last block of file
@@ -566,33 +673,18 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
     }
 
     void serializeINodeDirectorySection(OutputStream out) throws IOException {
-      Iterator<INodeWithAdditionalFields> iter = fsn.getFSDirectory()
-          .getINodeMap().getMapIterator();
-      final ArrayList<INodeReference> refList = parent.getSaverContext()
-          .getRefList();
+      INodeMap inodesMap = fsn.getFSDirectory().getINodeMap();
+      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+      if (parent.shouldSaveInParallel(inodesMap.size())) {
+        parent.saveSubSections(summary,
+            FSImageFormatProtobuf.SectionName.INODE_DIR,
+            FSImageFormatProtobuf.SectionName.INODE_DIR_SUB, iter,
+            this::serializeDirEntry);
+        return;
+      }
       int i = 0;
       while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        if (!n.isDirectory()) {
-          continue;
-        }
-
-        ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
-            Snapshot.CURRENT_STATE_ID);
-        if (children.size() > 0) {
-          INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
-              DirEntry.newBuilder().setParent(n.getId());
-          for (INode inode : children) {
-            if (!inode.isReference()) {
-              b.addChildren(inode.getId());
-            } else {
-              refList.add(inode.asReference());
-              b.addRefChildren(refList.size() - 1);
-            }
-          }
-          INodeDirectorySection.DirEntry e = b.build();
-          e.writeDelimitedTo(out);
-        }
+        serializeDirEntry(out, iter.next());
 
         ++i;
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
@@ -603,6 +695,34 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
 
+    private void serializeDirEntry(OutputStream out,
+        INodeWithAdditionalFields n) throws IOException {
+      if (!n.isDirectory()) {
+        return;
+      }
+      final ArrayList<INodeReference> refList = parent.getSaverContext()
+          .getRefList();
+      ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
+          Snapshot.CURRENT_STATE_ID);
+      if (children.size() > 0) {
+        INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
+            DirEntry.newBuilder().setParent(n.getId());
+        for (INode inode : children) {
+          if (!inode.isReference()) {
+            b.addChildren(inode.getId());
+          } else {
+            // directory entries may be serialized in parallel
+            synchronized (refList) {
+              refList.add(inode.asReference());
+              b.addRefChildren(refList.size() - 1);
+            }
+          }
+        }
+        INodeDirectorySection.DirEntry e = b.build();
+        e.writeDelimitedTo(out);
+      }
+    }
+
     void serializeINodeSection(OutputStream out) throws IOException {
       INodeMap inodesMap = fsn.dir.getINodeMap();
 
@@ -611,8 +731,14 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+      if (parent.shouldSaveInParallel(inodesMap.size())) {
+        parent.saveSubSections(summary,
+            FSImageFormatProtobuf.SectionName.INODE,
+            FSImageFormatProtobuf.SectionName.INODE_SUB, iter, this::save);
+        return;
+      }
+      int i = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
         save(out, n);
@@ -22,24 +22,35 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicyInfo;
 import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
@@ -48,6 +59,7 @@
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ErasureCodingPolicyProto;
@@ -73,7 +85,7 @@
 import org.apache.hadoop.util.Time;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -98,8 +110,13 @@ public ArrayList<INodeReference> getRefList() {
   }
 
   public static final class SaverContext {
+    /**
+     * Assigns consecutive ids to distinct values. This map is thread safe,
+     * as sub-sections of the image may be serialized in parallel.
+     */
     public static class DeduplicationMap<E> {
-      private final Map<E, Integer> map = Maps.newHashMap();
+      private final Map<E, Integer> map = new ConcurrentHashMap<>();
+      private final AtomicInteger lastId = new AtomicInteger();
       private DeduplicationMap() {}
 
       static <T> DeduplicationMap<T> newMap() {
@@ -112,9 +129,7 @@ int getId(E value) {
         }
         Integer v = map.get(value);
         if (v == null) {
-          int nv = map.size() + 1;
-          map.put(value, nv);
-          return nv;
+          v = map.computeIfAbsent(value, k -> lastId.incrementAndGet());
         }
         return v;
       }
@@ -141,11 +156,26 @@ public ArrayList<INodeReference> getRefList() {
     }
   }
 
+  /** Loads the data of one sub-section of the image. */
+  interface SubSectionLoader {
+    void load(InputStream in) throws IOException;
+  }
+
+  /** Writes one element to a sub-section of the image. */
+  interface SubSectionWriter<T> {
+    void write(OutputStream out, T element) throws IOException;
+  }
+
   public static final class Loader implements FSImageFormat.AbstractLoader {
     static final int MINIMUM_FILE_LENGTH = 8;
     private final Configuration conf;
     private final FSNamesystem fsn;
     private final LoaderContext ctx;
+    /** The image file and its codec, to open streams for sub-sections. */
+    private File imageFile;
+    private String codec;
+    /** Loads sub-sections in parallel, or null to load them serially. */
+    private ExecutorService executor;
     /** The MD5 sum of the loaded file */
     private MD5Hash imgDigest;
     /** The transaction ID of the last edit represented by the loaded file */
@@ -182,6 +212,7 @@ public LoaderContext getLoaderContext() {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      imageFile = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -189,11 +220,97 @@ void load(File file) throws IOException {
         long end = Time.monotonicNow();
         LOG.info("Loaded FSImage in {} seconds.", (end - start) / 1000);
       } finally {
+        if (executor != null) {
+          executor.shutdownNow();
+          executor = null;
+        }
         fin.close();
         raFile.close();
       }
     }
 
+    /**
+     * Open a stream on a section, independent of the stream used to load the
+     * sections one after another.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section s)
+        throws IOException {
+      FileInputStream fin = new FileInputStream(imageFile);
+      try {
+        fin.getChannel().position(s.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            s.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf, codec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Load the given sub-sections, in parallel if parallel loading is
+     * enabled. All sub-sections are processed before the first failure, if
+     * any, is rethrown.
+     */
+    void loadSubSections(List<FileSummary.Section> subSections,
+        SubSectionLoader loader) throws IOException {
+      if (executor == null || subSections.size() < 2) {
+        for (FileSummary.Section s : subSections) {
+          try (InputStream in = getInputStreamForSection(s)) {
+            loader.load(in);
+          }
+        }
+        return;
+      }
+      LOG.info("Loading {} sub-sections in parallel", subSections.size());
+      List<Future<Void>> futures = new ArrayList<>(subSections.size());
+      for (FileSummary.Section s : subSections) {
+        futures.add(executor.submit(() -> {
+          try (InputStream in = getInputStreamForSection(s)) {
+            loader.load(in);
+          }
+          return null;
+        }));
+      }
+      IOException failure = null;
+      for (Future<Void> f : futures) {
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          for (Future<Void> other : futures) {
+            other.cancel(true);
+          }
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while loading sub-sections");
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof IOException ?
+                (IOException) e.getCause() : new IOException(e.getCause());
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+    /** @return the sub-sections with the given name, by offset. */
+    private static List<FileSummary.Section> getSubSections(
+        List<FileSummary.Section> sections, SectionName name) {
+      List<FileSummary.Section> subSections = new ArrayList<>();
+      for (FileSummary.Section s : sections) {
+        if (name.name.equals(s.getName())) {
+          subSections.add(s);
+        }
+      }
+      subSections.sort(
+          Comparator.comparingLong(FileSummary.Section::getOffset));
+      return subSections;
+    }
+
     private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
         throws IOException {
       if (!FSImageUtil.checkFileFormat(raFile)) {
@@ -208,6 +325,17 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
       }
 
       FileChannel channel = fin.getChannel();
+      codec = summary.getCodec();
+      if (conf.getBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)) {
+        int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        if (threads > 1) {
+          executor = Executors.newFixedThreadPool(threads,
+              new ThreadFactoryBuilder().setDaemon(true)
+                  .setNameFormat("FSImageLoader-%d").build());
+        }
+      }
 
       FSImageFormatPBINode.Loader inodeLoader = new FSImageFormatPBINode.Loader(
           fsn, this);
@@ -239,7 +367,22 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
        */
       Step currentStep = null;
 
+      final List<FileSummary.Section> inodeSubSections =
+          getSubSections(sections, SectionName.INODE_SUB);
+      final List<FileSummary.Section> inodeDirSubSections =
+          getSubSections(sections, SectionName.INODE_DIR_SUB);
+
       for (FileSummary.Section s : sections) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == null) {
+          // e.g. saved by a newer release, skip it as it cannot be read
+          LOG.warn("Unrecognized section {}", s.getName());
+          continue;
+        } else if (name == SectionName.INODE_SUB
+            || name == SectionName.INODE_DIR_SUB) {
+          // loaded together with their parent sections
+          continue;
+        }
         channel.position(s.getOffset());
         InputStream in = new BufferedInputStream(new LimitInputStream(fin,
             s.getLength()));
@@ -249,7 +392,7 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
 
         String n = s.getName();
 
-        switch (SectionName.fromString(n)) {
+        switch (name) {
         case NS_INFO:
           loadNameSystemSection(in);
           break;
@@ -259,14 +402,24 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in, prog, currentStep);
+          if (inodeSubSections.isEmpty()) {
+            inodeLoader.loadINodeSection(in, prog, currentStep);
+          } else {
+            inodeLoader.loadINodeSubSections(inodeSubSections, prog,
+                currentStep);
+          }
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
         case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+          if (inodeDirSubSections.isEmpty()) {
+            inodeLoader.loadINodeDirectorySection(in);
+          } else {
+            loadSubSections(inodeDirSubSections,
+                inodeLoader::loadINodeDirectorySection);
+          }
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -396,8 +549,15 @@ public static final class Saver {
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
+    /** The offset of the next sub-section of the current section. */
+    private long subSectionOffset = currentOffset;
     private MD5Hash savedDigest;
 
+    private final boolean parallelSave;
+    private final int parallelThreads;
+    private final int parallelInodeThreshold;
+    private final int inodesPerSubSection;
+
     private FileChannel fileChannel;
     // OutputStream for the section data
     private OutputStream sectionOutputStream;
@@ -405,8 +565,24 @@ public static final class Saver {
     private OutputStream underlyingOutputStream;
 
     Saver(SaveNamespaceContext context) {
+      this(context, new Configuration(false));
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.parallelSave = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_DEFAULT);
+      this.parallelThreads = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      this.parallelInodeThreshold = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
+      this.inodesPerSubSection = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SECTION_INODES_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SECTION_INODES_DEFAULT));
     }
 
     public MD5Hash getSavedDigest() {
@@ -435,6 +611,103 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    private void addSubSection(FileSummary.Builder summary, SectionName name,
+        long length) {
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
+    }
+
+    /**
+     * @return whether a namespace with the given number of inodes is saved
+     *         as sub-sections in parallel. Sub-sections are never written
+     *         during a rolling upgrade, as the image must remain loadable by
+     *         the NameNodes of the previous release.
+     */
+    boolean shouldSaveInParallel(long numInodes) {
+      return parallelSave && numInodes >= parallelInodeThreshold
+          && !context.getSourceNamesystem().isRollingUpgrade();
+    }
+
+    /**
+     * Write the elements of the iterator as sub-sections of the current
+     * section, and commit the section. The data written to the section
+     * before, e.g. its header, becomes the first sub-section. Each following
+     * sub-section holds the next elements of the iterator, which are
+     * serialized and compressed into memory by a pool of threads and then
+     * written in order. Each sub-section is an independent compressed stream
+     * and can thus be loaded independently, while the parent section remains
+     * readable as a whole.
+     */
+    <T> void saveSubSections(FileSummary.Builder summary, SectionName name,
+        SectionName subName, Iterator<T> iter, SubSectionWriter<T> writer)
+        throws IOException {
+      flushSectionOutputStream();
+      addSubSection(summary, subName,
+          fileChannel.position() - subSectionOffset);
+
+      ExecutorService executor = Executors.newFixedThreadPool(parallelThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("FSImageSaver-%d").build());
+      Deque<Future<ByteArrayOutputStream>> pending = new ArrayDeque<>();
+      try {
+        int i = 0;
+        while (iter.hasNext()) {
+          final List<T> elements = new ArrayList<>(inodesPerSubSection);
+          while (iter.hasNext() && elements.size() < inodesPerSubSection) {
+            elements.add(iter.next());
+            if (++i % CHECK_CANCEL_INTERVAL == 0) {
+              context.checkCancelled();
+            }
+          }
+          pending.add(executor.submit(
+              () -> serializeSubSection(elements, writer)));
+          if (pending.size() > parallelThreads) {
+            writeSubSection(summary, subName, pending.poll());
+          }
+        }
+        while (!pending.isEmpty()) {
+          writeSubSection(summary, subName, pending.poll());
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      commitSection(summary, name);
+    }
+
+    private <T> ByteArrayOutputStream serializeSubSection(List<T> elements,
+        SubSectionWriter<T> writer) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      OutputStream out = codec != null ?
+          codec.createOutputStream(bytes) : bytes;
+      for (T e : elements) {
+        writer.write(out, e);
+      }
+      if (codec != null) {
+        ((CompressionOutputStream) out).finish();
+      }
+      return bytes;
+    }
+
+    private void writeSubSection(FileSummary.Builder summary,
+        SectionName subName, Future<ByteArrayOutputStream> future)
+        throws IOException {
+      final ByteArrayOutputStream bytes;
+      try {
+        bytes = future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while saving sub-sections");
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException ?
+            (IOException) e.getCause() : new IOException(e.getCause());
+      }
+      bytes.writeTo(underlyingOutputStream);
+      addSubSection(summary, subName, bytes.size());
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -662,7 +935,9 @@ private void saveStringTableSection(FileSummary.Builder summary)
 
   /**
    * Supported section name. The order of the enum determines the order of
-   * loading.
+   * loading. The INODE_SUB and INODE_DIR_SUB sub-sections split the INODE
+   * and INODE_DIR sections for parallel loading; they are loaded with their
+   * parent sections.
    */
   public enum SectionName {
     NS_INFO("NS_INFO"),
@@ -676,7 +951,9 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    INODE_SUB("INODE_SUB"),
+    INODE_DIR_SUB("INODE_DIR_SUB");
 
     private static final SectionName[] values = SectionName.values();
 
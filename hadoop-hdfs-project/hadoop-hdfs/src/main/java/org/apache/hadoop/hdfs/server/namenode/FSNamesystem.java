@@ -107,6 +107,7 @@
 import static org.apache.hadoop.hdfs.server.namenode.top.metrics.TopMetrics.TOPMETRICS_METRICS_SOURCE_NAME;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -208,6 +209,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.ReencryptAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastBlockWithStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
@@ -1061,7 +1063,19 @@ private List<AuditLogger> initAuditLoggers(Configuration conf) {
         DefaultMetricsSystem.instance().register(TOPMETRICS_METRICS_SOURCE_NAME,
             "Top N operations by user", topMetrics);
       }
-      auditLoggers.add(new TopAuditLogger(topMetrics));
+      TopAuditLogger topAuditLogger = new TopAuditLogger(topMetrics);
+      AsyncAuditLogger asyncAuditLogger = null;
+      for (AuditLogger logger : auditLoggers) {
+        if (logger instanceof AsyncAuditLogger) {
+          asyncAuditLogger = (AsyncAuditLogger) logger;
+        }
+      }
+      if (asyncAuditLogger != null) {
+        // top users are counted from the same buffered events
+        asyncAuditLogger.addSink(topAuditLogger);
+      } else {
+        auditLoggers.add(topAuditLogger);
+      }
     }
 
     return Collections.unmodifiableList(auditLoggers);
@@ -1691,6 +1705,13 @@ void close() {
       } finally {
         IOUtils.cleanupWithLogger(LOG, dir);
         IOUtils.cleanupWithLogger(LOG, fsImage);
+        if (auditLoggers != null) {
+          for (AuditLogger logger : auditLoggers) {
+            if (logger instanceof Closeable) {
+              IOUtils.cleanupWithLogger(LOG, (Closeable) logger);
+            }
+          }
+        }
       }
     }
   }
@@ -1940,6 +1961,8 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
             }
           }
         }
+      } else {
+        checkBlockLocationsOnObserver(res.blocks, srcArg);
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, srcArg);
@@ -3111,6 +3134,65 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink,
     return stat;
   }
 
+  /**
+   * Get the file info of several paths under a single read lock. At most
+   * {@link FSDirectory#getLsLimit()} paths are answered, so the caller has
+   * to ask again for the rest.
+   * @return the file info of each answered path, or null if it does not
+   *         exist.
+   */
+  /**
+   * The observer may not have received the block reports for recently
+   * written blocks yet, let the client ask the active for their locations.
+   * @throws StandbyException if this is an observer without the locations
+   *         of some of the blocks.
+   */
+  private void checkBlockLocationsOnObserver(LocatedBlocks blocks,
+      String src) throws StandbyException {
+    if (blocks == null || haContext == null ||
+        haContext.getState() != NameNode.OBSERVER_STATE) {
+      return;
+    }
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      if (b.getLocations() == null || b.getLocations().length == 0) {
+        throw new StandbyException("No block locations on observer yet"
+            + " for " + b.getBlock() + " of " + src);
+      }
+    }
+  }
+
+  HdfsFileStatus[] getBatchedFileInfo(final String[] srcs,
+      boolean needLocation) throws IOException {
+    final String operationName = "getfileinfo";
+    checkOperation(OperationCategory.READ);
+    final HdfsFileStatus[] stats =
+        new HdfsFileStatus[Math.min(srcs.length, dir.getLsLimit())];
+    final FSPermissionChecker pc = getPermissionChecker();
+    String src = null;
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      for (int i = 0; i < stats.length; i++) {
+        src = srcs[i];
+        stats[i] = FSDirStatAndListingOp.getFileInfo(
+            dir, pc, src, true, needLocation, false);
+        if (stats[i] instanceof HdfsLocatedFileStatus) {
+          checkBlockLocationsOnObserver(
+              ((HdfsLocatedFileStatus) stats[i]).getLocatedBlocks(), src);
+        }
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, src);
+      throw e;
+    } finally {
+      readUnlock(operationName);
+    }
+    for (int i = 0; i < stats.length; i++) {
+      logAuditEvent(true, operationName, srcs[i]);
+    }
+    return stats;
+  }
+
   /**
    * Returns true if the file is closed
    */
@@ -4139,6 +4221,18 @@ public long getMissingReplOneBlocksCount() {
     return blockManager.getMissingReplOneBlocksCount();
   }
   
+  @Metric({"DroppedAuditEvents", "Number of audit events dropped because " +
+      "the asynchronous audit log buffers were full"})
+  public long getNumDroppedAuditEvents() {
+    long numDropped = 0;
+    for (AuditLogger logger : auditLoggers) {
+      if (logger instanceof AsyncAuditLogger) {
+        numDropped += ((AsyncAuditLogger) logger).getNumDropped();
+      }
+    }
+    return numDropped;
+  }
+
   @Metric({"ExpiredHeartbeats", "Number of expired heartbeats"})
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
@@ -7851,6 +7945,18 @@ public void logAuditEvent(boolean succeeded, String userName,
         InetAddress addr, String cmd, String src, String dst,
         FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
         DelegationTokenSecretManager dtSecretManager) {
+      logAuditEvent(succeeded, userName, addr, cmd, src, dst, status,
+          callerContext, ugi, dtSecretManager, Server.getProtocol());
+    }
+
+    /**
+     * Log an event with the RPC protocol captured by the caller, for events
+     * which are logged outside of the RPC handler thread.
+     */
+    void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager, String protocol) {
 
       if (auditLog.isDebugEnabled() ||
           (auditLog.isInfoEnabled() && !debugCmdSet.contains(cmd))) {
@@ -7889,7 +7995,7 @@ public void logAuditEvent(boolean succeeded, String userName,
           sb.append(trackingId);
         }
         sb.append("\t").append("proto=");
-        sb.append(Server.getProtocol());
+        sb.append(protocol);
         if (isCallerContextEnabled &&
             callerContext != null &&
             callerContext.isContextValid()) {
@@ -26,6 +26,8 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Timer;
@@ -55,6 +57,10 @@
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ *
+ * The time an RPC call waits for and holds the lock is also added to the
+ * {@link org.apache.hadoop.ipc.ProcessingDetails} of the call, so that the
+ * RPC scheduler can charge the caller for it.
  */
 class FSNamesystemLock {
   @VisibleForTesting
@@ -141,16 +147,18 @@ public Long initialValue() {
   }
 
   public void readLock() {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.readLock().lock();
     if (coarseLock.getReadHoldCount() == 1) {
-      readLockHeldTimeStampNanos.set(timer.monotonicNowNanos());
+      readLockHeldTimeStampNanos.set(lockAcquired(startTimeNanos));
     }
   }
 
   public void readLockInterruptibly() throws InterruptedException {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.readLock().lockInterruptibly();
     if (coarseLock.getReadHoldCount() == 1) {
-      readLockHeldTimeStampNanos.set(timer.monotonicNowNanos());
+      readLockHeldTimeStampNanos.set(lockAcquired(startTimeNanos));
     }
   }
 
@@ -165,6 +173,7 @@ public void readUnlock(String opName) {
     coarseLock.readLock().unlock();
 
     if (needReport) {
+      addProcessingTime(Timing.LOCKSHARED, readLockIntervalNanos);
       addMetric(opName, readLockIntervalNanos, false);
       readLockHeldTimeStampNanos.remove();
     }
@@ -203,16 +212,36 @@ public void readUnlock(String opName) {
   }
   
   public void writeLock() {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.writeLock().lock();
     if (coarseLock.getWriteHoldCount() == 1) {
-      writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      writeLockHeldTimeStampNanos = lockAcquired(startTimeNanos);
     }
   }
 
   public void writeLockInterruptibly() throws InterruptedException {
+    final long startTimeNanos = timer.monotonicNowNanos();
     coarseLock.writeLock().lockInterruptibly();
     if (coarseLock.getWriteHoldCount() == 1) {
-      writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      writeLockHeldTimeStampNanos = lockAcquired(startTimeNanos);
+    }
+  }
+
+  /**
+   * Add the time waited for the lock to the current call.
+   * @return the time the lock was acquired (nanoseconds)
+   */
+  private long lockAcquired(long startTimeNanos) {
+    final long currentTimeNanos = timer.monotonicNowNanos();
+    addProcessingTime(Timing.LOCKWAIT, currentTimeNanos - startTimeNanos);
+    return currentTimeNanos;
+  }
+
+  /** Add the time of a processing stage to the current call, if any. */
+  private static void addProcessingTime(Timing type, long nanos) {
+    final Server.Call call = Server.getCurCall().get();
+    if (call != null) {
+      call.getProcessingDetails().add(type, nanos, TimeUnit.NANOSECONDS);
     }
   }
 
@@ -242,8 +271,9 @@ public void writeUnlock(String opName) {
    * for long time will be logged in logs and metrics.
    */
   public void writeUnlock(String opName, boolean suppressWriteLockReport) {
-    final boolean needReport = !suppressWriteLockReport && coarseLock
-        .getWriteHoldCount() == 1 && coarseLock.isWriteLockedByCurrentThread();
+    final boolean lastRelease = coarseLock.getWriteHoldCount() == 1 &&
+        coarseLock.isWriteLockedByCurrentThread();
+    final boolean needReport = !suppressWriteLockReport && lastRelease;
     final long currentTimeNanos = timer.monotonicNowNanos();
     final long writeLockIntervalNanos =
         currentTimeNanos - writeLockHeldTimeStampNanos;
@@ -274,6 +304,9 @@ public void writeUnlock(String opName, boolean suppressWriteLockReport) {
 
     coarseLock.writeLock().unlock();
 
+    if (lastRelease) {
+      addProcessingTime(Timing.LOCKEXCLUSIVE, writeLockIntervalNanos);
+    }
     if (needReport) {
       addMetric(opName, writeLockIntervalNanos, true);
     }
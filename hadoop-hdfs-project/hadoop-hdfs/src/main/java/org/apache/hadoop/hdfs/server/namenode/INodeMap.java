@@ -23,6 +23,7 @@
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.util.OffHeapLongGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -34,17 +35,30 @@
  */
 public class INodeMap {
   
+  /** Initial index capacity of the off-heap map, which grows as needed. */
+  private static final int OFFHEAP_INITIAL_CAPACITY = 1 << 16;
+
   static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
-    GSet<INode, INodeWithAdditionalFields> map =
-        new LightWeightGSet<>(capacity);
+    return newInstance(rootDir, false);
+  }
+
+  static INodeMap newInstance(INodeDirectory rootDir, boolean offHeap) {
+    final GSet<INode, INodeWithAdditionalFields> map;
+    if (offHeap) {
+      map = new OffHeapLongGSet<>(OFFHEAP_INITIAL_CAPACITY, INode::getId);
+    } else {
+      // Compute the map capacity by allocating 1% of total memory
+      int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+      map = new LightWeightGSet<>(capacity);
+    }
     map.put(rootDir);
     return new INodeMap(map);
   }
 
   /** Synchronized by external lock. */
   private final GSet<INode, INodeWithAdditionalFields> map;
+  /** The map if it supports lookups by id, otherwise null. */
+  private final OffHeapLongGSet<INode, INodeWithAdditionalFields> idMap;
   
   public Iterator<INodeWithAdditionalFields> getMapIterator() {
     return map.iterator();
@@ -53,6 +67,8 @@ public Iterator<INodeWithAdditionalFields> getMapIterator() {
   private INodeMap(GSet<INode, INodeWithAdditionalFields> map) {
     Preconditions.checkArgument(map != null);
     this.map = map;
+    this.idMap = map instanceof OffHeapLongGSet ?
+        (OffHeapLongGSet<INode, INodeWithAdditionalFields>) map : null;
   }
   
   /**
@@ -88,6 +104,9 @@ public int size() {
    *         such {@link INode} in the map.
    */
   public INode get(long id) {
+    if (idMap != null) {
+      return idMap.getById(id);
+    }
     INode inode = new INodeWithAdditionalFields(id, null, new PermissionStatus(
         "", "", new FsPermission((short) 0)), 0, 0) {
       
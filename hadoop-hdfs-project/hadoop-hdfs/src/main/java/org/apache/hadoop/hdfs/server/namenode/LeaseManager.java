@@ -85,6 +85,9 @@ public class LeaseManager {
   private long hardLimit = HdfsConstants.LEASE_HARDLIMIT_PERIOD;
   static final int INODE_FILTER_WORKER_COUNT_MAX = 4;
   static final int INODE_FILTER_WORKER_TASK_MIN = 512;
+  /** The maximum number of expired leases checked in one lock hold. */
+  @VisibleForTesting
+  static final int MAX_LEASES_PER_CHECK = 1000;
   private long lastHolderUpdateTime;
   private String internalLeaseHolder;
 
@@ -108,6 +111,8 @@ public int compare(Lease o1, Lease o2) {
 
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
+  /** Whether the last check left expired leases which it did not try. */
+  private boolean checkIncomplete;
 
   LeaseManager(FSNamesystem fsnamesystem) {
     this.fsnamesystem = fsnamesystem;
@@ -237,6 +242,10 @@ public List<INodesInPath> call() {
             if (!inode.isFile()) {
               continue;
             }
+            // resolving the path is much more costly than walking the parents
+            if (ancestorDir != null && !isUnder(inode, ancestorDir)) {
+              continue;
+            }
             INodesInPath inodesInPath = INodesInPath.fromINode(
                 fsnamesystem.getFSDirectory().getRoot(), inode.asFile());
             if (ancestorDir != null &&
@@ -270,6 +279,15 @@ public List<INodesInPath> call() {
     return iipSet;
   }
 
+  private static boolean isUnder(INode inode, INodeDirectory ancestorDir) {
+    for (INode p = inode.getParent(); p != null; p = p.getParent()) {
+      if (p == ancestorDir) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public BatchedListEntries<OpenFileEntry> getUnderConstructionFiles(
       final long prevId) throws IOException {
     return getUnderConstructionFiles(prevId,
@@ -517,21 +535,31 @@ class Monitor implements Runnable {
     public void run() {
       for(; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         boolean needSync = false;
+        boolean incomplete = false;
         try {
-          fsnamesystem.writeLockInterruptibly();
-          try {
-            if (!fsnamesystem.isInSafeMode()) {
-              needSync = checkLeases();
-            }
-          } finally {
-            fsnamesystem.writeUnlock("leaseManager");
-            // lease reassignments should to be sync'ed.
-            if (needSync) {
-              fsnamesystem.getEditLog().logSync();
+          // no need for the write lock if no lease has expired
+          if (hasExpiredLeases()) {
+            fsnamesystem.writeLockInterruptibly();
+            try {
+              if (!fsnamesystem.isInSafeMode()) {
+                needSync = checkLeases();
+                incomplete = isCheckIncomplete();
+              }
+            } finally {
+              fsnamesystem.writeUnlock("leaseManager");
+              // lease reassignments should to be sync'ed.
+              if (needSync) {
+                fsnamesystem.getEditLog().logSync();
+              }
             }
           }
-  
-          Thread.sleep(fsnamesystem.getLeaseRecheckIntervalMs());
+
+          // After an expiry storm, keep releasing the expired leases in
+          // bounded lock holds, with pauses at least as long for others.
+          Thread.sleep(incomplete ?
+              Math.min(fsnamesystem.getMaxLockHoldToReleaseLeaseMs(),
+                  fsnamesystem.getLeaseRecheckIntervalMs()) :
+              fsnamesystem.getLeaseRecheckIntervalMs());
         } catch(InterruptedException ie) {
           LOG.debug("{} is interrupted", name, ie);
         } catch(Throwable e) {
@@ -541,7 +569,24 @@ public void run() {
     }
   }
 
+  /** @return true if the oldest lease has expired the hard limit. */
+  synchronized boolean hasExpiredLeases() {
+    return !sortedLeases.isEmpty() && sortedLeases.first().expiredHardLimit();
+  }
+
+  /**
+   * @return true if the last {@link #checkLeases()} stopped before trying
+   *         all the expired leases, because of the lock hold limit or the
+   *         number of leases.
+   */
+  synchronized boolean isCheckIncomplete() {
+    return checkIncomplete;
+  }
+
   /** Check the leases beginning from the oldest.
+   *  Each expired lease is checked at most once, so that a lease whose files
+   *  cannot be released yet does not keep the others waiting. It is retried
+   *  by the next check.
    *  @return true is sync is needed.
    */
   @VisibleForTesting
@@ -551,10 +596,30 @@ synchronized boolean checkLeases() {
 
     long start = monotonicNow();
 
-    while(!sortedLeases.isEmpty() &&
-        sortedLeases.first().expiredHardLimit()
-        && !isMaxLockHoldToReleaseLease(start)) {
-      Lease leaseToCheck = sortedLeases.first();
+    // releasing a lease changes the order, take the oldest ones first
+    final List<Lease> expired = new ArrayList<>();
+    for (Lease lease : sortedLeases) {
+      if (!lease.expiredHardLimit() || expired.size() == MAX_LEASES_PER_CHECK) {
+        break;
+      }
+      expired.add(lease);
+    }
+    checkIncomplete = expired.size() == MAX_LEASES_PER_CHECK;
+
+    for (int i = 0; i < expired.size(); i++) {
+      Lease leaseToCheck = expired.get(i);
+      if (isMaxLockHoldToReleaseLease(start)) {
+        LOG.debug("Breaking out of checkLeases after {} ms with {} expired"
+            + " leases left.", fsnamesystem.getMaxLockHoldToReleaseLeaseMs(),
+            expired.size() - i);
+        checkIncomplete = true;
+        break;
+      }
+      // released, or renewed as the lease of the internal holder
+      if (leases.get(leaseToCheck.holder) != leaseToCheck
+          || !leaseToCheck.expiredHardLimit()) {
+        continue;
+      }
       LOG.info("{} has expired hard limit", leaseToCheck);
 
       final List<Long> removing = new ArrayList<>();
@@ -610,6 +675,7 @@ synchronized boolean checkLeases() {
         if (isMaxLockHoldToReleaseLease(start)) {
           LOG.debug("Breaking out of checkLeases after {} ms.",
               fsnamesystem.getMaxLockHoldToReleaseLeaseMs());
+          checkIncomplete = true;
           break;
         }
       }
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A concurrent dictionary of the local names of INodes, so that INodes with
+ * the same name, like part-00000 or _SUCCESS, share a single byte array.
+ *
+ * Unlike {@link NameCache}, the dictionary stays in use after the namespace
+ * is loaded. Names are first kept in a bounded set of recently seen
+ * candidates, which share their array but do not pay for a dictionary
+ * entry, and are added to the dictionary once they have been seen
+ * {@code threshold} times. Each entry counts the INodes which got its array
+ * from {@link #intern(byte[])}, and is removed when the last of them is
+ * released. The counts only decide how long an entry is kept: an INode
+ * keeps its array regardless.
+ */
+class NameDictionary {
+
+  private static final class Name {
+    private final byte[] bytes;
+    private final int hash;
+    /** References while in the dictionary, occurrences as a candidate. */
+    private int count;
+
+    Name(byte[] bytes) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Name && Arrays.equals(bytes, ((Name) o).bytes);
+    }
+  }
+
+  private final int threshold;
+  private final ConcurrentHashMap<Name, Name> names =
+      new ConcurrentHashMap<>();
+  /** Recently seen names which are not in the dictionary yet. */
+  private final Map<Name, Name> candidates;
+  private final LongAdder savedBytes = new LongAdder();
+
+  NameDictionary(int threshold, final int maxCandidates) {
+    Preconditions.checkArgument(maxCandidates > 0,
+        "Name dictionary candidates must be positive: %s", maxCandidates);
+    this.threshold = threshold;
+    this.candidates = new LinkedHashMap<Name, Name>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Name, Name> eldest) {
+        return size() > maxCandidates;
+      }
+    };
+  }
+
+  /**
+   * @return the shared array equal to the given name, which is the given
+   *         array itself if the name is not in the dictionary.
+   */
+  byte[] intern(byte[] bytes) {
+    final Name name = new Name(bytes);
+    Name shared = names.computeIfPresent(name, (k, v) -> {
+      v.count++;
+      return v;
+    });
+    if (shared == null) {
+      shared = addOccurrence(name);
+    }
+    if (shared.bytes != bytes) {
+      savedBytes.add(arrayBytes(bytes.length));
+    }
+    return shared.bytes;
+  }
+
+  /**
+   * Count an occurrence of a name which is not in the dictionary, and add
+   * it to the dictionary once it is frequent.
+   * @return the candidate or dictionary entry of the name.
+   */
+  private Name addOccurrence(Name name) {
+    Name candidate;
+    synchronized (candidates) {
+      candidate = candidates.get(name);
+      if (candidate == null) {
+        candidate = name;
+        candidate.count = 1;
+        if (threshold > 1) {
+          candidates.put(candidate, candidate);
+          return candidate;
+        }
+      } else if (++candidate.count < threshold) {
+        return candidate;
+      } else {
+        candidates.remove(candidate);
+      }
+    }
+    // another thread may have added the name in the meantime
+    return names.merge(candidate, candidate, (v, c) -> {
+      v.count += c.count;
+      return v;
+    });
+  }
+
+  /**
+   * Release the name of an INode which is removed from the namespace.
+   * Arrays which did not come from the dictionary are ignored.
+   */
+  void release(byte[] bytes) {
+    names.computeIfPresent(new Name(bytes),
+        (k, v) -> v.bytes != bytes || --v.count > 0 ? v : null);
+  }
+
+  void clear() {
+    names.clear();
+    synchronized (candidates) {
+      candidates.clear();
+    }
+  }
+
+  /** @return the number of names in the dictionary. */
+  int size() {
+    return names.size();
+  }
+
+  /** @return the references to the name, 0 if it is not in the dictionary. */
+  @VisibleForTesting
+  int getCount(byte[] bytes) {
+    final Name name = names.get(new Name(bytes));
+    return name == null ? 0 : name.count;
+  }
+
+  /** @return the approximate heap size of the duplicate arrays dropped. */
+  long getSavedBytes() {
+    return savedBytes.sum();
+  }
+
+  /**
+   * @return the approximate heap size of a byte array of the given length,
+   *         for a 64 bit JVM with compressed oops.
+   */
+  static long arrayBytes(int length) {
+    return (16 + length + 7) & ~7L;
+  }
+}
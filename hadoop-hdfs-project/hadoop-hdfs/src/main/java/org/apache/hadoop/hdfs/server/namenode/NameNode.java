@@ -57,6 +57,7 @@
 import org.apache.hadoop.hdfs.server.namenode.ha.BootstrapStandby;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAState;
+import org.apache.hadoop.hdfs.server.namenode.ha.ObserverState;
 import org.apache.hadoop.hdfs.server.namenode.ha.StandbyState;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
@@ -359,6 +360,7 @@ public long getProtocolVersion(String protocol,
       LoggerFactory.getLogger("BlockStateChange");
   public static final HAState ACTIVE_STATE = new ActiveState();
   public static final HAState STANDBY_STATE = new StandbyState();
+  public static final HAState OBSERVER_STATE = new ObserverState();
 
   private static final String NAMENODE_HTRACE_PREFIX = "namenode.htrace.";
 
@@ -371,6 +373,9 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  /** Whether this namenode serves reads as an observer instead of standby. */
+  private final boolean observerEnabled;
+  private final long observerStateWaitMs;
   private AtomicBoolean started = new AtomicBoolean(false);
 
   private final static int HEALTH_MONITOR_WARN_THRESHOLD_MS = 5000;
@@ -929,6 +934,13 @@ protected NameNode(Configuration conf, NamenodeRole role)
           + " this namenode/service.", clientNamenodeAddress);
     }
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
+    this.observerEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_ENABLED_DEFAULT);
+    this.observerStateWaitMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_STATE_WAIT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_OBSERVER_STATE_WAIT_DEFAULT,
+        TimeUnit.MILLISECONDS);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
     this.haContext = createHAContext();
@@ -966,10 +978,18 @@ protected HAState createHAState(StartupOption startOpt) {
         || startOpt == StartupOption.UPGRADEONLY) {
       return ACTIVE_STATE;
     } else {
-      return STANDBY_STATE;
+      return getStandbyState();
     }
   }
 
+  /**
+   * @return the state this namenode enters when it is not active: the
+   * observer state if observer reads are enabled, standby otherwise.
+   */
+  private HAState getStandbyState() {
+    return observerEnabled ? OBSERVER_STATE : STANDBY_STATE;
+  }
+
   protected HAContext createHAContext() {
     return new NameNodeHAContext();
   }
@@ -1752,7 +1772,7 @@ synchronized void transitionToStandby()
     if (!haEnabled) {
       throw new ServiceFailedException("HA for namenode is not enabled");
     }
-    state.setState(haContext, STANDBY_STATE);
+    state.setState(haContext, getStandbyState());
   }
 
   synchronized HAServiceStatus getServiceStatus()
@@ -1950,6 +1970,9 @@ public void writeUnlock() {
     public void checkOperation(final OperationCategory op)
         throws StandbyException {
       state.checkOperation(haContext, op);
+      if (op == OperationCategory.READ && state == OBSERVER_STATE) {
+        checkClientStateOnObserver();
+      }
     }
     
     @Override
@@ -1960,7 +1983,51 @@ public boolean allowStaleReads() {
   }
   
   public boolean isStandbyState() {
-    return (state.equals(STANDBY_STATE));
+    return (state.equals(STANDBY_STATE) || state.equals(OBSERVER_STATE));
+  }
+
+  public boolean isObserverState() {
+    return state.equals(OBSERVER_STATE);
+  }
+
+  /**
+   * Make sure that a read served by this observer reflects every transaction
+   * the client has already seen. If the namespace is behind the client, wait
+   * for the edit log tailer to catch up for at most
+   * {@link DFSConfigKeys#DFS_NAMENODE_OBSERVER_STATE_WAIT_KEY}. The handler
+   * sleeps until the tailer has applied more edits, rather than polling. The
+   * wait is skipped while the namesystem lock is held, since the tailer
+   * cannot make progress then; the operation's first check happens before
+   * the lock is taken.
+   *
+   * @throws StandbyException if the observer is still behind the client, or
+   *         if the client does not track its state and stale reads are not
+   *         allowed; the client should retry the read on the active namenode.
+   */
+  private void checkClientStateOnObserver() throws StandbyException {
+    final long clientStateId = Server.getClientStateId();
+    if (clientStateId < 0) {
+      if (!allowStaleStandbyReads && Server.isRpcInvocation()) {
+        throw new StandbyException("Observer "
+            + getNameNodeAddressHostPortString()
+            + " only serves reads to clients which track their state id");
+      }
+      return;
+    }
+    final FSImage fsImage = namesystem.getFSImage();
+    final long appliedTxId;
+    try {
+      appliedTxId = fsImage.waitForAppliedOrWrittenTxId(clientStateId,
+          namesystem.hasReadLock() ? 0 : observerStateWaitMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StandbyException("Interrupted waiting for the observer to"
+          + " reach the client state id " + clientStateId);
+    }
+    if (appliedTxId < clientStateId) {
+      throw new StandbyException("Observer state id " + appliedTxId
+          + " is behind the client state id " + clientStateId);
+    }
   }
   
   public boolean isActiveState() {
@@ -148,6 +148,7 @@
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager.BlockReportDiff;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerFaultInjector;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
@@ -530,6 +531,7 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         UnresolvedPathException.class);
 
     clientRpcServer.setTracer(nn.tracer);
+    clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
     if (serviceRpcServer != null) {
       serviceRpcServer.setTracer(nn.tracer);
     }
@@ -1167,6 +1169,20 @@ public HdfsLocatedFileStatus getLocatedFileInfo(String src,
         namesystem.getFileInfo(src, true, true, needBlockToken);
   }
 
+  @Override // ClientProtocol
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs,
+      boolean needLocation) throws IOException {
+    checkNNStartup();
+    HdfsFileStatus[] result = namesystem.getBatchedFileInfo(srcs,
+        needLocation);
+    if (needLocation) {
+      metrics.incrGetBlockLocations(result.length);
+    } else {
+      metrics.incrFileInfoOps(result.length);
+    }
+    return result;
+  }
+
   @Override // ClientProtocol
   public boolean isFileClosed(String src) throws IOException{
     checkNNStartup();
@@ -1519,6 +1535,10 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
     }
     final BlockManager bm = namesystem.getBlockManager(); 
     boolean noStaleStorages = false;
+    // diff the storage reports in parallel outside the write lock
+    final BlockReportDiff[] diffs = bm.isParallelReportDiffEnabled() ?
+        bm.diffReports(nodeReg, reports, context) :
+        new BlockReportDiff[reports.length];
     for (int r = 0; r < reports.length; r++) {
       final BlockListAsLongs blocks = reports[r].getBlocks();
       //
@@ -1531,7 +1551,7 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
         @Override
         public Boolean call() throws IOException {
           return bm.processReport(nodeReg, reports[index].getStorage(),
-              blocks, context);
+              blocks, context, diffs[index]);
         }
       });
     }
@@ -48,7 +48,7 @@ public boolean shouldPopulateReplQueues() {
   
   @Override
   public void setState(HAContext context, HAState s) throws ServiceFailedException {
-    if (s == NameNode.STANDBY_STATE) {
+    if (s == NameNode.STANDBY_STATE || s == NameNode.OBSERVER_STATE) {
       setStateInternal(context, s);
       return;
     }
@@ -112,6 +112,18 @@ public class EditLogTailer {
    */
   private long lastLoadTimeMs;
 
+  /**
+   * The last time the Standby had loaded every transaction visible in the
+   * shared directory.
+   */
+  private long lastCaughtUpTimeMs;
+
+  /**
+   * The number of transactions visible in the shared directory that had not
+   * been loaded after the last tailing attempt.
+   */
+  private long tailLagTxns;
+
   /**
    * How often the Standby should roll edit logs. Since the Standby only reads
    * from finalized log segments, the Standby will only be as up-to-date as how
@@ -164,6 +176,7 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
     this.editLog = namesystem.getEditLog();
     
     lastLoadTimeMs = monotonicNow();
+    lastCaughtUpTimeMs = lastLoadTimeMs;
 
     logRollPeriodMs = conf.getTimeDuration(
         DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY,
@@ -334,11 +347,46 @@ void doTailEdits() throws IOException, InterruptedException {
         lastLoadTimeMs = monotonicNow();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
+      updateTailLag(streams);
     } finally {
       namesystem.writeUnlock();
     }
   }
 
+  /**
+   * Update the tail lag from the highest transaction ID of the streams that
+   * were selected for this round of tailing.
+   */
+  private void updateTailLag(Collection<EditLogInputStream> streams) {
+    long latestTxId = lastLoadedTxnId;
+    for (EditLogInputStream stream : streams) {
+      latestTxId = Math.max(latestTxId, stream.getLastTxId());
+    }
+    long now = monotonicNow();
+    tailLagTxns = latestTxId - lastLoadedTxnId;
+    if (tailLagTxns == 0) {
+      lastCaughtUpTimeMs = now;
+    }
+    NameNode.getNameNodeMetrics().setEditLogTailLag(tailLagTxns,
+        now - lastCaughtUpTimeMs);
+  }
+
+  /**
+   * @return the number of transactions that were visible but not yet loaded
+   * after the last tailing attempt.
+   */
+  @VisibleForTesting
+  long getTailLagTxns() {
+    return tailLagTxns;
+  }
+
+  /**
+   * @return time in msec since the Standby last loaded every visible edit.
+   */
+  public long getTailLagMs() {
+    return monotonicNow() - lastCaughtUpTimeMs;
+  }
+
   /**
    * @return time in msec of when we last loaded a non-zero number of edits.
    */
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.namenode.NameNode.OperationCategory;
+import org.apache.hadoop.ipc.StandbyException;
+
+/**
+ * Namenode observer state. An observer is a standby which, in addition to
+ * keeping its namespace and block locations up to date by tailing edits and
+ * receiving block reports, serves read operations to clients.
+ *
+ * Clients which track the last transaction they have seen send it with each
+ * request; the observer only serves such a read once it has applied that
+ * transaction, so clients observe their own writes. Writes and checkpoint
+ * operations are not handled.
+ *
+ * To the rest of the cluster, e.g. DataNodes and failover controllers, an
+ * observer reports itself as a standby.
+ */
+@InterfaceAudience.Private
+public class ObserverState extends StandbyState {
+
+  @Override
+  public void checkOperation(HAContext context, OperationCategory op)
+      throws StandbyException {
+    if (op == OperationCategory.READ) {
+      return;
+    }
+    super.checkOperation(context, op);
+  }
+
+  @Override
+  public String toString() {
+    return "observer";
+  }
+}
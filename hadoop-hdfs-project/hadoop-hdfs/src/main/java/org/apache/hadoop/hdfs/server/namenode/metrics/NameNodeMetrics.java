@@ -30,6 +30,7 @@
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.lib.MutableStat;
@@ -65,6 +66,10 @@ public class NameNodeMetrics {
   MutableCounterLong numTimesReReplicationNotScheduled;
   @Metric("Number of timed out block re-replications")
   MutableCounterLong timeoutReReplications;
+  @Metric("Time to schedule a round of block reconstruction work")
+  MutableRate reconstructionWorkTime;
+  @Metric("Time from scheduling a block reconstruction until it completed")
+  MutableRate reconstructionTime;
   @Metric("Number of allowSnapshot operations")
   MutableCounterLong allowSnapshotOps;
   @Metric("Number of disallowSnapshot operations")
@@ -146,6 +151,11 @@ public long totalFileOps(){
   @Metric("Time between edit log tailing in msec")
   MutableRate editLogTailInterval;
   private final MutableQuantiles[] editLogTailIntervalQuantiles;
+  @Metric("Number of transactions the standby is behind the shared edits")
+  MutableGaugeLong editLogTailLagTxns;
+  @Metric("Time since the standby last caught up with the shared edits in " +
+      "msec")
+  MutableGaugeLong editLogTailLagMs;
 
   @Metric("GetImageServlet getEdit")
   MutableRate getEdit;
@@ -238,6 +248,10 @@ public void incrGetBlockLocations() {
     getBlockLocations.incr();
   }
 
+  public void incrGetBlockLocations(long delta) {
+    getBlockLocations.incr(delta);
+  }
+
   public void incrFilesCreated() {
     filesCreated.incr();
   }
@@ -286,6 +300,10 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrFileInfoOps(long delta) {
+    fileInfoOps.incr(delta);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -357,6 +375,14 @@ public void incTimeoutReReplications() {
     timeoutReReplications.incr();
   }
 
+  public void addReconstructionWorkTime(long elapsed) {
+    reconstructionWorkTime.add(elapsed);
+  }
+
+  public void addReconstructionTime(long elapsed) {
+    reconstructionTime.add(elapsed);
+  }
+
   public void addSync(long elapsed) {
     syncs.add(elapsed);
     for (MutableQuantiles q : syncsQuantiles) {
@@ -446,4 +472,9 @@ public void addEditLogTailInterval(long elapsed) {
       q.add(elapsed);
     }
   }
+
+  public void setEditLogTailLag(long lagTxns, long lagMs) {
+    editLogTailLagTxns.set(lagTxns);
+    editLogTailLagMs.set(lagMs);
+  }
 }
@@ -145,6 +145,12 @@ public int compare(FsImageProto.FileSummary.Section s1,
           });
 
       for (FsImageProto.FileSummary.Section s : sections) {
+        FSImageFormatProtobuf.SectionName name =
+            FSImageFormatProtobuf.SectionName.fromString(s.getName());
+        if (name == null) {
+          LOG.warn("Unrecognized section " + s.getName());
+          continue;
+        }
         fin.getChannel().position(s.getOffset());
         InputStream is = FSImageUtil.wrapInputStreamForCompression(conf,
             summary.getCodec(), new BufferedInputStream(new LimitInputStream(
@@ -154,7 +160,7 @@ public int compare(FsImageProto.FileSummary.Section s1,
           LOG.debug("Loading section " + s.getName() + " length: " + s.getLength
               ());
         }
-        switch (FSImageFormatProtobuf.SectionName.fromString(s.getName())) {
+        switch (name) {
           case STRING_TABLE:
             stringTable = loadStringTable(is);
             break;
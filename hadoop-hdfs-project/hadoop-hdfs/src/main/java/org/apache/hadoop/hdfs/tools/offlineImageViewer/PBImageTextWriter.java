@@ -461,11 +461,16 @@ public int compare(FsImageProto.FileSummary.Section s1,
 
       ImmutableList<Long> refIdList = null;
       for (FileSummary.Section section : sections) {
+        SectionName name = SectionName.fromString(section.getName());
+        if (name == null) {
+          LOG.warn("Unrecognized section {}", section.getName());
+          continue;
+        }
         fin.getChannel().position(section.getOffset());
         is = FSImageUtil.wrapInputStreamForCompression(conf,
             summary.getCodec(), new BufferedInputStream(new LimitInputStream(
                 fin, section.getLength())));
-        switch (SectionName.fromString(section.getName())) {
+        switch (name) {
         case STRING_TABLE:
           LOG.info("Loading string table");
           stringTable = FSImageLoader.loadStringTable(is);
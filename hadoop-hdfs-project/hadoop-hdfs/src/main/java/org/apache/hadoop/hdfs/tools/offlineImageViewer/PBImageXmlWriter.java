@@ -321,12 +321,17 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       });
 
       for (FileSummary.Section s : sections) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == null) {
+          // e.g. saved by a newer release, skip it as it cannot be dumped
+          continue;
+        }
         fin.getChannel().position(s.getOffset());
         InputStream is = FSImageUtil.wrapInputStreamForCompression(conf,
             summary.getCodec(), new BufferedInputStream(new LimitInputStream(
                 fin, s.getLength())));
 
-        switch (SectionName.fromString(s.getName())) {
+        switch (name) {
         case NS_INFO:
           dumpNameSection(is);
           break;
@@ -0,0 +1,542 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.GSet;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link GSet} for elements identified by a long id, e.g. INodes by inode
+ * id and blocks by block id, whose hash index is kept outside of the Java
+ * heap.
+ *
+ * The index is an open addressing hash table with linear probing, stored in
+ * direct memory slabs of at most 1GB. Each index entry holds the id of an
+ * element and the slot of the element in a chunked array of element
+ * references, so the heap memory used by the set is one reference per
+ * element plus one int per free slot. Unlike
+ * {@link org.apache.hadoop.util.LightWeightGSet}, no reference array sized
+ * by a percentage of the heap is allocated up front, the elements'
+ * {@code next} links are not used, and the garbage collector never scans
+ * the index.
+ *
+ * The slot of an element does not change while it is in the set. Removing
+ * an element frees its slot for a later put, and iteration scans the slots.
+ * So an iterator that does not track modifications returns every element
+ * that stays in the set exactly once, and may or may not return the
+ * elements added behind it.
+ *
+ * The index doubles when it becomes 3/4 full. The entries of the old index
+ * are moved to the new one incrementally, a few at each put or remove,
+ * while lookups search both. Entries removed from the old index during the
+ * move are marked deleted instead of being shifted back.
+ *
+ * Elements with equal ids must be equal, which holds for INodes and blocks.
+ * This class does not support null elements and is not thread safe.
+ *
+ * @param <K> Key type for looking up the elements
+ * @param <E> Element type, which must be a subclass of K
+ */
+@InterfaceAudience.Private
+public class OffHeapLongGSet<K, E extends K> implements GSet<K, E> {
+  /** Each index entry is a long id followed by an int slot + 1. */
+  private static final int ENTRY_SIZE = 16;
+  private static final int SLOT_OFFSET = 8;
+  /** The stored slot of an empty entry. */
+  private static final int EMPTY = 0;
+  /** The stored slot of an entry removed from the old index. */
+  private static final int DELETED = -1;
+  /** Slabs of 2^26 entries, i.e. 1GB of direct memory each. */
+  private static final int SLAB_SHIFT = 26;
+  private static final long SLAB_MASK = (1L << SLAB_SHIFT) - 1;
+  /** Chunks of 2^16 element references. */
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  /** The old index entries moved at each put or remove during a resize. */
+  static final int MOVE_STEP = 16;
+
+  static final int MIN_CAPACITY = 16;
+  static final long MAX_CAPACITY = 1L << 32;
+  /** The number of elements is bounded by the int size of the set. */
+  static final int MAX_SIZE = Integer.MAX_VALUE - CHUNK_MASK;
+
+  private final ToLongFunction<? super K> idFunction;
+  private final long initialCapacity;
+
+  /** The off-heap index slabs. */
+  private ByteBuffer[] slabs;
+  /** The number of index entries, a power of two. */
+  private long capacity;
+  /** The slabs of the index being moved by a resize, or null. */
+  private ByteBuffer[] oldSlabs;
+  private long oldCapacity;
+  /** The old index entries before this position have been moved. */
+  private long moved;
+  /** The elements, addressed by slot. */
+  private Object[][] chunks;
+  /** The number of slots in use or free. */
+  private int slots = 0;
+  /** The free slots below {@link #slots}. */
+  private int[] freeSlots;
+  private int numFreeSlots = 0;
+  /** The size of the set. */
+  private int size = 0;
+  /** Modification version for fail-fast.
+   * @see ConcurrentModificationException
+   */
+  private int modification = 0;
+
+  private Collection<E> values;
+
+  /**
+   * @param initialCapacity Initial number of index entries.
+   * @param idFunction Returns the id of a key or element.
+   */
+  public OffHeapLongGSet(long initialCapacity,
+      ToLongFunction<? super K> idFunction) {
+    Preconditions.checkArgument(initialCapacity > 0,
+        "Initial capacity must be positive: %s", initialCapacity);
+    this.idFunction = Preconditions.checkNotNull(idFunction);
+    this.initialCapacity = actualCapacity(initialCapacity);
+    init();
+  }
+
+  private static long actualCapacity(long recommended) {
+    if (recommended >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    } else if (recommended <= MIN_CAPACITY) {
+      return MIN_CAPACITY;
+    } else {
+      final long a = Long.highestOneBit(recommended);
+      return a == recommended ? a : a << 1;
+    }
+  }
+
+  private void init() {
+    slabs = allocate(initialCapacity);
+    capacity = initialCapacity;
+    oldSlabs = null;
+    oldCapacity = 0;
+    moved = 0;
+    chunks = new Object[1][];
+    slots = 0;
+    freeSlots = new int[MIN_CAPACITY];
+    numFreeSlots = 0;
+    size = 0;
+  }
+
+  /**
+   * Free the direct memory of the slabs now, instead of when they are
+   * garbage collected. Otherwise the memory of the old indexes could add
+   * up until an allocation triggers a full garbage collection.
+   */
+  private static void free(ByteBuffer[] index) {
+    for (ByteBuffer slab : index) {
+      if (slab instanceof sun.nio.ch.DirectBuffer) {
+        ((sun.nio.ch.DirectBuffer) slab).cleaner().clean();
+      }
+    }
+  }
+
+  private static ByteBuffer[] allocate(long capacity) {
+    final long slabEntries = Math.min(capacity, 1L << SLAB_SHIFT);
+    final int numSlabs = (int) (capacity / slabEntries);
+    final ByteBuffer[] newSlabs = new ByteBuffer[numSlabs];
+    for (int i = 0; i < numSlabs; i++) {
+      // direct buffers are zero filled, i.e. all entries are empty
+      newSlabs[i] = ByteBuffer.allocateDirect(
+          (int) (slabEntries * ENTRY_SIZE));
+    }
+    return newSlabs;
+  }
+
+  /** Spread the mostly sequential ids over the index. */
+  private static long hash(long id) {
+    id = (id ^ (id >>> 33)) * 0xff51afd7ed558ccdL;
+    id = (id ^ (id >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return id ^ (id >>> 33);
+  }
+
+  private static ByteBuffer slab(ByteBuffer[] index, long pos) {
+    return index[(int) (pos >>> SLAB_SHIFT)];
+  }
+
+  private static int offset(long pos) {
+    return (int) (pos & SLAB_MASK) * ENTRY_SIZE;
+  }
+
+  private static long idAt(ByteBuffer[] index, long pos) {
+    return slab(index, pos).getLong(offset(pos));
+  }
+
+  /** @return the slot + 1 stored at the given position, or EMPTY/DELETED. */
+  private static int storedAt(ByteBuffer[] index, long pos) {
+    return slab(index, pos).getInt(offset(pos) + SLOT_OFFSET);
+  }
+
+  private static void setEntry(ByteBuffer[] index, long pos, long id,
+      int stored) {
+    final ByteBuffer slab = slab(index, pos);
+    final int off = offset(pos);
+    slab.putLong(off, id);
+    slab.putInt(off + SLOT_OFFSET, stored);
+  }
+
+  /**
+   * @return the position of the entry with the given id, or the empty
+   *         position at which it would be inserted, as a negative value
+   *         -(pos + 1).
+   */
+  private static long find(ByteBuffer[] index, long capacity, long id) {
+    final long mask = capacity - 1;
+    for (long pos = hash(id) & mask; ; pos = (pos + 1) & mask) {
+      final int stored = storedAt(index, pos);
+      if (stored == EMPTY) {
+        return -(pos + 1);
+      } else if (stored != DELETED && idAt(index, pos) == id) {
+        return pos;
+      }
+    }
+  }
+
+  /**
+   * @return the position of the entry with the given id in the old index,
+   *         or -1 if it is not there or has been moved.
+   */
+  private long findOld(long id) {
+    if (oldSlabs == null) {
+      return -1;
+    }
+    final long pos = find(oldSlabs, oldCapacity, id);
+    return pos >= moved ? pos : -1;
+  }
+
+  /** @return the slot of the element with the given id, or -1. */
+  private int slotOf(long id) {
+    long pos = find(slabs, capacity, id);
+    if (pos >= 0) {
+      return storedAt(slabs, pos) - 1;
+    }
+    pos = findOld(id);
+    return pos >= 0 ? storedAt(oldSlabs, pos) - 1 : -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private E element(int slot) {
+    return (E) chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+  }
+
+  private void setElement(int slot, E e) {
+    final int c = slot >>> CHUNK_SHIFT;
+    if (c == chunks.length) {
+      final Object[][] newChunks = new Object[c << 1][];
+      System.arraycopy(chunks, 0, newChunks, 0, c);
+      chunks = newChunks;
+    }
+    if (chunks[c] == null) {
+      chunks[c] = new Object[CHUNK_MASK + 1];
+    }
+    chunks[c][slot & CHUNK_MASK] = e;
+  }
+
+  private int allocateSlot() {
+    return numFreeSlots > 0 ? freeSlots[--numFreeSlots] : slots++;
+  }
+
+  private void freeSlot(int slot) {
+    chunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = null;
+    if (numFreeSlots == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, numFreeSlots << 1);
+    }
+    freeSlots[numFreeSlots++] = slot;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** @return the number of entries of the off-heap index. */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of bytes of direct memory used by the index,
+   *         including the old index during a resize.
+   */
+  public long getOffHeapBytes() {
+    return (capacity + oldCapacity) * ENTRY_SIZE;
+  }
+
+  @Override
+  public boolean contains(final K key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public E get(final K key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    return getById(idFunction.applyAsLong(key));
+  }
+
+  /**
+   * Look up an element by its id, without the need to create a key object.
+   * @return The stored element if it exists. Otherwise, return null.
+   */
+  public E getById(long id) {
+    final int slot = slotOf(id);
+    return slot < 0 ? null : element(slot);
+  }
+
+  @Override
+  public E put(final E element) {
+    if (element == null) {
+      throw new NullPointerException("Null element is not supported.");
+    }
+    final long id = idFunction.applyAsLong(element);
+    final int existingSlot = slotOf(id);
+    modification++;
+    if (existingSlot >= 0) {
+      final E existing = element(existingSlot);
+      setElement(existingSlot, element);
+      return existing;
+    }
+    if (size >= MAX_SIZE) {
+      throw new IllegalStateException("Cannot add more than " + MAX_SIZE
+          + " elements to " + this);
+    }
+    move(MOVE_STEP);
+    if (size >= capacity - (capacity >>> 2) && capacity < MAX_CAPACITY) {
+      resize(capacity << 1);
+    }
+    final int slot = allocateSlot();
+    setElement(slot, element);
+    setEntry(slabs, -find(slabs, capacity, id) - 1, id, slot + 1);
+    size++;
+    return null;
+  }
+
+  /**
+   * Start moving the entries to a new index. A resize still in progress is
+   * completed first.
+   */
+  private void resize(long newCapacity) {
+    move(oldCapacity);
+    LOG.info("Resizing {} to {} entries", this, newCapacity);
+    oldSlabs = slabs;
+    oldCapacity = capacity;
+    moved = 0;
+    slabs = allocate(newCapacity);
+    capacity = newCapacity;
+  }
+
+  /** Move up to the given number of old index entries to the index. */
+  private void move(long entries) {
+    if (oldSlabs == null) {
+      return;
+    }
+    final long end = Math.min(oldCapacity, moved + entries);
+    for (; moved < end; moved++) {
+      final int stored = storedAt(oldSlabs, moved);
+      if (stored != EMPTY && stored != DELETED) {
+        final long id = idAt(oldSlabs, moved);
+        setEntry(slabs, -find(slabs, capacity, id) - 1, id, stored);
+      }
+    }
+    if (moved == oldCapacity) {
+      free(oldSlabs);
+      oldSlabs = null;
+      oldCapacity = 0;
+      moved = 0;
+    }
+  }
+
+  @Override
+  public E remove(final K key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    final long id = idFunction.applyAsLong(key);
+    final int slot;
+    long pos = find(slabs, capacity, id);
+    if (pos >= 0) {
+      slot = storedAt(slabs, pos) - 1;
+      deleteEntry(pos);
+    } else if ((pos = findOld(id)) >= 0) {
+      slot = storedAt(oldSlabs, pos) - 1;
+      // the old index is scanned by position, so its entries stay in place
+      setEntry(oldSlabs, pos, id, DELETED);
+    } else {
+      return null;
+    }
+    modification++;
+    final E removed = element(slot);
+    freeSlot(slot);
+    size--;
+    move(MOVE_STEP);
+    return removed;
+  }
+
+  /**
+   * Delete the entry at the given position of the index by shifting back
+   * the following entries of the probe sequence, so that no deleted markers
+   * are needed.
+   */
+  private void deleteEntry(long pos) {
+    final long mask = capacity - 1;
+    long hole = pos;
+    for (long next = (pos + 1) & mask; ; next = (next + 1) & mask) {
+      final int stored = storedAt(slabs, next);
+      if (stored == EMPTY) {
+        break;
+      }
+      final long id = idAt(slabs, next);
+      final long home = hash(id) & mask;
+      // move the entry unless its home lies cyclically in (hole, next]
+      final boolean stays = hole <= next ?
+          hole < home && home <= next : hole < home || home <= next;
+      if (!stays) {
+        setEntry(slabs, hole, id, stored);
+        hole = next;
+      }
+    }
+    setEntry(slabs, hole, 0L, EMPTY);
+  }
+
+  @Override
+  public void clear() {
+    modification++;
+    free(slabs);
+    if (oldSlabs != null) {
+      free(oldSlabs);
+    }
+    init();
+  }
+
+  @Override
+  public Collection<E> values() {
+    if (values == null) {
+      values = new Values();
+    }
+    return values;
+  }
+
+  private final class Values extends AbstractCollection<E> {
+
+    @Override
+    public Iterator<E> iterator() {
+      return OffHeapLongGSet.this.iterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean contains(Object o) {
+      return OffHeapLongGSet.this.contains((K)o);
+    }
+
+    @Override
+    public void clear() {
+      OffHeapLongGSet.this.clear();
+    }
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new SetIterator();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + size
+        + ", capacity=" + capacity + ", modification=" + modification + ")";
+  }
+
+  /**
+   * Iterates over the elements in slot order. Since the slots are stable,
+   * an iterator that does not track modifications can be used across
+   * modifications of the set.
+   */
+  public class SetIterator implements Iterator<E> {
+    /** The starting modification for fail-fast. */
+    private int iterModification = modification;
+    /** The slot from which to search the next element. */
+    private int next = 0;
+    private E cur = null;
+    private boolean trackModification = true;
+
+    private void checkModification() {
+      if (trackModification && modification != iterModification) {
+        throw new ConcurrentModificationException("modification="
+            + modification + " != iterModification = " + iterModification);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      checkModification();
+      while (next < slots && element(next) == null) {
+        next++;
+      }
+      return next < slots;
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("There are no more elements");
+      }
+      cur = element(next++);
+      return cur;
+    }
+
+    @Override
+    public void remove() {
+      checkModification();
+      if (cur == null) {
+        throw new IllegalStateException("There is no current element " +
+            "to remove");
+      }
+      OffHeapLongGSet.this.remove(cur);
+      iterModification = modification;
+      cur = null;
+    }
+
+    public void setTrackModification(boolean trackModification) {
+      this.trackModification = trackModification;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the asynchronous positional reads of {@link DFSInputStream}.
+ */
+public class TestAsyncPread {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_SIZE = 5 * BLOCK_SIZE + 1234;
+  private static final long SEED = 0xDEADBEEFL;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private byte[] expected;
+
+  @Before
+  public void setup() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    expected = new byte[FILE_SIZE];
+    new Random(SEED).nextBytes(expected);
+  }
+
+  @After
+  public void shutdown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private Path createFile(String name, short replication) throws Exception {
+    Path path = new Path(name);
+    DFSTestUtil.writeFile(fs, path, expected);
+    fs.setReplication(path, replication);
+    DFSTestUtil.waitReplication(fs, path, replication);
+    return path;
+  }
+
+  /** Check the results of a read of the given range of the file. */
+  private void checkRead(ByteBuffer buf, int position, int length, int n) {
+    int expectedLength = Math.min(length, FILE_SIZE - position);
+    assertEquals(expectedLength, n);
+    assertEquals(expectedLength, buf.position());
+    buf.flip();
+    byte[] actual = new byte[n];
+    buf.get(actual);
+    assertArrayEquals("read of " + length + " bytes at " + position,
+        Arrays.copyOfRange(expected, position, position + n), actual);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentReads() throws Exception {
+    Path path = createFile("/file", (short) 2);
+    Random random = new Random(SEED);
+    try (FSDataInputStream in = fs.open(path)) {
+      assertTrue(in.hasCapability(StreamCapabilities.READASYNC));
+      List<ByteBuffer> buffers = new ArrayList<>();
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      int[] positions = new int[200];
+      int[] lengths = new int[positions.length];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = random.nextInt(FILE_SIZE);
+        // some reads cross a block boundary or the end of the file
+        lengths[i] = 1 + random.nextInt(2 * BLOCK_SIZE);
+        ByteBuffer buf = i % 2 == 0 ? ByteBuffer.allocate(lengths[i])
+            : ByteBuffer.allocateDirect(lengths[i]);
+        buffers.add(buf);
+        futures.add(in.readAsync(positions[i], buf));
+      }
+      for (int i = 0; i < positions.length; i++) {
+        checkRead(buffers.get(i), positions[i], lengths[i],
+            futures.get(i).get());
+      }
+
+      ByteBuffer buf = ByteBuffer.allocate(10);
+      assertEquals(-1, (int) in.readAsync(FILE_SIZE, buf).get());
+      assertEquals(0, buf.position());
+      buf = ByteBuffer.allocate(FILE_SIZE);
+      checkRead(buf, 0, FILE_SIZE, in.readAsync(0, buf).get());
+
+      DFSInputStream dfsIn = (DFSInputStream) in.getWrappedStream();
+      assertTrue(dfsIn.getReadStatistics().getTotalBytesRead() > FILE_SIZE);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadFromCorruptReplica() throws Exception {
+    Path path = createFile("/corrupt", (short) 2);
+    try (FSDataInputStream in = fs.open(path)) {
+      DFSInputStream dfsIn = (DFSInputStream) in.getWrappedStream();
+      // corrupt the replica of the first block which the stream reads first
+      LocatedBlock block = dfsIn.getAllBlocks().get(0);
+      cluster.corruptReplica(
+          cluster.getDataNode(block.getLocations()[0].getIpcPort()),
+          block.getBlock());
+
+      ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE + 100);
+      checkRead(buf, 100, BLOCK_SIZE + 100, in.readAsync(100, buf).get());
+      // the read reported the corrupt replica
+      GenericTestUtils.waitFor(
+          () -> cluster.getNamesystem().getCorruptReplicaBlocks() == 1,
+          100, 10000);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadFromDeadDataNode() throws Exception {
+    Path path = createFile("/dead", (short) 2);
+    try (FSDataInputStream in = fs.open(path)) {
+      cluster.stopDataNode(0);
+      ByteBuffer buf = ByteBuffer.allocate(3 * BLOCK_SIZE);
+      checkRead(buf, 1000, 3 * BLOCK_SIZE, in.readAsync(1000, buf).get());
+    }
+  }
+
+  @Test
+  public void testReadAsyncFallback() throws Exception {
+    File dir = GenericTestUtils.getTestDir("TestAsyncPread");
+    FileSystem localFs = FileSystem.getLocal(new Configuration());
+    Path path = new Path(dir.getAbsolutePath(), "file");
+    DFSTestUtil.writeFile(localFs, path, expected);
+    try (FSDataInputStream in = localFs.open(path)) {
+      assertFalse(in.hasCapability(StreamCapabilities.READASYNC));
+      ByteBuffer buf = ByteBuffer.allocateDirect(2 * BLOCK_SIZE);
+      CompletableFuture<Integer> future = in.readAsync(FILE_SIZE - 10, buf);
+      assertTrue(future.isDone());
+      checkRead(buf, FILE_SIZE - 10, 2 * BLOCK_SIZE, future.get());
+      buf.clear();
+      assertEquals(-1, (int) in.readAsync(FILE_SIZE, buf).get());
+    } finally {
+      localFs.delete(path, false);
+    }
+  }
+}
@@ -48,7 +48,7 @@
 
 public class TestDataTransferKeepalive {
   final Configuration conf = new HdfsConfiguration();
-  private MiniDFSCluster cluster;
+  MiniDFSCluster cluster;
   private DataNode dn;
   private static final Path TEST_FILE = new Path("/test");
   
@@ -258,7 +258,7 @@ private void assertXceiverCount(int expected) {
    * 
    * @return int xceiver count, not including DataXceiverServer
    */
-  private int getXceiverCountWithoutServer() {
+  int getXceiverCountWithoutServer() {
     return dn.getXceiverCount() - 1;
   }
 }
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeFaultInjector;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the keepalive tests with the DataNode serving its connections on
+ * the event loop, and checks that many connections share few threads.
+ */
+public class TestDataTransferKeepaliveEventLoop
+    extends TestDataTransferKeepalive {
+  private static final int NUM_HANDLERS = 2;
+
+  @Before
+  @Override
+  public void setup() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_XCEIVER_EVENT_LOOP_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_XCEIVER_HANDLER_COUNT_KEY,
+        NUM_HANDLERS);
+    super.setup();
+  }
+
+  @Test(timeout=60000)
+  public void testConcurrentReaders() throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.set(DFS_CLIENT_CONTEXT, "testConcurrentReaders");
+    final FileSystem fs = FileSystem.get(cluster.getURI(), clientConf);
+    final Path file = new Path("/concurrent");
+    // several blocks, written through connections of their own
+    DFSTestUtil.createFile(fs, file, 4096, 5 * 64 * 1024 + 123, 64 * 1024,
+        (short)1, 0L);
+    final byte[] expected = DFSTestUtil.readFileBuffer(fs, file);
+
+    // the handlers block in the reads until they are released, so that the
+    // other requests queue up for a handler
+    final CountDownLatch release = new CountDownLatch(1);
+    final DataNodeFaultInjector oldInjector = DataNodeFaultInjector.get();
+    DataNodeFaultInjector.set(new DataNodeFaultInjector() {
+      @Override
+      public void throwTooManyOpenFiles() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    final int numReaders = 8 * NUM_HANDLERS;
+    ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < numReaders; i++) {
+        final int offset = i * 1000;
+        results.add(executor.submit(() -> {
+          byte[] buf = new byte[expected.length - offset];
+          try (FSDataInputStream in = fs.open(file)) {
+            in.readFully(offset, buf);
+          }
+          return buf;
+        }));
+      }
+      // the queued requests count against the xceiver limit too
+      GenericTestUtils.waitFor(
+          () -> getXceiverCountWithoutServer() >= numReaders, 10, 30000);
+      release.countDown();
+      for (int i = 0; i < numReaders; i++) {
+        assertArrayEquals(Arrays.copyOfRange(expected, i * 1000,
+            expected.length), results.get(i).get());
+      }
+    } finally {
+      release.countDown();
+      DataNodeFaultInjector.set(oldInjector);
+      executor.shutdownNow();
+    }
+
+    // the cached connections wait on the event loop without a thread
+    assertTrue(getXceiverCountWithoutServer() > NUM_HANDLERS);
+    assertArrayEquals(expected, DFSTestUtil.readFileBuffer(fs, file));
+  }
+}
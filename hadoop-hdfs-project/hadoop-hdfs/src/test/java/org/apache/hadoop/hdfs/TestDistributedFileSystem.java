@@ -22,6 +22,7 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -1283,6 +1284,101 @@ public void testListFiles() throws IOException {
     }
   }
 
+  @Test(timeout=60000)
+  public void testListingPrefetch() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 3);
+    conf.setInt(
+        HdfsClientConfigKeys.DFS_CLIENT_LISTING_PREFETCH_THREADS_KEY, 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      assertNotNull(fs.getClient().getListingPrefetchThreadPool());
+      final Path dir = new Path("/prefetch");
+      final int numFiles = 10;
+      for (int i = 0; i < numFiles; i++) {
+        DFSTestUtil.createFile(fs, new Path(dir, "file" + i), 1, (short) 1,
+            0L);
+      }
+
+      RemoteIterator<FileStatus> statuses = fs.listStatusIterator(dir);
+      for (int i = 0; i < numFiles; i++) {
+        assertEquals("file" + i, statuses.next().getPath().getName());
+      }
+      assertFalse(statuses.hasNext());
+
+      RemoteIterator<LocatedFileStatus> located = fs.listFiles(dir, false);
+      for (int i = 0; i < numFiles; i++) {
+        LocatedFileStatus status = located.next();
+        assertEquals("file" + i, status.getPath().getName());
+        assertEquals(1, status.getBlockLocations().length);
+      }
+      assertFalse(located.hasNext());
+
+      // errors of a prefetched batch are thrown when it is consumed
+      statuses = fs.listStatusIterator(dir);
+      statuses.next();
+      fs.delete(dir, true);
+      try {
+        while (statuses.hasNext()) {
+          statuses.next();
+        }
+        fail("Listing a deleted directory should fail");
+      } catch (FileNotFoundException e) {
+        // expected
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testGetFileStatuses() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    // more paths than the listing limit take several RPCs
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 3);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final Path dir = new Path("/batched");
+      final int numFiles = 7;
+      final Path[] paths = new Path[numFiles + 2];
+      for (int i = 0; i < numFiles; i++) {
+        paths[i] = new Path(dir, "file" + i);
+        DFSTestUtil.createFile(fs, paths[i], 1, (short) 1, 0L);
+      }
+      paths[numFiles] = dir;
+      paths[numFiles + 1] = new Path(dir, "missing");
+
+      FileStatus[] statuses = fs.getFileStatuses(paths, false);
+      assertEquals(paths.length, statuses.length);
+      for (int i = 0; i < numFiles; i++) {
+        assertEquals(fs.getFileStatus(paths[i]), statuses[i]);
+        assertFalse(statuses[i] instanceof LocatedFileStatus);
+      }
+      assertTrue(statuses[numFiles].isDirectory());
+      assertNull(statuses[numFiles + 1]);
+
+      statuses = fs.getFileStatuses(paths, true);
+      for (int i = 0; i < numFiles; i++) {
+        assertEquals(fs.makeQualified(paths[i]), statuses[i].getPath());
+        assertEquals(1, ((LocatedFileStatus) statuses[i])
+            .getBlockLocations().length);
+      }
+      assertTrue(statuses[numFiles].isDirectory());
+      assertNull(statuses[numFiles + 1]);
+
+      // relative paths are resolved against the working directory
+      fs.setWorkingDirectory(dir);
+      statuses = fs.getFileStatuses(new Path[] {new Path("file0")}, false);
+      assertEquals(fs.makeQualified(paths[0]), statuses[0].getPath());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testListStatusOfSnapshotDirs() throws IOException {
     MiniDFSCluster cluster = new MiniDFSCluster.Builder(new HdfsConfiguration())
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+/**
+ * Tests the cache of block locations used by {@link DFSClient#open}.
+ */
+public class TestLocatedBlocksCache {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_SIZE = 3 * BLOCK_SIZE + 123;
+  private static final String NN_METRICS = "NameNodeActivity";
+
+  @Rule
+  public TestName name = new TestName();
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private byte[] expected;
+
+  @Before
+  public void setup() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(HdfsClientConfigKeys.LocationCache.ENABLED_KEY, true);
+    // a context of its own, so that the cache is not shared with other tests
+    conf.set(HdfsClientConfigKeys.DFS_CLIENT_CONTEXT,
+        "TestLocatedBlocksCache-" + name.getMethodName());
+    conf.setInt(HdfsClientConfigKeys.Retry.WINDOW_BASE_KEY, 10);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    expected = new byte[FILE_SIZE];
+    new Random(0xBEEFL).nextBytes(expected);
+  }
+
+  @After
+  public void shutdown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private static long getBlockLocationsCalls() {
+    return getLongCounter("GetBlockLocations", getMetrics(NN_METRICS));
+  }
+
+  /**
+   * Open and read a file.
+   * @return the read statistics of the stream
+   */
+  private ReadStatistics readFile(FileSystem fileSystem, Path path,
+      byte[] data) throws IOException {
+    try (HdfsDataInputStream in =
+        (HdfsDataInputStream) fileSystem.open(path)) {
+      byte[] actual = new byte[data.length];
+      in.readFully(0, actual);
+      assertArrayEquals(data, actual);
+      return in.getReadStatistics();
+    }
+  }
+
+  private void assertCacheHit(Path path, boolean hit) throws IOException {
+    ReadStatistics stats = readFile(fs, path, expected);
+    assertEquals(hit ? 1 : 0, stats.getLocationCacheHits());
+    assertEquals(hit ? 0 : 1, stats.getLocationCacheMisses());
+  }
+
+  @Test(timeout = 60000)
+  public void testOpenUsesCache() throws Exception {
+    Path path = new Path("/testOpenUsesCache");
+    DFSTestUtil.writeFile(fs, path, expected);
+
+    long calls = getBlockLocationsCalls();
+    assertCacheHit(path, false);
+    assertEquals(calls + 1, getBlockLocationsCalls());
+    for (int i = 0; i < 5; i++) {
+      assertCacheHit(path, true);
+    }
+    assertEquals(calls + 1, getBlockLocationsCalls());
+
+    LocatedBlocksCache cache =
+        fs.getClient().getClientContext().getLocatedBlocksCache();
+    assertEquals(5, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test(timeout = 60000)
+  public void testOpenWithCacheDisabled() throws Exception {
+    Path path = new Path("/testOpenWithCacheDisabled");
+    DFSTestUtil.writeFile(fs, path, expected);
+
+    Configuration disabled = new Configuration(conf);
+    disabled.setBoolean(HdfsClientConfigKeys.LocationCache.ENABLED_KEY,
+        false);
+    try (FileSystem other = FileSystem.newInstance(cluster.getURI(),
+        disabled)) {
+      long calls = getBlockLocationsCalls();
+      for (int i = 0; i < 3; i++) {
+        ReadStatistics stats = readFile(other, path, expected);
+        assertEquals(0, stats.getLocationCacheHits());
+        assertEquals(0, stats.getLocationCacheMisses());
+      }
+      assertEquals(calls + 3, getBlockLocationsCalls());
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testOpenFileBeingWritten() throws Exception {
+    Path path = new Path("/testOpenFileBeingWritten");
+    FSDataOutputStream out = fs.create(path);
+    try {
+      out.write(expected, 0, BLOCK_SIZE + 1);
+      out.hflush();
+      byte[] written = new byte[BLOCK_SIZE + 1];
+      System.arraycopy(expected, 0, written, 0, written.length);
+      for (int i = 0; i < 2; i++) {
+        ReadStatistics stats = readFile(fs, path, written);
+        assertEquals(0, stats.getLocationCacheHits());
+      }
+    } finally {
+      IOUtils.closeStream(out);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testInvalidateOnModification() throws Exception {
+    Path dir = new Path("/testInvalidateOnModification");
+    Path path = new Path(dir, "file");
+    DFSTestUtil.writeFile(fs, path, expected);
+    assertCacheHit(path, false);
+    assertCacheHit(path, true);
+
+    // overwrite the file with new data
+    new Random(0xCAFEL).nextBytes(expected);
+    DFSTestUtil.writeFile(fs, path, expected);
+    assertCacheHit(path, false);
+    assertCacheHit(path, true);
+
+    // append to the file
+    DFSTestUtil.appendFile(fs, path, 100);
+    try (HdfsDataInputStream in = (HdfsDataInputStream) fs.open(path)) {
+      assertEquals(0, in.getReadStatistics().getLocationCacheHits());
+      assertEquals(FILE_SIZE + 100, in.getVisibleLength());
+    }
+
+    // rename the parent of the file away and back
+    Path renamed = new Path("/renamed");
+    fs.rename(dir, renamed);
+    fs.rename(renamed, dir);
+    try (HdfsDataInputStream in = (HdfsDataInputStream) fs.open(path)) {
+      assertEquals(0, in.getReadStatistics().getLocationCacheHits());
+    }
+
+    // delete the parent of the file
+    fs.delete(dir, true);
+    try {
+      fs.open(path).close();
+      fail("Opened the deleted file " + path);
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testInvalidateOnReadError() throws Exception {
+    Path path = new Path("/testInvalidateOnReadError");
+    DFSTestUtil.writeFile(fs, path, expected);
+    assertCacheHit(path, false);
+
+    cluster.stopDataNode(0);
+    try {
+      readFile(fs, path, expected);
+      fail("Read " + path + " without a datanode");
+    } catch (IOException e) {
+      // expected
+    }
+
+    LocatedBlocksCache cache =
+        fs.getClient().getClientContext().getLocatedBlocksCache();
+    assertEquals(0, cache.size());
+  }
+
+  @Test(timeout = 60000)
+  public void testInvalidateTree() throws Exception {
+    LocatedBlocksCache cache = new LocatedBlocksCache(100, 60000);
+    LocatedBlocks blocks = new LocatedBlocks(0, false,
+        new ArrayList<LocatedBlock>(), null, true, null, null);
+    String[] paths = {"/a", "/a/b", "/a/b/c", "/a/bc", "/ab", "/x"};
+    for (String path : paths) {
+      cache.put("nn1", "user1", path, blocks);
+      cache.put("nn1", "user2", path, blocks);
+      cache.put("nn2", "user1", path, blocks);
+    }
+    assertEquals(paths.length * 2, cache.size());
+
+    cache.invalidateTree("nn1", "/a/b");
+    assertNull(cache.get("nn1", "user1", "/a/b"));
+    assertNull(cache.get("nn1", "user2", "/a/b/c"));
+    for (String path : new String[] {"/a", "/a/bc", "/ab", "/x"}) {
+      assertNotNull(cache.get("nn1", "user2", path));
+    }
+    assertNotNull(cache.get("nn2", "user1", "/a/b/c"));
+
+    cache.invalidate("nn1", "/a");
+    assertNull(cache.get("nn1", "user1", "/a"));
+    assertNotNull(cache.get("nn1", "user1", "/a/bc"));
+    cache.invalidateTree("nn2", "/");
+    assertEquals(3, cache.size());
+    assertEquals(3, cache.getNumKeys());
+  }
+
+  @Test(timeout = 60000)
+  public void testCacheIsPerUser() throws Exception {
+    Path path = new Path("/testCacheIsPerUser");
+    DFSTestUtil.writeFile(fs, path, expected);
+    assertCacheHit(path, false);
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "someuser", new String[] {"somegroup"});
+    FileSystem userFs = user.doAs(
+        (PrivilegedExceptionAction<FileSystem>) () ->
+            FileSystem.newInstance(cluster.getURI(), conf));
+    try {
+      assertEquals(1, readFile(userFs, path, expected)
+          .getLocationCacheMisses());
+      assertEquals(1, readFile(userFs, path, expected)
+          .getLocationCacheHits());
+    } finally {
+      userFs.close();
+    }
+  }
+}
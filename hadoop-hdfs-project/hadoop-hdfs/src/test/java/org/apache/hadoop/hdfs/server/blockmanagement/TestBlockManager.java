@@ -46,6 +46,7 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor.BlockTargetPair;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.hdfs.server.datanode.InternalDataNodeTestUtils;
@@ -55,6 +56,7 @@
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.hdfs.server.namenode.TestINodeFile;
 import org.apache.hadoop.hdfs.server.namenode.ha.HAContext;
@@ -726,6 +728,53 @@ public void testFavorDecomUntilHardLimit() throws Exception {
             LowRedundancyBlocks.QUEUE_LOW_REDUNDANCY).length);
   }
 
+  /**
+   * Test that targets are chosen on the reconstruction threads and that a
+   * node is not made the target of more tasks per round than the limit.
+   */
+  @Test
+  public void testParallelReconstructionWork() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.NET_TOPOLOGY_SCRIPT_FILE_NAME_KEY, "dummy");
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_WORK_THREADS_KEY, 2);
+    // blocks over the target limit are counted as not scheduled
+    NameNode.initMetrics(conf, NamenodeRole.NAMENODE);
+    bm.close();
+    bm = new BlockManager(fsn, false, conf);
+    bm.maxReplicationStreams = 1;
+    // the only possible target of both blocks is the third node
+    addNodes(rackA);
+    BlockInfo block1 = addBlockOnNodes(1, rackA.subList(0, 2));
+    BlockInfo block2 = addBlockOnNodes(2, rackA.subList(0, 2));
+
+    List<List<BlockInfo>> blocks = new ArrayList<>();
+    for (int i = 0; i < LowRedundancyBlocks.LEVEL; i++) {
+      blocks.add(new ArrayList<BlockInfo>());
+    }
+    blocks.get(LowRedundancyBlocks.QUEUE_LOW_REDUNDANCY).add(block1);
+    blocks.get(LowRedundancyBlocks.QUEUE_LOW_REDUNDANCY).add(block2);
+    assertEquals(1, bm.computeReconstructionWorkForBlocks(blocks));
+    assertEquals(1, bm.pendingReconstruction.getNumReplicas(block1)
+        + bm.pendingReconstruction.getNumReplicas(block2));
+    // the work in flight to the target counts against the limit in the
+    // following rounds too
+    assertEquals(0, bm.computeReconstructionWorkForBlocks(blocks));
+    assertEquals(1, bm.pendingReconstruction.getNumReplicas(block1)
+        + bm.pendingReconstruction.getNumReplicas(block2));
+
+    // the limit does not apply to the blocks most at risk
+    BlockInfo block3 = addBlockOnNodes(3, rackA.subList(0, 1));
+    blocks.get(LowRedundancyBlocks.QUEUE_LOW_REDUNDANCY).clear();
+    blocks.get(LowRedundancyBlocks.QUEUE_HIGHEST_PRIORITY).add(block3);
+    assertEquals(1, bm.computeReconstructionWorkForBlocks(blocks));
+    assertEquals(2, bm.pendingReconstruction.getNumReplicas(block3));
+    int tasks = 0;
+    for (DatanodeDescriptor dn : rackA) {
+      tasks += dn.getNumberOfBlocksToBeReplicated();
+    }
+    assertEquals(2, tasks);
+  }
+
   @Test
   public void testSafeModeIBR() throws Exception {
     DatanodeDescriptor node = spy(nodes.get(0));
@@ -934,6 +983,63 @@ public void testFullBR() throws Exception {
     }
   }
 
+  @Test
+  public void testFullBRWithStaleDiff() throws Exception {
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    DatanodeStorage storage = new DatanodeStorage(ds.getStorageID());
+    node.setAlive(true);
+    DatanodeRegistration nodeReg =
+        new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    List<BlockInfo> blocks = new ArrayList<>();
+    for (int id = 1; id <= 10; id++) {
+      blocks.add(addBlockToBM(id));
+    }
+    // first reports are not diffed
+    BlockListAsLongs report = generateReport(blocks);
+    assertNull(bm.diffReport(node, storage, report,
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true)));
+    bm.processReport(node, storage, report,
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true));
+    assertEquals(1, ds.getBlockReportCount());
+
+    // blk 8 and 9 are gone from the DN, blk 11 is new and blk 12 is
+    // unknown to the NN when the diff is computed
+    List<BlockInfo> reported = new ArrayList<>(blocks.subList(0, 7));
+    reported.add(blocks.get(9));
+    BlockInfo blk11 = addBlockToBM(11);
+    reported.add(blk11);
+    reported.add(new BlockInfoContiguous(new Block(12), (short) 3));
+    report = generateReport(reported);
+    BlockReportContext context =
+        new BlockReportContext(1, 0, System.nanoTime(), 0, true);
+    BlockManager.BlockReportDiff diff =
+        bm.diffReport(node, storage, report, context);
+    assertEquals(2, diff.getNumRecheck());
+    assertEquals(2, diff.getNumRemove());
+
+    // the namespace changes before the diff is applied
+    blocks.get(7).delete();
+    bm.removeBlock(blocks.get(7));
+    BlockInfo blk12 = addBlockToBM(12);
+    bm.processReport(node, storage, report, context, diff);
+
+    assertEquals(2, ds.getBlockReportCount());
+    for (BlockInfo block : reported) {
+      assertTrue(block.getBlockId() == 12 ||
+          block.findStorageInfo(ds) >= 0);
+    }
+    assertTrue(blk11.findStorageInfo(ds) >= 0);
+    assertTrue(blk12.findStorageInfo(ds) >= 0);
+    assertEquals(-1, blocks.get(8).findStorageInfo(ds));
+    assertNull(bm.getStoredBlock(blocks.get(7)));
+    // blk 12 must not be invalidated since it now belongs to a file
+    assertEquals(0, bm.getPendingDeletionBlocksCount());
+  }
+
   private BlockListAsLongs generateReport(List<BlockInfo> blocks) {
     BlockListAsLongs.Builder builder = BlockListAsLongs.builder();
     for (BlockInfo block : blocks) {
@@ -184,6 +184,37 @@ public void testPendingReconstruction() {
  * blockinfo from the blocksmap by placing a larger genstamp into
  * the blocksmap.
  */
+  @Test
+  public void testNumPendingByTarget() {
+    PendingReconstructionBlocks pendingReconstructions =
+        new PendingReconstructionBlocks(TIMEOUT * 1000);
+    DatanodeDescriptor[] targets = DatanodeStorageInfo.toDatanodeDescriptors(
+        DFSTestUtil.createDatanodeStorageInfos(3));
+    BlockInfo blk0 = genBlockInfo(0, 0, 0);
+    BlockInfo blk1 = genBlockInfo(1, 1, 0);
+    pendingReconstructions.increment(blk0, targets[0], targets[1]);
+    pendingReconstructions.increment(blk1, targets[0]);
+    // a target already pending for the block is counted once
+    pendingReconstructions.increment(blk1, targets[0], targets[2]);
+    assertEquals(2, pendingReconstructions.getNumPendingByTarget(targets[0]));
+    assertEquals(1, pendingReconstructions.getNumPendingByTarget(targets[1]));
+    assertEquals(1, pendingReconstructions.getNumPendingByTarget(targets[2]));
+
+    pendingReconstructions.decrement(blk0, targets[0]);
+    // the target has no reconstruction of the block to finish
+    pendingReconstructions.decrement(blk0, targets[2]);
+    assertEquals(1, pendingReconstructions.getNumPendingByTarget(targets[0]));
+    assertEquals(1, pendingReconstructions.getNumPendingByTarget(targets[2]));
+
+    pendingReconstructions.remove(blk1);
+    assertEquals(0, pendingReconstructions.getNumPendingByTarget(targets[0]));
+    assertEquals(1, pendingReconstructions.getNumPendingByTarget(targets[1]));
+    assertEquals(0, pendingReconstructions.getNumPendingByTarget(targets[2]));
+
+    pendingReconstructions.clear();
+    assertEquals(0, pendingReconstructions.getNumPendingByTarget(targets[1]));
+  }
+
   @Test
   public void testProcessPendingReconstructions() throws Exception {
     final Configuration conf = new HdfsConfiguration();
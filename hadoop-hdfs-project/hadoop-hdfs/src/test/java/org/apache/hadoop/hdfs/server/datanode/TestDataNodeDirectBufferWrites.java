@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.apache.hadoop.util.DataChecksum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+/**
+ * Tests the writes of blocks which the DataNodes receive into direct
+ * buffers.
+ */
+public class TestDataNodeDirectBufferWrites {
+  private static final int BLOCK_SIZE = 256 * 1024;
+  private static final short REPLICATION = 3;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private LogCapturer logs;
+  private final Random random = new Random(0xFEEDL);
+
+  @Before
+  public void setup() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WRITE_DIRECT_BUFFERS_KEY,
+        true);
+    GenericTestUtils.setLogLevel(BlockReceiver.LOG, Level.DEBUG);
+    logs = LogCapturer.captureLogs(BlockReceiver.LOG);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void shutdown() {
+    if (logs != null) {
+      logs.stopCapturing();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private byte[] randomBytes(int len) {
+    byte[] data = new byte[len];
+    random.nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Check the data and the checksums of every replica of every block of a
+   * file against the expected content of the file.
+   */
+  private void verifyReplicas(Path path, byte[] expected) throws Exception {
+    assertArrayEquals(expected, DFSTestUtil.readFileAsBytes(fs, path));
+    for (LocatedBlock lb : fs.getClient().getLocatedBlocks(
+        path.toUri().getPath(), 0, Long.MAX_VALUE).getLocatedBlocks()) {
+      int start = (int) lb.getStartOffset();
+      byte[] blockData = Arrays.copyOfRange(expected, start,
+          start + (int) lb.getBlockSize());
+      for (int dn = 0; dn < REPLICATION; dn++) {
+        File blockFile = cluster.getBlockFile(dn, lb.getBlock());
+        assertNotNull("no replica of " + lb.getBlock() + " on " + dn,
+            blockFile);
+        assertArrayEquals("data of " + blockFile, blockData,
+            Files.readAllBytes(blockFile.toPath()));
+        File metaFile = cluster.getBlockMetadataFile(dn, lb.getBlock());
+        try (DataInputStream metaIn = new DataInputStream(
+            new FileInputStream(metaFile))) {
+          DataChecksum checksum =
+              BlockMetadataHeader.readDataChecksum(metaIn, metaFile);
+          byte[] sums = new byte[checksum.getChecksumSize(blockData.length)];
+          metaIn.readFully(sums);
+          assertEquals("checksums of " + metaFile, -1, metaIn.read());
+          checksum.verifyChunkedSums(ByteBuffer.wrap(blockData),
+              ByteBuffer.wrap(sums), metaFile.getPath(), 0);
+        }
+      }
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testPipelineWrite() throws Exception {
+    int[] sizes = {0, 1, 511, 513, BLOCK_SIZE, 2 * BLOCK_SIZE + 12345};
+    for (int size : sizes) {
+      Path path = new Path("/testPipelineWrite" + size);
+      byte[] data = randomBytes(size);
+      DFSTestUtil.writeFile(fs, path, data);
+      verifyReplicas(path, data);
+    }
+    assertTrue(logs.getOutput().contains("into direct buffers"));
+  }
+
+  @Test(timeout = 120000)
+  public void testHflushAndAppend() throws Exception {
+    Path path = new Path("/testHflushAndAppend");
+    byte[] data = randomBytes(BLOCK_SIZE + 3000);
+    // write partial chunks, so that the checksum of the last chunk on disk
+    // has to be recalculated for the following packets
+    int[] ends = {100, 700, 1500, BLOCK_SIZE - 10, BLOCK_SIZE + 1000};
+    try (FSDataOutputStream out = fs.create(path, REPLICATION)) {
+      int written = 0;
+      for (int end : ends) {
+        out.write(data, written, end - written);
+        out.hflush();
+        written = end;
+      }
+    }
+    byte[] expected = Arrays.copyOf(data, ends[ends.length - 1]);
+    verifyReplicas(path, expected);
+
+    try (FSDataOutputStream out = fs.append(path)) {
+      out.write(data, expected.length, 77);
+      out.hflush();
+      out.write(data, expected.length + 77, data.length - expected.length - 77);
+    }
+    verifyReplicas(path, data);
+    assertTrue(logs.getOutput().contains("into direct buffers"));
+  }
+}
@@ -427,6 +427,56 @@ public void testDeleteBlockOnTransientStorage() throws Exception {
     }
   }
 
+  @Test (timeout=300000)
+  public void testShardedScan() throws Exception {
+    Configuration conf = new Configuration(CONF);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_SHARDS_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      client = cluster.getFileSystem().getClient();
+      scanner = new DirectoryScanner(cluster.getDataNodes().get(0), fds,
+          conf);
+      scanner.setRetainDiffs(true);
+
+      // The first blocks share the leaf directory of the first shard
+      createFile(GenericTestUtils.getMethodName(), BLOCK_LENGTH * 100, false);
+      scan(100, 0, 0, 0, 0, 0);
+      scan(0, 0, 0, 0, 0, 0);
+
+      // A missing metafile is found by the scan of its shard
+      long blockId = deleteMetaFile();
+      scan(100, 1, 1, 0, 0, 1);
+      verifyGenStamp(blockId, HdfsConstants.GRANDFATHER_GENERATION_STAMP);
+      scan(0, 0, 0, 0, 0, 0);
+      scan(100, 0, 0, 0, 0, 0);
+
+      // A block file of the second shard is not seen by the first one
+      blockId = 1 << 8;
+      assertNull(FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId));
+      try (FsDatasetSpi.FsVolumeReferences volumes =
+          fds.getFsVolumeReferences()) {
+        File finalizedDir = ((FsVolumeImpl) volumes.get(0))
+            .getFinalizedDir(bpid);
+        assertTrue(new File(finalizedDir, getBlockFile(blockId))
+            .createNewFile());
+      }
+      scan(1, 1, 1, 0, 1, 0);
+      verifyAddition(blockId, HdfsConstants.GRANDFATHER_GENERATION_STAMP, 0);
+      scan(100, 0, 0, 0, 0, 0);
+      scan(1, 0, 0, 0, 0, 0);
+    } finally {
+      if (scanner != null) {
+        scanner.shutdown();
+        scanner = null;
+      }
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
   @Test (timeout=600000)
   public void testDirectoryScanner() throws Exception {
     // Run the test with and without parallel scanning
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+/**
+ * Tests the detection of sequential streams by {@link ReadPattern}.
+ */
+public class TestReadPattern {
+  private static final long MAX_WINDOW = 4 * 1024 * 1024;
+
+  @Test
+  public void testSequentialWindowGrows() {
+    ReadPattern pattern = new ReadPattern(MAX_WINDOW);
+    pattern.onRead(1, 0, 64 * 1024, false);
+    assertFalse(pattern.isSequential());
+    assertEquals(0, pattern.getReadaheadLength());
+
+    long end = 64 * 1024;
+    for (long window = ReadPattern.INITIAL_WINDOW; window <= MAX_WINDOW;
+        window *= 2) {
+      // consecutive reads overlapping the previous one by a header
+      pattern.onRead(1, end - 512, end + 64 * 1024, false);
+      end += 64 * 1024;
+      assertTrue(pattern.isSequential());
+      assertEquals(window, pattern.getReadaheadLength());
+    }
+    pattern.onRead(1, end, end + 4096, false);
+    assertTrue(pattern.isSequential());
+    assertEquals(MAX_WINDOW, pattern.getReadaheadLength());
+  }
+
+  @Test
+  public void testRandomReadsResetStream() {
+    ReadPattern pattern = new ReadPattern(MAX_WINDOW);
+    pattern.onRead(1, 0, 4096, false);
+    pattern.onRead(1, 4096, 8192, false);
+    pattern.setReadaheadEnd(4096 + ReadPattern.INITIAL_WINDOW);
+    assertEquals(8192, pattern.getRunLength());
+
+    // a jump back and a read of another block both break the stream
+    pattern.onRead(1, 0, 4096, false);
+    assertFalse(pattern.isSequential());
+    assertEquals(0, pattern.getReadaheadLength());
+    assertEquals(0, pattern.getReadaheadEnd());
+    assertEquals(4096, pattern.getRunLength());
+    pattern.onRead(2, 4096, 8192, false);
+    assertFalse(pattern.isSequential());
+
+    // long reads are sequential on their own
+    pattern.onRead(3, 0, 1024 * 1024, true);
+    assertTrue(pattern.isSequential());
+    assertEquals(MAX_WINDOW, pattern.getReadaheadLength());
+  }
+
+  @Test(timeout = 60000)
+  public void testReadPatternMetrics() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_READAHEAD_ADAPTIVE_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 1024 * 1024, (short) 1, 0);
+      DataNode dn = cluster.getDataNodes().get(0);
+
+      byte[] buf = new byte[16 * 1024];
+      try (FSDataInputStream in = fs.open(file)) {
+        for (int i = 0; i < 8; i++) {
+          in.readFully(i * buf.length, buf);
+        }
+      }
+      MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+      assertEquals(1, getLongCounter("RandomReads", rb));
+      assertEquals(7, getLongCounter("SequentialReads", rb));
+
+      try (FSDataInputStream in = fs.open(file)) {
+        in.readFully(512 * 1024, buf);
+        in.readFully(128 * 1024, buf);
+      }
+      rb = getMetrics(dn.getMetrics().name());
+      assertEquals(3, getLongCounter("RandomReads", rb));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Measures the throughput of replica lookups contending with replica
+ * changes, as the BlockSenders of concurrent reads contend with the writes
+ * of a DataNode, once with an exclusive dataset lock and once with the
+ * shared read lock of {@link FsDatasetImpl}.
+ *
+ * Usage: ReplicaMapBenchmark [numReaders [numWriters [numReplicas
+ *     [durationMs]]]]
+ */
+public class ReplicaMapBenchmark {
+  private static final String BPID = "BP-BENCHMARK";
+
+  static final class Result {
+    boolean shared;
+    long reads;
+    long writes;
+    long elapsedMs;
+
+    @Override
+    public String toString() {
+      return String.format("%s lock: %d lookups/s, %d changes/s",
+          shared ? "read/write" : "exclusive",
+          reads * 1000 / Math.max(elapsedMs, 1),
+          writes * 1000 / Math.max(elapsedMs, 1));
+    }
+  }
+
+  static Result run(int numReaders, int numWriters, int numReplicas,
+      long durationMs, boolean shared) throws InterruptedException {
+    final AutoCloseableLock readLock;
+    final AutoCloseableLock writeLock;
+    if (shared) {
+      final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+      readLock = new AutoCloseableLock(lock.readLock());
+      writeLock = new AutoCloseableLock(lock.writeLock());
+    } else {
+      readLock = new AutoCloseableLock(new ReentrantLock(true));
+      writeLock = readLock;
+    }
+    final ReplicaMap map = new ReplicaMap(readLock, writeLock);
+    for (int i = 0; i < numReplicas; i++) {
+      map.add(BPID, new FinalizedReplica(new Block(i, 0, 1), null, null));
+    }
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong reads = new AtomicLong();
+    final AtomicLong writes = new AtomicLong();
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numReaders; i++) {
+      final Random random = new Random(i);
+      threads.add(new Thread(() -> {
+        long n = 0;
+        while (running.get()) {
+          // the dataset lock is held around the lookup, like in BlockSender
+          try (AutoCloseableLock l = readLock.acquire()) {
+            map.get(BPID, random.nextInt(numReplicas));
+          }
+          n++;
+        }
+        reads.addAndGet(n);
+      }));
+    }
+    for (int i = 0; i < numWriters; i++) {
+      final long firstId = numReplicas + i * (long) Integer.MAX_VALUE;
+      threads.add(new Thread(() -> {
+        long n = 0;
+        long id = firstId;
+        while (running.get()) {
+          try (AutoCloseableLock l = writeLock.acquire()) {
+            map.add(BPID, new FinalizedReplica(new Block(id, 0, 1), null,
+                null));
+            map.remove(BPID, id - 100);
+          }
+          id++;
+          n++;
+        }
+        writes.addAndGet(n);
+      }));
+    }
+
+    final long start = Time.monotonicNow();
+    for (Thread t : threads) {
+      t.start();
+    }
+    Thread.sleep(durationMs);
+    running.set(false);
+    for (Thread t : threads) {
+      t.join();
+    }
+    final Result result = new Result();
+    result.shared = shared;
+    result.elapsedMs = Time.monotonicNow() - start;
+    result.reads = reads.get();
+    result.writes = writes.get();
+    return result;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    final int numReaders = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    final int numWriters = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    final int numReplicas = args.length > 2 ?
+        Integer.parseInt(args[2]) : 1_000_000;
+    final long durationMs = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+    System.out.println(run(numReaders, numWriters, numReplicas, durationMs,
+        false));
+    System.out.println(run(numReaders, numWriters, numReplicas, durationMs,
+        true));
+  }
+}
@@ -53,6 +53,7 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.LocalReplica;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaHandler;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry;
@@ -72,12 +73,15 @@
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.HashSet;
@@ -951,4 +955,75 @@ public void testBlockReadOpWhileMovingBlock() throws IOException {
     }
   }
 
-}
\ No newline at end of file
+  @Test(timeout = 60000)
+  public void testRestartWithPeriodicReplicaCache() throws Exception {
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_CACHE_SAVE_INTERVAL_MS_KEY, 500);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1)
+        .storagesPerDatanode(1)
+        .build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      Path fileA = new Path("/a");
+      Path fileB = new Path("/b");
+      DFSTestUtil.createFile(fs, fileA, 100, (short) 1, 0);
+      ExtendedBlock blockA = DFSTestUtil.getFirstBlock(fs, fileA);
+
+      // Wait for a cache holding only the replica of a.
+      FsDatasetImpl dataset =
+          (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+      final File cacheFile;
+      try (FsVolumeReferences volumes = dataset.getFsVolumeReferences()) {
+        cacheFile = new File(((FsVolumeImpl) volumes.get(0))
+            .getBlockPoolSlice(bpid).getDirectory(), "current/replicas");
+      }
+      cacheFile.delete();
+      GenericTestUtils.waitFor(cacheFile::exists, 100, 10000);
+      File savedCache = new File(cacheFile.getParentFile(), "replicas.saved");
+      Files.copy(cacheFile.toPath(), savedCache.toPath());
+
+      // Change the replicas after the cache was saved.
+      final File blockFileA = ((LocalReplica) dataset.getReplicaInfo(blockA))
+          .getBlockFile();
+      DFSTestUtil.createFile(fs, fileB, 100, (short) 1, 0);
+      ExtendedBlock blockB = DFSTestUtil.getFirstBlock(fs, fileB);
+      fs.delete(fileA, false);
+      GenericTestUtils.waitFor(() -> !blockFileA.exists(), 100, 10000);
+
+      // Restart from the stale cache, as after a crash.
+      MiniDFSCluster.DataNodeProperties dnProps = cluster.stopDataNode(0);
+      Files.move(savedCache.toPath(), cacheFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+      cluster.restartDataNode(dnProps, true);
+      cluster.waitActive();
+
+      dataset = (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+      try (FsVolumeReferences volumes = dataset.getFsVolumeReferences()) {
+        BlockPoolSlice bp =
+            ((FsVolumeImpl) volumes.get(0)).getBlockPoolSlice(bpid);
+        bp.waitForReplicaCacheValidation();
+        assertTrue(bp.isReplicaCacheValidated());
+      }
+      assertNull(dataset.getStoredBlock(bpid, blockA.getBlockId()));
+      assertEquals(blockB.getGenerationStamp(),
+          dataset.getStoredBlock(bpid, blockB.getBlockId())
+              .getGenerationStamp());
+      assertEquals(100, DFSTestUtil.readFile(fs, fileB).length());
+
+      // A validated replica map is saved as trusted on shutdown.
+      cluster.stopDataNode(0);
+      try (DataInputStream in =
+               new DataInputStream(new FileInputStream(cacheFile))) {
+        in.readInt();
+        in.readInt();
+        assertTrue(in.readBoolean());
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -17,10 +17,19 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.apache.hadoop.util.AutoCloseableLock;
@@ -108,4 +117,33 @@ public void testRemove() {
     map.add(bpid, new FinalizedReplica(block, null, null));
     assertNotNull(map.remove(bpid, block.getBlockId()));
   }
+
+  @Test(timeout = 60000)
+  public void testSharedLookups() throws Exception {
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    final ReplicaMap shared = new ReplicaMap(
+        new AutoCloseableLock(lock.readLock()),
+        new AutoCloseableLock(lock.writeLock()));
+    shared.add(bpid, new FinalizedReplica(block, null, null));
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      try (AutoCloseableLock l = shared.getReadLock().acquire()) {
+        // another reader is not blocked by the holder of the read lock
+        assertNotNull(executor.submit(() -> shared.get(bpid, block))
+            .get(10, TimeUnit.SECONDS));
+        // but a change waits for the read lock to be released
+        final Future<?> add = executor.submit(() -> shared.add(bpid,
+            new FinalizedReplica(new Block(1), null, null)));
+        try {
+          add.get(100, TimeUnit.MILLISECONDS);
+          fail("Changed the map while the read lock was held");
+        } catch (TimeoutException expected) { }
+        assertFalse(add.isDone());
+      }
+      assertEquals(2, executor.submit(() -> shared.size(bpid)).get()
+          .intValue());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Random;
+
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Estimates the heap saved by the {@link NameDictionary} for a namespace of
+ * job output directories, each with part-NNNNN files, a _SUCCESS marker and
+ * a share of files with unique names.
+ *
+ * Usage: NameDictionaryBenchmark [numInodes [filesPerDir [uniqueRatio]]]
+ */
+public class NameDictionaryBenchmark {
+
+  /**
+   * Approximate heap size of a dictionary entry: the name object and the
+   * node and table slot of the ConcurrentHashMap.
+   */
+  static final long ENTRY_BYTES = 24 + 32 + 8;
+  /** Approximate heap size of a candidate, in the LinkedHashMap. */
+  static final long CANDIDATE_BYTES = 24 + 40 + 8;
+
+  static final class Result {
+    long numInodes;
+    long bytesWithout;
+    long bytesWith;
+    long dictionarySize;
+    long candidateBytes;
+    long elapsedMs;
+
+    /** @return the bytes saved, not counting the bounded candidates. */
+    long getSavedBytes() {
+      return bytesWithout - bytesWith;
+    }
+
+    @Override
+    public String toString() {
+      final double scale = 100_000_000.0 / numInodes;
+      return String.format("inodes: %d, name arrays: %d bytes, with the"
+          + " dictionary: %d bytes (%d names) plus at most %d bytes of"
+          + " candidates, saved per 100M inodes: %.1f MB, time: %d ms",
+          numInodes, bytesWithout, bytesWith, dictionarySize,
+          candidateBytes,
+          (getSavedBytes() * scale - candidateBytes) / (1 << 20), elapsedMs);
+    }
+  }
+
+  static Result run(long numInodes, int filesPerDir, double uniqueRatio) {
+    final NameDictionary dictionary = new NameDictionary(
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT,
+        DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_DEFAULT);
+    final Random random = new Random(0);
+    final Result result = new Result();
+    final long start = Time.monotonicNow();
+    long dir = 0;
+    while (result.numInodes < numInodes) {
+      add(dictionary, "job_" + dir++, result);
+      for (int i = 0; i < filesPerDir && result.numInodes < numInodes; i++) {
+        final String name;
+        if (i == filesPerDir - 1) {
+          name = "_SUCCESS";
+        } else if (random.nextDouble() < uniqueRatio) {
+          name = "file-" + Long.toHexString(random.nextLong());
+        } else {
+          name = String.format("part-%05d", i);
+        }
+        add(dictionary, name, result);
+      }
+    }
+    result.elapsedMs = Time.monotonicNow() - start;
+    result.dictionarySize = dictionary.size();
+    result.bytesWith += result.dictionarySize * ENTRY_BYTES;
+    result.candidateBytes =
+        DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_CANDIDATES_DEFAULT
+        * CANDIDATE_BYTES;
+    return result;
+  }
+
+  private static void add(NameDictionary dictionary, String name,
+      Result result) {
+    // every INode gets its own array, as when decoded from an RPC or image
+    final byte[] bytes = DFSUtil.string2Bytes(name);
+    final long size = NameDictionary.arrayBytes(bytes.length);
+    result.numInodes++;
+    result.bytesWithout += size;
+    if (dictionary.intern(bytes) == bytes) {
+      result.bytesWith += size;
+    }
+  }
+
+  public static void main(String[] args) {
+    final long numInodes = args.length > 0 ?
+        Long.parseLong(args[0]) : 10_000_000L;
+    final int filesPerDir = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final double uniqueRatio = args.length > 2 ?
+        Double.parseDouble(args[2]) : 0.2;
+    System.out.println(run(numInodes, filesPerDir, uniqueRatio));
+  }
+}
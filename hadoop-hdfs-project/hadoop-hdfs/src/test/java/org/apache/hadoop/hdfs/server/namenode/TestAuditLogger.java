@@ -55,6 +55,7 @@
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_ENABLED_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.HADOOP_CALLER_CONTEXT_MAX_SIZE_KEY;
@@ -69,6 +70,8 @@
 import static org.apache.hadoop.fs.permission.FsAction.READ_EXECUTE;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.NNTOP_ENABLED_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -124,6 +127,91 @@ public void testAuditLogger() throws IOException {
     }
   }
 
+  /**
+   * Tests that AsyncAuditLogger hands events to its sinks and the top users
+   * counter off the handler threads.
+   */
+  @Test
+  public void testAsyncAuditLogger() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        AsyncAuditLogger.class.getName());
+    conf.set(DFS_NAMENODE_AUDIT_LOG_ASYNC_SINKS_KEY,
+        DummyAuditLogger.class.getName());
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_SHARDS_KEY, 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    AsyncAuditLogger asyncLogger;
+    try {
+      cluster.waitClusterUp();
+      List<AuditLogger> auditLoggers =
+          cluster.getNameNode().getNamesystem().getAuditLoggers();
+      assertEquals(1, auditLoggers.size());
+      asyncLogger = (AsyncAuditLogger) auditLoggers.get(0);
+      assertTrue(asyncLogger.getSinks().get(0) instanceof DummyAuditLogger);
+      assertTrue(asyncLogger.getSinks().get(1) instanceof TopAuditLogger);
+      DummyAuditLogger.resetLogCount();
+
+      FileSystem fs = cluster.getFileSystem();
+      long time = System.currentTimeMillis();
+      for (int i = 0; i < 10; i++) {
+        fs.setTimes(new Path("/"), time, time);
+      }
+      assertEquals(0,
+          cluster.getNamesystem().getNumDroppedAuditEvents());
+    } finally {
+      // closing the namesystem drains the buffers
+      cluster.shutdown();
+    }
+    // events of the cluster start up may be delivered after the reset
+    assertTrue(DummyAuditLogger.logCount >= 10);
+    assertEquals("setTimes", DummyAuditLogger.getLastCommand());
+    assertEquals(0, asyncLogger.getNumDropped());
+  }
+
+  @Test
+  public void testAsyncAuditLoggerRing() {
+    AsyncAuditLogger.Ring<Integer> ring = new AsyncAuditLogger.Ring<>(4);
+    assertTrue(ring.isEmpty());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(ring.offer(i));
+    }
+    // a full ring rejects events instead of blocking
+    assertFalse(ring.offer(4));
+    assertEquals(Integer.valueOf(0), ring.poll());
+    assertTrue(ring.offer(4));
+    for (int i = 1; i <= 4; i++) {
+      assertEquals(Integer.valueOf(i), ring.poll());
+    }
+    assertNull(ring.poll());
+    assertTrue(ring.isEmpty());
+  }
+
+  /**
+   * Tests that the consumer of an empty ring blocks until an event is
+   * offered or the ring is closed.
+   */
+  @Test(timeout = 60000)
+  public void testAsyncAuditLoggerRingWakeUp() throws Exception {
+    final AsyncAuditLogger.Ring<Integer> ring = new AsyncAuditLogger.Ring<>(4);
+    final AtomicInteger polled = new AtomicInteger(-1);
+    Thread consumer = new Thread(() -> {
+      Integer e;
+      while ((e = ring.poll()) == null) {
+        ring.awaitNotEmpty();
+      }
+      polled.set(e);
+      ring.awaitNotEmpty();
+    });
+    consumer.start();
+    // the consumer parks on the empty ring instead of polling it
+    GenericTestUtils.waitFor(
+        () -> consumer.getState() == Thread.State.WAITING, 10, 10000);
+    assertTrue(ring.offer(7));
+    GenericTestUtils.waitFor(() -> polled.get() == 7, 10, 10000);
+    ring.close();
+    consumer.join();
+  }
+
   /**
    * Tests that TopAuditLogger can be disabled
    */
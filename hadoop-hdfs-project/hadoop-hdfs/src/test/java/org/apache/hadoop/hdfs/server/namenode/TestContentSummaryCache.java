@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.PrivilegedExceptionAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.Test;
+
+/**
+ * Tests the caching of directory content summaries.
+ */
+public class TestContentSummaryCache {
+
+  @Test
+  public void testStaleness() {
+    FakeTimer timer = new FakeTimer();
+    ContentSummaryCache cache = new ContentSummaryCache(1000, 2, timer);
+    INodeDirectory dir = new INodeDirectory(1001, null,
+        PermissionStatus.createImmutable("user", "group",
+            FsPermission.getDefault()), 0L);
+    ContentSummary cs = new ContentSummary.Builder().length(1).build();
+    cache.put(dir, Snapshot.CURRENT_STATE_ID, null, cs);
+    assertSame(cs, cache.get(dir, Snapshot.CURRENT_STATE_ID, null));
+    assertNull(cache.get(dir, 1, null));
+
+    timer.advance(999);
+    assertSame(cs, cache.get(dir, Snapshot.CURRENT_STATE_ID, null));
+    timer.advance(1);
+    assertNull(cache.get(dir, Snapshot.CURRENT_STATE_ID, null));
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    // the least recently used entry is evicted
+    for (int snapshotId = 0; snapshotId < 3; snapshotId++) {
+      cache.put(dir, snapshotId, null, cs);
+    }
+    assertEquals(2, cache.size());
+    assertNull(cache.get(dir, 0, null));
+  }
+
+  @Test(timeout = 120000)
+  public void testCachedContentSummary() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_STALENESS_KEY,
+        3600 * 1000L);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem fs = cluster.getFileSystem();
+      final Path dir = new Path("/dir");
+      DFSTestUtil.createFile(fs, new Path(dir, "f1"), 1024, (short) 1, 0L);
+      fs.setPermission(dir, new FsPermission((short) 0777));
+      ContentSummaryCache cache = cluster.getNamesystem().getFSDirectory()
+          .getContentSummaryCache();
+
+      assertEquals(1, fs.getContentSummary(dir).getFileCount());
+      DFSTestUtil.createFile(fs, new Path(dir, "f2"), 1024, (short) 1, 0L);
+      // served from the cache until the entry becomes stale
+      assertEquals(1, fs.getContentSummary(dir).getFileCount());
+      assertEquals(1, cache.getHits());
+      // files are not cached
+      assertEquals(1, fs.getContentSummary(new Path(dir, "f2"))
+          .getFileCount());
+      assertEquals(1, cache.getHits());
+
+      // other users do not see results computed with other permissions
+      UserGroupInformation user = UserGroupInformation.createUserForTesting(
+          "user", new String[] {"group"});
+      long count = user.doAs(new PrivilegedExceptionAction<Long>() {
+        @Override
+        public Long run() throws Exception {
+          FileSystem userFs = FileSystem.get(conf);
+          return userFs.getContentSummary(dir).getFileCount();
+        }
+      });
+      assertEquals(2, count);
+      assertEquals(1, cache.getHits());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -19,6 +19,7 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
@@ -34,8 +35,11 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -57,6 +61,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader.EditLogValidation;
+import org.apache.hadoop.hdfs.server.namenode.FileJournalManager.EditLogFile;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.erasurecode.ECSchema;
@@ -799,4 +804,71 @@ public void testErasureCodingPolicyOperations() throws IOException {
       }
     }
   }
+
+  @Test
+  public void testPipelinedLoading() throws IOException {
+    Configuration conf = getConf();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(NUM_DATA_NODES).enableManagedDfsDirsRedundancy(false)
+        .build();
+    StorageDirectory sd;
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 50; i++) {
+        fs.mkdirs(new Path("/pipelined/dir" + i));
+      }
+      sd = cluster.getNamesystem().getFSImage().getStorage()
+          .dirIterator(NameNodeDirType.EDITS).next();
+    } finally {
+      cluster.shutdown();
+    }
+    EditLogFile editLog = FSImageTestUtil.findLatestEditsLog(sd);
+    File editFile = editLog.getFile();
+
+    // the prefetched ops must not be reused instances and must stop at the
+    // requested number of ops, not counting the ops skipped by the loader
+    // as older than the expected starting txid. The prefetchers share the
+    // thread of the executor.
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    for (int skipped : new int[] {0, 5}) {
+      EditLogFileInputStream in = new EditLogFileInputStream(editFile);
+      FSEditLogLoader.OpPrefetcher prefetcher =
+          new FSEditLogLoader.OpPrefetcher(in, 2, 10,
+              editLog.getFirstTxId() + skipped, executor);
+      try {
+        List<FSEditLogOp> ops = new ArrayList<FSEditLogOp>();
+        FSEditLogOp op;
+        while ((op = prefetcher.readOp()) != null) {
+          ops.add(op);
+        }
+        assertEquals(10 + skipped, ops.size());
+        for (int i = 1; i < ops.size(); i++) {
+          assertEquals(ops.get(i - 1).getTransactionId() + 1,
+              ops.get(i).getTransactionId());
+        }
+        assertNull(prefetcher.readOp());
+      } finally {
+        prefetcher.close();
+        in.close();
+      }
+    }
+    executor.shutdownNow();
+
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_PIPELINED_LOADING_KEY,
+        true);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_PIPELINED_LOADING_QUEUE_SIZE_KEY, 4);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
+        .enableManagedDfsDirsRedundancy(false).format(false).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 50; i++) {
+        assertTrue(fs.exists(new Path("/pipelined/dir" + i)));
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
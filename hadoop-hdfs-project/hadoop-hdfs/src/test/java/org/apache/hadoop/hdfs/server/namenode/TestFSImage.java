@@ -22,6 +22,7 @@
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -32,7 +33,10 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.apache.hadoop.hdfs.StripedFileTestUtil;
 import org.apache.hadoop.hdfs.protocol.AddErasureCodingPolicyResponse;
@@ -51,6 +55,7 @@
 import org.apache.hadoop.util.NativeCodeLoader;
 import org.junit.Assert;
 
+import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.conf.Configuration;
@@ -70,7 +75,10 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.PBImageXmlWriter;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
@@ -111,6 +119,200 @@ public void testNativeCompression() throws IOException {
     setCompressCodec(conf, "org.apache.hadoop.io.compress.Lz4Codec");
   }
 
+  private static void setParallelImageConf(Configuration conf) {
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 0);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_SECTION_INODES_KEY, 2);
+  }
+
+  @Test(timeout = 120000)
+  public void testParallelSaveAndLoad() throws IOException {
+    Configuration conf = new Configuration();
+    setParallelImageConf(conf);
+    testPersistHelper(conf);
+  }
+
+  @Test(timeout = 120000)
+  public void testParallelSaveAndLoadWithCompression() throws IOException {
+    Configuration conf = new Configuration();
+    setParallelImageConf(conf);
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    setCompressCodec(conf, "org.apache.hadoop.io.compress.DefaultCodec");
+    setCompressCodec(conf, "org.apache.hadoop.io.compress.GzipCodec");
+  }
+
+  private static int countSections(File image, SectionName name)
+      throws IOException {
+    try (RandomAccessFile raFile = new RandomAccessFile(image, "r")) {
+      FileSummary summary = FSImageUtil.loadSummary(raFile);
+      int count = 0;
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        if (name.toString().equals(s.getName())) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Test that an image with sub-sections, including references from
+   * snapshots, loads both in parallel and serially, and that images of
+   * small namespaces are saved without sub-sections.
+   */
+  @Test(timeout = 120000)
+  public void testParallelImageSubSections() throws Exception {
+    Configuration conf = new Configuration();
+    setParallelImageConf(conf);
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final Path root = new Path("/parallel");
+      for (int i = 0; i < 10; i++) {
+        DFSTestUtil.createFile(fs, new Path(root, "dir" + i + "/file"), 10,
+            (short) 1, i);
+      }
+      // the ACLs of the inodes loaded by different threads are de-duplicated
+      final List<AclEntry> acl = AclEntry.parseAclSpec("user:foo:rwx", true);
+      for (int i = 0; i < 10; i++) {
+        fs.modifyAclEntries(new Path(root, "dir" + i), acl);
+        fs.modifyAclEntries(new Path(root, "dir" + i + "/file"), acl);
+      }
+      fs.allowSnapshot(root);
+      fs.createSnapshot(root, "s0");
+      fs.rename(new Path(root, "dir0/file"), new Path(root, "dir1/moved"));
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      File image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+      assertTrue(countSections(image, SectionName.INODE_SUB) > 5);
+      assertTrue(countSections(image, SectionName.INODE_DIR_SUB) > 5);
+
+      for (boolean parallelLoad : new boolean[] {true, false}) {
+        cluster.getConfiguration(0).setBoolean(
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, parallelLoad);
+        cluster.restartNameNode();
+        cluster.waitActive();
+        fs = cluster.getFileSystem();
+        for (int i = 1; i < 10; i++) {
+          assertEquals(10, fs.getFileStatus(
+              new Path(root, "dir" + i + "/file")).getLen());
+        }
+        assertFalse(fs.exists(new Path(root, "dir0/file")));
+        assertTrue(fs.exists(new Path(root, "dir1/moved")));
+        assertTrue(fs.exists(new Path(root, ".snapshot/s0/dir0/file")));
+        DFSTestUtil.readFile(fs, new Path(root, "dir1/moved"));
+        final FSDirectory fsdir = cluster.getNamesystem().getFSDirectory();
+        final AclFeature aclFeature =
+            fsdir.getINode("/parallel/dir1/moved").getAclFeature();
+        assertNotNull(aclFeature);
+        for (int i = 1; i < 10; i++) {
+          assertSame(aclFeature,
+              fsdir.getINode("/parallel/dir" + i + "/file").getAclFeature());
+        }
+      }
+
+      cluster.getConfiguration(0).setInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1000);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+      assertEquals(0, countSections(image, SectionName.INODE_SUB));
+      assertEquals(0, countSections(image, SectionName.INODE_DIR_SUB));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Rename the sections of an image with the given name, as if the image
+   * had been saved by a release with sections unknown to this one.
+   */
+  private static void renameSections(File image, SectionName name,
+      String newName) throws IOException {
+    try (RandomAccessFile raFile = new RandomAccessFile(image, "rw")) {
+      FileSummary summary = FSImageUtil.loadSummary(raFile);
+      FileSummary.Builder b = FileSummary.newBuilder(summary).clearSections();
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        b.addSections(name.toString().equals(s.getName()) ?
+            FileSummary.Section.newBuilder(s).setName(newName).build() : s);
+      }
+      raFile.seek(raFile.length() - 4);
+      raFile.setLength(raFile.length() - 4 - raFile.readInt());
+      raFile.seek(raFile.length());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      FileSummary newSummary = b.build();
+      newSummary.writeDelimitedTo(out);
+      int length = out.size();
+      raFile.write(out.toByteArray());
+      raFile.writeInt(length);
+    }
+    MD5FileUtils.saveMD5File(image, MD5FileUtils.computeMd5ForFile(image));
+  }
+
+  /**
+   * Test that the NameNode and the offline image viewer skip the sections
+   * they do not know, so that an image with sub-sections saved by a newer
+   * release remains loadable through its parent sections.
+   */
+  @Test(timeout = 120000)
+  public void testLoadImageWithUnknownSections() throws Exception {
+    Configuration conf = new Configuration();
+    setParallelImageConf(conf);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        fs.mkdirs(new Path("/unknown/dir" + i));
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      File image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+      assertTrue(countSections(image, SectionName.INODE_SUB) > 1);
+      renameSections(image, SectionName.INODE_SUB, "FUTURE_INODE_SUB");
+      renameSections(image, SectionName.INODE_DIR_SUB, "FUTURE_INODE_DIR_SUB");
+      assertEquals(0, countSections(image, SectionName.INODE_SUB));
+
+      ByteArrayOutputStream xml = new ByteArrayOutputStream();
+      try (RandomAccessFile raFile = new RandomAccessFile(image, "r")) {
+        new PBImageXmlWriter(conf, new PrintStream(xml, true, "UTF-8"))
+            .visit(raFile);
+      }
+      assertTrue(xml.toString("UTF-8").contains("<name>dir9</name>"));
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        assertTrue(
+            fs.getFileStatus(new Path("/unknown/dir" + i)).isDirectory());
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   private void setCompressCodec(Configuration conf, String compressCodec)
       throws IOException {
     conf.set(DFSConfigKeys.DFS_IMAGE_COMPRESSION_CODEC_KEY, compressCodec);
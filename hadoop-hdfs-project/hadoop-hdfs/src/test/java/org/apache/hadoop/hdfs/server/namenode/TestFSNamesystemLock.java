@@ -21,6 +21,10 @@
 import com.google.common.base.Supplier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.ipc.ProcessingDetails;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
@@ -367,6 +371,34 @@ public void testDetailedHoldMetrics() throws Exception {
     assertCounter("FSNWriteLockOverallNanosNumOps", 1L, rb);
   }
 
+  @Test
+  public void testProcessingDetails() throws Exception {
+    FakeTimer timer = new FakeTimer();
+    FSNamesystemLock fsLock =
+        new FSNamesystemLock(new Configuration(), null, timer);
+    Server.Call call = new Server.Call(1, 0, null, null,
+        RPC.RpcKind.RPC_PROTOCOL_BUFFER, new byte[0]);
+    Server.getCurCall().set(call);
+    try {
+      fsLock.readLock();
+      fsLock.readLock();
+      timer.advance(1);
+      fsLock.readUnlock();
+      fsLock.readUnlock();
+
+      fsLock.writeLock();
+      timer.advance(2);
+      fsLock.writeUnlock("baz", true);
+    } finally {
+      Server.getCurCall().set(null);
+    }
+
+    ProcessingDetails details = call.getProcessingDetails();
+    assertEquals(1, details.get(Timing.LOCKSHARED, TimeUnit.MILLISECONDS));
+    assertEquals(2, details.get(Timing.LOCKEXCLUSIVE, TimeUnit.MILLISECONDS));
+    assertEquals(0, details.get(Timing.LOCKWAIT, TimeUnit.NANOSECONDS));
+  }
+
   /**
    * Test to suppress FSNameSystem write lock report when it is held for long
    * time.
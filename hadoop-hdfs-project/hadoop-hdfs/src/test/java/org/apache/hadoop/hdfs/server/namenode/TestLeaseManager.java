@@ -19,6 +19,7 @@
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -102,6 +103,47 @@ public void testCheckLease() throws InterruptedException {
     assertTrue(lm.countLease() < numLease);
   }
 
+  /**
+   * Check that a lease which cannot be released does not keep the other
+   * expired leases from being checked, and that it is retried by the next
+   * check.
+   */
+  @Test
+  public void testCheckLeaseWithUnreleasableLease() throws Exception {
+    FSNamesystem fsn = makeMockFsNameSystem();
+    LeaseManager lm = new LeaseManager(fsn);
+    lm.setLeasePeriod(0, 0);
+    PermissionStatus perm = new PermissionStatus(
+        "dummy", "dummy", new FsPermission((short) 0777));
+    INodeDirectory root = new INodeDirectory(INodeId.ROOT_INODE_ID,
+        INodeDirectory.ROOT_NAME, perm, 0L);
+    final int numLeases = 10;
+    for (int i = 1; i <= numLeases; i++) {
+      INodeFile file = stubInodeFile(INodeId.ROOT_INODE_ID + i);
+      file.setParent(root);
+      when(fsn.getFSDirectory().getInode(file.getId())).thenReturn(file);
+      lm.addLease("holder" + i, file.getId());
+    }
+    Thread.sleep(1);
+    // the oldest lease fails, the others are released
+    when(fsn.internalReleaseLease(any(LeaseManager.Lease.class), anyString(),
+        any(INodesInPath.class), anyString()))
+        .thenThrow(new IOException("Injected failure"))
+        .thenReturn(true);
+
+    assertTrue(lm.hasExpiredLeases());
+    lm.checkLeases();
+    verify(fsn, times(numLeases)).internalReleaseLease(
+        any(LeaseManager.Lease.class), anyString(), any(INodesInPath.class),
+        anyString());
+    assertFalse(lm.isCheckIncomplete());
+
+    lm.checkLeases();
+    verify(fsn, times(2 * numLeases)).internalReleaseLease(
+        any(LeaseManager.Lease.class), anyString(), any(INodesInPath.class),
+        anyString());
+  }
+
   /**
    * Test whether the internal lease holder name is updated properly.
    */
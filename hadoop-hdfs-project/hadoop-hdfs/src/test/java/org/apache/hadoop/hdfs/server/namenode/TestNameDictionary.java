@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.junit.Test;
+
+/**
+ * Tests the dictionary of INode names.
+ */
+public class TestNameDictionary {
+
+  private static byte[] bytes(String name) {
+    return DFSUtil.string2Bytes(name);
+  }
+
+  @Test
+  public void testInternAndRelease() {
+    NameDictionary dictionary = new NameDictionary(3, 2);
+    byte[] first = bytes("part-00000");
+    assertSame(first, dictionary.intern(first));
+    // candidates share their array before they are frequent
+    byte[] second = bytes("part-00000");
+    assertSame(first, dictionary.intern(second));
+    assertEquals(0, dictionary.size());
+    assertSame(first, dictionary.intern(bytes("part-00000")));
+    assertEquals(1, dictionary.size());
+    assertEquals(3, dictionary.getCount(first));
+    assertEquals(2 * NameDictionary.arrayBytes(10),
+        dictionary.getSavedBytes());
+
+    // arrays which are not shared do not change the count
+    dictionary.release(second);
+    assertEquals(3, dictionary.getCount(first));
+    for (int i = 0; i < 3; i++) {
+      dictionary.release(first);
+    }
+    assertEquals(0, dictionary.size());
+  }
+
+  @Test
+  public void testCandidateEviction() {
+    NameDictionary dictionary = new NameDictionary(2, 1);
+    byte[] name = bytes("_SUCCESS");
+    dictionary.intern(name);
+    // evicts the first name before it is seen again
+    dictionary.intern(bytes("_temporary"));
+    assertNotSame(name, dictionary.intern(bytes("_SUCCESS")));
+    assertEquals(0, dictionary.size());
+  }
+
+  @Test(timeout = 120000)
+  public void testNamesShared() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_NAME_DICTIONARY_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY, 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 3; i++) {
+        fs.mkdirs(new Path("/job" + i + "/_SUCCESS"));
+      }
+      FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+      byte[] name = fsd.getINode("/job0/_SUCCESS").getLocalNameBytes();
+      assertSame(name, fsd.getINode("/job2/_SUCCESS").getLocalNameBytes());
+      assertEquals(3, fsd.getNameDictionary().getCount(name));
+
+      // renames release the old name and intern the new one
+      fs.rename(new Path("/job1/_SUCCESS"), new Path("/job1/_FAILED"));
+      assertEquals(2, fsd.getNameDictionary().getCount(name));
+      fs.rename(new Path("/job1/_FAILED"), new Path("/job1/_SUCCESS"));
+      assertSame(name, fsd.getINode("/job1/_SUCCESS").getLocalNameBytes());
+      assertEquals(3, fsd.getNameDictionary().getCount(name));
+
+      fs.delete(new Path("/job2"), true);
+      assertEquals(2, fsd.getNameDictionary().getCount(name));
+
+      // names are shared again when the image is loaded
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      cluster.restartNameNode();
+      fsd = cluster.getNamesystem().getFSDirectory();
+      name = fsd.getINode("/job0/_SUCCESS").getLocalNameBytes();
+      assertSame(name, fsd.getINode("/job1/_SUCCESS").getLocalNameBytes());
+      assertEquals(2, fsd.getNameDictionary().getCount(name));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
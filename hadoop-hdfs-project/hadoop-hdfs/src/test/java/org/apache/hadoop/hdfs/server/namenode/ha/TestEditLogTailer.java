@@ -125,6 +125,8 @@ public void testTailer() throws IOException, InterruptedException,
       assertEquals("Inconsistent number of applied txns on Standby",
           nn1.getNamesystem().getEditLog().getLastWrittenTxId(),
           nn2.getNamesystem().getFSImage().getLastAppliedTxId() + 1);
+      assertEquals(0,
+          nn2.getNamesystem().getEditLogTailer().getTailLagTxns());
 
       for (int i = 0; i < DIRS_TO_MAKE / 2; i++) {
         assertTrue(NameNodeAdapter.getFileInfo(nn2,
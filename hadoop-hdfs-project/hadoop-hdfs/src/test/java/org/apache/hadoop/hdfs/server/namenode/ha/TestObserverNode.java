@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.ipc.StandbyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reads served by an observer namenode through
+ * {@link ObserverReadProxyProvider}.
+ */
+public class TestObserverNode {
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private NameNode active;
+  private NameNode observer;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_OBSERVER_ENABLED_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_OBSERVER_STATE_WAIT_KEY, 100);
+    // edits are only tailed when the test asks for it
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 60 * 60);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(1)
+        .build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+    active = cluster.getNameNode(0);
+    observer = cluster.getNameNode(1);
+
+    Configuration clientConf = new Configuration(conf);
+    String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, clientConf, logicalName);
+    clientConf.set(HdfsClientConfigKeys.Failover.PROXY_PROVIDER_KEY_PREFIX
+        + "." + logicalName, ObserverReadProxyProvider.class.getName());
+    // the second namenode of the cluster is configured as "nn2"
+    clientConf.set(HdfsClientConfigKeys.Failover.OBSERVER_NAMENODES_KEY_PREFIX
+        + "." + logicalName, "nn2");
+    fs = FileSystem.get(HATestUtil.getLogicalUri(cluster), clientConf);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testObserverRejectsWrites() throws Exception {
+    assertTrue(observer.isObserverState());
+    // to datanodes and failover controllers an observer is a standby
+    assertTrue(observer.isStandbyState());
+    assertEquals("standby", observer.getState());
+    try {
+      observer.getRpcServer().mkdirs("/denied",
+          FsPermission.getDirDefault(), true);
+      fail("Observer should not accept writes");
+    } catch (StandbyException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testReadYourWritesWhenObserverLags() throws Exception {
+    Path dir = new Path("/lagging");
+    assertTrue(fs.mkdirs(dir));
+    // the observer has not tailed the mkdir, the read falls back to active
+    assertTrue(observer.getNamesystem().getFSImage()
+        .getLastAppliedOrWrittenTxId() < active.getNamesystem()
+        .getFSImage().getLastAppliedOrWrittenTxId());
+    assertTrue(fs.getFileStatus(dir).isDirectory());
+  }
+
+  @Test(timeout = 60000)
+  public void testReadsServedByObserver() throws Exception {
+    Path file = new Path("/observed/file");
+    DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+    active.getRpcServer().rollEditLog();
+    observer.getNamesystem().getEditLogTailer().doTailEdits();
+
+    // without the active namenode, reads can only be served by the observer
+    cluster.shutdownNameNode(0);
+    assertEquals(1024, fs.getFileStatus(file).getLen());
+    assertEquals(1, fs.listStatus(file.getParent()).length);
+    assertFalse(fs.exists(new Path("/observed/missing")));
+    DFSTestUtil.readFile(fs, file);
+  }
+
+  @Test(timeout = 60000)
+  public void testMissingBlockLocationsOnObserver() throws Exception {
+    String file = "/unlocated/file";
+    DFSTestUtil.createFile(fs, new Path(file), 1024, (short) 1, 0L);
+    active.getRpcServer().rollEditLog();
+    observer.getNamesystem().getEditLogTailer().doTailEdits();
+    // the observer loses the only replica of the block
+    BlockManagerTestUtil.noticeDeadDatanode(observer,
+        cluster.getDataNodes().get(0).getDatanodeId().getXferAddr());
+
+    try {
+      observer.getRpcServer().getBlockLocations(file, 0, 1024);
+      fail("Observer should not serve blocks without locations");
+    } catch (StandbyException e) {
+      // expected
+    }
+    try {
+      observer.getRpcServer().getBatchedFileInfo(new String[] {file}, true);
+      fail("Observer should not serve blocks without locations");
+    } catch (StandbyException e) {
+      // expected
+    }
+    assertEquals(1024, observer.getRpcServer().getBatchedFileInfo(
+        new String[] {file}, false)[0].getLen());
+  }
+}
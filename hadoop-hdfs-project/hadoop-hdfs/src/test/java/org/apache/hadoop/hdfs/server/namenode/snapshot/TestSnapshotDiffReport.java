@@ -24,6 +24,7 @@
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -34,6 +35,7 @@
 import org.apache.commons.collections.list.TreeList;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
@@ -42,6 +44,7 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
 import org.apache.hadoop.hdfs.client.impl.SnapshotDiffReportGenerator;
@@ -1517,6 +1520,86 @@ public void testSnapshotDiffReportRemoteIterator() throws Exception {
             DFSUtil.string2Bytes("dir3/file3")));
   }
 
+  @Test
+  public void testSnapshotDiffReportEntryIterator() throws Exception {
+    final Path root = new Path("/");
+    for (int i = 1; i <= 3; i++) {
+      final Path path = new Path(root, "dir" + i);
+      for (int j = 1; j < 4; j++) {
+        final Path file = new Path(path, "file" + j);
+        DFSTestUtil.createFile(hdfs, file, BLOCKSIZE, REPLICATION, SEED);
+      }
+    }
+    SnapshotTestHelper.createSnapshot(hdfs, root, "s0");
+    // renames within and across directories, spread over several listings
+    hdfs.mkdirs(new Path(root, "dir0"));
+    for (int j = 1; j < 4; j++) {
+      hdfs.rename(new Path("/dir3/file" + j), new Path("/dir1/moved" + j));
+      hdfs.rename(new Path("/dir2/file" + j), new Path("/dir2/renamed" + j));
+    }
+    hdfs.delete(new Path("/dir1/file1"), false);
+    DFSTestUtil.createFile(hdfs, new Path("/dir3/new"), BLOCKSIZE,
+        REPLICATION, SEED);
+    // rename into a created directory
+    hdfs.rename(new Path("/dir1/file2"), new Path("/dir0/file2"));
+    SnapshotTestHelper.createSnapshot(hdfs, root, "s1");
+    // rename out of a directory which is then deleted, so the created
+    // reference has no rename in the diff from s1
+    hdfs.rename(new Path("/dir0/file2"), new Path("/dir1/back2"));
+    hdfs.delete(new Path("/dir0"), true);
+    hdfs.delete(new Path("/dir3/new"), false);
+    SnapshotTestHelper.createSnapshot(hdfs, root, "s2");
+
+    final Configuration prefetchConf = new Configuration(conf);
+    prefetchConf.setInt(
+        HdfsClientConfigKeys.DFS_CLIENT_LISTING_PREFETCH_THREADS_KEY, 2);
+    try (DistributedFileSystem prefetchFs = (DistributedFileSystem)
+        FileSystem.newInstance(hdfs.getUri(), prefetchConf)) {
+      for (DistributedFileSystem fs : new DistributedFileSystem[] {
+          hdfs, prefetchFs}) {
+        verifyDiffReportIterator(fs, root, "s0", "s1");
+        verifyDiffReportIterator(fs, root, "s1", "s0");
+        verifyDiffReportIterator(fs, root, "s0", "");
+        verifyDiffReportIterator(fs, root, "s0", "s2");
+        verifyDiffReportIterator(fs, root, "s1", "s2", "dir1/back2");
+        verifyDiffReportIterator(fs, root, "s2", "s1", "dir1/back2");
+      }
+    }
+  }
+
+  /**
+   * Check that the iterator returns the entries of the diff report in the
+   * same order, except for the created references which are not renames.
+   * The iterator only knows that after the last listing, so it reports
+   * them last.
+   */
+  private void verifyDiffReportIterator(DistributedFileSystem fs, Path dir,
+      String from, String to, String... deferredPaths) throws IOException {
+    final List<DiffReportEntry> expected = new ArrayList<>();
+    final List<DiffReportEntry> deferred = new ArrayList<>();
+    for (DiffReportEntry entry :
+        fs.getSnapshotDiffReport(dir, from, to).getDiffList()) {
+      if (entry.getType() != DiffType.MODIFY
+          && entry.getType() != DiffType.RENAME
+          && Arrays.asList(deferredPaths).contains(
+              DFSUtil.bytes2String(entry.getSourcePath()))) {
+        deferred.add(entry);
+      } else {
+        expected.add(entry);
+      }
+    }
+    assertEquals(deferredPaths.length, deferred.size());
+    expected.addAll(deferred);
+    final List<DiffReportEntry> actual = new ArrayList<>();
+    final RemoteIterator<DiffReportEntry> it =
+        fs.snapshotDiffReportRemoteIterator(dir, from, to);
+    while (it.hasNext()) {
+      actual.add(it.next());
+    }
+    LOG.info("Diff entries from {} to {}: {}", from, to, actual);
+    assertEquals(expected, actual);
+  }
+
   @Test
   public void testSnapshotDiffReportRemoteIterator2() throws Exception {
     final Path root = new Path("/");
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.shortcircuit;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.ExtendedBlockId;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Measures the throughput of many threads looking up and memory mapping
+ * the replicas of many small blocks in the short-circuit cache, as the
+ * zero-copy reads of a local reader do, once with a single cache and once
+ * with a cache striped by block ID like the cache of a client context.
+ *
+ * Usage: ShortCircuitCacheBenchmark [numThreads [numBlocks [cacheSize
+ *     [numStripes [durationMs]]]]]
+ */
+public class ShortCircuitCacheBenchmark {
+  private static final String BPID = "BP-BENCHMARK";
+
+  static final class Result {
+    int stripes;
+    long lookups;
+    long hits;
+    long evictions;
+    long mmapReuses;
+    long elapsedMs;
+
+    @Override
+    public String toString() {
+      return String.format("%d stripe(s): %d lookups/s, hit ratio %.3f, "
+          + "%d evictions/s, %d mmap reuses/s", stripes,
+          lookups * 1000 / Math.max(elapsedMs, 1),
+          (double) hits / Math.max(lookups, 1),
+          evictions * 1000 / Math.max(elapsedMs, 1),
+          mmapReuses * 1000 / Math.max(elapsedMs, 1));
+    }
+  }
+
+  /**
+   * Creates the replicas from the same small block and meta files, with
+   * file descriptors of their own.
+   */
+  private static final class ReplicaCreator
+      implements ShortCircuitCache.ShortCircuitReplicaCreator {
+    private final ExtendedBlockId key;
+    private final ShortCircuitCache cache;
+    private final File dataFile;
+    private final File metaFile;
+
+    ReplicaCreator(ExtendedBlockId key, ShortCircuitCache cache,
+        File dataFile, File metaFile) {
+      this.key = key;
+      this.cache = cache;
+      this.dataFile = dataFile;
+      this.metaFile = metaFile;
+    }
+
+    @Override
+    public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
+      try {
+        return new ShortCircuitReplicaInfo(new ShortCircuitReplica(key,
+            new FileInputStream(dataFile), new FileInputStream(metaFile),
+            cache, Time.monotonicNow(), null));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  static Result run(int numThreads, int numBlocks, int cacheSize,
+      int numStripes, long durationMs, File dataFile, File metaFile)
+      throws InterruptedException {
+    final ShortCircuitCache[] caches = new ShortCircuitCache[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      // the sizes are divided between the stripes, as in ClientContext
+      final int size = (cacheSize + numStripes - 1) / numStripes;
+      caches[i] = new ShortCircuitCache(size, 10 * 60 * 1000, size,
+          10 * 60 * 1000, 1000, 60 * 60 * 1000, 0);
+    }
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong lookups = new AtomicLong();
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < numThreads; i++) {
+      final Random random = new Random(i);
+      threads.add(new Thread(() -> {
+        long n = 0;
+        while (running.get()) {
+          final long blockId = random.nextInt(numBlocks);
+          final ShortCircuitCache cache = caches[(int) (blockId % numStripes)];
+          final ExtendedBlockId key = new ExtendedBlockId(blockId, BPID);
+          final ShortCircuitReplica replica = cache.fetchOrCreate(key,
+              new ReplicaCreator(key, cache, dataFile, metaFile))
+              .getReplica();
+          if (replica != null) {
+            final ClientMmap mmap = replica.getOrCreateClientMmap(false);
+            if (mmap != null) {
+              mmap.close();
+            }
+            replica.unref();
+          }
+          n++;
+        }
+        lookups.addAndGet(n);
+      }));
+    }
+
+    final long start = Time.monotonicNow();
+    for (Thread t : threads) {
+      t.start();
+    }
+    Thread.sleep(durationMs);
+    running.set(false);
+    for (Thread t : threads) {
+      t.join();
+    }
+    final Result result = new Result();
+    result.stripes = numStripes;
+    result.elapsedMs = Time.monotonicNow() - start;
+    result.lookups = lookups.get();
+    for (ShortCircuitCache cache : caches) {
+      result.hits += cache.getReplicaHitCount();
+      result.evictions += cache.getReplicaEvictionCount();
+      result.mmapReuses += cache.getMmapReuseCount();
+      cache.close();
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    final int numBlocks = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+    final int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+    final int numStripes = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+    final long durationMs = args.length > 4 ? Long.parseLong(args[4]) : 10000;
+
+    final File dir = GenericTestUtils.getRandomizedTestDir();
+    if (!dir.mkdirs()) {
+      throw new IOException("Failed to create " + dir);
+    }
+    try {
+      final File dataFile = new File(dir, "blk");
+      try (FileOutputStream out = new FileOutputStream(dataFile)) {
+        out.write(new byte[4096]);
+      }
+      final File metaFile = new File(dir, "blk.meta");
+      try (DataOutputStream out = new DataOutputStream(
+          new FileOutputStream(metaFile))) {
+        BlockMetadataHeader.writeHeader(out, new BlockMetadataHeader(
+            (short) 1, DataChecksum.newDataChecksum(DataChecksum.Type.NULL,
+                512)));
+      }
+      System.out.println(run(numThreads, numBlocks, cacheSize, 1,
+          durationMs, dataFile, metaFile));
+      System.out.println(run(numThreads, numBlocks, cacheSize, numStripes,
+          durationMs, dataFile, metaFile));
+    } finally {
+      FileUtil.fullyDelete(dir);
+    }
+  }
+}
@@ -21,6 +21,8 @@
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DOMAIN_SOCKET_DATA_TRAFFIC;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DOMAIN_SOCKET_PATH_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.hamcrest.CoreMatchers.equalTo;
 
 import java.io.DataOutputStream;
@@ -30,7 +32,9 @@
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
@@ -42,6 +46,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.ClientContext;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderFactory;
 import org.apache.hadoop.hdfs.client.impl.BlockReaderTestUtil;
 import org.apache.hadoop.hdfs.DFSInputStream;
@@ -66,6 +71,7 @@
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.Slot;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.net.unix.TemporarySocketDirectory;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
@@ -302,6 +308,9 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
       });
     Preconditions.checkState(replicaInfos[0].getReplica() == null);
     Assert.assertTrue(calledCreate.isTrue());
+    Assert.assertEquals(2, cache.getReplicaHitCount());
+    Assert.assertEquals(4, cache.getReplicaMissCount());
+    Assert.assertEquals(1, cache.getReplicaEvictionCount());
     // Clean up
     for (int i = 1; i < pairs.length; i++) {
       replicaInfos[i].getReplica().unref();
@@ -312,6 +321,87 @@ public ShortCircuitReplicaInfo createShortCircuitReplicaInfo() {
     cache.close();
   }
   
+  @Test(timeout=60000)
+  public void testMmapReuse() throws Exception {
+    final ShortCircuitCache cache =
+        new ShortCircuitCache(2, 10000000, 2, 10000000, 1, 10000, 0);
+    final TestFileDescriptorPair pairs[] = new TestFileDescriptorPair[] {
+      new TestFileDescriptorPair(),
+      new TestFileDescriptorPair(),
+    };
+    for (int i = 0; i < pairs.length; i++) {
+      ShortCircuitReplica replica = cache.fetchOrCreate(
+          new ExtendedBlockId(i, "test_bp1"),
+          new SimpleReplicaCreator(i, cache, pairs[i])).getReplica();
+      ClientMmap mmap1 = replica.getOrCreateClientMmap(false);
+      ClientMmap mmap2 = replica.getOrCreateClientMmap(false);
+      Assert.assertSame(mmap1.getMappedByteBuffer(),
+          mmap2.getMappedByteBuffer());
+      mmap1.close();
+      mmap2.close();
+      replica.unref();
+    }
+    Assert.assertEquals(2, cache.getMmapCreateCount());
+    Assert.assertEquals(2, cache.getMmapReuseCount());
+    // The mmap of the first replica was unmapped to make room for the mmap
+    // of the second one in the evictable mmaps.
+    Assert.assertEquals(1, cache.getMmapDemotionCount());
+    Assert.assertEquals(0, cache.getReplicaEvictionCount());
+
+    // The replica which kept its mmap reuses it.
+    ShortCircuitReplica replica = cache.fetchOrCreate(
+        new ExtendedBlockId(1, "test_bp1"),
+        new SimpleReplicaCreator(1, cache, pairs[1])).getReplica();
+    replica.getOrCreateClientMmap(false).close();
+    Assert.assertEquals(2, cache.getMmapCreateCount());
+    Assert.assertEquals(3, cache.getMmapReuseCount());
+    Assert.assertEquals(1, cache.getReplicaHitCount());
+    replica.unref();
+    cache.close();
+    for (TestFileDescriptorPair pair : pairs) {
+      pair.close();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testCacheStripes() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(DFS_CLIENT_CONTEXT, "testCacheStripes");
+    conf.setInt(HdfsClientConfigKeys.Read.ShortCircuit.CACHE_STRIPES_KEY, 4);
+    conf.setInt(HdfsClientConfigKeys.Read.ShortCircuit
+        .METRICS_SAMPLING_PERCENTAGE_KEY, 100);
+    ClientContext context = ClientContext.getFromConf(conf);
+    List<ShortCircuitCache> caches = context.getShortCircuitCaches();
+    Assert.assertEquals(4, caches.size());
+    Assert.assertEquals(4, new HashSet<>(caches).size());
+    Assert.assertSame(caches.get(0), context.getShortCircuitCache());
+    for (long blockId = -10; blockId < 10; blockId++) {
+      Assert.assertSame(caches.get((int) ((blockId + 12) % 4)),
+          context.getShortCircuitCache(blockId));
+    }
+    Assert.assertSame(caches.get(3),
+        context.getShortCircuitCache(Long.MIN_VALUE + 3));
+    // The stripes share the shared memory segments of the first one.
+    for (ShortCircuitCache cache : caches) {
+      Assert.assertSame(caches.get(0).getDfsClientShmManager(),
+          cache.getDfsClientShmManager());
+    }
+
+    // The counters of the stripes are published as metrics.
+    TestFileDescriptorPair pair = new TestFileDescriptorPair();
+    ShortCircuitCache cache = context.getShortCircuitCache(5);
+    for (int i = 0; i < 2; i++) {
+      cache.fetchOrCreate(new ExtendedBlockId(5, "test_bp1"),
+          new SimpleReplicaCreator(5, cache, pair)).getReplica().unref();
+    }
+    MetricsRecordBuilder rb =
+        getMetrics("ShortCircuitCache-testCacheStripes");
+    assertCounter("ReplicaHits", 1L, rb);
+    assertCounter("ReplicaMisses", 1L, rb);
+    assertCounter("ReplicaEvictions", 0L, rb);
+    pair.close();
+  }
+
   @Test(timeout=60000)
   public void testTimeBasedStaleness() throws Exception {
     // Set up the cache with a short staleness time.
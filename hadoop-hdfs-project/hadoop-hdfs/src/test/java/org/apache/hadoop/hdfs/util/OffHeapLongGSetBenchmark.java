@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.apache.hadoop.util.GSet;
+import org.apache.hadoop.util.LightWeightGSet;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Measures the heap used by a blocks map and the time of a full garbage
+ * collection with the map, once with a {@link LightWeightGSet} sized at 2%
+ * of the heap like the BlocksMap of the NameNode, and once with an
+ * {@link OffHeapLongGSet}. The elements are also referenced from an array,
+ * as blocks are from their files, so the heap measured for the map is the
+ * overhead of the map itself.
+ *
+ * Usage: OffHeapLongGSetBenchmark [numElements [numGcs]]
+ */
+public class OffHeapLongGSetBenchmark {
+  private static final MemoryMXBean MEMORY =
+      ManagementFactory.getMemoryMXBean();
+
+  /** An element with an id and a next link, like BlockInfo. */
+  private static final class Element
+      implements LightWeightGSet.LinkedElement {
+    private final long id;
+    private LightWeightGSet.LinkedElement next;
+
+    Element(long id) {
+      this.id = id;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    @Override
+    public void setNext(LightWeightGSet.LinkedElement next) {
+      this.next = next;
+    }
+
+    @Override
+    public LightWeightGSet.LinkedElement getNext() {
+      return next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Element && ((Element) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(id);
+    }
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  }
+
+  /** @return the average time of a full garbage collection in ms. */
+  private static double fullGcMs(int numGcs) {
+    final long start = Time.monotonicNowNanos();
+    for (int i = 0; i < numGcs; i++) {
+      System.gc();
+    }
+    return (Time.monotonicNowNanos() - start) / 1e6 / numGcs;
+  }
+
+  private static void run(String name, GSet<Element, Element> set,
+      Element[] elements, long baseline, int numGcs) {
+    final long start = Time.monotonicNow();
+    for (Element e : elements) {
+      set.put(e);
+    }
+    final long putMs = Time.monotonicNow() - start;
+    final long heap = usedHeap() - baseline;
+    System.out.printf("%s: %d elements put in %d ms, %d MB heap "
+        + "(%.1f bytes per element), full GC %.1f ms%n", name, set.size(),
+        putMs, heap >> 20, (double) heap / elements.length,
+        fullGcMs(numGcs));
+    if (set instanceof OffHeapLongGSet) {
+      System.out.printf("%s: %d MB direct memory%n", name,
+          ((OffHeapLongGSet<?, ?>) set).getOffHeapBytes() >> 20);
+    }
+  }
+
+  public static void main(String[] args) {
+    final int numElements =
+        args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    final int numGcs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    final Element[] elements = new Element[numElements];
+    for (int i = 0; i < numElements; i++) {
+      elements[i] = new Element(1073741825L + i);
+    }
+    final long baseline = usedHeap();
+    System.out.printf("%d elements, max heap %d MB, full GC %.1f ms "
+        + "without a map%n", numElements,
+        Runtime.getRuntime().maxMemory() >> 20, fullGcMs(numGcs));
+
+    GSet<Element, Element> set = new LightWeightGSet<>(
+        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    run("LightWeightGSet", set, elements, baseline, numGcs);
+    set = null;
+    usedHeap();
+
+    set = new OffHeapLongGSet<>(1024, Element::getId);
+    run("OffHeapLongGSet", set, elements, baseline, numGcs);
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TestOffHeapLongGSet {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(TestOffHeapLongGSet.class);
+
+  private static class Element {
+    private final long id;
+
+    Element(long id) {
+      this.id = id;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Element && ((Element) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+      return "e" + id;
+    }
+  }
+
+  private static OffHeapLongGSet<Element, Element> newSet(long capacity) {
+    return new OffHeapLongGSet<>(capacity, Element::getId);
+  }
+
+  @Test
+  public void testBasic() {
+    OffHeapLongGSet<Element, Element> set = newSet(16);
+    Element e1 = new Element(1);
+    assertNull(set.put(e1));
+    assertEquals(1, set.size());
+    assertSame(e1, set.get(new Element(1)));
+    assertSame(e1, set.getById(1));
+    assertNull(set.getById(2));
+
+    // put replaces an equal element
+    Element e1b = new Element(1);
+    assertSame(e1, set.put(e1b));
+    assertEquals(1, set.size());
+    assertSame(e1b, set.getById(1));
+
+    // negative ids, as used by striped blocks, and id 0 are supported
+    Element neg = new Element(-1L << 62);
+    Element zero = new Element(0);
+    set.put(neg);
+    set.put(zero);
+    assertSame(neg, set.getById(-1L << 62));
+    assertSame(zero, set.getById(0));
+    assertEquals(3, set.values().size());
+
+    assertSame(e1b, set.remove(new Element(1)));
+    assertNull(set.remove(new Element(1)));
+    assertFalse(set.contains(new Element(1)));
+    assertEquals(2, set.size());
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertFalse(set.iterator().hasNext());
+    assertNull(set.getById(0));
+  }
+
+  @Test
+  public void testRandomOperations() {
+    final long seed = Time.now();
+    LOG.info("seed = {}", seed);
+    final Random rand = new Random(seed);
+    final OffHeapLongGSet<Element, Element> set = newSet(16);
+    final Map<Long, Element> expected = new HashMap<>();
+    // a small id range forces collisions, removals and re-insertions
+    for (int i = 0; i < 200000; i++) {
+      final long id = rand.nextInt(50000) - 10000;
+      if (rand.nextInt(3) == 0) {
+        assertSame(expected.remove(id), set.remove(new Element(id)));
+      } else {
+        Element e = new Element(id);
+        assertSame(expected.put(id, e), set.put(e));
+      }
+      assertEquals(expected.size(), set.size());
+    }
+    assertTrue(set.getCapacity() >= expected.size() * 4L / 3);
+    assertTrue(set.getOffHeapBytes() >= set.getCapacity() * 16);
+
+    for (Map.Entry<Long, Element> entry : expected.entrySet()) {
+      assertSame(entry.getValue(), set.getById(entry.getKey()));
+    }
+    final Set<Element> iterated = new HashSet<>();
+    for (Element e : set) {
+      assertTrue("Duplicate " + e, iterated.add(e));
+    }
+    assertEquals(expected.size(), iterated.size());
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    OffHeapLongGSet<Element, Element> set = newSet(16);
+    for (long id = 0; id < 1000; id++) {
+      set.put(new Element(id));
+    }
+    int removed = 0;
+    for (Iterator<Element> it = set.iterator(); it.hasNext();) {
+      if (it.next().getId() % 3 == 0) {
+        it.remove();
+        removed++;
+      }
+    }
+    assertEquals(334, removed);
+    assertEquals(1000 - removed, set.size());
+    for (long id = 0; id < 1000; id++) {
+      assertEquals(id % 3 != 0, set.contains(new Element(id)));
+    }
+  }
+
+  @Test
+  public void testIncrementalResize() {
+    OffHeapLongGSet<Element, Element> set = newSet(1024);
+    for (long id = 0; id < 769; id++) {
+      set.put(new Element(id));
+    }
+    // the last put started the resize, both indexes are allocated
+    assertEquals(2048, set.getCapacity());
+    assertEquals((1024 + 2048) * 16, set.getOffHeapBytes());
+    for (long id = 0; id < 769; id++) {
+      assertTrue(set.contains(new Element(id)));
+    }
+    // remove and replace elements whose entries may not have been moved
+    for (long id = 0; id < 769; id += 2) {
+      assertEquals(id, set.remove(new Element(id)).getId());
+      assertNull(set.getById(id));
+    }
+    Element e1 = new Element(1);
+    assertEquals(1, set.put(e1).getId());
+    assertSame(e1, set.getById(1));
+    // the remaining entries were moved by the removals
+    assertEquals(2048 * 16, set.getOffHeapBytes());
+    assertEquals(384, set.size());
+    for (long id = 0; id < 769; id++) {
+      assertEquals(id % 2 == 1, set.contains(new Element(id)));
+    }
+  }
+
+  /**
+   * An iterator which does not track modifications, as used by the blocks
+   * map, returns every element which stays in the set exactly once.
+   */
+  @Test
+  public void testUntrackedIteratorWithRemovals() {
+    final long seed = Time.now();
+    LOG.info("seed = {}", seed);
+    final Random rand = new Random(seed);
+    final OffHeapLongGSet<Element, Element> set = newSet(16);
+    for (long id = 0; id < 10000; id++) {
+      set.put(new Element(id));
+    }
+    final Set<Long> removed = new HashSet<>();
+    final Set<Long> iterated = new HashSet<>();
+    OffHeapLongGSet<Element, Element>.SetIterator it = set.new SetIterator();
+    it.setTrackModification(false);
+    long nextId = 10000;
+    while (it.hasNext()) {
+      assertTrue(iterated.add(it.next().getId()));
+      final long id = rand.nextInt(10000);
+      if (set.remove(new Element(id)) != null) {
+        removed.add(id);
+      }
+      if (rand.nextInt(4) == 0) {
+        set.put(new Element(nextId++));
+      }
+    }
+    for (long id = 0; id < 10000; id++) {
+      assertTrue("Missed " + id,
+          removed.contains(id) || iterated.contains(id));
+    }
+  }
+
+  @Test
+  public void testFailFastIterator() {
+    OffHeapLongGSet<Element, Element> set = newSet(16);
+    set.put(new Element(1));
+    set.put(new Element(2));
+    Iterator<Element> it = set.iterator();
+    it.next();
+    set.put(new Element(3));
+    try {
+      it.next();
+      fail("Expected ConcurrentModificationException");
+    } catch (ConcurrentModificationException e) {
+      LOG.info("Expected exception", e);
+    }
+
+    // an iterator that does not track modifications sees appended elements
+    OffHeapLongGSet<Element, Element>.SetIterator untracked =
+        set.new SetIterator();
+    untracked.setTrackModification(false);
+    int count = 0;
+    while (untracked.hasNext()) {
+      untracked.next();
+      if (count++ == 0) {
+        set.put(new Element(4));
+      }
+    }
+    assertEquals(4, count);
+  }
+}
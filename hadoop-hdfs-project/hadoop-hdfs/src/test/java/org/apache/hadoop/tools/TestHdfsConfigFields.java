@@ -42,7 +42,9 @@ public void initializeMemberVariables() {
     xmlFilename = new String("hdfs-default.xml");
     configurationClasses = new Class[] { HdfsClientConfigKeys.class,
         HdfsClientConfigKeys.Failover.class,
-        HdfsClientConfigKeys.StripedRead.class, DFSConfigKeys.class,
+        HdfsClientConfigKeys.StripedRead.class,
+        HdfsClientConfigKeys.AsyncRead.class,
+        HdfsClientConfigKeys.LocationCache.class, DFSConfigKeys.class,
         HdfsClientConfigKeys.BlockWrite.ReplaceDatanodeOnFailure.class };
 
     // Set error modes
@@ -125,6 +127,8 @@ public void initializeMemberVariables() {
 
     // Some properties have moved to HdfsClientConfigKeys
     xmlPropsToSkipCompare.add("dfs.client.short.circuit.replica.stale.threshold.ms");
+    xmlPropsToSkipCompare.add(
+        HdfsClientConfigKeys.Read.ShortCircuit.CACHE_STRIPES_KEY);
 
     // Ignore HTrace properties
     xmlPropsToSkipCompare.add("fs.client.htrace");
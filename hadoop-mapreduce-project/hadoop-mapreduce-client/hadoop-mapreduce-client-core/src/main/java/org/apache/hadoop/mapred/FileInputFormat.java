@@ -20,6 +20,7 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -323,6 +324,11 @@ public InputSplit[] getSplits(JobConf job, int numSplits)
     throws IOException {
     StopWatch sw = new StopWatch().start();
     FileStatus[] stats = listStatus(job);
+    if (job.getBoolean(org.apache.hadoop.mapreduce.lib.input.FileInputFormat
+        .BATCHED_BLOCK_LOCATIONS, org.apache.hadoop.mapreduce.lib.input
+        .FileInputFormat.DEFAULT_BATCHED_BLOCK_LOCATIONS)) {
+      LocatedFileStatusFetcher.locateFiles(job, Arrays.asList(stats));
+    }
 
     // Save the number of input files for metrics/loadgen
     job.setLong(NUM_INPUT_FILES, stats.length);
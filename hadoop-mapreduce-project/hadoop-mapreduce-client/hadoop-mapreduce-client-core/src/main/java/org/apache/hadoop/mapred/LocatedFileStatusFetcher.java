@@ -19,8 +19,11 @@
 package org.apache.hadoop.mapred;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -37,6 +40,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
 import com.google.common.collect.Iterables;
@@ -368,4 +372,44 @@ public void onFailure(Throwable t) {
       registerError(t);
     }
   }
+
+  /**
+   * Replace the files without block locations, like input paths which are
+   * files rather than directories, by their located status. The files on
+   * HDFS are located with one batched call per file system, instead of one
+   * call each.
+   * @param conf configuration for the job
+   * @param files the input files, updated in place
+   * @throws IOException if the locations could not be fetched
+   */
+  public static void locateFiles(Configuration conf, List<FileStatus> files)
+      throws IOException {
+    Map<FileSystem, List<Integer>> toLocate = new HashMap<>();
+    for (int i = 0; i < files.size(); i++) {
+      FileStatus file = files.get(i);
+      if (file instanceof LocatedFileStatus || !file.isFile()
+          || file.getLen() == 0) {
+        continue;
+      }
+      FileSystem fs = file.getPath().getFileSystem(conf);
+      if (fs instanceof DistributedFileSystem) {
+        toLocate.computeIfAbsent(fs, k -> new ArrayList<>()).add(i);
+      }
+    }
+    for (Map.Entry<FileSystem, List<Integer>> entry : toLocate.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      Path[] paths = new Path[indexes.size()];
+      for (int i = 0; i < paths.length; i++) {
+        paths[i] = files.get(indexes.get(i)).getPath();
+      }
+      FileStatus[] located = ((DistributedFileSystem) entry.getKey())
+          .getFileStatuses(paths, true);
+      for (int i = 0; i < located.length; i++) {
+        // a file deleted since it was listed fails later, as without batching
+        if (located[i] instanceof LocatedFileStatus) {
+          files.set(indexes.get(i), located[i]);
+        }
+      }
+    }
+  }
 }
@@ -81,6 +81,9 @@
   public static final String LIST_STATUS_NUM_THREADS =
       "mapreduce.input.fileinputformat.list-status.num-threads";
   public static final int DEFAULT_LIST_STATUS_NUM_THREADS = 1;
+  public static final String BATCHED_BLOCK_LOCATIONS =
+      "mapreduce.input.fileinputformat.batched-block-locations";
+  public static final boolean DEFAULT_BATCHED_BLOCK_LOCATIONS = false;
 
   private static final Logger LOG =
       LoggerFactory.getLogger(FileInputFormat.class);
@@ -394,6 +397,10 @@ public List<InputSplit> getSplits(JobContext job) throws IOException {
     // generate splits
     List<InputSplit> splits = new ArrayList<InputSplit>();
     List<FileStatus> files = listStatus(job);
+    if (job.getConfiguration().getBoolean(BATCHED_BLOCK_LOCATIONS,
+        DEFAULT_BATCHED_BLOCK_LOCATIONS)) {
+      LocatedFileStatusFetcher.locateFiles(job.getConfiguration(), files);
+    }
 
     boolean ignoreDirs = !getInputDirRecursive(job)
       && job.getConfiguration().getBoolean(INPUT_DIR_NONRECURSIVE_IGNORE_SUBDIRS, false);
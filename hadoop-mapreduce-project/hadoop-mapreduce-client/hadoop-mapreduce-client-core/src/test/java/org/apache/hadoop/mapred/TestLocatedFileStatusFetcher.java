@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapred;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests locating the input files of a job with batched calls to HDFS.
+ */
+public class TestLocatedFileStatusFetcher {
+  private static MiniDFSCluster cluster;
+  private static FileSystem fs;
+  private static Configuration conf;
+
+  private static final Path DIR = new Path("/testLocateFiles");
+  private static final Path FILE1 = new Path(DIR, "file1");
+  private static final Path FILE2 = new Path(DIR, "file2");
+  private static final Path EMPTY = new Path(DIR, "empty");
+  private static final Path SUBDIR = new Path(DIR, "subdir");
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(FileInputFormat.BATCHED_BLOCK_LOCATIONS, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    DFSTestUtil.createFile(fs, FILE1, 1024, (short) 1, 0L);
+    DFSTestUtil.createFile(fs, FILE2, 2048, (short) 1, 0L);
+    DFSTestUtil.createFile(fs, EMPTY, 0, (short) 1, 0L);
+    fs.mkdirs(SUBDIR);
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testLocateFiles() throws IOException {
+    LocatedFileStatus located = (LocatedFileStatus) fs.listFiles(DIR, false)
+        .next();
+    List<FileStatus> files = new ArrayList<>();
+    files.add(fs.getFileStatus(FILE1));
+    files.add(fs.getFileStatus(FILE2));
+    files.add(fs.getFileStatus(EMPTY));
+    files.add(fs.getFileStatus(SUBDIR));
+    files.add(located);
+
+    LocatedFileStatusFetcher.locateFiles(conf, files);
+
+    assertEquals(5, files.size());
+    for (int i = 0; i < 2; i++) {
+      FileStatus file = files.get(i);
+      assertTrue(file.getPath() + " not located",
+          file instanceof LocatedFileStatus);
+      assertEquals(1, ((LocatedFileStatus) file).getBlockLocations().length);
+    }
+    assertEquals(1024, files.get(0).getLen());
+    assertEquals(2048, files.get(1).getLen());
+    assertFalse(files.get(2) instanceof LocatedFileStatus);
+    assertFalse(files.get(3) instanceof LocatedFileStatus);
+    assertSame(located, files.get(4));
+  }
+
+  @Test
+  public void testGetSplits() throws IOException {
+    Job job = Job.getInstance(conf);
+    FileInputFormat.setInputPaths(job, FILE1, FILE2, EMPTY);
+    List<org.apache.hadoop.mapreduce.InputSplit> splits =
+        new org.apache.hadoop.mapreduce.lib.input.TextInputFormat()
+            .getSplits(job);
+    assertEquals(3, splits.size());
+    for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
+      if (split.getLength() > 0) {
+        assertEquals(1, split.getLocations().length);
+      }
+    }
+  }
+
+  @Test
+  public void testGetSplitsOldApi() throws IOException {
+    JobConf job = new JobConf(conf);
+    org.apache.hadoop.mapred.FileInputFormat.setInputPaths(job,
+        FILE1, FILE2, EMPTY);
+    TextInputFormat format = new TextInputFormat();
+    format.configure(job);
+    InputSplit[] splits = format.getSplits(job, 1);
+    assertEquals(3, splits.length);
+    for (InputSplit split : splits) {
+      if (split.getLength() > 0) {
+        assertEquals(1, split.getLocations().length);
+      }
+    }
+  }
+}
@@ -321,6 +321,26 @@ private Constants() {
   public static final String READAHEAD_RANGE = "fs.s3a.readahead.range";
   public static final long DEFAULT_READAHEAD_RANGE = 64 * 1024;
 
+  /**
+   * The smallest gap between the ranges of a vectored read which is worth
+   * a GET request of its own; closer ranges are merged and the gap between
+   * them read and discarded.
+   * Value: {@value}
+   */
+  public static final String VECTORED_READ_MIN_SEEK_SIZE =
+      "fs.s3a.vectored.read.min.seek.size";
+  public static final long DEFAULT_VECTORED_READ_MIN_SEEK_SIZE = 128 * 1024;
+
+  /**
+   * The largest size of a GET request which merges the ranges of a
+   * vectored read.
+   * Value: {@value}
+   */
+  public static final String VECTORED_READ_MAX_MERGED_SIZE =
+      "fs.s3a.vectored.read.max.merged.size";
+  public static final long DEFAULT_VECTORED_READ_MAX_MERGED_SIZE =
+      2 * 1024 * 1024;
+
   /**
    * Which input strategy to use for buffering, seeking and similar when
    * reading data.
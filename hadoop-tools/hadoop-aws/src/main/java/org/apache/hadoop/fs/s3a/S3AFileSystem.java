@@ -190,6 +190,8 @@ public class S3AFileSystem extends FileSystem implements StreamCapabilities {
   private final S3AStorageStatistics storageStatistics =
       createStorageStatistics();
   private long readAhead;
+  private int vectoredReadMinSeek;
+  private int vectoredReadMaxSize;
   private S3AInputPolicy inputPolicy;
   private final AtomicBoolean closed = new AtomicBoolean(false);
   private volatile boolean isClosed = false;
@@ -272,6 +274,11 @@ public void initialize(URI name, Configuration originalConf)
 
       readAhead = longBytesOption(conf, READAHEAD_RANGE,
           DEFAULT_READAHEAD_RANGE, 0);
+      vectoredReadMinSeek = (int) longBytesOption(conf,
+          VECTORED_READ_MIN_SEEK_SIZE, DEFAULT_VECTORED_READ_MIN_SEEK_SIZE, 0);
+      vectoredReadMaxSize = (int) longBytesOption(conf,
+          VECTORED_READ_MAX_MERGED_SIZE, DEFAULT_VECTORED_READ_MAX_MERGED_SIZE,
+          0);
 
       int maxThreads = conf.getInt(MAX_THREADS, DEFAULT_MAX_THREADS);
       if (maxThreads < 2) {
@@ -708,7 +715,10 @@ public FSDataInputStream open(Path f, int bufferSize)
             s3guardInvoker,
             statistics,
             instrumentation,
-            fileStatus),
+            fileStatus,
+            boundedThreadPool,
+            vectoredReadMinSeek,
+            vectoredReadMaxSize),
             new S3ObjectAttributes(bucket,
                 pathToKey(f),
                 serverSideEncryptionAlgorithm,
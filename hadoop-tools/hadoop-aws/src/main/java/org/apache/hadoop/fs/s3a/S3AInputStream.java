@@ -30,14 +30,27 @@
 import org.apache.hadoop.fs.CanSetReadahead;
 import org.apache.hadoop.fs.FSExceptionMessages;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.impl.CombinedFileRange;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+import static org.apache.hadoop.fs.VectoredReadUtils.mergeSortedRanges;
+import static org.apache.hadoop.fs.VectoredReadUtils.sortRanges;
 
 /**
  * The input stream for an S3A object.
@@ -80,6 +93,8 @@ public class S3AInputStream extends FSInputStream implements CanSetReadahead {
   private final String uri;
   private static final Logger LOG =
       LoggerFactory.getLogger(S3AInputStream.class);
+  /** Size of the chunks copied by vectored reads into direct buffers. */
+  private static final int VECTORED_READ_CHUNK_SIZE = 64 * 1024;
   private final S3AInstrumentation.InputStreamStatistics streamStatistics;
   private S3AEncryptionMethods serverSideEncryptionAlgorithm;
   private String serverSideEncryptionKey;
@@ -170,12 +185,7 @@ private synchronized void reopen(String reason, long targetPos, long length)
         inputPolicy);
 
     long opencount = streamStatistics.streamOpened();
-    GetObjectRequest request = new GetObjectRequest(bucket, key)
-        .withRange(targetPos, contentRangeFinish - 1);
-    if (S3AEncryptionMethods.SSE_C.equals(serverSideEncryptionAlgorithm) &&
-        StringUtils.isNotBlank(serverSideEncryptionKey)){
-      request.setSSECustomerKey(new SSECustomerKey(serverSideEncryptionKey));
-    }
+    GetObjectRequest request = newGetRequest(targetPos, contentRangeFinish);
     String text = String.format("Failed to %s %s at %d",
         (opencount == 0 ? "open" : "re-open"), uri, targetPos);
     S3Object object = context.getReadInvoker().once(text, uri,
@@ -190,6 +200,22 @@ private synchronized void reopen(String reason, long targetPos, long length)
     this.pos = targetPos;
   }
 
+  /**
+   * Create a GET request for a range of the object.
+   * @param start the offset of the first byte
+   * @param end the offset after the last byte
+   * @return the request
+   */
+  private GetObjectRequest newGetRequest(long start, long end) {
+    GetObjectRequest request = new GetObjectRequest(bucket, key)
+        .withRange(start, end - 1);
+    if (S3AEncryptionMethods.SSE_C.equals(serverSideEncryptionAlgorithm) &&
+        StringUtils.isNotBlank(serverSideEncryptionKey)){
+      request.setSSECustomerKey(new SSECustomerKey(serverSideEncryptionKey));
+    }
+    return request;
+  }
+
   @Override
   public synchronized long getPos() throws IOException {
     return (nextReadPos < 0) ? 0 : nextReadPos;
@@ -701,6 +727,168 @@ public void readFully(long position, byte[] buffer, int offset, int length)
     }
   }
 
+  @Override
+  public int minSeekForVectorReads() {
+    return context.getVectoredReadMinSeek();
+  }
+
+  @Override
+  public int maxReadSizeForVectorReads() {
+    return context.getVectoredReadMaxSize();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Ranges closer than {@link #minSeekForVectorReads()} are merged, and
+   * each merged range is read with a GET request of its own. The requests
+   * are issued in parallel on the thread pool of the filesystem, and do not
+   * use or move the HTTP connection of the stream. Each request is retried
+   * with the read invoker; if it still fails, the futures of all its ranges
+   * complete with the translated exception.
+   */
+  @Override
+  public void readVectored(List<? extends FileRange> ranges,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    checkNotClosed();
+    ExecutorService pool = context.getVectoredReadPool();
+    if (pool == null) {
+      super.readVectored(ranges, allocate);
+      return;
+    }
+    List<FileRange> validRanges = new ArrayList<>(ranges.size());
+    for (FileRange range : sortRanges(ranges)) {
+      if (range.getOffset() + range.getLength() > contentLength) {
+        CompletableFuture<ByteBuffer> eof = new CompletableFuture<>();
+        eof.completeExceptionally(new EOFException(
+            FSExceptionMessages.EOF_IN_READ_FULLY + " reading " + range
+                + " of " + uri));
+        range.setData(eof);
+      } else {
+        validRanges.add(range);
+      }
+    }
+    for (CombinedFileRange combined : mergeSortedRanges(validRanges,
+        minSeekForVectorReads(), maxReadSizeForVectorReads())) {
+      List<CompletableFuture<ByteBuffer>> results = new ArrayList<>();
+      for (FileRange range : combined.getUnderlying()) {
+        CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+        range.setData(result);
+        results.add(result);
+      }
+      if (combined.getLength() == 0) {
+        // a range request cannot be empty
+        for (CompletableFuture<ByteBuffer> result : results) {
+          ByteBuffer empty = allocate.apply(0);
+          empty.flip();
+          result.complete(empty);
+        }
+        continue;
+      }
+      try {
+        pool.submit(() -> {
+          try {
+            List<ByteBuffer> buffers = context.getReadInvoker().retry(
+                "readVectored", pathStr, true,
+                () -> readCombinedRange(combined, allocate));
+            for (int i = 0; i < results.size(); i++) {
+              results.get(i).complete(buffers.get(i));
+            }
+          } catch (IOException | RuntimeException e) {
+            failAll(results, e);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        failAll(results, new InterruptedIOException(
+            "Vectored read of " + uri + " rejected: " + e));
+      }
+    }
+  }
+
+  /**
+   * Complete the futures of ranges exceptionally.
+   * @param results the futures
+   * @param e the failure
+   */
+  private static void failAll(List<CompletableFuture<ByteBuffer>> results,
+      Throwable e) {
+    for (CompletableFuture<ByteBuffer> result : results) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Read a combined range with one GET request, discarding the gaps
+   * between its ranges.
+   * @param combined the range to read
+   * @param allocate the function to allocate the buffers of the ranges
+   * @return the buffers of the ranges, flipped for reading
+   * @throws IOException on a failure of the request or the read
+   */
+  @Retries.OnceRaw
+  private List<ByteBuffer> readCombinedRange(CombinedFileRange combined,
+      IntFunction<ByteBuffer> allocate) throws IOException {
+    GetObjectRequest request = newGetRequest(combined.getOffset(),
+        combined.getOffset() + combined.getLength());
+    synchronized (this) {
+      streamStatistics.streamOpened();
+    }
+    S3ObjectInputStream in = client.getObject(request).getObjectContent();
+    List<ByteBuffer> buffers = new ArrayList<>();
+    byte[] chunk = new byte[VECTORED_READ_CHUNK_SIZE];
+    long position = combined.getOffset();
+    try {
+      for (FileRange range : combined.getUnderlying()) {
+        copyFromStream(in, chunk, null, (int) (range.getOffset() - position));
+        ByteBuffer buffer = allocate.apply(range.getLength());
+        copyFromStream(in, chunk, buffer, range.getLength());
+        buffer.flip();
+        buffers.add(buffer);
+        position = range.getOffset() + range.getLength();
+      }
+    } catch (IOException | RuntimeException e) {
+      in.abort();
+      throw e;
+    }
+    in.close();
+    synchronized (this) {
+      incrementBytesRead(combined.getLength());
+    }
+    return buffers;
+  }
+
+  /**
+   * Read bytes of a stream into a buffer, or discard them.
+   * @param in the stream
+   * @param chunk a buffer to copy through
+   * @param buffer the buffer to read into, or null to discard the bytes
+   * @param length the number of bytes to read
+   * @throws EOFException if the stream ends first
+   */
+  private static void copyFromStream(InputStream in, byte[] chunk,
+      ByteBuffer buffer, int length) throws IOException {
+    int nread = 0;
+    while (nread < length) {
+      int n;
+      if (buffer != null && buffer.hasArray()) {
+        n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+            length - nread);
+        if (n > 0) {
+          buffer.position(buffer.position() + n);
+        }
+      } else {
+        n = in.read(chunk, 0, Math.min(chunk.length, length - nread));
+        if (n > 0 && buffer != null) {
+          buffer.put(chunk, 0, n);
+        }
+      }
+      if (n < 0) {
+        throw new EOFException(FSExceptionMessages.EOF_IN_READ_FULLY);
+      }
+      nread += n;
+    }
+  }
+
   /**
    * Access the input stream statistics.
    * This is for internal testing and may be removed without warning.
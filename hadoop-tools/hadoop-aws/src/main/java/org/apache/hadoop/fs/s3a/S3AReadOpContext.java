@@ -18,26 +18,62 @@
 
 package org.apache.hadoop.fs.s3a;
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 
 import javax.annotation.Nullable;
 
+import static org.apache.hadoop.fs.s3a.Constants.DEFAULT_VECTORED_READ_MAX_MERGED_SIZE;
+import static org.apache.hadoop.fs.s3a.Constants.DEFAULT_VECTORED_READ_MIN_SEEK_SIZE;
+
 /**
  * Read-specific operation context struct.
  */
 public class S3AReadOpContext extends S3AOpContext {
+  /** The pool of the requests of vectored reads; null to read serially. */
+  @Nullable private final ExecutorService vectoredReadPool;
+  private final int vectoredReadMinSeek;
+  private final int vectoredReadMaxSize;
+
   public S3AReadOpContext(boolean isS3GuardEnabled, Invoker invoker,
       Invoker s3guardInvoker, @Nullable FileSystem.Statistics stats,
       S3AInstrumentation instrumentation, FileStatus dstFileStatus) {
-    super(isS3GuardEnabled, invoker, s3guardInvoker, stats, instrumentation,
-        dstFileStatus);
+    this(isS3GuardEnabled, invoker, s3guardInvoker, stats, instrumentation,
+        dstFileStatus, null, (int) DEFAULT_VECTORED_READ_MIN_SEEK_SIZE,
+        (int) DEFAULT_VECTORED_READ_MAX_MERGED_SIZE);
   }
 
   public S3AReadOpContext(boolean isS3GuardEnabled, Invoker invoker,
       @Nullable FileSystem.Statistics stats, S3AInstrumentation instrumentation,
       FileStatus dstFileStatus) {
-    super(isS3GuardEnabled, invoker, stats, instrumentation, dstFileStatus);
+    this(isS3GuardEnabled, invoker, null, stats, instrumentation,
+        dstFileStatus);
+  }
+
+  /**
+   * Constructor with the settings of vectored reads.
+   * @param isS3GuardEnabled true if s3Guard is active
+   * @param invoker invoker, which contains retry policy
+   * @param s3guardInvoker s3guard-specific retry policy invoker
+   * @param stats optional stats object
+   * @param instrumentation instrumentation to use
+   * @param dstFileStatus file status from existence check
+   * @param vectoredReadPool pool to issue the requests of vectored reads
+   * @param vectoredReadMinSeek smallest gap between separately read ranges
+   * @param vectoredReadMaxSize largest size of a merged range
+   */
+  public S3AReadOpContext(boolean isS3GuardEnabled, Invoker invoker,
+      Invoker s3guardInvoker, @Nullable FileSystem.Statistics stats,
+      S3AInstrumentation instrumentation, FileStatus dstFileStatus,
+      @Nullable ExecutorService vectoredReadPool, int vectoredReadMinSeek,
+      int vectoredReadMaxSize) {
+    super(isS3GuardEnabled, invoker, s3guardInvoker, stats, instrumentation,
+        dstFileStatus);
+    this.vectoredReadPool = vectoredReadPool;
+    this.vectoredReadMinSeek = vectoredReadMinSeek;
+    this.vectoredReadMaxSize = vectoredReadMaxSize;
   }
 
   /**
@@ -53,4 +89,21 @@ public Invoker getReadInvoker() {
       return invoker;
     }
   }
+
+  /**
+   * @return the pool to issue the requests of vectored reads, or null if
+   *         they are read serially.
+   */
+  @Nullable
+  public ExecutorService getVectoredReadPool() {
+    return vectoredReadPool;
+  }
+
+  public int getVectoredReadMinSeek() {
+    return vectoredReadMinSeek;
+  }
+
+  public int getVectoredReadMaxSize() {
+    return vectoredReadMaxSize;
+  }
 }
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.s3a;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.file.AccessDeniedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileRange;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * S3A tests for vectored reads using mock S3 client.
+ */
+public class TestS3AVectoredRead extends AbstractS3AMockTest {
+
+  private static final Path PATH = new Path("/file");
+  private static final int FILE_LENGTH = 2 * 1024 * 1024;
+
+  private final byte[] data = new byte[FILE_LENGTH];
+  private final List<long[]> requests = new ArrayList<>();
+
+  @Before
+  public void setupObject() {
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+    ObjectMetadata meta = new ObjectMetadata();
+    meta.setContentLength(FILE_LENGTH);
+    meta.setLastModified(new Date(2L));
+    when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class)))
+        .thenReturn(meta);
+    when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+      long[] range =
+          ((GetObjectRequest) invocation.getArguments()[0]).getRange();
+      synchronized (requests) {
+        requests.add(range);
+      }
+      S3Object object = new S3Object();
+      object.setObjectContent(new ByteArrayInputStream(data, (int) range[0],
+          (int) (range[1] - range[0] + 1)));
+      return object;
+    });
+  }
+
+  private void assertData(FileRange range) throws Exception {
+    ByteBuffer buffer = range.getData().get();
+    assertEquals("Length of " + range, range.getLength(), buffer.remaining());
+    for (int i = 0; i < range.getLength(); i++) {
+      assertEquals("Byte " + i + " of " + range,
+          data[(int) range.getOffset() + i], buffer.get());
+    }
+  }
+
+  @Test
+  public void testMergedRanges() throws Exception {
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(1024 * 1024, 100),
+        FileRange.createFileRange(1000, 100),
+        FileRange.createFileRange(0, 100));
+    try (FSDataInputStream in = fs.open(PATH)) {
+      in.readVectored(ranges, ByteBuffer::allocate);
+      for (FileRange range : ranges) {
+        assertData(range);
+      }
+      // the two close ranges are read with one request
+      assertEquals(2, requests.size());
+      // the HTTP connection of the stream is not opened
+      assertEquals(0, in.getPos());
+      assertEquals(data[0], (byte) in.read());
+    }
+  }
+
+  @Test
+  public void testDirectBuffers() throws Exception {
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(0, 100 * 1024),
+        FileRange.createFileRange(FILE_LENGTH - 100, 100));
+    try (FSDataInputStream in = fs.open(PATH)) {
+      in.readVectored(ranges, ByteBuffer::allocateDirect);
+      for (FileRange range : ranges) {
+        assertData(range);
+      }
+    }
+  }
+
+  @Test
+  public void testEOFAndEmptyRanges() throws Exception {
+    FileRange pastEOF = FileRange.createFileRange(FILE_LENGTH - 10, 100);
+    FileRange empty = FileRange.createFileRange(100, 0);
+    try (FSDataInputStream in = fs.open(PATH)) {
+      in.readVectored(Arrays.asList(pastEOF, empty), ByteBuffer::allocate);
+      try {
+        pastEOF.getData().get();
+        fail("Read past EOF of " + PATH);
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof EOFException);
+      }
+      assertEquals(0, empty.getData().get().remaining());
+      assertEquals(0, requests.size());
+    }
+  }
+
+  @Test
+  public void testFailedRequest() throws Exception {
+    AmazonServiceException denied = new AmazonServiceException("Denied");
+    denied.setStatusCode(403);
+    doThrow(denied).when(s3).getObject(any(GetObjectRequest.class));
+    List<FileRange> ranges = Arrays.asList(
+        FileRange.createFileRange(0, 100),
+        FileRange.createFileRange(200, 100));
+    try (FSDataInputStream in = fs.open(PATH)) {
+      in.readVectored(ranges, ByteBuffer::allocate);
+      for (FileRange range : ranges) {
+        try {
+          range.getData().get();
+          fail("Read " + range + " without access");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof AccessDeniedException);
+        }
+      }
+    }
+  }
+}
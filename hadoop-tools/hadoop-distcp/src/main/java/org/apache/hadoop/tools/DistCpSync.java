@@ -22,6 +22,7 @@
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -36,6 +37,8 @@
 import java.util.EnumMap;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * This class provides the basic functionality to sync two FileSystems based on
@@ -55,8 +58,16 @@ class DistCpSync {
   // diff stored there maybe modified instead of copied by the distcp algorithm
   // afterwards, for better performance.
   //
+  // Only the rename and delete diffs are kept, unless the diff is against the
+  // current tree. The create and modify diffs of a diff between two
+  // snapshots are streamed from the snapshot diff again when the copy
+  // listing is built.
   private EnumMap<SnapshotDiffReport.DiffType, List<DiffInfo>> diffMap;
   private DiffInfo[] renameDiffs;
+  // the directory and snapshots of the diff
+  private Path diffDir;
+  private String fromSnapshot;
+  private String toSnapshot;
 
   DistCpSync(DistCpContext context, Configuration conf) {
     this.context = context;
@@ -186,55 +197,76 @@ public boolean sync() throws IOException {
    * Get all diffs from source directory snapshot diff report, put them into an
    * EnumMap whose key is DiffType, and value is a DiffInfo list. If there is
    * no entry for a given DiffType, the associated value will be an empty list.
+   * The create and modify diffs are only kept for a diff against the current
+   * tree, see {@link #getCreateAndModifyDiffs()}.
    */
   private boolean getAllDiffs() throws IOException {
-    Path ssDir = isRdiff()?
+    diffDir = isRdiff()?
         context.getTargetPath() : context.getSourcePaths().get(0);
+    fromSnapshot = getSnapshotName(context.getFromSnapshot());
+    toSnapshot = getSnapshotName(context.getToSnapshot());
 
     try {
-      DistributedFileSystem fs =
-          (DistributedFileSystem) ssDir.getFileSystem(conf);
-      final String from = getSnapshotName(context.getFromSnapshot());
-      final String to = getSnapshotName(context.getToSnapshot());
-      SnapshotDiffReport report = fs.getSnapshotDiffReport(ssDir,
-          from, to);
+      RemoteIterator<SnapshotDiffReport.DiffReportEntry> entries =
+          getDiffEntries();
       this.diffMap = new EnumMap<>(SnapshotDiffReport.DiffType.class);
       for (SnapshotDiffReport.DiffType type :
           SnapshotDiffReport.DiffType.values()) {
         diffMap.put(type, new ArrayList<DiffInfo>());
       }
 
-      for (SnapshotDiffReport.DiffReportEntry entry : report.getDiffList()) {
-        // If the entry is the snapshot root, usually a item like "M\t."
-        // in the diff report. We don't need to handle it and cannot handle it,
-        // since its sourcepath is empty.
-        if (entry.getSourcePath().length <= 0) {
-          continue;
-        }
+      while (entries.hasNext()) {
+        SnapshotDiffReport.DiffReportEntry entry = entries.next();
         SnapshotDiffReport.DiffType dt = entry.getType();
-        List<DiffInfo> list = diffMap.get(dt);
-        if (dt == SnapshotDiffReport.DiffType.MODIFY ||
-            dt == SnapshotDiffReport.DiffType.CREATE ||
-            dt == SnapshotDiffReport.DiffType.DELETE) {
-          final Path source =
-              new Path(DFSUtilClient.bytes2String(entry.getSourcePath()));
-          list.add(new DiffInfo(source, null, dt));
-        } else if (dt == SnapshotDiffReport.DiffType.RENAME) {
-          final Path source =
-              new Path(DFSUtilClient.bytes2String(entry.getSourcePath()));
-          final Path target =
-              new Path(DFSUtilClient.bytes2String(entry.getTargetPath()));
-          list.add(new DiffInfo(source, target, dt));
+        if (entry.getSourcePath().length > 0 &&
+            (isCurrentTreeDiff() || !isCreateOrModify(dt))) {
+          diffMap.get(dt).add(toDiffInfo(entry));
         }
       }
       return true;
     } catch (IOException e) {
-      DistCp.LOG.warn("Failed to compute snapshot diff on " + ssDir, e);
+      DistCp.LOG.warn("Failed to compute snapshot diff on " + diffDir, e);
     }
     this.diffMap = null;
     return false;
   }
 
+  /**
+   * @return the entries of the snapshot diff report, which are consumed
+   * while the rest of the diff is fetched.
+   */
+  private RemoteIterator<SnapshotDiffReport.DiffReportEntry> getDiffEntries()
+      throws IOException {
+    DistributedFileSystem fs =
+        (DistributedFileSystem) diffDir.getFileSystem(conf);
+    return fs.snapshotDiffReportRemoteIterator(diffDir, fromSnapshot,
+        toSnapshot);
+  }
+
+  /**
+   * A diff against the current tree is computed only once, since the tree
+   * can change between two snapshot diff reports.
+   */
+  private boolean isCurrentTreeDiff() {
+    return fromSnapshot.isEmpty() || toSnapshot.isEmpty();
+  }
+
+  private static boolean isCreateOrModify(SnapshotDiffReport.DiffType dt) {
+    return dt == SnapshotDiffReport.DiffType.CREATE ||
+        dt == SnapshotDiffReport.DiffType.MODIFY;
+  }
+
+  private static DiffInfo toDiffInfo(SnapshotDiffReport.DiffReportEntry entry) {
+    final Path source =
+        new Path(DFSUtilClient.bytes2String(entry.getSourcePath()));
+    if (entry.getType() == SnapshotDiffReport.DiffType.RENAME) {
+      final Path target =
+          new Path(DFSUtilClient.bytes2String(entry.getTargetPath()));
+      return new DiffInfo(source, target, entry.getType());
+    }
+    return new DiffInfo(source, null, entry.getType());
+  }
+
   private String getSnapshotName(String name) {
     return Path.CUR_DIR.equals(name) ? "" : name;
   }
@@ -421,16 +453,63 @@ private DiffInfo[] getRenameAndDeleteDiffsFdiff(Path targetDir) {
         new DiffInfo[renameAndDeleteDiff.size()]);
   }
 
-  private DiffInfo[] getCreateAndModifyDiffs() {
-    List<DiffInfo> createDiff =
-        diffMap.get(SnapshotDiffReport.DiffType.CREATE);
-    List<DiffInfo> modifyDiff =
-        diffMap.get(SnapshotDiffReport.DiffType.MODIFY);
-    List<DiffInfo> diffs =
-        new ArrayList<>(createDiff.size() + modifyDiff.size());
-    diffs.addAll(createDiff);
-    diffs.addAll(modifyDiff);
-    return diffs.toArray(new DiffInfo[diffs.size()]);
+  /**
+   * Get the create and modify diffs. The diffs against the current tree were
+   * kept by {@link #getAllDiffs()}, the others are streamed from the
+   * snapshot diff report in report order.
+   */
+  private RemoteIterator<DiffInfo> getCreateAndModifyDiffs()
+      throws IOException {
+    if (isCurrentTreeDiff()) {
+      List<DiffInfo> createDiff =
+          diffMap.get(SnapshotDiffReport.DiffType.CREATE);
+      List<DiffInfo> modifyDiff =
+          diffMap.get(SnapshotDiffReport.DiffType.MODIFY);
+      final List<DiffInfo> diffs =
+          new ArrayList<>(createDiff.size() + modifyDiff.size());
+      diffs.addAll(createDiff);
+      diffs.addAll(modifyDiff);
+      return new RemoteIterator<DiffInfo>() {
+        private final Iterator<DiffInfo> it = diffs.iterator();
+
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public DiffInfo next() {
+          return it.next();
+        }
+      };
+    }
+    final RemoteIterator<SnapshotDiffReport.DiffReportEntry> entries =
+        getDiffEntries();
+    return new RemoteIterator<DiffInfo>() {
+      private DiffInfo next;
+
+      @Override
+      public boolean hasNext() throws IOException {
+        while (next == null && entries.hasNext()) {
+          SnapshotDiffReport.DiffReportEntry entry = entries.next();
+          if (entry.getSourcePath().length > 0 &&
+              isCreateOrModify(entry.getType())) {
+            next = toDiffInfo(entry);
+          }
+        }
+        return next != null;
+      }
+
+      @Override
+      public DiffInfo next() throws IOException {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more create or modify diffs");
+        }
+        DiffInfo diff = next;
+        next = null;
+        return diff;
+      }
+    };
   }
 
   /**
@@ -511,33 +590,45 @@ private Path translateRenamedPath(Path sourcePath,
    * For RDiff usage, the diff.getSource() is what we will use as its target
    * path.
    *
-   * @return a diff list
+   * The diffs are generated as they are consumed, so only the rename diffs
+   * are held in memory.
+   *
+   * @return an iterator over the diffs
+   * @throws IOException if the snapshot diff cannot be fetched
    */
-  public ArrayList<DiffInfo> prepareDiffListForCopyListing() {
-    DiffInfo[] modifyAndCreateDiffs = getCreateAndModifyDiffs();
-    ArrayList<DiffInfo> finalListWithTarget = new ArrayList<>();
+  public RemoteIterator<DiffInfo> prepareDiffListForCopyListing()
+      throws IOException {
+    final RemoteIterator<DiffInfo> modifyAndCreateDiffs =
+        getCreateAndModifyDiffs();
+    final DiffInfo[] renameDiffArray;
     if (isRdiff()) {
-      for (DiffInfo diff : modifyAndCreateDiffs) {
-        diff.setTarget(diff.getSource());
-        finalListWithTarget.add(diff);
-      }
+      renameDiffArray = null;
     } else {
       List<DiffInfo> renameDiffsList =
           diffMap.get(SnapshotDiffReport.DiffType.RENAME);
-      DiffInfo[] renameDiffArray =
+      renameDiffArray =
           renameDiffsList.toArray(new DiffInfo[renameDiffsList.size()]);
       Arrays.sort(renameDiffArray, DiffInfo.sourceComparator);
-      for (DiffInfo diff : modifyAndCreateDiffs) {
-        DiffInfo renameItem = getRenameItem(diff, renameDiffArray);
+    }
+    return new RemoteIterator<DiffInfo>() {
+      @Override
+      public boolean hasNext() throws IOException {
+        return modifyAndCreateDiffs.hasNext();
+      }
+
+      @Override
+      public DiffInfo next() throws IOException {
+        DiffInfo diff = modifyAndCreateDiffs.next();
+        DiffInfo renameItem = renameDiffArray == null ?
+            null : getRenameItem(diff, renameDiffArray);
         if (renameItem == null) {
           diff.setTarget(diff.getSource());
         } else {
           diff.setTarget(translateRenamedPath(diff.getSource(), renameItem));
         }
-        finalListWithTarget.add(diff);
+        return diff;
       }
-    }
-    return finalListWithTarget;
+    };
   }
 
   /**
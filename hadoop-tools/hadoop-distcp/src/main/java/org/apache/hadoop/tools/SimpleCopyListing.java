@@ -25,6 +25,7 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.io.SequenceFile;
@@ -267,13 +268,15 @@ private void addToFileListing(SequenceFile.Writer fileListWriter,
   protected void doBuildListingWithSnapshotDiff(
       SequenceFile.Writer fileListWriter, DistCpContext context)
       throws IOException {
-    ArrayList<DiffInfo> diffList = distCpSync.prepareDiffListForCopyListing();
+    RemoteIterator<DiffInfo> diffs =
+        distCpSync.prepareDiffListForCopyListing();
     Path sourceRoot = context.getSourcePaths().get(0);
     FileSystem sourceFS = sourceRoot.getFileSystem(getConf());
 
     try {
       List<FileStatusInfo> fileStatuses = Lists.newArrayList();
-      for (DiffInfo diff : diffList) {
+      while (diffs.hasNext()) {
+        DiffInfo diff = diffs.next();
         // add snapshot paths prefix
         diff.setTarget(
             new Path(context.getSourcePaths().get(0), diff.getTarget()));